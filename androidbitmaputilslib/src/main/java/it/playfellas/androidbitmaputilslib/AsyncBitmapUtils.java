@@ -0,0 +1,385 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous version of the {@link BitmapUtils} methods, executed by a {@link BitmapExecutor}.
+ * Every method returns a {@link BitmapTask} (a Future, that can be cancelled) and accepts
+ * an optional {@link BitmapCallback}, by default called on the main thread.
+ * <p></p>
+ * Instances are immutable: {@link #priority(int)}, {@link #tag(Object)}, {@link #callbackOn(Executor)}
+ * and {@link #blocking(boolean)} return a new configured instance. For example:
+ * <br>
+ * {@code BitmapUtils.async().priority(BitmapExecutor.PRIORITY_VISIBLE).tag(imageView).toGrayscale(source, callback);}
+ * <br>
+ * and then, when imageView is recycled:
+ * <br>
+ * {@code BitmapExecutor.getDefault().cancelAll(imageView);}
+ */
+public class AsyncBitmapUtils {
+
+    /**
+     * Operation on a Bitmap, for {@link #submitAll(List, BitmapOperation, BitmapCallback)}.
+     */
+    public interface BitmapOperation {
+        /**
+         * Method to transform {@code source}.
+         *
+         * @param source The original Bitmap.
+         * @return The result.
+         * @throws Exception
+         */
+        Bitmap apply(Bitmap source) throws Exception;
+    }
+
+    private final BitmapExecutor executor;
+    private final int priority;
+    private final Object tag;
+    private final Executor callbackExecutor;
+    private final boolean blocking;
+
+    AsyncBitmapUtils(BitmapExecutor executor) {
+        this(executor, BitmapExecutor.PRIORITY_NORMAL, null, BitmapExecutor.mainThread(), false);
+    }
+
+    private AsyncBitmapUtils(BitmapExecutor executor, int priority, Object tag, Executor callbackExecutor, boolean blocking) {
+        this.executor = executor;
+        this.priority = priority;
+        this.tag = tag;
+        this.callbackExecutor = callbackExecutor;
+        this.blocking = blocking;
+    }
+
+    /**
+     * Method to set the priority of the next submissions.
+     *
+     * @param priority int that represents the priority (for example {@link BitmapExecutor#PRIORITY_VISIBLE}).
+     * @return A new AsyncBitmapUtils.
+     */
+    public AsyncBitmapUtils priority(int priority) {
+        return new AsyncBitmapUtils(executor, priority, tag, callbackExecutor, blocking);
+    }
+
+    /**
+     * Method to set the tag of the next submissions, to cancel them with {@link BitmapExecutor#cancelAll(Object)}.
+     *
+     * @param tag The tag, for example the view that will show the result.
+     * @return A new AsyncBitmapUtils.
+     */
+    public AsyncBitmapUtils tag(Object tag) {
+        return new AsyncBitmapUtils(executor, priority, tag, callbackExecutor, blocking);
+    }
+
+    /**
+     * Method to set the Executor of the callbacks.
+     *
+     * @param callbackExecutor The Executor, or null to call callbacks on the worker threads.
+     * @return A new AsyncBitmapUtils.
+     */
+    public AsyncBitmapUtils callbackOn(Executor callbackExecutor) {
+        return new AsyncBitmapUtils(executor, priority, tag, callbackExecutor, blocking);
+    }
+
+    /**
+     * Method to choose what to do when the queue of the executor is full: reject the task
+     * (the default, with a {@link RejectedExecutionException}), or wait for a free slot.
+     * Never wait on the main thread.
+     *
+     * @param blocking true to wait, false to reject.
+     * @return A new AsyncBitmapUtils.
+     */
+    public AsyncBitmapUtils blocking(boolean blocking) {
+        return new AsyncBitmapUtils(executor, priority, tag, callbackExecutor, blocking);
+    }
+
+    public BitmapExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Method to execute a generic operation.
+     *
+     * @param callable The operation.
+     * @param callback The callback (it can be null).
+     * @param <V>      The type of the result.
+     * @return The task.
+     */
+    public <V> BitmapTask<V> submit(Callable<V> callable, BitmapCallback<? super V> callback) {
+        BitmapTask<V> task = new BitmapTask<>(callable, priority, tag, callback, callbackExecutor);
+        if (!blocking) {
+            executor.offer(task);
+            return task;
+        }
+        try {
+            executor.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.reject(new RejectedExecutionException("interrupted while waiting for a free slot"));
+        }
+        return task;
+    }
+
+    /**
+     * Method to execute the same operation on many Bitmaps (for example all the items of a list).
+     * Every Bitmap is a separate task, so results are delivered as soon as they are ready.
+     *
+     * @param sources   The original Bitmaps.
+     * @param operation The operation.
+     * @param callback  The callback, called for every result (it can be null).
+     * @return The tasks, in the same order of {@code sources}.
+     */
+    public List<BitmapTask<Bitmap>> submitAll(List<Bitmap> sources, final BitmapOperation operation, BitmapCallback<? super Bitmap> callback) {
+        List<BitmapTask<Bitmap>> tasks = new ArrayList<>(sources.size());
+        for (final Bitmap source : sources) {
+            tasks.add(submit(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() throws Exception {
+                    return operation.apply(source);
+                }
+            }, callback));
+        }
+        return tasks;
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#toGrayscale(Bitmap)}.
+     *
+     * @param source   The original Bitmap.
+     * @param callback The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<Bitmap> toGrayscale(final Bitmap source, BitmapCallback<? super Bitmap> callback) {
+        return submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return BitmapUtils.toGrayscale(source);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#rotate(Bitmap, float)}.
+     *
+     * @param source   The original Bitmap.
+     * @param angle    float that represents the angle.
+     * @param callback The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<Bitmap> rotate(final Bitmap source, final float angle, BitmapCallback<? super Bitmap> callback) {
+        return submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return BitmapUtils.rotate(source, angle);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#flipVertically(Bitmap)}.
+     *
+     * @param source   The original Bitmap.
+     * @param callback The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<Bitmap> flipVertically(final Bitmap source, BitmapCallback<? super Bitmap> callback) {
+        return submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return BitmapUtils.flipVertically(source);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#flipHorizonally(Bitmap)}.
+     *
+     * @param source   The original Bitmap.
+     * @param callback The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<Bitmap> flipHorizonally(final Bitmap source, BitmapCallback<? super Bitmap> callback) {
+        return submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return BitmapUtils.flipHorizonally(source);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#scale(Bitmap, int, int)}.
+     *
+     * @param source    The original Bitmap.
+     * @param newWidth  int that represents the desired width.
+     * @param newHeight int that represents the desired height.
+     * @param callback  The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<Bitmap> scale(final Bitmap source, final int newWidth, final int newHeight, BitmapCallback<? super Bitmap> callback) {
+        return submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws BitmapUtilsException {
+                return BitmapUtils.scale(source, newWidth, newHeight);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#overlayColorOnGrayScale(Bitmap, int)}.
+     *
+     * @param source   The original Bitmap.
+     * @param color    int that represents the color.
+     * @param callback The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<Bitmap> overlayColorOnGrayScale(final Bitmap source, final int color, BitmapCallback<? super Bitmap> callback) {
+        return submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return BitmapUtils.overlayColorOnGrayScale(source, color);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#overlayColorOnGrayScale(Resources, int, int, int, int)}.
+     *
+     * @param res       The Resources.
+     * @param id        int that represents the id of the image.
+     * @param color     int that represents the color.
+     * @param reqWidth  int that represents the requested width.
+     * @param reqHeight int that represents the requested height.
+     * @param callback  The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<Bitmap> overlayColorOnGrayScale(final Resources res, final int id, final int color,
+                                                      final int reqWidth, final int reqHeight, BitmapCallback<? super Bitmap> callback) {
+        return submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws BitmapUtilsException {
+                return BitmapUtils.overlayColorOnGrayScale(res, id, color, reqWidth, reqHeight);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#decodeSampled(Resources, int, int, int)}.
+     *
+     * @param res       The Resources.
+     * @param id        int that represents the id of the image.
+     * @param reqWidth  int that represents the requested width.
+     * @param reqHeight int that represents the requested height.
+     * @param callback  The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<Bitmap> decodeSampled(final Resources res, final int id, final int reqWidth, final int reqHeight,
+                                            BitmapCallback<? super Bitmap> callback) {
+        return submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws BitmapUtilsException {
+                return BitmapUtils.decodeSampled(res, id, reqWidth, reqHeight);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#splitImageHorizontally(Resources, int, int, int, int)}.
+     *
+     * @param res       The Resources.
+     * @param id        int that represents the id of the image.
+     * @param piecesNum int that represents the number of pieces.
+     * @param reqWidth  int that represents the requested width.
+     * @param reqHeight int that represents the requested height.
+     * @param callback  The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<List<Bitmap>> splitImageHorizontally(final Resources res, final int id, final int piecesNum,
+                                                           final int reqWidth, final int reqHeight, BitmapCallback<? super List<Bitmap>> callback) {
+        return submit(new Callable<List<Bitmap>>() {
+            @Override
+            public List<Bitmap> call() throws Exception {
+                return BitmapUtils.splitImageHorizontally(res, id, piecesNum, reqWidth, reqHeight);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#splitImageVertically(Resources, int, int, int, int)}.
+     *
+     * @param res       The Resources.
+     * @param id        int that represents the id of the image.
+     * @param piecesNum int that represents the number of pieces.
+     * @param reqWidth  int that represents the requested width.
+     * @param reqHeight int that represents the requested height.
+     * @param callback  The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<List<Bitmap>> splitImageVertically(final Resources res, final int id, final int piecesNum,
+                                                         final int reqWidth, final int reqHeight, BitmapCallback<? super List<Bitmap>> callback) {
+        return submit(new Callable<List<Bitmap>>() {
+            @Override
+            public List<Bitmap> call() throws Exception {
+                return BitmapUtils.splitImageVertically(res, id, piecesNum, reqWidth, reqHeight);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapUtils#geCombinedGrayscaledByPieces(List, int, int, int)}.
+     *
+     * @param bitmapList The pieces.
+     * @param threshold  The limit before to change from original to grayscaled images.
+     * @param numPieces  int that represents the number of pieces.
+     * @param direction  int that represents the direction (a {@link BitmapUtils.Direction} constant).
+     * @param callback   The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<Bitmap> geCombinedGrayscaledByPieces(final List<Bitmap> bitmapList, final int threshold, final int numPieces,
+                                                           final int direction, BitmapCallback<? super Bitmap> callback) {
+        return submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return BitmapUtils.geCombinedGrayscaledByPieces(bitmapList, threshold, numPieces, direction);
+            }
+        }, callback);
+    }
+
+    /**
+     * Asynchronous version of {@link BitmapEncoder#encode(Bitmap)}.
+     *
+     * @param source   The Bitmap to encode.
+     * @param encoder  The {@link BitmapEncoder}.
+     * @param callback The callback (it can be null).
+     * @return The task.
+     */
+    public BitmapTask<byte[]> encode(final Bitmap source, final BitmapEncoder encoder, BitmapCallback<? super byte[]> callback) {
+        return submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return encoder.encode(source);
+            }
+        }, callback);
+    }
+}
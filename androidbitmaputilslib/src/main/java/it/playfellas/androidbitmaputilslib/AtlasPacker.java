@@ -0,0 +1,179 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.playfellas.androidbitmaputilslib.pixel.SkylinePacker;
+
+/**
+ * Packer of many Bitmaps into a few atlas pages (a {@link TextureAtlas}), so screens with many sprites
+ * can draw (or upload as textures) a handful of Bitmaps instead of dozens.
+ * <p></p>
+ * Images are sorted by decreasing height and placed with the skyline bottom-left heuristic
+ * (see {@link SkylinePacker}) in pages of at most {@code maxPageSize} x {@code maxPageSize} pixels,
+ * with {@code padding} empty pixels between them, to avoid bleeding when they are drawn scaled.
+ * A new page is created only when an image doesn't fit in the previous ones.
+ * Then every page is cropped to the smallest power of two sizes that contain its images.
+ * An image bigger than {@code maxPageSize} gets a dedicated page.
+ */
+public class AtlasPacker {
+
+    public static final int DEFAULT_MAX_PAGE_SIZE = 2048;
+    public static final int DEFAULT_PADDING = 2;
+
+    private final int maxPageSize;
+    private final int padding;
+    private final Bitmap.Config config;
+
+    /**
+     * Constructor, with pages of at most {@link #DEFAULT_MAX_PAGE_SIZE} pixels, {@link #DEFAULT_PADDING}
+     * pixels of padding and ARGB_8888 pages.
+     */
+    public AtlasPacker() {
+        this(DEFAULT_MAX_PAGE_SIZE, DEFAULT_PADDING, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxPageSize int that represents the maximum width and height of a page (a power of 2).
+     * @param padding     int that represents the empty pixels between two images.
+     * @param config      The {@link Bitmap.Config} of the pages (for example ALPHA_8 for masks).
+     */
+    public AtlasPacker(int maxPageSize, int padding, Bitmap.Config config) {
+        if (maxPageSize <= 0 || Integer.bitCount(maxPageSize) != 1) {
+            throw new IllegalArgumentException("maxPageSize must be a power of 2");
+        }
+        if (padding < 0 || config == null) {
+            throw new IllegalArgumentException("padding must be >=0 and config not null");
+        }
+        this.maxPageSize = maxPageSize;
+        this.padding = padding;
+        this.config = config;
+    }
+
+    /**
+     * Method to pack a list of Bitmaps.
+     *
+     * @param bitmaps The Bitmaps to pack. They are not modified or recycled.
+     * @return The TextureAtlas, where every image has the key of its index in {@code bitmaps}.
+     */
+    public TextureAtlas<Integer> pack(List<Bitmap> bitmaps) {
+        Map<Integer, Bitmap> map = new LinkedHashMap<>();
+        for (int i = 0; i < bitmaps.size(); i++) {
+            map.put(i, bitmaps.get(i));
+        }
+        return pack(map);
+    }
+
+    /**
+     * Method to pack Bitmaps identified by a key (for example the name of a sprite).
+     *
+     * @param bitmaps The Bitmaps to pack, by key. They are not modified or recycled.
+     * @param <K>     The type of the keys.
+     * @return The TextureAtlas.
+     */
+    public <K> TextureAtlas<K> pack(Map<K, Bitmap> bitmaps) {
+        List<Map.Entry<K, Bitmap>> entries = new ArrayList<>(bitmaps.entrySet());
+        //higher images first, then wider ones: the skyline stays flat and there is less wasted space
+        Collections.sort(entries, new Comparator<Map.Entry<K, Bitmap>>() {
+            @Override
+            public int compare(Map.Entry<K, Bitmap> a, Map.Entry<K, Bitmap> b) {
+                int byHeight = compareInts(b.getValue().getHeight(), a.getValue().getHeight());
+                return byHeight != 0 ? byHeight : compareInts(b.getValue().getWidth(), a.getValue().getWidth());
+            }
+        });
+
+        List<SkylinePacker> packers = new ArrayList<>();
+        List<List<Placement<K>>> placements = new ArrayList<>();
+        for (Map.Entry<K, Bitmap> entry : entries) {
+            Bitmap bitmap = entry.getValue();
+            int w = bitmap.getWidth();
+            int h = bitmap.getHeight();
+            int[] position = null;
+            int page = -1;
+            while (position == null && ++page < packers.size()) {
+                position = packers.get(page).insert(w, h);
+            }
+            if (position == null) {
+                //a new page: a dedicated one, bigger than maxPageSize, for a huge image
+                packers.add(new SkylinePacker(Math.max(maxPageSize, nextPowerOfTwo(w)), Math.max(maxPageSize, nextPowerOfTwo(h)), padding));
+                placements.add(new ArrayList<Placement<K>>());
+                position = packers.get(page).insert(w, h);
+            }
+            placements.get(page).add(new Placement<>(entry.getKey(), bitmap,
+                    new Rect(position[0], position[1], position[0] + w, position[1] + h)));
+        }
+
+        List<Bitmap> pages = new ArrayList<>();
+        Map<K, TextureAtlas.Region> regions = new LinkedHashMap<>();
+        for (int page = 0; page < packers.size(); page++) {
+            SkylinePacker packer = packers.get(page);
+            Bitmap pageBitmap = BitmapUtils.obtain(null, nextPowerOfTwo(packer.getUsedWidth()), nextPowerOfTwo(packer.getUsedHeight()), config);
+            DrawContext context = DrawContext.acquire();
+            try {
+                Canvas canvas = context.canvas(pageBitmap);
+                for (Placement<K> placement : placements.get(page)) {
+                    canvas.drawBitmap(placement.bitmap, placement.rect.left, placement.rect.top, null);
+                    regions.put(placement.key, new TextureAtlas.Region(page, placement.rect));
+                }
+            } finally {
+                context.release();
+            }
+            pages.add(pageBitmap);
+        }
+        return new TextureAtlas<>(pages, regions);
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public int getPadding() {
+        return padding;
+    }
+
+    //package-private method to get the smallest power of 2 >= n (1 for n <= 1)
+    static int nextPowerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    private static int compareInts(int a, int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    private static final class Placement<K> {
+        private final K key;
+        private final Bitmap bitmap;
+        private final Rect rect;
+
+        private Placement(K key, Bitmap bitmap, Rect rect) {
+            this.key = key;
+            this.bitmap = bitmap;
+            this.rect = rect;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+/**
+ * Callback of an operation submitted with {@link AsyncBitmapUtils}.
+ * It's not called if the operation is cancelled.
+ *
+ * @param <V> The type of the result.
+ */
+public interface BitmapCallback<V> {
+
+    /**
+     * Method called with the result of the operation.
+     *
+     * @param result The result.
+     */
+    void onSuccess(V result);
+
+    /**
+     * Method called if the operation throws an exception, or if it's rejected
+     * because the queue of the {@link BitmapExecutor} is full.
+     *
+     * @param error The exception.
+     */
+    void onFailure(Throwable error);
+}
@@ -0,0 +1,283 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.playfellas.androidbitmaputilslib.disk.PackFileStore;
+
+/**
+ * Persistent cache of the results of {@link BitmapUtils} operations, behind the {@link TransformCache}.
+ * Bitmaps are stored in the {@link it.playfellas.androidbitmaputilslib.pixel.RawPixelFormat}
+ * inside a {@link PackFileStore}, so a hit is a copy from a memory-mapped file into the Bitmap,
+ * without decoding.
+ * <p></p>
+ * Only keys based on stable content keys (for example resource images) are stored, because
+ * keys of Bitmap instances are meaningless in another process.
+ * <p></p>
+ * {@link #put(TransformCache.Key, Bitmap)} copies the pixels on the calling thread, but the write
+ * to the file happens on a background thread, so the caller never waits the disk. When too many
+ * writes are pending, new entries are dropped: the cache is only an optimization.
+ * <p></p>
+ * Enable it with {@link BitmapUtils#setDiskCache(BitmapDiskCache)}.
+ */
+public class BitmapDiskCache implements Closeable {
+
+    private static final String TAG = "BitmapDiskCache";
+    //writes waiting for the background thread, each one with its own direct buffer
+    private static final int MAX_PENDING_WRITES = 2;
+
+    private final PackFileStore store;
+    private final ThreadPoolExecutor writer;
+    //direct buffers of the completed writes, reused by put. Guarded by itself, like pendingWrites
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+    private int pendingWrites;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param directory  The directory of the cache, for example a sub-directory of {@code Context.getCacheDir()}.
+     * @param maxBytes   long that represents the maximum size of the cache on disk.
+     * @param appVersion int that represents the version of the app. Resource ids can change between versions,
+     *                   so the cache is emptied when this value changes (pass {@code BuildConfig.VERSION_CODE}).
+     * @throws IOException
+     */
+    public BitmapDiskCache(File directory, long maxBytes, int appVersion) throws IOException {
+        this.store = new PackFileStore(directory, maxBytes, appVersion);
+        //one thread: records are appended in the order of the calls
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING_WRITES), new WriterThreadFactory());
+    }
+
+    /**
+     * Method to know if a key can be stored in this cache.
+     *
+     * @param key The Key of the entry.
+     * @return true if it's a content key, false if it's bound to a Bitmap instance.
+     */
+    public static boolean isPersistent(TransformCache.Key key) {
+        return key != null && !key.isInstanceKey();
+    }
+
+    /**
+     * Method to get a cached Bitmap.
+     *
+     * @param key  The Key of the entry.
+     * @param pool The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A mutable Bitmap, or null if it isn't in the cache.
+     * @throws IOException
+     */
+    public Bitmap get(TransformCache.Key key, BitmapPool pool) throws IOException {
+        if (!isPersistent(key)) {
+            return null;
+        }
+        ByteBuffer raw = store.get(key.getSignature());
+        if (raw == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        try {
+            Bitmap result = RawBitmapCodec.fromRaw(raw, pool);
+            hitCount.incrementAndGet();
+            return result;
+        } catch (IOException e) {
+            //for example, a cache written by a device with a different row alignment
+            store.remove(key.getSignature());
+            missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Method to add a Bitmap to the cache. Keys bound to Bitmap instances are ignored.
+     * The pixels are copied before returning, so {@code bitmap} can be modified or recycled
+     * immediately, but the entry is written to the file asynchronously: a {@link #get(TransformCache.Key, BitmapPool)}
+     * just after this call can miss. If too many writes are pending, the entry is dropped.
+     *
+     * @param key    The Key of the entry.
+     * @param bitmap The Bitmap to cache.
+     * @throws IOException
+     */
+    public void put(TransformCache.Key key, Bitmap bitmap) throws IOException {
+        if (!isPersistent(key) || bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        ByteBuffer reuse;
+        synchronized (buffers) {
+            if (pendingWrites >= MAX_PENDING_WRITES) {
+                return;
+            }
+            pendingWrites++;
+            reuse = buffers.poll();
+        }
+        ByteBuffer raw = null;
+        try {
+            raw = RawBitmapCodec.toRaw(bitmap, reuse);
+            writer.execute(new WriteTask(key.getSignature(), raw));
+        } catch (RejectedExecutionException e) {
+            //closed
+            endWrite(raw != null ? raw : reuse);
+        } catch (RuntimeException e) {
+            endWrite(raw != null ? raw : reuse);
+            throw e;
+        }
+    }
+
+    /**
+     * Method to remove an entry from the cache.
+     *
+     * @param key The Key of the entry.
+     * @throws IOException
+     */
+    public void remove(TransformCache.Key key) throws IOException {
+        if (isPersistent(key)) {
+            //a pending write of the same key would add it again
+            awaitWrites();
+            store.remove(key.getSignature());
+        }
+    }
+
+    /**
+     * Method to remove all entries from the cache.
+     *
+     * @throws IOException
+     */
+    public void clear() throws IOException {
+        awaitWrites();
+        store.clear();
+    }
+
+    /**
+     * Method to wait the pending writes and to write the index to disk. Entries added after the last flush are
+     * recovered at the next opening, but a flush makes the opening faster.
+     * Call it for example in {@code onPause()}.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        awaitWrites();
+        store.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        awaitWrites();
+        store.close();
+    }
+
+    public long getCurrentSize() {
+        return store.getPackLength();
+    }
+
+    public long getMaxSize() {
+        return store.getMaxSize();
+    }
+
+    public int getEntryCount() {
+        return store.getEntryCount();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    //private method to wait the end of the writes submitted before this call
+    private void awaitWrites() {
+        boolean interrupted = false;
+        synchronized (buffers) {
+            while (pendingWrites > 0) {
+                try {
+                    buffers.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //private method to end a write, keeping its buffer for the next put
+    private void endWrite(ByteBuffer raw) {
+        synchronized (buffers) {
+            if (raw != null && buffers.size() < MAX_PENDING_WRITES) {
+                buffers.push(raw);
+            }
+            pendingWrites--;
+            buffers.notifyAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BitmapDiskCache[size=" + getCurrentSize() + ", maxSize=" + getMaxSize() + ", entries=" + getEntryCount()
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+
+    private final class WriteTask implements Runnable {
+        private final String signature;
+        private final ByteBuffer raw;
+
+        private WriteTask(String signature, ByteBuffer raw) {
+            this.signature = signature;
+            this.raw = raw;
+        }
+
+        @Override
+        public void run() {
+            try {
+                store.put(signature, raw);
+            } catch (IOException e) {
+                //as a read failure, a write failure is only a missing entry
+                Log.w(TAG, "disk cache write failed", e);
+            } finally {
+                endWrite(raw);
+            }
+        }
+    }
+
+    private static final class WriterThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "BitmapUtils-disk");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Encoder of Bitmaps as PNG, JPEG or WebP, with a quality setting.
+ * <p></p>
+ * Images are compressed into a per-thread buffer, pre-sized with an estimate of the encoded size
+ * and reused by the next calls, and then written with a single write to an OutputStream or a channel
+ * (for example a FileChannel), without the growth copies and the final copy of a ByteArrayOutputStream.
+ * {@link #encode(Bitmap)} copies the bytes only once, into the returned array.
+ * <p></p>
+ * Lists of Bitmaps (for example thumbnails to upload or to save) can be encoded in parallel
+ * on a {@link BitmapExecutor}, that bounds the number of pending encodings.
+ * <p></p>
+ * Instances are immutable and thread-safe.
+ */
+public class BitmapEncoder {
+
+    /**
+     * The compression format.
+     */
+    public enum Format {
+        PNG(Bitmap.CompressFormat.PNG, "image/png"),
+        JPEG(Bitmap.CompressFormat.JPEG, "image/jpeg"),
+        WEBP(Bitmap.CompressFormat.WEBP, "image/webp");
+
+        private final Bitmap.CompressFormat compressFormat;
+        private final String mimeType;
+
+        Format(Bitmap.CompressFormat compressFormat, String mimeType) {
+            this.compressFormat = compressFormat;
+            this.mimeType = mimeType;
+        }
+
+        public Bitmap.CompressFormat getCompressFormat() {
+            return compressFormat;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+
+    public static final int DEFAULT_QUALITY = 90;
+
+    //maximum pre-size of the buffers: well below EncodeBuffer.MAX_RETAINED_SIZE, so a big estimate
+    //doesn't allocate (and drop at the release) a buffer that the encoded image may never fill.
+    //Bigger images grow the buffer with a few copies
+    private static final int MAX_ESTIMATED_SIZE = EncodeBuffer.MAX_RETAINED_SIZE / 4;
+
+    private static final BitmapEncoder PNG = new BitmapEncoder(Format.PNG, 100);
+
+    private final Format format;
+    private final int quality;
+
+    /**
+     * Constructor
+     *
+     * @param format  The compression format.
+     * @param quality int that represents the quality, from 0 to 100 (ignored by PNG, that is lossless).
+     */
+    public BitmapEncoder(Format format, int quality) {
+        if (format == null) {
+            throw new IllegalArgumentException("format must be not null");
+        }
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("quality must be between 0 and 100");
+        }
+        this.format = format;
+        this.quality = quality;
+    }
+
+    /**
+     * Method to get a lossless PNG encoder.
+     *
+     * @return The BitmapEncoder.
+     */
+    public static BitmapEncoder png() {
+        return PNG;
+    }
+
+    /**
+     * Method to get a JPEG encoder. JPEG doesn't support transparency.
+     *
+     * @param quality int that represents the quality, from 0 to 100.
+     * @return The BitmapEncoder.
+     */
+    public static BitmapEncoder jpeg(int quality) {
+        return new BitmapEncoder(Format.JPEG, quality);
+    }
+
+    /**
+     * Method to get a WebP encoder.
+     *
+     * @param quality int that represents the quality, from 0 to 100.
+     * @return The BitmapEncoder.
+     */
+    public static BitmapEncoder webp(int quality) {
+        return new BitmapEncoder(Format.WEBP, quality);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Method to encode {@code source} into a new byte[] with the exact size of the result.
+     *
+     * @param source The Bitmap to encode.
+     * @return The encoded image.
+     * @throws IOException if the Bitmap can't be encoded.
+     */
+    public byte[] encode(Bitmap source) throws IOException {
+        long start = Metrics.start();
+        byte[] result = encodeToArray(source);
+        endEncode(start, source, result.length, BitmapUtilsMetrics.RESULT_ALLOCATED);
+        return result;
+    }
+
+    //package-private method to encode source into a new byte[], without reporting it to the Metrics
+    byte[] encodeToArray(Bitmap source) throws IOException {
+        EncodeBuffer buffer = compress(source);
+        try {
+            return buffer.toExactArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Method to encode {@code source} and to write it to {@code out}, with a single write.
+     *
+     * @param source The Bitmap to encode.
+     * @param out    The destination OutputStream. It's not closed by this method.
+     * @return int that represents the number of bytes written.
+     * @throws IOException if the Bitmap can't be encoded or written.
+     */
+    public int encode(Bitmap source, OutputStream out) throws IOException {
+        long start = Metrics.start();
+        EncodeBuffer buffer = compress(source);
+        try {
+            buffer.writeTo(out);
+            endEncode(start, source, 0L, BitmapUtilsMetrics.RESULT_DEST);
+            return buffer.size();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Method to encode {@code source} and to write it to {@code channel}, for example a FileChannel,
+     * at its current position.
+     *
+     * @param source  The Bitmap to encode.
+     * @param channel The destination channel. It's not closed by this method.
+     * @return int that represents the number of bytes written.
+     * @throws IOException if the Bitmap can't be encoded or written.
+     */
+    public int encode(Bitmap source, WritableByteChannel channel) throws IOException {
+        long start = Metrics.start();
+        EncodeBuffer buffer = compress(source);
+        try {
+            buffer.writeTo(channel);
+            endEncode(start, source, 0L, BitmapUtilsMetrics.RESULT_DEST);
+            return buffer.size();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Method to encode {@code source} into a file, replacing its content.
+     *
+     * @param source The Bitmap to encode.
+     * @param file   The destination file.
+     * @return int that represents the number of bytes written.
+     * @throws IOException if the Bitmap can't be encoded or the file can't be written.
+     */
+    public int encode(Bitmap source, File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            return encode(source, out.getChannel());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Method to encode all {@code sources} in parallel on {@code executor}.
+     * When the queue of the executor is full, this method waits for a free slot, so the number
+     * of pending encodings (and of their buffers) is bounded by {@link BitmapExecutor#getMaxPending()}.
+     * Don't call it from the main thread. When called from a task of {@code executor}, the images
+     * are encoded sequentially on the calling thread, because waiting for the other threads of
+     * the executor (and for its slots) could deadlock.
+     *
+     * @param sources  The Bitmaps to encode.
+     * @param executor The executor of the encodings.
+     * @return The List of encoded images, in the order of {@code sources}.
+     * @throws IOException          if a Bitmap can't be encoded (the other encodings are cancelled).
+     * @throws InterruptedException if the thread is interrupted (the other encodings are cancelled).
+     */
+    public List<byte[]> encodeAll(List<Bitmap> sources, BitmapExecutor executor) throws IOException, InterruptedException {
+        if (executor.isWorkerThread()) {
+            List<byte[]> result = new ArrayList<>(sources.size());
+            for (Bitmap source : sources) {
+                result.add(encode(source));
+            }
+            return result;
+        }
+        List<BitmapTask<byte[]>> tasks = new ArrayList<>(sources.size());
+        try {
+            for (final Bitmap source : sources) {
+                tasks.add(submit(executor, new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return encode(source);
+                    }
+                }));
+            }
+            List<byte[]> result = new ArrayList<>(sources.size());
+            for (BitmapTask<byte[]> task : tasks) {
+                result.add(getResult(task));
+            }
+            return result;
+        } finally {
+            cancelAll(tasks);
+        }
+    }
+
+    /**
+     * Method to encode all {@code sources} in parallel on {@code executor}, every one into the file
+     * with the same index in {@code files}. Pending encodings are bounded as in {@link #encodeAll(List, BitmapExecutor)}.
+     * Don't call it from the main thread. When called from a task of {@code executor}, the images
+     * are encoded sequentially on the calling thread.
+     *
+     * @param sources  The Bitmaps to encode.
+     * @param files    The destination files, with the same size of {@code sources}.
+     * @param executor The executor of the encodings.
+     * @return long that represents the total number of bytes written.
+     * @throws IOException          if a Bitmap can't be encoded or written (the other encodings are cancelled).
+     * @throws InterruptedException if the thread is interrupted (the other encodings are cancelled).
+     */
+    public long encodeAll(List<Bitmap> sources, List<File> files, BitmapExecutor executor) throws IOException, InterruptedException {
+        if (sources.size() != files.size()) {
+            throw new IllegalArgumentException("sources and files must have the same size");
+        }
+        if (executor.isWorkerThread()) {
+            long total = 0;
+            for (int i = 0; i < sources.size(); i++) {
+                total += encode(sources.get(i), files.get(i));
+            }
+            return total;
+        }
+        List<BitmapTask<Integer>> tasks = new ArrayList<>(sources.size());
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                final Bitmap source = sources.get(i);
+                final File file = files.get(i);
+                tasks.add(submit(executor, new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        return encode(source, file);
+                    }
+                }));
+            }
+            long total = 0;
+            for (BitmapTask<Integer> task : tasks) {
+                total += getResult(task);
+            }
+            return total;
+        } finally {
+            cancelAll(tasks);
+        }
+    }
+
+    /**
+     * Method to get an estimate of the encoded size of {@code source}, used to pre-size the buffers.
+     * The estimate is capped, so for big images the buffer grows during the encoding.
+     *
+     * @param source The Bitmap to encode.
+     * @return int that represents the estimated number of bytes.
+     */
+    public int estimateSize(Bitmap source) {
+        long pixels = (long) source.getWidth() * source.getHeight();
+        //bits per pixel: lossless PNG is about half of the raw ARGB_8888 size for photos,
+        //JPEG and WebP grow with the quality, from about 1 (low quality) to 5 (quality 100)
+        long bits = format == Format.PNG ? 16 : 1 + quality / 25;
+        return (int) Math.min(pixels * bits / 8 + 1024, MAX_ESTIMATED_SIZE);
+    }
+
+    //private method to report an encoding, as "encode"
+    private static void endEncode(long start, Bitmap source, long allocated, int result) {
+        Metrics.endData("encode", start, source.getWidth(), source.getHeight(), source.getWidth(), source.getHeight(), allocated, result);
+    }
+
+    private EncodeBuffer compress(Bitmap source) throws IOException {
+        EncodeBuffer buffer = EncodeBuffer.acquire(estimateSize(source));
+        boolean compressed = false;
+        try {
+            compressed = source.compress(format.getCompressFormat(), quality, buffer);
+        } finally {
+            if (!compressed) {
+                buffer.release();
+            }
+        }
+        if (!compressed) {
+            throw new IOException("the Bitmap can't be encoded as " + format);
+        }
+        return buffer;
+    }
+
+    private static <V> BitmapTask<V> submit(BitmapExecutor executor, Callable<V> callable) throws InterruptedException {
+        BitmapTask<V> task = new BitmapTask<>(callable, BitmapExecutor.PRIORITY_NORMAL, null, null, null);
+        executor.put(task);
+        return task;
+    }
+
+    private static <V> V getResult(BitmapTask<V> task) throws IOException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    //cancels the encodings not completed, after a failure (no-op if all are done)
+    private static void cancelAll(List<? extends BitmapTask<?>> tasks) {
+        for (BitmapTask<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+}
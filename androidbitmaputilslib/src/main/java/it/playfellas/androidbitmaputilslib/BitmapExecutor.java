@@ -0,0 +1,287 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor of {@link BitmapTask}s, used by {@link AsyncBitmapUtils}.
+ * <br>
+ * - Tasks are executed by priority (for example, visible items before prefetch).
+ * <br>
+ * - The number of pending tasks (queued or running) is bounded: when it's reached,
+ * {@link #offer(BitmapTask)} rejects new tasks and {@link #put(BitmapTask)} waits for a free slot.
+ * <br>
+ * - Tasks with a tag can be cancelled together, for example when a view is recycled.
+ */
+public class BitmapExecutor {
+
+    public static final int PRIORITY_PREFETCH = -10;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_VISIBLE = 10;
+    public static final int PRIORITY_IMMEDIATE = 20;
+
+    public static final int DEFAULT_MAX_PENDING = 128;
+
+    private static BitmapExecutor defaultExecutor;
+    private static Executor mainThreadExecutor;
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final int maxPending;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Set<BitmapTask<?>> pending = Collections.newSetFromMap(new ConcurrentHashMap<BitmapTask<?>, Boolean>());
+    //completed tasks with a callback not yet delivered: they don't hold a slot, but they can still be cancelled
+    private final Set<BitmapTask<?>> delivering = Collections.newSetFromMap(new ConcurrentHashMap<BitmapTask<?>, Boolean>());
+
+    /**
+     * Constructor
+     *
+     * @param threads    int that represents the number of worker threads.
+     * @param maxPending int that represents the maximum number of tasks queued or running.
+     */
+    public BitmapExecutor(int threads, int maxPending) {
+        if (threads < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("threads and maxPending must be >=1");
+        }
+        this.maxPending = maxPending;
+        this.slots = new Semaphore(maxPending);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new WorkerThreadFactory(this));
+    }
+
+    /**
+     * Method to get the shared executor, with a thread for every available processor.
+     *
+     * @return The default BitmapExecutor.
+     */
+    public static synchronized BitmapExecutor getDefault() {
+        if (defaultExecutor == null) {
+            defaultExecutor = new BitmapExecutor(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_PENDING);
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Method to get an Executor that runs callbacks on the main (UI) thread.
+     *
+     * @return The Executor.
+     */
+    public static synchronized Executor mainThread() {
+        if (mainThreadExecutor == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            mainThreadExecutor = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return mainThreadExecutor;
+    }
+
+    /**
+     * Method to submit a task, without waiting. If the queue is full, the task is
+     * completed with a {@link RejectedExecutionException} (delivered also to its callback).
+     *
+     * @param task The task to execute.
+     * @return true if accepted, false if rejected.
+     */
+    public boolean offer(BitmapTask<?> task) {
+        if (!slots.tryAcquire()) {
+            task.reject(new RejectedExecutionException("BitmapExecutor queue full (" + maxPending + " tasks)"));
+            return false;
+        }
+        return enqueue(task);
+    }
+
+    /**
+     * Method to submit a task, waiting for a free slot if the queue is full (backpressure).
+     * Don't call it from the main thread.
+     *
+     * @param task The task to execute.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void put(BitmapTask<?> task) throws InterruptedException {
+        slots.acquire();
+        enqueue(task);
+    }
+
+    private boolean enqueue(BitmapTask<?> task) {
+        task.sequence = sequence.getAndIncrement();
+        task.owner = this;
+        if (task.isDone()) {
+            //cancelled (or completed) before the owner was set: done() can't release this slot
+            slots.release();
+            return false;
+        }
+        pending.add(task);
+        if (task.isDone()) {
+            //completed after the check, but done() could have run before the add
+            onDone(task, false);
+            return false;
+        }
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            //shut down: done() releases the slot
+            task.reject(e);
+            return false;
+        }
+    }
+
+    /**
+     * Method to cancel all pending tasks with {@code tag}. Running tasks are interrupted,
+     * and callbacks of cancelled tasks are never called, also for tasks already completed
+     * with a callback not yet delivered (for example, still posted to the main thread).
+     *
+     * @param tag The tag used to submit the tasks.
+     * @return int that represents the number of cancelled tasks.
+     */
+    public int cancelAll(Object tag) {
+        int count = 0;
+        for (BitmapTask<?> task : pending) {
+            if (tag == null ? task.getTag() == null : tag.equals(task.getTag())) {
+                if (task.cancel(true)) {
+                    count++;
+                }
+            }
+        }
+        //a task moves to delivering before leaving pending, so it's never missed
+        for (BitmapTask<?> task : delivering) {
+            if (tag == null ? task.getTag() == null : tag.equals(task.getTag())) {
+                //already completed: cancel only drops its delivery
+                task.cancel(true);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Method to cancel all pending tasks with a priority lower than {@code priority},
+     * for example to discard prefetch work.
+     *
+     * @param priority int that represents the priority.
+     * @return int that represents the number of cancelled tasks.
+     */
+    public int cancelBelow(int priority) {
+        int count = 0;
+        for (BitmapTask<?> task : pending) {
+            if (task.getPriority() < priority && task.cancel(true)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Method to get the number of tasks queued or running.
+     *
+     * @return int that represents the number of pending tasks.
+     */
+    public int getPendingCount() {
+        return maxPending - slots.availablePermits();
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * Method to cancel all pending tasks and to stop the threads of this executor.
+     * Next submissions are rejected.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        List<BitmapTask<?>> tasks = new ArrayList<>(pending);
+        for (BitmapTask<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    //package-private method to know if the calling thread is a worker of this executor: a task that waits
+    //other tasks of the same executor can deadlock, when all threads (or all slots) are taken by such tasks
+    boolean isWorkerThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof WorkerThread && ((WorkerThread) thread).owner == this;
+    }
+
+    //package-private method called by a BitmapTask when it's completed or cancelled,
+    //with delivery true if its callback is going to be called
+    void onDone(BitmapTask<?> task, boolean delivery) {
+        if (delivery) {
+            delivering.add(task);
+        }
+        if (pending.remove(task)) {
+            slots.release();
+        }
+    }
+
+    //package-private method called by a BitmapTask when its callback is delivered (or dropped)
+    void onDelivered(BitmapTask<?> task) {
+        delivering.remove(task);
+    }
+
+    //package-private method to remove a cancelled task from the queue
+    void remove(BitmapTask<?> task) {
+        executor.remove(task);
+    }
+
+    private static final class WorkerThread extends Thread {
+        private final BitmapExecutor owner;
+
+        private WorkerThread(Runnable r, String name, BitmapExecutor owner) {
+            super(r, name);
+            this.owner = owner;
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        private final BitmapExecutor owner;
+
+        private WorkerThreadFactory(BitmapExecutor owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new WorkerThread(r, "BitmapUtils-async-" + COUNT.incrementAndGet(), owner);
+            thread.setDaemon(true);
+            //below the UI thread
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
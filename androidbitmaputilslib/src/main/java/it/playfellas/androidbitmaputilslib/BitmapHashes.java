@@ -0,0 +1,134 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import it.playfellas.androidbitmaputilslib.pixel.PixelHashes;
+import it.playfellas.androidbitmaputilslib.pixel.PixelScaler;
+
+/**
+ * Hashes of Bitmaps, computed by {@link PixelHashes} reading only the sampled rows with {@code getPixels}:
+ * <br>
+ * - {@link #contentHash(Bitmap)}: an exact 64-bit hash of a sample of rows, to recognize the same content
+ * in different Bitmap instances (for example a resource decoded twice, or equal pieces of a split).
+ * <br>
+ * - {@link #averageHash(Bitmap)} and {@link #differenceHash(Bitmap)}: perceptual hashes, to find
+ * similar images with {@link #hammingDistance(long, long)}.
+ * <p></p>
+ * Content hashes are remembered for every Bitmap instance (without preventing its garbage collection)
+ * until the Bitmap is modified, so they are computed once. They are used by the content keys of
+ * the {@link TransformCache} (see {@link BitmapUtils#setContentKeying(boolean)}).
+ */
+public final class BitmapHashes {
+
+    //Bitmap doesn't override equals/hashCode: entries are per instance, and values are {generationId, hash}
+    private static final Map<Bitmap, long[]> CONTENT_HASHES = new WeakHashMap<>();
+
+    private BitmapHashes() {
+    }
+
+    /**
+     * Method to get the content hash of {@code source}, hashing about {@link PixelHashes#DEFAULT_SAMPLED_ROWS} rows.
+     * The hash is remembered until {@code source} is modified.
+     * Attention: images that differ only in rows not sampled have the same hash.
+     * Use {@link #contentHash(Bitmap, int)} with step 1 to hash all the rows.
+     *
+     * @param source The Bitmap.
+     * @return long that represents the hash.
+     */
+    public static long contentHash(Bitmap source) {
+        int generation = source.getGenerationId();
+        synchronized (CONTENT_HASHES) {
+            long[] entry = CONTENT_HASHES.get(source);
+            if (entry != null && entry[0] == generation) {
+                return entry[1];
+            }
+        }
+        long hash = contentHash(source, PixelHashes.defaultRowStep(source.getHeight()));
+        synchronized (CONTENT_HASHES) {
+            CONTENT_HASHES.put(source, new long[]{generation, hash});
+        }
+        return hash;
+    }
+
+    /**
+     * Method to get the content hash of {@code source}, hashing every {@code rowStep}-th row and the last row.
+     *
+     * @param source  The Bitmap.
+     * @param rowStep int that represents the distance between hashed rows (1 to hash all the pixels).
+     * @return long that represents the hash.
+     */
+    public static long contentHash(Bitmap source, int rowStep) {
+        return PixelHashes.contentHash(rowsOf(source), source.getWidth(), source.getHeight(), rowStep);
+    }
+
+    /**
+     * Method to get the average hash (aHash) of {@code source}, see {@link PixelHashes#averageHash(PixelScaler.RowSource, int, int)}.
+     *
+     * @param source The Bitmap.
+     * @return long that represents the hash.
+     */
+    public static long averageHash(Bitmap source) {
+        return PixelHashes.averageHash(rowsOf(source), source.getWidth(), source.getHeight());
+    }
+
+    /**
+     * Method to get the difference hash (dHash) of {@code source}, see {@link PixelHashes#differenceHash(PixelScaler.RowSource, int, int)}.
+     *
+     * @param source The Bitmap.
+     * @return long that represents the hash.
+     */
+    public static long differenceHash(Bitmap source) {
+        return PixelHashes.differenceHash(rowsOf(source), source.getWidth(), source.getHeight());
+    }
+
+    /**
+     * Method to get the number of different bits of two perceptual hashes.
+     *
+     * @param a long that represents the first hash.
+     * @param b long that represents the second hash.
+     * @return int that represents the distance, from 0 (equal) to 64.
+     */
+    public static int hammingDistance(long a, long b) {
+        return PixelHashes.hammingDistance(a, b);
+    }
+
+    /**
+     * Method to get the content key of {@code source} for the caches: "hash:" followed by
+     * the content hash, the size and the Config, so equal pixels with different Configs don't match.
+     *
+     * @param source The Bitmap.
+     * @return String that represents the content of {@code source}.
+     */
+    static String contentKey(Bitmap source) {
+        return "hash:" + Long.toHexString(contentHash(source)) + "/" + source.getWidth() + "x" + source.getHeight()
+                + "/" + source.getConfig();
+    }
+
+    //private method to read the rows of a Bitmap, with non-premultiplied ARGB pixels
+    private static PixelScaler.RowSource rowsOf(final Bitmap source) {
+        return new PixelScaler.RowSource() {
+            @Override
+            public void readRows(int top, int count, int[] pixels, int offset, int stride) {
+                source.getPixels(pixels, offset, stride, 0, top, source.getWidth(), count);
+            }
+        };
+    }
+}
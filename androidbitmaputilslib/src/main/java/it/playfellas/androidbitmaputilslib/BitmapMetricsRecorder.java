@@ -0,0 +1,249 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link BitmapUtilsMetrics} that aggregates the operations by name: number of calls,
+ * latency (total, max and a histogram), processed pixels, allocated bytes and result types.
+ * <p></p>
+ * Recording is lock-free (atomic counters) and doesn't allocate after the first call of an operation.
+ * The latency histogram has power of two buckets: the bucket {@code i} counts the calls
+ * that took from 2^i to 2^(i+1) - 1 nanoseconds.
+ * <p></p>
+ * Use {@link #snapshot()} to read the values, for example to send them periodically to a telemetry service.
+ * This class is thread-safe.
+ */
+public class BitmapMetricsRecorder implements BitmapUtilsMetrics {
+
+    public static final int HISTOGRAM_BUCKETS = 48;
+
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    @Override
+    public void onOperation(String operation, long startNanos, long endNanos, int inputWidth, int inputHeight,
+                            int outputWidth, int outputHeight, long bytesAllocated, int result) {
+        Stats s = stats.get(operation);
+        if (s == null) {
+            Stats created = new Stats();
+            s = stats.putIfAbsent(operation, created);
+            if (s == null) {
+                s = created;
+            }
+        }
+        s.record(endNanos - startNanos, (long) inputWidth * inputHeight, (long) outputWidth * outputHeight, bytesAllocated, result);
+    }
+
+    /**
+     * Method to get the current values of all recorded operations.
+     * Values of an operation are read one by one, so they can be slightly inconsistent
+     * if the operation is running on another thread.
+     *
+     * @return An unmodifiable Map from the name of the operation to its values, sorted by name.
+     */
+    public Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> result = new TreeMap<>();
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot(entry.getKey()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Method to remove all recorded values.
+     */
+    public void reset() {
+        stats.clear();
+    }
+
+    static int bucketOf(long nanos) {
+        int bucket = 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1L));
+        return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+    }
+
+    private static final class Stats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong inputPixels = new AtomicLong();
+        private final AtomicLong outputPixels = new AtomicLong();
+        private final AtomicLong bytesAllocated = new AtomicLong();
+        private final AtomicLongArray results = new AtomicLongArray(RESULT_TYPES);
+        private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+        private void record(long nanos, long inPixels, long outPixels, long bytes, int result) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+            inputPixels.addAndGet(inPixels);
+            outputPixels.addAndGet(outPixels);
+            if (bytes != 0) {
+                bytesAllocated.addAndGet(bytes);
+            }
+            if (result >= 0 && result < RESULT_TYPES) {
+                results.incrementAndGet(result);
+            }
+            histogram.incrementAndGet(bucketOf(nanos));
+        }
+
+        private Snapshot snapshot(String operation) {
+            long[] resultCounts = new long[RESULT_TYPES];
+            for (int i = 0; i < RESULT_TYPES; i++) {
+                resultCounts[i] = results.get(i);
+            }
+            long[] buckets = new long[HISTOGRAM_BUCKETS];
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                buckets[i] = histogram.get(i);
+            }
+            return new Snapshot(operation, count.get(), totalNanos.get(), maxNanos.get(), inputPixels.get(),
+                    outputPixels.get(), bytesAllocated.get(), resultCounts, buckets);
+        }
+    }
+
+    /**
+     * Immutable values of an operation, returned by {@link #snapshot()}.
+     */
+    public static final class Snapshot {
+        private final String operation;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long inputPixels;
+        private final long outputPixels;
+        private final long bytesAllocated;
+        private final long[] results;
+        private final long[] histogram;
+
+        private Snapshot(String operation, long count, long totalNanos, long maxNanos, long inputPixels,
+                         long outputPixels, long bytesAllocated, long[] results, long[] histogram) {
+            this.operation = operation;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.inputPixels = inputPixels;
+            this.outputPixels = outputPixels;
+            this.bytesAllocated = bytesAllocated;
+            this.results = results;
+            this.histogram = histogram;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        public long getInputPixels() {
+            return inputPixels;
+        }
+
+        public long getOutputPixels() {
+            return outputPixels;
+        }
+
+        public long getBytesAllocated() {
+            return bytesAllocated;
+        }
+
+        /**
+         * Method to get the number of output pixels produced per second of execution.
+         *
+         * @return The pixels per second, or 0 if there aren't calls.
+         */
+        public double getPixelsPerSecond() {
+            return totalNanos == 0 ? 0 : outputPixels * 1e9 / totalNanos;
+        }
+
+        /**
+         * Method to get the number of calls with a result type.
+         *
+         * @param result int that represents one of the RESULT_* constants of {@link BitmapUtilsMetrics}.
+         * @return The number of calls.
+         */
+        public long getResultCount(int result) {
+            return results[result];
+        }
+
+        /**
+         * Method to get the number of calls in a bucket of the latency histogram.
+         *
+         * @param bucket int that represents the bucket, from 0 to {@link #HISTOGRAM_BUCKETS} - 1.
+         * @return The number of calls that took from 2^bucket to 2^(bucket+1) - 1 nanoseconds.
+         */
+        public long getHistogramCount(int bucket) {
+            return histogram[bucket];
+        }
+
+        /**
+         * Method to get an upper bound of a latency percentile, from the histogram.
+         *
+         * @param percentile double that represents the percentile, from 0 to 100.
+         * @return The upper bound of the bucket that contains the percentile, in nanoseconds
+         * (at most {@link #getMaxNanos()}), or 0 if there aren't calls.
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for (long c : histogram) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return i == HISTOGRAM_BUCKETS - 1 ? maxNanos : Math.min(maxNanos, (1L << (i + 1)) - 1);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return operation + "{count=" + count + ", meanNanos=" + getMeanNanos() + ", p50Nanos=" + getPercentileNanos(50)
+                    + ", p99Nanos=" + getPercentileNanos(99) + ", maxNanos=" + maxNanos
+                    + ", pixelsPerSecond=" + Math.round(getPixelsPerSecond()) + ", bytesAllocated=" + bytesAllocated
+                    + ", poolHits=" + results[RESULT_POOL_HIT] + ", poolMisses=" + results[RESULT_POOL_MISS]
+                    + ", cacheHits=" + results[RESULT_CACHE_HIT] + ", cacheMisses=" + results[RESULT_CACHE_MISS] + "}";
+        }
+    }
+}
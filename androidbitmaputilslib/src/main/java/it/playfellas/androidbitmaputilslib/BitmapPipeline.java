@@ -0,0 +1,347 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import it.playfellas.androidbitmaputilslib.pixel.ColorOp;
+import it.playfellas.androidbitmaputilslib.pixel.ColorProgram;
+
+/**
+ * Builder to chain geometry and color operations on a Bitmap, without intermediate Bitmaps.
+ * All geometry operations are folded into a single {@link Matrix} and all color operations
+ * into a single {@link ColorOp} chain. If the chain is linear, it's compiled into a single color matrix
+ * and the result is drawn with only one {@link Canvas#drawBitmap(Bitmap, Matrix, Paint)}, allocating
+ * at most the output Bitmap. Chains with non-linear steps (like {@link ColorOp#gamma(float)}) are executed
+ * by the kernel of the compiled {@link ColorProgram} in a single pass, before the geometry operations
+ * (that need a temporary Bitmap, if there are geometry operations or a frame).
+ * <p></p>
+ * Get an instance with {@link BitmapUtils#pipeline(Bitmap)}, for example:
+ * <br>
+ * BitmapUtils.pipeline(src).scale(0.5f).grayscale().tint(Color.RED).rotate(90).frame(Color.WHITE).into(dest)
+ * <br>
+ * Operations are applied in the same order of the calls.
+ */
+public class BitmapPipeline {
+
+    private final Bitmap source;
+
+    //all the geometry operations
+    private final Matrix matrix = new Matrix();
+    //only rotations and flips, used to get the size of the frame
+    private final Matrix frameMatrix = new Matrix();
+    //all the color operations, null if there aren't
+    private ColorOp colorOp;
+    private final RectF bounds = new RectF();
+
+    private boolean hasFrame;
+    private int frameColor;
+
+    private String error;
+
+    BitmapPipeline(Bitmap source) {
+        this.source = source;
+    }
+
+    /**
+     * Method to scale the image by {@code factor}.
+     *
+     * @param factor float that represents the scaling factor (must be >=0).
+     * @return This pipeline.
+     */
+    public BitmapPipeline scale(float factor) {
+        return scale(factor, factor);
+    }
+
+    /**
+     * Method to scale the image with different horizontal and vertical factors.
+     *
+     * @param sx float that represents the horizontal scaling factor (must be >=0).
+     * @param sy float that represents the vertical scaling factor (must be >=0).
+     * @return This pipeline.
+     */
+    public BitmapPipeline scale(float sx, float sy) {
+        if (sx < 0 || sy < 0) {
+            error = "scaling factors must be >=0";
+        }
+        matrix.postScale(sx, sy);
+        return this;
+    }
+
+    /**
+     * Method to rotate the image specifying the angle.
+     *
+     * @param angle float that represents the rotation angle.
+     * @return This pipeline.
+     */
+    public BitmapPipeline rotate(float angle) {
+        matrix.postRotate(angle);
+        frameMatrix.postRotate(angle);
+        return this;
+    }
+
+    /**
+     * Method to flip horizontally the image.
+     *
+     * @return This pipeline.
+     */
+    public BitmapPipeline flipHorizontally() {
+        matrix.postScale(-1, 1);
+        frameMatrix.postScale(-1, 1);
+        return this;
+    }
+
+    /**
+     * Method to flip vertically the image.
+     *
+     * @return This pipeline.
+     */
+    public BitmapPipeline flipVertically() {
+        matrix.postScale(1, -1);
+        frameMatrix.postScale(1, -1);
+        return this;
+    }
+
+    /**
+     * Method to remove colors, like {@link BitmapUtils#toGrayscale(Bitmap)}.
+     *
+     * @return This pipeline.
+     */
+    public BitmapPipeline grayscale() {
+        return saturation(0);
+    }
+
+    /**
+     * Method to change the saturation of colors.
+     *
+     * @param saturation float that represents the saturation (0 = gray scale, 1 = identity).
+     * @return This pipeline.
+     */
+    public BitmapPipeline saturation(float saturation) {
+        return colorOp(ColorOp.saturation(saturation));
+    }
+
+    /**
+     * Method to overlay a color, like the {@link android.graphics.LightingColorFilter} used
+     * by {@link BitmapUtils#overlayColorOnGrayScale(Bitmap, int)}.
+     *
+     * @param color Color to overlay.
+     * @return This pipeline.
+     */
+    public BitmapPipeline overlay(int color) {
+        return lighting(color, 1);
+    }
+
+    /**
+     * Method to multiply and then add colors, like a {@link android.graphics.LightingColorFilter}.
+     *
+     * @param mul Color used to multiply the RGB channels.
+     * @param add Color added to the RGB channels.
+     * @return This pipeline.
+     */
+    public BitmapPipeline lighting(int mul, int add) {
+        return colorOp(ColorOp.lighting(mul, add));
+    }
+
+    /**
+     * Method to color all pixels with {@code color}, preserving the alpha channel, like a
+     * {@link android.graphics.PorterDuffColorFilter} with {@link android.graphics.PorterDuff.Mode#SRC_ATOP}.
+     *
+     * @param color Color of the silhouette.
+     * @return This pipeline.
+     */
+    public BitmapPipeline tint(int color) {
+        return colorOp(ColorOp.tint(color));
+    }
+
+    /**
+     * Method to apply a custom {@link ColorMatrix}.
+     *
+     * @param cm The ColorMatrix to apply.
+     * @return This pipeline.
+     */
+    public BitmapPipeline colorMatrix(ColorMatrix cm) {
+        return colorOp(ColorOp.matrix(cm.getArray()));
+    }
+
+    /**
+     * Method to apply a {@link ColorOp}, also a chain with non-linear steps.
+     *
+     * @param op The ColorOp to apply.
+     * @return This pipeline.
+     */
+    public BitmapPipeline colorOp(ColorOp op) {
+        if (op == null) {
+            error = "op must not be null";
+            return this;
+        }
+        colorOp = colorOp == null ? op : colorOp.then(op);
+        return this;
+    }
+
+    /**
+     * Method to keep the result with the size of the not scaled image, with the scaled image centered
+     * inside a frame filled with {@code color}, like {@link BitmapUtils#scaleInsideColoredFrame(Bitmap, float, int)}.
+     * Color operations are not applied to the frame.
+     *
+     * @param color Color of the frame.
+     * @return This pipeline.
+     */
+    public BitmapPipeline frame(int color) {
+        hasFrame = true;
+        frameColor = color;
+        return this;
+    }
+
+    /**
+     * Method to get the width of the result.
+     *
+     * @return int that represents the width of the result.
+     */
+    public int getWidth() {
+        return Math.round(getBounds(hasFrame ? frameMatrix : matrix).width());
+    }
+
+    /**
+     * Method to get the height of the result.
+     *
+     * @return int that represents the height of the result.
+     */
+    public int getHeight() {
+        return Math.round(getBounds(hasFrame ? frameMatrix : matrix).height());
+    }
+
+    /**
+     * Method to execute the pipeline, allocating a new Bitmap as result.
+     *
+     * @return The result Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public Bitmap get() throws BitmapUtilsException {
+        return into((BitmapPool) null);
+    }
+
+    /**
+     * Method to execute the pipeline, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param pool The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The result Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public Bitmap into(BitmapPool pool) throws BitmapUtilsException {
+        long start = Metrics.start();
+        return Metrics.end("pipeline", start, source, execute(pool), Metrics.pooled(pool));
+    }
+
+    /**
+     * Method to execute the pipeline, drawing the result into {@code dest}.
+     *
+     * @param dest A mutable Bitmap with the size returned by {@link #getWidth()} and {@link #getHeight()}.
+     * @return {@code dest}, that contains the result.
+     * @throws BitmapUtilsException
+     */
+    public Bitmap into(Bitmap dest) throws BitmapUtilsException {
+        long start = Metrics.start();
+        return Metrics.end("pipeline", start, source, execute(dest), BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    //package-private methods to execute the pipeline without reporting it to BitmapUtilsMetrics,
+    //used by the BitmapUtils operations implemented with a pipeline (that report themselves)
+    Bitmap execute(BitmapPool pool) throws BitmapUtilsException {
+        checkState();
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "the result must be at least 1x1");
+        }
+        return draw(BitmapUtils.obtain(pool, width, height));
+    }
+
+    Bitmap execute(Bitmap dest) throws BitmapUtilsException {
+        checkState();
+        if (dest == null || dest.isRecycled() || !dest.isMutable()) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "dest must be a mutable and not recycled Bitmap");
+        }
+        if (dest.getWidth() != getWidth() || dest.getHeight() != getHeight()) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "dest must be " + getWidth() + "x" + getHeight());
+        }
+        return draw(dest);
+    }
+
+    private void checkState() throws BitmapUtilsException {
+        if (error != null) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, error);
+        }
+    }
+
+    private Bitmap draw(Bitmap dest) {
+        //compiled programs are cached by signature, so executing the pipeline again doesn't compile it again
+        ColorProgram program = colorOp != null ? colorOp.compile() : null;
+        if (program != null && program.isIdentity()) {
+            program = null;
+        }
+        Bitmap content = source;
+        if (program != null && !program.isLinear()) {
+            BitmapRegion region = BitmapRegion.of(source);
+            if (!hasFrame && matrix.isIdentity()) {
+                //only color operations: the kernel writes the result directly
+                return BitmapUtils.drawColorProgram(region, program, dest);
+            }
+            content = BitmapUtils.drawColorProgram(region, program, BitmapUtils.obtain(null, source.getWidth(), source.getHeight()));
+            program = null;
+        }
+
+        dest.eraseColor(hasFrame ? frameColor : Color.TRANSPARENT);
+        DrawContext context = DrawContext.acquire();
+        try {
+            Matrix drawMatrix = context.matrix();
+            drawMatrix.set(matrix);
+            RectF bounds = getBounds(matrix);
+            if (hasFrame) {
+                //center the content inside the frame, using integer offsets to keep borders sharp
+                drawMatrix.postTranslate(Math.round((dest.getWidth() - bounds.width()) / 2 - bounds.left),
+                        Math.round((dest.getHeight() - bounds.height()) / 2 - bounds.top));
+            } else {
+                drawMatrix.postTranslate(-bounds.left, -bounds.top);
+            }
+
+            Paint paint = context.paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+            if (program != null) {
+                paint.setColorFilter(ColorFilters.program(program));
+            }
+            context.canvas(dest).drawBitmap(content, drawMatrix, paint);
+        } finally {
+            context.release();
+            if (content != source) {
+                content.recycle();
+            }
+        }
+        return dest;
+    }
+
+    //the returned RectF is reused by the next calls
+    private RectF getBounds(Matrix m) {
+        bounds.set(0, 0, source.getWidth(), source.getHeight());
+        m.mapRect(bounds);
+        return bounds;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pool of mutable Bitmaps, grouped in buckets by width, height and {@link Bitmap.Config}.
+ * The pool is bounded by a budget in bytes (measured with the same logic of
+ * {@code BitmapUtils.byteSizeOf}) and, when the budget is exceeded, the least recently
+ * returned Bitmaps are evicted first.
+ * <p></p>
+ * Use it with the {@link BitmapUtils} methods that accept a {@link BitmapPool}, and give back
+ * the results that you don't need anymore with {@link #put(Bitmap)}. In this way, a steady-state
+ * sequence of calls doesn't allocate new Bitmaps.
+ * <p></p>
+ * This class is thread-safe.
+ */
+public class BitmapPool {
+
+    private final Map<Key, ArrayDeque<Bitmap>> buckets = new HashMap<>();
+    //insertion-ordered: the first entry is the least recently returned Bitmap
+    private final LinkedHashMap<Bitmap, Key> lru = new LinkedHashMap<>();
+
+    private long maxBytes;
+    private long currentBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes long that represents the maximum number of bytes retained by the pool.
+     */
+    public BitmapPool(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be >=0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Method to get a fully-transparent mutable Bitmap with the specified size and config.
+     * If the pool hasn't a Bitmap in the right bucket, a new one will be created.
+     *
+     * @param width  int that represents the width.
+     * @param height int that represents the height.
+     * @param config The {@link Bitmap.Config} of the Bitmap.
+     * @return A transparent mutable Bitmap.
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = getDirty(width, height, config);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Method to get a mutable Bitmap with the specified size and config, without
+     * erasing its previous content. Use it only if you are going to overwrite every pixel.
+     * If the pool hasn't a Bitmap in the right bucket, a new one will be created.
+     *
+     * @param width  int that represents the width.
+     * @param height int that represents the height.
+     * @param config The {@link Bitmap.Config} of the Bitmap.
+     * @return A mutable Bitmap with an undefined content.
+     */
+    public Bitmap getDirty(int width, int height, Bitmap.Config config) {
+        //on a miss, the new Bitmap is counted by the MemoryGovernor, like the results of BitmapUtils
+        return BitmapUtils.obtain(this, width, height, config);
+    }
+
+    //package-private method to get a Bitmap only if the pool has one (a hit), without creating it on a miss
+    Bitmap getPooled(int width, int height, Bitmap.Config config) {
+        return poll(new Key(width, height, config));
+    }
+
+    private synchronized Bitmap poll(Key key) {
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        Bitmap bitmap = bucket != null ? bucket.pollLast() : null;
+        if (bitmap == null) {
+            missCount++;
+            return null;
+        }
+        lru.remove(bitmap);
+        currentBytes -= BitmapUtils.byteSizeOf(bitmap);
+        hitCount++;
+        return bitmap;
+    }
+
+    /**
+     * Method to return a Bitmap to the pool, to reuse it in a next call.
+     * Immutable, recycled or too big Bitmaps are not accepted and remain owned by the caller.
+     * After a successful call, you must not use {@code bitmap} anymore.
+     *
+     * @param bitmap The Bitmap to return.
+     * @return true if the Bitmap has been added to the pool, false otherwise.
+     */
+    public boolean put(Bitmap bitmap) {
+        boolean added = offer(bitmap);
+        //called without the lock of the pool, because the MemoryGovernor reads the pools with its lock
+        MemoryGovernor governor = BitmapUtils.getMemoryGovernor();
+        if (added && governor != null) {
+            governor.release(bitmap);
+        }
+        return added;
+    }
+
+    private synchronized boolean offer(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) {
+            return false;
+        }
+        int size = BitmapUtils.byteSizeOf(bitmap);
+        if (size > maxBytes || lru.containsKey(bitmap)) {
+            return false;
+        }
+        Key key = new Key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(key, bucket);
+        }
+        bucket.addLast(bitmap);
+        lru.put(bitmap, key);
+        currentBytes += size;
+        trimToSize(maxBytes);
+        return true;
+    }
+
+    /**
+     * Method to evict the least recently returned Bitmaps, until the size of the pool
+     * is less or equals than {@code size}.
+     *
+     * @param size long that represents the desired size in bytes.
+     */
+    public synchronized void trimToSize(long size) {
+        Iterator<Map.Entry<Bitmap, Key>> iterator = lru.entrySet().iterator();
+        while (currentBytes > size && iterator.hasNext()) {
+            Map.Entry<Bitmap, Key> eldest = iterator.next();
+            Bitmap bitmap = eldest.getKey();
+            iterator.remove();
+            ArrayDeque<Bitmap> bucket = buckets.get(eldest.getValue());
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                buckets.remove(eldest.getValue());
+            }
+            currentBytes -= BitmapUtils.byteSizeOf(bitmap);
+            evictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Method to evict all Bitmaps in this pool.
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Method to change the maximum size of this pool, evicting Bitmaps if necessary.
+     *
+     * @param maxBytes long that represents the maximum number of bytes retained by the pool.
+     */
+    public synchronized void setMaxSize(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be >=0");
+        }
+        this.maxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    public synchronized long getMaxSize() {
+        return maxBytes;
+    }
+
+    public synchronized long getCurrentSize() {
+        return currentBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool[size=" + currentBytes + ", maxSize=" + maxBytes
+                + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
+
+    //bucket key
+    private static final class Key {
+        private final int width;
+        private final int height;
+        private final Bitmap.Config config;
+
+        private Key(int width, int height, Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width == key.width && height == key.height && config == key.config;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = width;
+            result = 31 * result + height;
+            result = 31 * result + (config != null ? config.hashCode() : 0);
+            return result;
+        }
+    }
+}
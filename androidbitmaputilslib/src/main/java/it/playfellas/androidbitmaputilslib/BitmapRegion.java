@@ -0,0 +1,158 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Rectangular window onto a source Bitmap, without copying its pixels.
+ * Used to split an image into pieces (see {@link BitmapUtils#splitImageHorizontallyIntoRegions(Bitmap, int)})
+ * and accepted by the drawing methods of {@link BitmapUtils} in place of a Bitmap.
+ * A real Bitmap is created only calling {@link #toBitmap()}.
+ * <p></p>
+ * The source is shared, so it must not be recycled while its regions are in use.
+ * Instances are immutable.
+ */
+public final class BitmapRegion {
+
+    private final Bitmap source;
+    private final Rect bounds;
+
+    /**
+     * Constructor
+     *
+     * @param source The source Bitmap.
+     * @param bounds The window onto {@code source}. It must be inside the source and not empty.
+     * @throws BitmapUtilsException
+     */
+    public BitmapRegion(Bitmap source, Rect bounds) throws BitmapUtilsException {
+        if (source == null || bounds == null) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "source and bounds can't be null");
+        }
+        if (bounds.left < 0 || bounds.top < 0 || bounds.right > source.getWidth() || bounds.bottom > source.getHeight()
+                || bounds.width() <= 0 || bounds.height() <= 0) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "bounds must be a non empty rectangle inside source");
+        }
+        this.source = source;
+        this.bounds = new Rect(bounds);
+    }
+
+    //package-private constructor without checks, for bounds already valid
+    BitmapRegion(Bitmap source, int left, int top, int right, int bottom) {
+        this.source = source;
+        this.bounds = new Rect(left, top, right, bottom);
+    }
+
+    /**
+     * Method to get a region that covers the entire {@code source}.
+     *
+     * @param source The source Bitmap.
+     * @return The BitmapRegion.
+     */
+    public static BitmapRegion of(Bitmap source) {
+        return new BitmapRegion(source, 0, 0, source.getWidth(), source.getHeight());
+    }
+
+    public Bitmap getSource() {
+        return source;
+    }
+
+    /**
+     * Method to get the window onto the source.
+     *
+     * @return A copy of the bounds.
+     */
+    public Rect getBounds() {
+        return new Rect(bounds);
+    }
+
+    public int getLeft() {
+        return bounds.left;
+    }
+
+    public int getTop() {
+        return bounds.top;
+    }
+
+    public int getWidth() {
+        return bounds.width();
+    }
+
+    public int getHeight() {
+        return bounds.height();
+    }
+
+    /**
+     * Method to draw this region on {@code canvas}, with its top-left corner at ({@code left}, {@code top}).
+     *
+     * @param canvas The destination Canvas.
+     * @param left   float that represents the x of the destination.
+     * @param top    float that represents the y of the destination.
+     * @param paint  The Paint (it can be null).
+     */
+    public void draw(Canvas canvas, float left, float top, Paint paint) {
+        if (isWholeSource()) {
+            canvas.drawBitmap(source, left, top, paint);
+            return;
+        }
+        //the clip selects the window, then the source is drawn translated, without a destination rectangle
+        canvas.save();
+        canvas.clipRect(left, top, left + bounds.width(), top + bounds.height());
+        canvas.drawBitmap(source, left - bounds.left, top - bounds.top, paint);
+        canvas.restore();
+    }
+
+    /**
+     * Method to create a Bitmap with a copy of the pixels of this region.
+     *
+     * @return The new Bitmap (it can be the source, if the region covers it entirely and it's immutable).
+     */
+    public Bitmap toBitmap() {
+        BitmapUtils.reserve(bounds.width(), bounds.height(), source.getConfig(), "toBitmap");
+        Bitmap result = Bitmap.createBitmap(source, bounds.left, bounds.top, bounds.width(), bounds.height());
+        return result != source ? BitmapUtils.tracked(result) : result;
+    }
+
+    /**
+     * Method to copy the pixels of this region into a Bitmap obtained from {@code pool}.
+     *
+     * @param pool The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A mutable Bitmap with the pixels of this region.
+     */
+    public Bitmap toBitmap(BitmapPool pool) {
+        Bitmap result = BitmapUtils.createTransparentBitmap(bounds.width(), bounds.height(), pool);
+        DrawContext context = DrawContext.acquire();
+        try {
+            draw(context.canvas(result), 0f, 0f, null);
+        } finally {
+            context.release();
+        }
+        return result;
+    }
+
+    //package-private method to know if the region covers the entire source
+    boolean isWholeSource() {
+        return bounds.left == 0 && bounds.top == 0 && bounds.right == source.getWidth() && bounds.bottom == source.getHeight();
+    }
+
+    @Override
+    public String toString() {
+        return "BitmapRegion[" + bounds.left + "," + bounds.top + "," + bounds.right + "," + bounds.bottom + "]";
+    }
+}
@@ -0,0 +1,141 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Operation submitted to a {@link BitmapExecutor}: a Future with a priority and an optional tag.
+ * Tasks with a higher priority are executed first, tasks with the same priority in submission order.
+ *
+ * @param <V> The type of the result.
+ */
+public final class BitmapTask<V> extends FutureTask<V> implements Comparable<BitmapTask<?>> {
+
+    private final int priority;
+    private final Object tag;
+    private final BitmapCallback<? super V> callback;
+    private final Executor callbackExecutor;
+    //set by the executor: submission order, and the executor to remove the task when cancelled
+    long sequence;
+    BitmapExecutor owner;
+    //set by cancel, also when the task is already completed: a delivery not yet run is dropped
+    private volatile boolean cancelled;
+
+    BitmapTask(Callable<V> callable, int priority, Object tag, BitmapCallback<? super V> callback, Executor callbackExecutor) {
+        super(callable);
+        this.priority = priority;
+        this.tag = tag;
+        this.callback = callback;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public Object getTag() {
+        return tag;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        this.cancelled = true;
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        BitmapExecutor executor = owner;
+        if (cancelled && executor != null) {
+            //a cancelled task must not wait in the queue, holding a slot
+            executor.remove(this);
+        }
+        return cancelled;
+    }
+
+    @Override
+    protected void done() {
+        final BitmapExecutor executor = owner;
+        boolean deliver = callback != null && !isCancelled() && !cancelled;
+        if (executor != null) {
+            //until the delivery runs, the task can still be cancelled by tag
+            executor.onDone(this, deliver);
+        }
+        if (!deliver) {
+            return;
+        }
+        V result = null;
+        Throwable failure = null;
+        try {
+            result = get();
+        } catch (CancellationException e) {
+            deliver = false;
+        } catch (InterruptedException e) {
+            //get() of a completed task can't block
+            Thread.currentThread().interrupt();
+            deliver = false;
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+        }
+        if (!deliver) {
+            if (executor != null) {
+                executor.onDelivered(this);
+            }
+            return;
+        }
+        final V value = result;
+        final Throwable cause = failure;
+        Runnable delivery = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    //cancelled after the completion, but before this delivery
+                    if (cancelled) {
+                        return;
+                    }
+                    if (cause != null) {
+                        callback.onFailure(cause);
+                    } else {
+                        callback.onSuccess(value);
+                    }
+                } finally {
+                    if (executor != null) {
+                        executor.onDelivered(BitmapTask.this);
+                    }
+                }
+            }
+        };
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(delivery);
+        } else {
+            delivery.run();
+        }
+    }
+
+    //package-private method to complete the task with an exception, without running it
+    void reject(Throwable error) {
+        setException(error);
+    }
+
+    @Override
+    public int compareTo(BitmapTask<?> other) {
+        if (priority != other.priority) {
+            return priority > other.priority ? -1 : 1;
+        }
+        return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+}
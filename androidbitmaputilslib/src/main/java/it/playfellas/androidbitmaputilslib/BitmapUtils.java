@@ -3,26 +3,37 @@ package it.playfellas.androidbitmaputilslib;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.ColorFilter;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
-import android.graphics.LightingColorFilter;
 import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffColorFilter;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.util.Log;
 import android.util.TypedValue;
 
-import java.io.ByteArrayOutputStream;
+import it.playfellas.androidbitmaputilslib.pixel.ColorOp;
+import it.playfellas.androidbitmaputilslib.pixel.ColorProgram;
+import it.playfellas.androidbitmaputilslib.pixel.PixelBlur;
+import it.playfellas.androidbitmaputilslib.pixel.PixelBuffer;
+import it.playfellas.androidbitmaputilslib.pixel.PixelKernel;
+import it.playfellas.androidbitmaputilslib.pixel.PixelKernels;
+import it.playfellas.androidbitmaputilslib.pixel.PixelScratch;
+import it.playfellas.androidbitmaputilslib.pixel.PixelScaler;
+import it.playfellas.androidbitmaputilslib.pixel.PixelTransforms;
+import it.playfellas.androidbitmaputilslib.pixel.RawTileSink;
+import it.playfellas.androidbitmaputilslib.pixel.TileEngine;
+import it.playfellas.androidbitmaputilslib.pixel.TileStreamer;
+
+import java.io.BufferedInputStream;
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -33,6 +44,27 @@ import java.util.List;
  */
 public class BitmapUtils {
 
+    /**
+     * Maximum number of bytes read twice by {@link #decodeSampled(InputStream, int, int)}.
+     */
+    public static final int STREAM_MARK_LIMIT = 5 * 1024 * 1024;
+
+    private static final String TAG = "BitmapUtils";
+
+    //number of pixels processed at a time by the methods that work on int[] bands of rows
+    private static final int BAND_PIXELS = 64 * 1024;
+    //number of pixels of the bands of the exact rotations: big enough to be rotated in parallel
+    private static final int ROTATION_BAND_PIXELS = 256 * 1024;
+    //maximum reduction of the masks blurred for shadows, and minimum sigma of the reduced blur
+    private static final int SHADOW_MAX_REDUCTION = 8;
+    private static final float SHADOW_MIN_SIGMA = 2f;
+
+    private static volatile TransformCache transformCache;
+    private static volatile BitmapDiskCache diskCache;
+    private static volatile PixelScaler.Quality scaleQuality = PixelScaler.Quality.BALANCED;
+    private static volatile boolean contentKeying;
+    private static volatile MemoryGovernor memoryGovernor;
+
     public class Direction {
         public static final int UP_2_DOWN = 0;
         public static final int DOWN_2_UP = 1;
@@ -40,192 +72,1397 @@ public class BitmapUtils {
         public static final int RIGHT_2_LEFT = 3;
     }
 
+    /**
+     * Method to enable (or disable, passing null) a {@link TransformCache} for the methods
+     * that return a new Bitmap (not for the overloads with a destination Bitmap or a {@link BitmapPool}).
+     * When enabled, calling the same method with the same source and the same parameters
+     * returns the previous result, without decoding or drawing it again.
+     * ATTENTION: cached results are shared, so you must not modify or recycle them.
+     *
+     * @param cache The TransformCache to use, or null to disable caching.
+     */
+    public static void setTransformCache(TransformCache cache) {
+        transformCache = cache;
+    }
+
+    /**
+     * Method to get the {@link TransformCache} in use.
+     *
+     * @return The TransformCache, or null if caching is disabled.
+     */
+    public static TransformCache getTransformCache() {
+        return transformCache;
+    }
+
+    /**
+     * Method to enable (or disable, passing null) a {@link BitmapDiskCache}, the persistent tier behind
+     * the {@link TransformCache}. Only results of operations on resource images (or on Bitmaps, with
+     * {@link #setContentKeying(boolean)}) are stored on disk.
+     * When both caches are enabled, a result found on disk is added to the TransformCache.
+     *
+     * @param cache The BitmapDiskCache to use, or null to disable it.
+     */
+    public static void setDiskCache(BitmapDiskCache cache) {
+        diskCache = cache;
+    }
+
+    /**
+     * Method to get the {@link BitmapDiskCache} in use.
+     *
+     * @return The BitmapDiskCache, or null if disabled.
+     */
+    public static BitmapDiskCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Method to choose how the caches identify a source Bitmap (the default is by instance).
+     * With content keying, sources are identified by their {@link BitmapHashes#contentHash(Bitmap)}:
+     * different instances with the same pixels (for example a resource decoded twice, or equal pieces
+     * of {@link #splitImageHorizontally(Bitmap, int)}) are transformed once, and results can also be stored
+     * in the {@link BitmapDiskCache}. The hash of an instance is computed once (until it's modified),
+     * sampling about {@link it.playfellas.androidbitmaputilslib.pixel.PixelHashes#DEFAULT_SAMPLED_ROWS} rows:
+     * enable it only if sources that differ only in some rows are not expected.
+     *
+     * @param enabled true to identify sources by content, false by instance.
+     */
+    public static void setContentKeying(boolean enabled) {
+        contentKeying = enabled;
+    }
+
+    /**
+     * Method to know if the caches identify source Bitmaps by content.
+     *
+     * @return true if sources are identified by content, false by instance.
+     */
+    public static boolean isContentKeying() {
+        return contentKeying;
+    }
+
+    /**
+     * Method to set the {@link PixelScaler.Quality} used by the scale methods to reduce an image
+     * (the default is {@link PixelScaler.Quality#BALANCED}).
+     * Reductions are done by area averaging, so they don't alias like the bilinear filter of Android
+     * and there is no need to decode a bigger image to get a good result.
+     * Enlargements always use the bilinear filter of Android.
+     *
+     * @param quality The quality of the reductions, or null to use the bilinear filter of Android also for them.
+     */
+    public static void setScaleQuality(PixelScaler.Quality quality) {
+        scaleQuality = quality;
+    }
+
+    /**
+     * Method to get the {@link PixelScaler.Quality} used by the scale methods to reduce an image.
+     *
+     * @return The quality, or null if reductions use the bilinear filter of Android.
+     */
+    public static PixelScaler.Quality getScaleQuality() {
+        return scaleQuality;
+    }
+
+    /**
+     * Method to set (or remove, passing null) a {@link BitmapUtilsMetrics} listener, notified
+     * after every operation with its latency, the size of input and output, and the allocated bytes.
+     * Without a listener, operations don't measure anything.
+     *
+     * @param metrics The listener (for example a {@link BitmapMetricsRecorder}), or null to disable metrics.
+     */
+    public static void setMetrics(BitmapUtilsMetrics metrics) {
+        Metrics.setListener(metrics);
+    }
+
+    /**
+     * Method to get the {@link BitmapUtilsMetrics} listener in use.
+     *
+     * @return The listener, or null if metrics are disabled.
+     */
+    public static BitmapUtilsMetrics getMetrics() {
+        return Metrics.getListener();
+    }
+
+    /**
+     * Method to enable (or disable, passing null) a process-wide {@link MemoryGovernor}.
+     * When enabled, every new Bitmap allocated by the operations (also by pools on a miss) is counted in its budget:
+     * when the budget is exceeded, pools and caches are trimmed, new requests wait that memory is released,
+     * and decodes are degraded (smaller or {@code RGB_565}).
+     *
+     * @param governor The MemoryGovernor to use, or null to disable it.
+     */
+    public static void setMemoryGovernor(MemoryGovernor governor) {
+        memoryGovernor = governor;
+    }
+
+    /**
+     * Method to get the {@link MemoryGovernor} in use.
+     *
+     * @return The MemoryGovernor, or null if disabled.
+     */
+    public static MemoryGovernor getMemoryGovernor() {
+        return memoryGovernor;
+    }
+
+    private static boolean isCaching() {
+        return transformCache != null || diskCache != null;
+    }
+
+    //private method to get the cache key of an operation on a resource image
+    private static TransformCache.Key resourceKey(Resources res, int id, String op, Object... params) {
+        return TransformCache.keyFor("res:" + id + "@" + res.getDisplayMetrics().density, op, params);
+    }
+
+    //private method to get the cache key of an operation on a Bitmap, by content or by instance.
+    //It returns null when only the disk cache is enabled and sources are keyed by instance,
+    //because the disk cache can't store those keys
+    private static TransformCache.Key keyFor(Bitmap source, String op, Object... params) {
+        if (contentKeying) {
+            return TransformCache.contentKeyFor(source, op, params);
+        }
+        return transformCache != null ? TransformCache.keyFor(source, op, params) : null;
+    }
+
+    private static Bitmap getCached(TransformCache.Key key) {
+        if (key == null) {
+            return null;
+        }
+        TransformCache cache = transformCache;
+        Bitmap result = cache != null ? cache.get(key) : null;
+        BitmapDiskCache disk = diskCache;
+        if (result == null && disk != null && BitmapDiskCache.isPersistent(key)) {
+            try {
+                result = disk.get(key, null);
+            } catch (IOException e) {
+                //the disk cache is only an optimization: a failure is a miss
+                Log.w(TAG, "disk cache read failed", e);
+            }
+            if (result != null && cache != null) {
+                cache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    private static Bitmap putCached(TransformCache.Key key, Bitmap result) {
+        if (key == null || result == null) {
+            return result;
+        }
+        TransformCache cache = transformCache;
+        if (cache != null) {
+            cache.put(key, result);
+        }
+        BitmapDiskCache disk = diskCache;
+        if (disk != null) {
+            //only the copy of the pixels happens here: the file is written by the thread of the BitmapDiskCache
+            try {
+                disk.put(key, result);
+            } catch (IOException e) {
+                Log.w(TAG, "disk cache write failed", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method to get a {@link BitmapPipeline}, to chain geometry and color operations
+     * on {@code source} drawing the result only once.
+     *
+     * @param source The original Bitmap.
+     * @return A new {@link BitmapPipeline}.
+     */
+    public static BitmapPipeline pipeline(Bitmap source) {
+        return new BitmapPipeline(source);
+    }
+
+    /**
+     * Method to get an {@link AsyncBitmapUtils}, to execute operations on the threads
+     * of the default {@link BitmapExecutor}, with callbacks on the main thread.
+     *
+     * @return A new {@link AsyncBitmapUtils}.
+     */
+    public static AsyncBitmapUtils async() {
+        return async(BitmapExecutor.getDefault());
+    }
+
+    /**
+     * Method to get an {@link AsyncBitmapUtils}, to execute operations on the threads
+     * of {@code executor}, with callbacks on the main thread.
+     *
+     * @param executor The {@link BitmapExecutor}.
+     * @return A new {@link AsyncBitmapUtils}.
+     */
+    public static AsyncBitmapUtils async(BitmapExecutor executor) {
+        return new AsyncBitmapUtils(executor);
+    }
+
     /**
      * Method to remove colors in a Bitmap, creating a gray scale image.
      *
      * @param source The original Bitmap.
      * @return The gray scale Bitmap.
      */
-    public static Bitmap toGrayscale(Bitmap source) {
-        Bitmap bmpGrayscale = Bitmap.createBitmap(source.getWidth(), source.getHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bmpGrayscale);
-        canvas.drawBitmap(source, 0, 0, getGrayScalePaint());
-        return bmpGrayscale;
+    public static Bitmap toGrayscale(Bitmap source) {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "toGrayscale") : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("toGrayscale", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result = putCached(key, drawGrayscale(source, createTransparentBitmap(source.getWidth(), source.getHeight())));
+        return Metrics.end("toGrayscale", start, source, result, Metrics.computed(key));
+    }
+
+    /**
+     * Method to remove colors in a Bitmap, drawing the gray scale image into {@code dest}.
+     *
+     * @param source The original Bitmap.
+     * @param dest   A mutable Bitmap with the same size of {@code source}.
+     * @return {@code dest}, that contains the gray scale image.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap toGrayscale(Bitmap source, Bitmap dest) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkDestination(dest, source.getWidth(), source.getHeight());
+        return Metrics.end("toGrayscale", start, source, drawGrayscale(source, dest), BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to remove colors in a Bitmap, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original Bitmap.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The gray scale Bitmap.
+     */
+    public static Bitmap toGrayscale(Bitmap source, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap result = drawGrayscale(source, obtain(pool, source.getWidth(), source.getHeight()));
+        return Metrics.end("toGrayscale", start, source, result, Metrics.pooled(pool));
+    }
+
+    /**
+     * Method to remove colors in a {@link BitmapRegion}, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original region.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The gray scale Bitmap, with the size of the region.
+     */
+    public static Bitmap toGrayscale(BitmapRegion source, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap result = drawGrayscale(source, obtain(pool, source.getWidth(), source.getHeight()));
+        return Metrics.end("toGrayscale", start, source, result, Metrics.pooled(pool));
+    }
+
+    /**
+     * Method to remove colors in a Bitmap, with a compact {@link Bitmap.Config} for the result:
+     * <ul>
+     * <li>{@code ARGB_8888}: the same result of {@link #toGrayscale(Bitmap)} (4 bytes per pixel).</li>
+     * <li>{@code RGB_565}: an opaque image, composited over black, with an ordered dithering to avoid banding (2 bytes per pixel).</li>
+     * <li>{@code ALPHA_8}: the luma, composited over black, stored in the alpha channel (1 byte per pixel).
+     * To show it, draw it over a black background with a white Paint, for example with
+     * {@link #drawSilhouette(Canvas, Bitmap, float, float, int)}.</li>
+     * </ul>
+     *
+     * @param source The original Bitmap.
+     * @param config The {@link Bitmap.Config} of the result: ARGB_8888, RGB_565 or ALPHA_8.
+     * @return The gray scale Bitmap.
+     * @throws BitmapUtilsException if config is not supported.
+     */
+    public static Bitmap toGrayscale(Bitmap source, Bitmap.Config config) throws BitmapUtilsException {
+        checkCompactConfig(config);
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "toGrayscale", config) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("toGrayscale", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result = putCached(key, drawGrayscale(source, config, null));
+        return Metrics.end("toGrayscale", start, source, result, Metrics.computed(key));
+    }
+
+    /**
+     * Method to remove colors in a Bitmap, with a compact {@link Bitmap.Config} for the result
+     * (see {@link #toGrayscale(Bitmap, Bitmap.Config)}), using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original Bitmap.
+     * @param config The {@link Bitmap.Config} of the result: ARGB_8888, RGB_565 or ALPHA_8.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The gray scale Bitmap.
+     * @throws BitmapUtilsException if config is not supported.
+     */
+    public static Bitmap toGrayscale(Bitmap source, Bitmap.Config config, BitmapPool pool) throws BitmapUtilsException {
+        checkCompactConfig(config);
+        long start = Metrics.start();
+        return Metrics.end("toGrayscale", start, source, drawGrayscale(source, config, pool), Metrics.pooled(pool));
+    }
+
+    private static Bitmap drawGrayscale(Bitmap source, Bitmap.Config config, BitmapPool pool) {
+        int w = source.getWidth();
+        int h = source.getHeight();
+        if (config == Bitmap.Config.ALPHA_8) {
+            return applyInBands(source, PixelKernels.lumaToAlpha(), obtain(pool, w, h, config));
+        } else if (config == Bitmap.Config.RGB_565) {
+            return applyInBands(source, PixelKernels.chain(PixelKernels.grayscale(), PixelKernels.ditherRgb565()),
+                    obtain(pool, w, h, config));
+        }
+        return drawGrayscale(source, obtain(pool, w, h));
+    }
+
+    /**
+     * Method to convert a Bitmap to {@code RGB_565} (2 bytes per pixel instead of 4), with an ordered dithering
+     * to avoid banding on gradients. Use it for opaque images: pixels are composited over black.
+     *
+     * @param source The original Bitmap.
+     * @return The RGB_565 Bitmap.
+     */
+    public static Bitmap toRgb565(Bitmap source) {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "toRgb565") : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("toRgb565", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result = putCached(key, drawRgb565(source, null));
+        return Metrics.end("toRgb565", start, source, result, Metrics.computed(key));
+    }
+
+    /**
+     * Method to convert a Bitmap to {@code RGB_565}, as {@link #toRgb565(Bitmap)},
+     * using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original Bitmap.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The RGB_565 Bitmap.
+     */
+    public static Bitmap toRgb565(Bitmap source, BitmapPool pool) {
+        long start = Metrics.start();
+        return Metrics.end("toRgb565", start, source, drawRgb565(source, pool), Metrics.pooled(pool));
+    }
+
+    private static Bitmap drawRgb565(Bitmap source, BitmapPool pool) {
+        Bitmap dest = obtain(pool, source.getWidth(), source.getHeight(), Bitmap.Config.RGB_565);
+        return applyInBands(source, PixelKernels.ditherRgb565(), dest);
+    }
+
+    //private method to validate the configs supported by the compact variants
+    private static void checkCompactConfig(Bitmap.Config config) throws BitmapUtilsException {
+        if (config != Bitmap.Config.ARGB_8888 && config != Bitmap.Config.RGB_565 && config != Bitmap.Config.ALPHA_8) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "config must be ARGB_8888, RGB_565 or ALPHA_8");
+        }
+    }
+
+    private static Bitmap drawGrayscale(Bitmap source, Bitmap dest) {
+        dest.eraseColor(Color.TRANSPARENT);
+        DrawContext context = DrawContext.acquire();
+        try {
+            context.canvas(dest).drawBitmap(source, 0, 0, getGrayScalePaint());
+        } finally {
+            context.release();
+        }
+        return dest;
+    }
+
+    private static Bitmap drawGrayscale(BitmapRegion source, Bitmap dest) {
+        dest.eraseColor(Color.TRANSPARENT);
+        DrawContext context = DrawContext.acquire();
+        try {
+            source.draw(context.canvas(dest), 0f, 0f, getGrayScalePaint());
+        } finally {
+            context.release();
+        }
+        return dest;
+    }
+
+    //private method to get a gray scale paint, totally independent from bitmaps passed.
+    //It's shared, so it must not be modified.
+    private static Paint getGrayScalePaint() {
+        return ColorFilters.grayscalePaint();
+    }
+
+    /**
+     * Method to rotate a Bitmap specifying the angle.
+     * Rotations by multiples of 90 degrees move pixels without filtering, so they are exact (and faster).
+     *
+     * @param source The original Bitmap.
+     * @param angle  float that represents the rotation angle.
+     * @return The rotated Bitmap.
+     */
+    public static Bitmap rotate(Bitmap source, float angle) {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "rotate", angle) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("rotate", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result;
+        int quarters = toQuarters(angle);
+        if (quarters > 0) {
+            result = rotateExactly(source, quarters, createTransparentBitmap(getRotatedWidth(source, quarters), getRotatedHeight(source, quarters)));
+            result.setDensity(source.getDensity());
+            return Metrics.end("rotate", start, source, putCached(key, result), Metrics.computed(key));
+        }
+        DrawContext context = DrawContext.acquire();
+        try {
+            Matrix matrix = context.matrix();
+            RectF bounds = getRotatedBounds(source, angle, matrix, context);
+            //createBitmap allocates the result (computing the bounds again), so the governor counts it explicitly
+            reserve(Math.round(bounds.width()), Math.round(bounds.height()), source.getConfig(), "rotate");
+            result = Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+            result = putCached(key, result != source ? tracked(result) : result);
+        } finally {
+            context.release();
+        }
+        return Metrics.end("rotate", start, source, result, Metrics.computed(key));
+    }
+
+    /**
+     * Method to rotate a Bitmap specifying the angle, drawing the result into {@code dest}.
+     * The size of {@code dest} must be the size of the bounding box of the rotated {@code source}.
+     *
+     * @param source The original Bitmap.
+     * @param angle  float that represents the rotation angle.
+     * @param dest   A mutable Bitmap with the size of the rotated {@code source}.
+     * @return {@code dest}, that contains the rotated Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap rotate(Bitmap source, float angle, Bitmap dest) throws BitmapUtilsException {
+        long start = Metrics.start();
+        int quarters = toQuarters(angle);
+        if (quarters >= 0) {
+            checkDestination(dest, getRotatedWidth(source, quarters), getRotatedHeight(source, quarters));
+            return Metrics.end("rotate", start, source, rotateExactly(source, quarters, dest), BitmapUtilsMetrics.RESULT_DEST);
+        }
+        DrawContext context = DrawContext.acquire();
+        try {
+            Matrix matrix = context.matrix();
+            RectF bounds = getRotatedBounds(source, angle, matrix, context);
+            checkDestination(dest, Math.round(bounds.width()), Math.round(bounds.height()));
+            drawWithMatrix(source, matrix, true, dest, context);
+        } finally {
+            context.release();
+        }
+        return Metrics.end("rotate", start, source, dest, BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to rotate a Bitmap specifying the angle, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original Bitmap.
+     * @param angle  float that represents the rotation angle.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The rotated Bitmap.
+     */
+    public static Bitmap rotate(Bitmap source, float angle, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap dest;
+        int quarters = toQuarters(angle);
+        if (quarters >= 0) {
+            dest = obtain(pool, getRotatedWidth(source, quarters), getRotatedHeight(source, quarters));
+            return Metrics.end("rotate", start, source, rotateExactly(source, quarters, dest), Metrics.pooled(pool));
+        }
+        DrawContext context = DrawContext.acquire();
+        try {
+            Matrix matrix = context.matrix();
+            RectF bounds = getRotatedBounds(source, angle, matrix, context);
+            dest = obtain(pool, Math.round(bounds.width()), Math.round(bounds.height()));
+            drawWithMatrix(source, matrix, true, dest, context);
+        } finally {
+            context.release();
+        }
+        return Metrics.end("rotate", start, source, dest, Metrics.pooled(pool));
+    }
+
+    //private method to get the number of clockwise quarter turns (0-3) of angle, or -1 if it isn't a multiple of 90 degrees
+    private static int toQuarters(float angle) {
+        if (angle % 90f != 0f) {
+            return -1;
+        }
+        return ((Math.round(angle / 90f) % 4) + 4) % 4;
+    }
+
+    private static int getRotatedWidth(Bitmap source, int quarters) {
+        return (quarters & 1) == 1 ? source.getHeight() : source.getWidth();
+    }
+
+    private static int getRotatedHeight(Bitmap source, int quarters) {
+        return (quarters & 1) == 1 ? source.getWidth() : source.getHeight();
+    }
+
+    //private method to rotate source by quarters * 90 degrees clockwise into dest, moving pixels without filtering.
+    //dest is computed in bands of rows: the pixels of source that go in a band (a band of columns for 90 and 270)
+    //are read, rotated in cache-friendly tiles (in parallel, see PixelTransforms) and written, so the temporary
+    //buffers stay small also for big images. The buffers come from the PixelScratch of the thread: slots 0 and 1
+    //for the full bands, 2 and 3 for the last one, so their views are reused by the next calls with the same size.
+    private static Bitmap rotateExactly(Bitmap source, int quarters, Bitmap dest) {
+        int w = source.getWidth();
+        int h = source.getHeight();
+        int dw = dest.getWidth();
+        int dh = dest.getHeight();
+        int rows = Math.max(1, Math.min(dh, ROTATION_BAND_PIXELS / dw));
+        boolean transpose = (quarters & 1) == 1;
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            for (int y = 0; y < dh; y += rows) {
+                int n = Math.min(rows, dh - y);
+                int slot = n == rows ? 0 : 2;
+                PixelBuffer band;
+                if (transpose) {
+                    //rows [y, y + n) of dest are the columns [y, y + n) of source for 90, [w - y - n, w - y) for 270
+                    band = scratch.buffer(slot, n, h);
+                    source.getPixels(band.getPixels(), 0, n, quarters == 1 ? y : w - y - n, 0, n, h);
+                } else {
+                    //rows [y, y + n) of dest are the rows [h - y - n, h - y) of source for 180
+                    band = scratch.buffer(slot, w, n);
+                    source.getPixels(band.getPixels(), 0, w, 0, quarters == 2 ? h - y - n : y, w, n);
+                }
+                PixelBuffer out = scratch.buffer(slot + 1, dw, n);
+                PixelTransforms.rotate(band, quarters * 90, out, TileEngine.getDefault());
+                dest.setPixels(out.getPixels(), 0, dw, 0, y, dw, n);
+            }
+        } finally {
+            scratch.release();
+        }
+        return dest;
+    }
+
+    //private method to fill matrix with the rotation, translated to start from (0,0), returning the rotated bounds
+    private static RectF getRotatedBounds(Bitmap source, float angle, Matrix matrix, DrawContext context) {
+        matrix.postRotate(angle);
+        RectF bounds = context.rectF(0, 0, source.getWidth(), source.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        return bounds;
+    }
+
+    //private method to draw source into dest, transformed by matrix
+    private static Bitmap drawWithMatrix(Bitmap source, Matrix matrix, boolean filter, Bitmap dest, DrawContext context) {
+        dest.eraseColor(Color.TRANSPARENT);
+        Paint paint = context.paint(0);
+        paint.setFilterBitmap(filter);
+        context.canvas(dest).drawBitmap(source, matrix, paint);
+        return dest;
+    }
+
+    /**
+     * Method to flip vertically a Bitmap.
+     *
+     * @param source The original Bitmap.
+     * @return The flipped Bitmap.
+     */
+    public static Bitmap flipVertically(Bitmap source) {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "flipVertically") : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("flipVertically", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result;
+        DrawContext context = DrawContext.acquire();
+        try {
+            Matrix m = context.matrix();
+            m.preScale(1, -1);
+            reserve(source.getWidth(), source.getHeight(), source.getConfig(), "flipVertically");
+            result = putCached(key, tracked(Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), m, false)));
+        } finally {
+            context.release();
+        }
+        return Metrics.end("flipVertically", start, source, result, Metrics.computed(key));
+    }
+
+    /**
+     * Method to flip vertically a Bitmap, drawing the result into {@code dest}.
+     *
+     * @param source The original Bitmap.
+     * @param dest   A mutable Bitmap with the same size of {@code source}.
+     * @return {@code dest}, that contains the flipped Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap flipVertically(Bitmap source, Bitmap dest) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkDestination(dest, source.getWidth(), source.getHeight());
+        return Metrics.end("flipVertically", start, source, drawFlipped(source, 1, -1, dest), BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to flip vertically a Bitmap, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original Bitmap.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The flipped Bitmap.
+     */
+    public static Bitmap flipVertically(Bitmap source, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap result = drawFlipped(source, 1, -1, obtain(pool, source.getWidth(), source.getHeight()));
+        return Metrics.end("flipVertically", start, source, result, Metrics.pooled(pool));
+    }
+
+    /**
+     * Method to flip horizontally a Bitmap.
+     *
+     * @param source The original Bitmap.
+     * @return The flipped Bitmap.
+     */
+    public static Bitmap flipHorizonally(Bitmap source) {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "flipHorizontally") : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("flipHorizonally", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result;
+        DrawContext context = DrawContext.acquire();
+        try {
+            Matrix m = context.matrix();
+            m.setScale(-1, 1);
+            reserve(source.getWidth(), source.getHeight(), source.getConfig(), "flipHorizontally");
+            result = putCached(key, tracked(Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), m, false)));
+        } finally {
+            context.release();
+        }
+        return Metrics.end("flipHorizonally", start, source, result, Metrics.computed(key));
+    }
+
+    /**
+     * Method to flip horizontally a Bitmap, drawing the result into {@code dest}.
+     *
+     * @param source The original Bitmap.
+     * @param dest   A mutable Bitmap with the same size of {@code source}.
+     * @return {@code dest}, that contains the flipped Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap flipHorizonally(Bitmap source, Bitmap dest) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkDestination(dest, source.getWidth(), source.getHeight());
+        return Metrics.end("flipHorizonally", start, source, drawFlipped(source, -1, 1, dest), BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to flip horizontally a Bitmap, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original Bitmap.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The flipped Bitmap.
+     */
+    public static Bitmap flipHorizonally(Bitmap source, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap result = drawFlipped(source, -1, 1, obtain(pool, source.getWidth(), source.getHeight()));
+        return Metrics.end("flipHorizonally", start, source, result, Metrics.pooled(pool));
+    }
+
+    /**
+     * Method to flip vertically a mutable Bitmap in place, swapping its rows.
+     * Unlike {@link #flipVertically(Bitmap)}, it doesn't allocate a second Bitmap.
+     *
+     * @param bitmap The mutable Bitmap to flip.
+     * @return {@code bitmap}, flipped.
+     * @throws BitmapUtilsException if bitmap is not mutable or it's recycled.
+     */
+    public static Bitmap flipVerticallyInPlace(Bitmap bitmap) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkMutable(bitmap, "bitmap");
+        int w = bitmap.getWidth();
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            int[] topRow = scratch.ints(0, w);
+            int[] bottomRow = scratch.ints(1, w);
+            for (int top = 0, bottom = bitmap.getHeight() - 1; top < bottom; top++, bottom--) {
+                bitmap.getPixels(topRow, 0, w, 0, top, w, 1);
+                bitmap.getPixels(bottomRow, 0, w, 0, bottom, w, 1);
+                bitmap.setPixels(bottomRow, 0, w, 0, top, w, 1);
+                bitmap.setPixels(topRow, 0, w, 0, bottom, w, 1);
+            }
+        } finally {
+            scratch.release();
+        }
+        return Metrics.end("flipVerticallyInPlace", start, bitmap, bitmap, BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to flip horizontally a mutable Bitmap in place, swapping the pixels of every row.
+     * Unlike {@link #flipHorizonally(Bitmap)}, it doesn't allocate a second Bitmap.
+     *
+     * @param bitmap The mutable Bitmap to flip.
+     * @return {@code bitmap}, flipped.
+     * @throws BitmapUtilsException if bitmap is not mutable or it's recycled.
+     */
+    public static Bitmap flipHorizontallyInPlace(Bitmap bitmap) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkMutable(bitmap, "bitmap");
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        int rows = Math.max(1, Math.min(h, BAND_PIXELS / w));
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            for (int y = 0; y < h; y += rows) {
+                int n = Math.min(rows, h - y);
+                PixelBuffer band = scratch.buffer(n == rows ? 0 : 1, w, n);
+                bitmap.getPixels(band.getPixels(), 0, w, 0, y, w, n);
+                PixelTransforms.flipHorizontallyInPlace(band);
+                bitmap.setPixels(band.getPixels(), 0, w, 0, y, w, n);
+            }
+        } finally {
+            scratch.release();
+        }
+        return Metrics.end("flipHorizontallyInPlace", start, bitmap, bitmap, BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    //private method to draw a mirrored source into dest (sx or sy must be -1)
+    private static Bitmap drawFlipped(Bitmap source, float sx, float sy, Bitmap dest) {
+        DrawContext context = DrawContext.acquire();
+        try {
+            Matrix m = context.matrix();
+            m.setScale(sx, sy);
+            m.postTranslate(sx < 0 ? source.getWidth() : 0, sy < 0 ? source.getHeight() : 0);
+            return drawWithMatrix(source, m, false, dest, context);
+        } finally {
+            context.release();
+        }
+    }
+
+    /**
+     * Method to scale a Bitmap specifying width and height.
+     * If newWidth and newHeight are the same as the current width and height of
+     * the source bitmap, the source bitmap is returned and no new bitmap is
+     * created.
+     * I suggest to use scaleByFactor(...) method to maintain original proportions.
+     *
+     * @param source    The original Bitmap.
+     * @param newWidth  int that represents the desired width.
+     * @param newHeight int that represents the desired height.
+     * @return The scaled Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap scale(Bitmap source, int newWidth, int newHeight) throws BitmapUtilsException {
+        return scale(source, newWidth, newHeight, scaleQuality);
+    }
+
+    /**
+     * Method to scale a Bitmap specifying width and height, and the quality of the reduction.
+     * If newWidth and newHeight are the same as the current width and height of
+     * the source bitmap, the source bitmap is returned and no new bitmap is
+     * created.
+     *
+     * @param source    The original Bitmap.
+     * @param newWidth  int that represents the desired width.
+     * @param newHeight int that represents the desired height.
+     * @param quality   The {@link PixelScaler.Quality} used if the image is reduced, or null
+     *                  to use the bilinear filter of Android.
+     * @return The scaled Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap scale(Bitmap source, int newWidth, int newHeight, PixelScaler.Quality quality) throws BitmapUtilsException {
+        if (newWidth < 0 || newHeight < 0) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "newWidth and newHeight must be >=0");
+        }
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "scale", newWidth, newHeight, quality) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("scale", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result;
+        if (isReduction(source, newWidth, newHeight, quality)) {
+            result = downscale(source, createTransparentBitmap(newWidth, newHeight), quality);
+            result.setDensity(source.getDensity());
+        } else {
+            reserve(newWidth, newHeight, source.getConfig(), "scale");
+            result = Bitmap.createScaledBitmap(source, newWidth, newHeight, true);
+            result = result != source ? tracked(result) : result;
+        }
+        result = putCached(key, result);
+        return Metrics.end("scale", start, source, result, Metrics.computed(key));
+    }
+
+    /**
+     * Method to scale a Bitmap, drawing the result into {@code dest}.
+     * The desired size is the size of {@code dest}.
+     *
+     * @param source The original Bitmap.
+     * @param dest   A mutable Bitmap with the desired size.
+     * @return {@code dest}, that contains the scaled Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap scale(Bitmap source, Bitmap dest) throws BitmapUtilsException {
+        if (dest == null) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "dest must be not null");
+        }
+        long start = Metrics.start();
+        checkMutable(dest, "dest");
+        return Metrics.end("scale", start, source, drawScaled(source, dest), BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to scale a Bitmap specifying width and height, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source    The original Bitmap.
+     * @param newWidth  int that represents the desired width.
+     * @param newHeight int that represents the desired height.
+     * @param pool      The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The scaled Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap scale(Bitmap source, int newWidth, int newHeight, BitmapPool pool) throws BitmapUtilsException {
+        if (newWidth <= 0 || newHeight <= 0) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "newWidth and newHeight must be >0");
+        }
+        long start = Metrics.start();
+        Bitmap result = drawScaled(source, obtain(pool, newWidth, newHeight));
+        return Metrics.end("scale", start, source, result, Metrics.pooled(pool));
+    }
+
+    //private method to draw source into dest, scaled to fill the entire dest
+    private static Bitmap drawScaled(Bitmap source, Bitmap dest) {
+        PixelScaler.Quality quality = scaleQuality;
+        if (isReduction(source, dest.getWidth(), dest.getHeight(), quality)) {
+            return downscale(source, dest, quality);
+        }
+        dest.eraseColor(Color.TRANSPARENT);
+        DrawContext context = DrawContext.acquire();
+        try {
+            context.canvas(dest).drawBitmap(source, null, context.rect(0, 0, dest.getWidth(), dest.getHeight()),
+                    context.paint(Paint.FILTER_BITMAP_FLAG));
+        } finally {
+            context.release();
+        }
+        return dest;
+    }
+
+    //private method to check if the area-averaging scaler must be used: quality set and a reduction in at least one dimension
+    private static boolean isReduction(Bitmap source, int newWidth, int newHeight, PixelScaler.Quality quality) {
+        return quality != null && newWidth > 0 && newHeight > 0
+                && newWidth <= source.getWidth() && newHeight <= source.getHeight()
+                && (newWidth < source.getWidth() || newHeight < source.getHeight());
+    }
+
+    //private method to reduce source to the size of dest with the PixelScaler, reading source by bands of rows.
+    //The result is computed in the PixelScratch of the thread
+    private static Bitmap downscale(final Bitmap source, Bitmap dest, PixelScaler.Quality quality) {
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            PixelBuffer buffer = scratch.buffer(0, dest.getWidth(), dest.getHeight());
+            PixelScaler.scale(new PixelScaler.RowSource() {
+                @Override
+                public void readRows(int top, int count, int[] pixels, int offset, int stride) {
+                    source.getPixels(pixels, offset, stride, 0, top, source.getWidth(), count);
+                }
+            }, source.getWidth(), source.getHeight(), buffer, quality, TileEngine.getDefault());
+            return copyPixels(buffer, dest);
+        } finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Method to scale a Bitmap specifying the scaling factor as a float.
+     * If {@code factor}==1, the source bitmap is returned and no new bitmap is
+     * created.
+     *
+     * @param source The original Bitmap.
+     * @param factor float that represents the scaling factor.
+     * @return The scaled Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap scaleByFactor(Bitmap source, float factor) throws BitmapUtilsException {
+        return scaleByFactor(source, factor, scaleQuality);
+    }
+
+    /**
+     * Method to scale a Bitmap specifying the scaling factor as a float, and the quality of the reduction.
+     * If {@code factor}==1, the source bitmap is returned and no new bitmap is
+     * created.
+     *
+     * @param source  The original Bitmap.
+     * @param factor  float that represents the scaling factor.
+     * @param quality The {@link PixelScaler.Quality} used if {@code factor} is less than 1, or null
+     *                to use the bilinear filter of Android.
+     * @return The scaled Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap scaleByFactor(Bitmap source, float factor, PixelScaler.Quality quality) throws BitmapUtilsException {
+        if (factor < 0) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "factor must be >=0");
+        }
+        int newWidth = (int) (source.getWidth() * factor);
+        int newHeight = (int) (source.getHeight() * factor);
+        return scale(source, newWidth, newHeight, quality);
+    }
+
+    /**
+     * Method to scale a Bitmap specifying the scaling factor as a float,
+     * using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original Bitmap.
+     * @param factor float that represents the scaling factor.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The scaled Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap scaleByFactor(Bitmap source, float factor, BitmapPool pool) throws BitmapUtilsException {
+        if (factor < 0) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "factor must be >=0");
+        }
+        int newWidth = (int) (source.getWidth() * factor);
+        int newHeight = (int) (source.getHeight() * factor);
+        return scale(source, newWidth, newHeight, pool);
+    }
+
+    /**
+     * Method to create a fully-transparent Bitmap using the same size of the source passed as
+     * parameter and also the same density.
+     *
+     * @param source The original Bitmap.
+     * @return A transparent Bitmap with the same size of the source.
+     */
+    public static Bitmap clear(Bitmap source) {
+        long start = Metrics.start();
+        //a new Bitmap is already transparent
+        Bitmap result = obtain(null, source.getWidth(), source.getHeight());
+        result.setDensity(source.getDensity());
+        return Metrics.end("clear", start, source, result, BitmapUtilsMetrics.RESULT_ALLOCATED);
+    }
+
+    /**
+     * Method to clear {@code dest}, that must have the same size of {@code source}, using also
+     * the same density of {@code source}.
+     *
+     * @param source The original Bitmap.
+     * @param dest   A mutable Bitmap with the same size of {@code source}.
+     * @return {@code dest}, that is now fully-transparent.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap clear(Bitmap source, Bitmap dest) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkDestination(dest, source.getWidth(), source.getHeight());
+        dest.eraseColor(Color.TRANSPARENT);
+        dest.setDensity(source.getDensity());
+        return Metrics.end("clear", start, source, dest, BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to get a fully-transparent Bitmap from {@code pool}, using the same size
+     * and the same density of the source passed as parameter.
+     *
+     * @param source The original Bitmap.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A transparent Bitmap with the same size of the source.
+     */
+    public static Bitmap clear(Bitmap source, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap dest = obtain(pool, source.getWidth(), source.getHeight());
+        dest.eraseColor(Color.TRANSPARENT);
+        dest.setDensity(source.getDensity());
+        return Metrics.end("clear", start, source, dest, Metrics.pooled(pool));
+    }
+
+
+    /**
+     * Method to scale {@code sourceBitmap}, maintaining the same original size,
+     * but with a transparent frame, scaled and centered {@code sourceBitmap} inside.
+     * If you want to use a transparent image as {@code source}, all transparent pixels will be
+     * replaced by {@code color}. Otherwise, the {@code source} bitmap will
+     * be scaled with a colored frame outside (using {@code color}).
+     *
+     * @param source The original Bitmap.
+     * @param factor float that represents the scaling factor (must be >=0 and <=1).
+     * @param color  Color of the frame.
+     * @return The scaled Bitmap with a colored (or TRANSPARENT) border.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap scaleInsideColoredFrame(Bitmap source, float factor, int color) throws BitmapUtilsException {
+        if (factor > 1f || factor < 0f) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "factor must be >=0 and <=1");
+        }
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "scaleInsideColoredFrame", factor, color) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("scaleInsideColoredFrame", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result = putCached(key, pipeline(source).scale(factor).frame(color).execute((BitmapPool) null));
+        return Metrics.end("scaleInsideColoredFrame", start, source, result, Metrics.computed(key));
+    }
+
+    /**
+     * Method to scale {@code sourceBitmap} inside a colored frame, as
+     * {@link #scaleInsideColoredFrame(Bitmap, float, int)}, drawing the result into {@code dest}.
+     *
+     * @param source The original Bitmap.
+     * @param factor float that represents the scaling factor (must be >=0 and <=1).
+     * @param color  Color of the frame.
+     * @param dest   A mutable Bitmap with the same size of {@code source}.
+     * @return {@code dest}, that contains the scaled Bitmap with a colored (or TRANSPARENT) border.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap scaleInsideColoredFrame(Bitmap source, float factor, int color, Bitmap dest) throws BitmapUtilsException {
+        if (factor > 1f || factor < 0f) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "factor must be >=0 and <=1");
+        }
+        long start = Metrics.start();
+        Bitmap result = pipeline(source).scale(factor).frame(color).execute(dest);
+        return Metrics.end("scaleInsideColoredFrame", start, source, result, BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to scale {@code sourceBitmap} inside a colored frame, as
+     * {@link #scaleInsideColoredFrame(Bitmap, float, int)}, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original Bitmap.
+     * @param factor float that represents the scaling factor (must be >=0 and <=1).
+     * @param color  Color of the frame.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The scaled Bitmap with a colored (or TRANSPARENT) border.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap scaleInsideColoredFrame(Bitmap source, float factor, int color, BitmapPool pool) throws BitmapUtilsException {
+        if (factor > 1f || factor < 0f) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "factor must be >=0 and <=1");
+        }
+        long start = Metrics.start();
+        Bitmap result = pipeline(source).scale(factor).frame(color).execute(pool);
+        return Metrics.end("scaleInsideColoredFrame", start, source, result, Metrics.pooled(pool));
+    }
+
+
+    /**
+     * Method to get a colored Drawable silhouette.
+     * The Drawable is mutated before setting the color filter, so other Drawables loaded from the same
+     * resource (that share its constant state) are not colored. To get many colors of the same image
+     * without a Drawable for each one, use a {@link SilhouetteCache}.
+     *
+     * @param sourceBitmap The original Bitmap.
+     * @param color        Color of the frame.
+     * @return The colored Drawable silohuette.
+     */
+    public static Drawable getSilhouetteWithColor(Drawable sourceBitmap, int color) {
+        Drawable drawable = sourceBitmap.mutate();
+        drawable.setColorFilter(ColorFilters.tint(color));
+        return drawable;
+    }
+
+    /**
+     * Method to get the silhouette of a Bitmap as an {@code ALPHA_8} mask: only the alpha channel,
+     * 1 byte per pixel instead of 4. The color is chosen when the mask is drawn, with
+     * {@link #drawSilhouette(Canvas, Bitmap, float, float, int)}, so a single mask serves all colors.
+     *
+     * @param source The original Bitmap.
+     * @return The ALPHA_8 mask.
+     */
+    public static Bitmap getSilhouetteMask(Bitmap source) {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "getSilhouetteMask") : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("getSilhouetteMask", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        reserve(source.getWidth(), source.getHeight(), Bitmap.Config.ALPHA_8, "getSilhouetteMask");
+        Bitmap result = putCached(key, tracked(source.extractAlpha()));
+        return Metrics.end("getSilhouetteMask", start, source, result, Metrics.computed(key));
+    }
+
+    /**
+     * Method to get the silhouette of a Bitmap as an {@code ALPHA_8} mask (see {@link #getSilhouetteMask(Bitmap)}),
+     * using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original Bitmap.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The ALPHA_8 mask.
+     */
+    public static Bitmap getSilhouetteMask(Bitmap source, BitmapPool pool) {
+        long start = Metrics.start();
+        //an ALPHA_8 Bitmap keeps only the alpha of the pixels, so they are copied without a kernel
+        Bitmap result = applyInBands(source, null,
+                obtain(pool, source.getWidth(), source.getHeight(), Bitmap.Config.ALPHA_8));
+        return Metrics.end("getSilhouetteMask", start, source, result, Metrics.pooled(pool));
     }
 
-    //private method to get a gray scale paint, totally independent from bitmaps passed
-    private static Paint getGrayScalePaint() {
-        Paint paint = new Paint();
-        paint.setAntiAlias(true);
-        ColorMatrix cm = new ColorMatrix();
-        cm.setSaturation(0);
-        ColorMatrixColorFilter colorMatrixColorFilter = new ColorMatrixColorFilter(cm);
-        paint.setColorFilter(colorMatrixColorFilter);
-        return paint;
+    /**
+     * Method to draw an {@code ALPHA_8} mask (for example from {@link #getSilhouetteMask(Bitmap)}) colored with {@code color}.
+     * With an opaque color, the result is the same of {@link #getSilhouetteWithColor(Bitmap, int, BitmapPool)},
+     * without a colored copy of the image.
+     *
+     * @param canvas The Canvas where the mask is drawn.
+     * @param mask   The ALPHA_8 mask.
+     * @param left   float that represents the left position of the mask.
+     * @param top    float that represents the top position of the mask.
+     * @param color  Color of the silhouette.
+     */
+    public static void drawSilhouette(Canvas canvas, Bitmap mask, float left, float top, int color) {
+        DrawContext context = DrawContext.acquire();
+        try {
+            Paint paint = context.paint(Paint.FILTER_BITMAP_FLAG);
+            paint.setColor(color);
+            canvas.drawBitmap(mask, left, top, paint);
+        } finally {
+            context.release();
+        }
     }
 
     /**
-     * Method to rotate a Bitmap specifying the angle.
+     * Method to blur a Bitmap, as {@link #blur(Bitmap, float, BitmapPool)}, with a new Bitmap as result.
      *
      * @param source The original Bitmap.
-     * @param angle  float that represents the rotation angle.
-     * @return The rotated Bitmap.
+     * @param radius float that represents the radius of the blur, like the radius of Android's {@code BlurMaskFilter}.
+     * @return The blurred Bitmap.
      */
-    public static Bitmap rotate(Bitmap source, float angle) {
-        Matrix matrix = new Matrix();
-        matrix.postRotate(angle);
-        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+    public static Bitmap blur(Bitmap source, float radius) {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "blur", radius) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("blur", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result = putCached(key, blurInto(source, radius, obtain(null, source.getWidth(), source.getHeight())));
+        return Metrics.end("blur", start, source, result, Metrics.computed(key));
     }
 
     /**
-     * Method to flip vertically a Bitmap.
+     * Method to blur a Bitmap, with an approximation of a Gaussian blur (three box blurs, see {@link PixelBlur})
+     * computed in parallel on the default {@link TileEngine}. The cost doesn't depend on the radius.
      *
      * @param source The original Bitmap.
-     * @return The flipped Bitmap.
+     * @param radius float that represents the radius of the blur, like the radius of Android's {@code BlurMaskFilter}.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The blurred Bitmap, with the size of {@code source} (the blur doesn't go outside the image).
      */
-    public static Bitmap flipVertically(Bitmap source) {
-        Matrix m = new Matrix();
-        m.preScale(1, -1);
-        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), m, false);
+    public static Bitmap blur(Bitmap source, float radius, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap result = blurInto(source, radius, obtain(pool, source.getWidth(), source.getHeight()));
+        return Metrics.end("blur", start, source, result, Metrics.pooled(pool));
+    }
+
+    //private method to blur source into dest. The blur needs whole columns, so the image is copied
+    //into the PixelScratch of the thread, retained between calls for images up to PixelScratch.MAX_RETAINED_PIXELS
+    private static Bitmap blurInto(Bitmap source, float radius, Bitmap dest) {
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            PixelBuffer buffer = scratch.buffer(0, source.getWidth(), source.getHeight());
+            source.getPixels(buffer.getPixels(), buffer.getOffset(), buffer.getStride(), 0, 0, source.getWidth(), source.getHeight());
+            PixelBlur.blur(buffer, radius, TileEngine.getDefault());
+            return copyPixels(buffer, dest);
+        } finally {
+            scratch.release();
+        }
     }
 
     /**
-     * Method to flip horizontally a Bitmap.
+     * Method to get the number of pixels reached by a shadow (or a glow) of {@code radius}
+     * outside the silhouette, in every direction.
      *
-     * @param source The original Bitmap.
-     * @return The flipped Bitmap.
+     * @param radius float that represents the radius of the blur.
+     * @return int that represents the padding.
      */
-    public static Bitmap flipHorizonally(Bitmap source) {
-        Matrix m = new Matrix();
-        m.setScale(-1, 1);
-        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), m, false);
+    public static int getShadowPadding(float radius) {
+        return PixelBlur.getExtent(radius);
     }
 
     /**
-     * Method to scale a Bitmap specifying width and height.
-     * If newWidth and newHeight are the same as the current width and height of
-     * the source bitmap, the source bitmap is returned and no new bitmap is
-     * created.
-     * I suggest to use scaleByFactor(...) method to maintain original proportions.
+     * Method to get the silhouette of a Bitmap blurred by {@code radius}, as an {@code ALPHA_8} mask,
+     * to draw shadows and glows of any color with {@link #drawSilhouette(Canvas, Bitmap, float, float, int)}.
+     * The mask is bigger than {@code source} by {@link #getShadowPadding(float)} on every side,
+     * so {@code source} is at (padding, padding) of the mask.
+     * The blur is computed on a mask reduced proportionally to the radius (up to 8 times),
+     * and then enlarged with a bilinear filter, so the cost doesn't grow with the radius.
      *
-     * @param source    The original Bitmap.
-     * @param newWidth  int that represents the desired width.
-     * @param newHeight int that represents the desired height.
-     * @return The scaled Bitmap.
-     * @throws BitmapUtilsException
+     * @param source The original Bitmap.
+     * @param radius float that represents the radius of the blur.
+     * @return The ALPHA_8 mask.
      */
-    public static Bitmap scale(Bitmap source, int newWidth, int newHeight) throws BitmapUtilsException {
-        if (newWidth < 0 || newHeight < 0) {
-            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "newWidth and newHeight must be >=0");
+    public static Bitmap getShadowMask(Bitmap source, float radius) {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "getShadowMask", radius) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("getShadowMask", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
         }
-        return Bitmap.createScaledBitmap(source, newWidth, newHeight, true);
+        int padding = getShadowPadding(radius);
+        Bitmap small = blurredMask(source, radius, padding);
+        int width = source.getWidth() + 2 * padding;
+        int height = source.getHeight() + 2 * padding;
+        Bitmap result = small;
+        if (small.getWidth() != width || small.getHeight() != height) {
+            reserve(width, height, Bitmap.Config.ALPHA_8, "getShadowMask");
+            result = tracked(Bitmap.createScaledBitmap(small, width, height, true));
+            small.recycle();
+        }
+        putCached(key, result);
+        return Metrics.end("getShadowMask", start, source, result, Metrics.computed(key));
     }
 
     /**
-     * Method to scale a Bitmap specifying the scaling factor as a float.
-     * If {@code factor}==1, the source bitmap is returned and no new bitmap is
-     * created.
+     * Method to get a Bitmap with {@code source} and its drop shadow, of {@code color} and blurred by {@code radius},
+     * moved by ({@code dx}, {@code dy}). The result is enlarged to contain the whole shadow: {@code source}
+     * is at ({@code max(0, ceil(padding - dx))}, {@code max(0, ceil(padding - dy))}), where padding
+     * is {@link #getShadowPadding(float)}. With a zero offset, the shadow is a glow around the silhouette.
+     * The blur is computed on a reduced mask, as in {@link #getShadowMask(Bitmap, float)}, and enlarged while drawing it.
      *
      * @param source The original Bitmap.
-     * @param factor float that represents the scaling factor.
-     * @return The scaled Bitmap.
-     * @throws BitmapUtilsException
+     * @param radius float that represents the radius of the blur.
+     * @param color  Color of the shadow (its alpha is the opacity of the shadow).
+     * @param dx     float that represents the horizontal offset of the shadow.
+     * @param dy     float that represents the vertical offset of the shadow.
+     * @return The Bitmap with the shadow.
      */
-    public static Bitmap scaleByFactor(Bitmap source, float factor) throws BitmapUtilsException {
-        if (factor < 0) {
-            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "factor must be >=0");
+    public static Bitmap shadow(Bitmap source, float radius, int color, float dx, float dy) {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "shadow", radius, color, dx, dy) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("shadow", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
         }
-        int newWidth = (int) (source.getWidth() * factor);
-        int newHeight = (int) (source.getHeight() * factor);
-        return scale(source, newWidth, newHeight);
+        int padding = getShadowPadding(radius);
+        int w = source.getWidth();
+        int h = source.getHeight();
+        int left = Math.max(0, (int) Math.ceil(padding - dx));
+        int top = Math.max(0, (int) Math.ceil(padding - dy));
+        int right = Math.max(0, (int) Math.ceil(padding + dx));
+        int bottom = Math.max(0, (int) Math.ceil(padding + dy));
+        Bitmap small = blurredMask(source, radius, padding);
+        Bitmap result = obtain(null, w + left + right, h + top + bottom);
+        DrawContext context = DrawContext.acquire();
+        try {
+            Canvas canvas = context.canvas(result);
+            Paint paint = context.paint(Paint.FILTER_BITMAP_FLAG);
+            paint.setColor(color);
+            //the mask has the padding around the silhouette
+            float maskLeft = left + dx - padding;
+            float maskTop = top + dy - padding;
+            canvas.drawBitmap(small, null, context.rectF(maskLeft, maskTop, maskLeft + w + 2 * padding, maskTop + h + 2 * padding), paint);
+            canvas.drawBitmap(source, left, top, context.paint(Paint.FILTER_BITMAP_FLAG));
+        } finally {
+            context.release();
+        }
+        small.recycle();
+        putCached(key, result);
+        return Metrics.end("shadow", start, source, result, Metrics.computed(key));
+    }
+
+    //private method to get the blurred silhouette of source, padded by padding and reduced for big radii
+    private static Bitmap blurredMask(Bitmap source, float radius, int padding) {
+        float sigma = PixelBlur.radiusToSigma(radius);
+        //the reduced blur keeps a sigma of at least SHADOW_MIN_SIGMA pixels, so it stays smooth when enlarged
+        int reduction = Math.max(1, Math.min(SHADOW_MAX_REDUCTION, (int) (sigma / SHADOW_MIN_SIGMA)));
+        int width = source.getWidth() + 2 * padding;
+        int height = source.getHeight() + 2 * padding;
+        int smallWidth = Math.max(1, (width + reduction - 1) / reduction);
+        int smallHeight = Math.max(1, (height + reduction - 1) / reduction);
+        float scaleX = (float) smallWidth / width;
+        float scaleY = (float) smallHeight / height;
+
+        Bitmap mask = obtain(null, smallWidth, smallHeight, Bitmap.Config.ALPHA_8);
+        DrawContext context = DrawContext.acquire();
+        try {
+            //drawing into an ALPHA_8 Bitmap keeps only the alpha of source
+            context.canvas(mask).drawBitmap(source, null, context.rectF(padding * scaleX, padding * scaleY,
+                    (padding + source.getWidth()) * scaleX, (padding + source.getHeight()) * scaleY), context.paint(Paint.FILTER_BITMAP_FLAG));
+        } finally {
+            context.release();
+        }
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            ByteBuffer alpha = scratch.bytes(mask.getRowBytes() * smallHeight);
+            mask.copyPixelsToBuffer(alpha);
+            PixelBlur.blurAlpha(alpha.array(), 0, mask.getRowBytes(), smallWidth, smallHeight,
+                    PixelBlur.sigmaToRadius(sigma / reduction), TileEngine.getDefault());
+            alpha.rewind();
+            mask.copyPixelsFromBuffer(alpha);
+        } finally {
+            scratch.release();
+        }
+        return mask;
     }
 
     /**
-     * Method to create a fully-transparent Bitmap using the same size of the source passed as
-     * parameter and also the same density.
+     * Method to get a colored silhouette of a Bitmap, like a {@code PorterDuff.Mode.SRC_ATOP} color filter,
+     * in a single pass with a lookup table, using a Bitmap obtained from {@code pool} as result.
      *
      * @param source The original Bitmap.
-     * @return A transparent Bitmap with the same size of the source.
+     * @param color  Color of the silhouette that you want.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The colored silhouette.
      */
-    public static Bitmap clear(Bitmap source) {
-        Bitmap newBitmap = Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight());
-        //to erase the color from a Bitmap, I must use a mutable Bitmap!!!!
-        Bitmap mutableBitmap = newBitmap.copy(Bitmap.Config.ARGB_8888, true);
-        mutableBitmap.eraseColor(Color.TRANSPARENT);
-        return mutableBitmap;
+    public static Bitmap getSilhouetteWithColor(Bitmap source, int color, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap result = applyInBands(source, PixelKernels.tint(color), obtain(pool, source.getWidth(), source.getHeight()));
+        return Metrics.end("getSilhouetteWithColor", start, source, result, Metrics.pooled(pool));
     }
 
 
     /**
-     * Method to scale {@code sourceBitmap}, maintaining the same original size,
-     * but with a transparent frame, scaled and centered {@code sourceBitmap} inside.
-     * If you want to use a transparent image as {@code source}, all transparent pixels will be
-     * replaced by {@code color}. Otherwise, the {@code source} bitmap will
-     * be scaled with a colored frame outside (using {@code color}).
+     * Method to get a scaled colored silhouette inside a colored/transparent frame).
      *
-     * @param source The original Bitmap.
-     * @param factor float that represents the scaling factor (must be >=0 and <=1).
-     * @param color  Color of the frame.
-     * @return The scaled Bitmap with a colored (or TRANSPARENT) border.
+     * @param source          The original Bitmap.
+     * @param factor          float that represents the scaling factor.
+     * @param frameColor      Color of the frame.
+     * @param silhouetteColor Color of the silhouette that you want.
+     * @return The scaled and colored silhouette inside a colored/transparent frame.
      * @throws BitmapUtilsException
      */
-    public static Bitmap scaleInsideColoredFrame(Bitmap source, float factor, int color) throws BitmapUtilsException {
+    public static Bitmap getScaledColorSilhouetteInsideColoredFrame(Bitmap source, float factor, int frameColor, int silhouetteColor) throws BitmapUtilsException {
         if (factor > 1f || factor < 0f) {
             throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "factor must be >=0 and <=1");
         }
-
-        Bitmap clearBitmap = source.copy(Bitmap.Config.ARGB_8888, true);
-        clearBitmap.eraseColor(color);
-
-        Bitmap resizedInsideBitmap = scaleByFactor(source, factor);
-
-        int frameWidth = clearBitmap.getWidth();
-        int frameHeight = clearBitmap.getHeight();
-        int imageWidth = resizedInsideBitmap.getWidth();
-        int imageHeight = resizedInsideBitmap.getHeight();
-
-        Canvas canvas = new Canvas(clearBitmap);
-        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
-        paint.setAntiAlias(true);
-        canvas.drawBitmap(resizedInsideBitmap, (frameWidth - imageWidth) / 2, (frameHeight - imageHeight) / 2, paint);
-        return clearBitmap;
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "getScaledColorSilhouetteInsideColoredFrame", factor, frameColor, silhouetteColor) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("getScaledColorSilhouetteInsideColoredFrame", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result = putCached(key, getSilhouettePipeline(source, factor, frameColor, silhouetteColor).execute((BitmapPool) null));
+        return Metrics.end("getScaledColorSilhouetteInsideColoredFrame", start, source, result, Metrics.computed(key));
     }
 
-
     /**
-     * Method to get a colored Drawable silhouette.
+     * Method to get a scaled colored silhouette inside a colored/transparent frame,
+     * drawing the result into {@code dest}.
      *
-     * @param sourceBitmap The original Bitmap.
-     * @param color        Color of the frame.
-     * @return The colored Drawable silohuette.
+     * @param source          The original Bitmap.
+     * @param factor          float that represents the scaling factor.
+     * @param frameColor      Color of the frame.
+     * @param silhouetteColor Color of the silhouette that you want.
+     * @param dest            A mutable Bitmap with the same size of {@code source}.
+     * @return {@code dest}, that contains the scaled and colored silhouette inside a colored/transparent frame.
+     * @throws BitmapUtilsException
      */
-    public static Drawable getSilhouetteWithColor(Drawable sourceBitmap, int color) {
-        sourceBitmap.setColorFilter(color, PorterDuff.Mode.SRC_ATOP);
-        return sourceBitmap;
+    public static Bitmap getScaledColorSilhouetteInsideColoredFrame(Bitmap source, float factor, int frameColor, int silhouetteColor, Bitmap dest) throws BitmapUtilsException {
+        if (factor > 1f || factor < 0f) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "factor must be >=0 and <=1");
+        }
+        long start = Metrics.start();
+        Bitmap result = getSilhouettePipeline(source, factor, frameColor, silhouetteColor).execute(dest);
+        return Metrics.end("getScaledColorSilhouetteInsideColoredFrame", start, source, result, BitmapUtilsMetrics.RESULT_DEST);
     }
 
-
     /**
-     * Method to get a scaled colored silhouette inside a colored/transparent frame).
+     * Method to get a scaled colored silhouette inside a colored/transparent frame,
+     * using a Bitmap obtained from {@code pool} as result.
      *
      * @param source          The original Bitmap.
      * @param factor          float that represents the scaling factor.
      * @param frameColor      Color of the frame.
      * @param silhouetteColor Color of the silhouette that you want.
+     * @param pool            The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
      * @return The scaled and colored silhouette inside a colored/transparent frame.
      * @throws BitmapUtilsException
      */
-    public static Bitmap getScaledColorSilhouetteInsideColoredFrame(Bitmap source, float factor, int frameColor, int silhouetteColor) throws BitmapUtilsException {
+    public static Bitmap getScaledColorSilhouetteInsideColoredFrame(Bitmap source, float factor, int frameColor, int silhouetteColor, BitmapPool pool) throws BitmapUtilsException {
         if (factor > 1f || factor < 0f) {
             throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "factor must be >=0 and <=1");
         }
-        Bitmap scaledMutableBitmap = BitmapUtils.scaleInsideColoredFrame(source, factor, frameColor);
-        Canvas c = new Canvas(scaledMutableBitmap);
-        Paint p = new Paint();
-        p.setAntiAlias(true);
-        p.setColorFilter(new PorterDuffColorFilter(silhouetteColor, PorterDuff.Mode.SRC_ATOP));
-        c.drawBitmap(scaledMutableBitmap, 0.f, 0.f, p);
-        return scaledMutableBitmap;
+        long start = Metrics.start();
+        Bitmap result = getSilhouettePipeline(source, factor, frameColor, silhouetteColor).execute(pool);
+        return Metrics.end("getScaledColorSilhouetteInsideColoredFrame", start, source, result, Metrics.pooled(pool));
+    }
+
+    //private method to get the pipeline of a silhouette inside a frame.
+    //The frame is colored with silhouetteColor (SRC_ATOP) too, as if the whole result were tinted.
+    private static BitmapPipeline getSilhouettePipeline(Bitmap source, float factor, int frameColor, int silhouetteColor) {
+        int tintedFrameColor = Color.TRANSPARENT;
+        if (Color.alpha(frameColor) != 0) {
+            float a = Color.alpha(silhouetteColor) / 255f;
+            tintedFrameColor = Color.argb(Color.alpha(frameColor),
+                    Math.round(Color.red(silhouetteColor) * a + Color.red(frameColor) * (1 - a)),
+                    Math.round(Color.green(silhouetteColor) * a + Color.green(frameColor) * (1 - a)),
+                    Math.round(Color.blue(silhouetteColor) * a + Color.blue(frameColor) * (1 - a)));
+        }
+        return pipeline(source).scale(factor).tint(silhouetteColor).frame(tintedFrameColor);
     }
 
 
@@ -243,8 +1480,7 @@ public class BitmapUtils {
         Canvas canvas = new Canvas(mutableBitmap);
         Paint paint = new Paint();
         paint.setAntiAlias(true);
-        ColorFilter filter = new LightingColorFilter(color, 1);
-        paint.setColorFilter(filter);
+        paint.setColorFilter(ColorFilters.lighting(color, 1));
         canvas.drawBitmap(mutableBitmap, 0, 0, paint);
         return mutableBitmap;
     }
@@ -262,21 +1498,68 @@ public class BitmapUtils {
      * @return A colored gray scale Bitmap.
      */
     public static Bitmap overlayColorOnGrayScale(Bitmap source, int color) {
-        Bitmap newBitmap = Bitmap.createBitmap(source.getWidth(), source.getHeight(), Bitmap.Config.ARGB_8888);
-        Bitmap mutableBitmap = newBitmap.copy(Bitmap.Config.ARGB_8888, true);
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "overlayColorOnGrayScale", color) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("overlayColorOnGrayScale", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result = putCached(key, drawOverlayColorOnGrayScale(source, color, createTransparentBitmap(source.getWidth(), source.getHeight())));
+        return Metrics.end("overlayColorOnGrayScale", start, source, result, Metrics.computed(key));
+    }
 
-        Canvas canvas = new Canvas(mutableBitmap);
-        canvas.drawBitmap(source, 0, 0, getGrayScalePaint());
+    /**
+     * Method to overlay color on a gray scale Bitmap, drawing the result into {@code dest}.
+     * This method creates automatically a gray scale bitmap from {@code source}.
+     *
+     * @param source The original colored Bitmap.
+     * @param color  Color to overlay.
+     * @param dest   A mutable Bitmap with the same size of {@code source}.
+     * @return {@code dest}, that contains the colored gray scale Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap overlayColorOnGrayScale(Bitmap source, int color, Bitmap dest) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkDestination(dest, source.getWidth(), source.getHeight());
+        return Metrics.end("overlayColorOnGrayScale", start, source, drawOverlayColorOnGrayScale(source, color, dest), BitmapUtilsMetrics.RESULT_DEST);
+    }
 
-        Paint paint = new Paint();
-        paint.setAntiAlias(true);
-        ColorFilter filter = new LightingColorFilter(color, 1);
-        paint.setColorFilter(filter);
-        canvas.drawBitmap(mutableBitmap, 0, 0, paint);
+    /**
+     * Method to overlay color on a gray scale Bitmap, using a Bitmap obtained from {@code pool} as result.
+     * This method creates automatically a gray scale bitmap from {@code source}.
+     *
+     * @param source The original colored Bitmap.
+     * @param color  Color to overlay.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A colored gray scale Bitmap.
+     */
+    public static Bitmap overlayColorOnGrayScale(Bitmap source, int color, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap result = drawOverlayColorOnGrayScale(source, color, obtain(pool, source.getWidth(), source.getHeight()));
+        return Metrics.end("overlayColorOnGrayScale", start, source, result, Metrics.pooled(pool));
+    }
 
-        return mutableBitmap;
+    /**
+     * Method to overlay color on a gray scale {@link BitmapRegion}, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original colored region.
+     * @param color  Color to overlay.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A colored gray scale Bitmap, with the size of the region.
+     */
+    public static Bitmap overlayColorOnGrayScale(BitmapRegion source, int color, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap result = drawOverlayColorOnGrayScale(source, color, obtain(pool, source.getWidth(), source.getHeight()));
+        return Metrics.end("overlayColorOnGrayScale", start, source, result, Metrics.pooled(pool));
+    }
+
+    private static Bitmap drawOverlayColorOnGrayScale(Bitmap source, int color, Bitmap mutableBitmap) {
+        return drawOverlayColorOnGrayScale(BitmapRegion.of(source), color, mutableBitmap);
     }
 
+    private static Bitmap drawOverlayColorOnGrayScale(BitmapRegion source, int color, Bitmap mutableBitmap) {
+        return applyInBands(source, PixelKernels.overlay(color), mutableBitmap);
+    }
 
     /**
      * Method to overlay a color on a gray scale Bitmap, passed as a resource id {@code id}.
@@ -290,18 +1573,195 @@ public class BitmapUtils {
      * @throws IOException
      */
     public static Bitmap overlayColorOnGrayScale(Resources res, int id, int color) throws IOException {
-        Bitmap mutableBitmap = getMutableBitmap(res, id);
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? resourceKey(res, id, "overlayColorOnGrayScale", color) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("overlayColorOnGrayScale", start, 0, 0, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap mutableBitmap = decodeGoverned(res, id, "overlayColorOnGrayScale");
+        Bitmap result = mutableBitmap == null ? null : putCached(key, overlayColorOnGrayScaleInPlace(mutableBitmap, color));
+        return Metrics.end("overlayColorOnGrayScale", start, 0, 0, result, Metrics.computed(key));
+    }
 
-        Canvas canvas = new Canvas(mutableBitmap);
-        canvas.drawBitmap(mutableBitmap, 0, 0, getGrayScalePaint());
+    /**
+     * Method to overlay a color on a gray scale Bitmap, passed as a resource id {@code id},
+     * decoding the resource with {@link #decodeSampled(Resources, int, int, int)}.
+     * Use this method if the result will be displayed smaller than the original image.
+     *
+     * @param res       A reference to Resources.
+     * @param id        The id of a drawable image.
+     * @param color     Color to overlay.
+     * @param reqWidth  int that represents the maximum width of the result.
+     * @param reqHeight int that represents the maximum height of the result.
+     * @return A colored gray scale Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap overlayColorOnGrayScale(Resources res, int id, int color, int reqWidth, int reqHeight) throws BitmapUtilsException {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? resourceKey(res, id, "overlayColorOnGrayScale", color, reqWidth, reqHeight) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("overlayColorOnGrayScale", start, 0, 0, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap mutableBitmap = decodeSampledUncached(res, id, reqWidth, reqHeight);
+        Bitmap result = mutableBitmap == null ? null : putCached(key, overlayColorOnGrayScaleInPlace(mutableBitmap, color));
+        return Metrics.end("overlayColorOnGrayScale", start, 0, 0, result, Metrics.computed(key));
+    }
 
-        Paint paint = new Paint();
-        paint.setAntiAlias(true);
-        ColorFilter filter = new LightingColorFilter(color, 1);
-        paint.setColorFilter(filter);
-        canvas.drawBitmap(mutableBitmap, 0, 0, paint);
+    private static Bitmap overlayColorOnGrayScaleInPlace(Bitmap mutableBitmap, int color) {
+        return applyInBands(mutableBitmap, PixelKernels.overlay(color), mutableBitmap);
+    }
 
-        return mutableBitmap;
+    /**
+     * Method to apply a chain of color operations to a Bitmap in a single pass.
+     * Linear chains (like gray scale, lighting, tint and saturation) are compiled into a single color matrix,
+     * drawn with a {@link android.graphics.ColorMatrixColorFilter}; chains with non-linear steps
+     * (like gamma and curves) are executed by the pure Java kernel of the compiled {@link ColorProgram}.
+     * For example {@code applyColorOp(source, ColorOp.overlay(color))} is like {@link #overlayColorOnGrayScale(Bitmap, int)}.
+     *
+     * @param source The original Bitmap.
+     * @param op     The {@link ColorOp} to apply.
+     * @return The colored Bitmap.
+     */
+    public static Bitmap applyColorOp(Bitmap source, ColorOp op) {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? keyFor(source, "applyColorOp", op.getSignature()) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("applyColorOp", start, source, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result = putCached(key, drawColorProgram(BitmapRegion.of(source), op.compile(),
+                createTransparentBitmap(source.getWidth(), source.getHeight())));
+        return Metrics.end("applyColorOp", start, source, result, Metrics.computed(key));
+    }
+
+    /**
+     * Method to apply a chain of color operations to a Bitmap in a single pass, drawing the result into {@code dest}.
+     *
+     * @param source The original Bitmap.
+     * @param op     The {@link ColorOp} to apply.
+     * @param dest   A mutable Bitmap with the same size of {@code source}.
+     * @return {@code dest}, that contains the colored Bitmap.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap applyColorOp(Bitmap source, ColorOp op, Bitmap dest) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkDestination(dest, source.getWidth(), source.getHeight());
+        return Metrics.end("applyColorOp", start, source, drawColorProgram(BitmapRegion.of(source), op.compile(), dest),
+                BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to apply a chain of color operations to a Bitmap in a single pass,
+     * using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original Bitmap.
+     * @param op     The {@link ColorOp} to apply.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The colored Bitmap.
+     */
+    public static Bitmap applyColorOp(Bitmap source, ColorOp op, BitmapPool pool) {
+        return applyColorOp(BitmapRegion.of(source), op, pool);
+    }
+
+    /**
+     * Method to apply a chain of color operations to a {@link BitmapRegion} in a single pass,
+     * using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param source The original region.
+     * @param op     The {@link ColorOp} to apply.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The colored Bitmap, with the size of the region.
+     */
+    public static Bitmap applyColorOp(BitmapRegion source, ColorOp op, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap result = drawColorProgram(source, op.compile(), obtain(pool, source.getWidth(), source.getHeight()));
+        return Metrics.end("applyColorOp", start, source, result, Metrics.pooled(pool));
+    }
+
+    //package-private method to execute a compiled program in a single pass: a draw with a ColorMatrixColorFilter
+    //if the program is linear, otherwise its kernel (the Canvas can't execute tables)
+    static Bitmap drawColorProgram(BitmapRegion source, ColorProgram program, Bitmap dest) {
+        if (!program.isLinear()) {
+            return applyInBands(source, program.asKernel(), dest);
+        }
+        dest.eraseColor(Color.TRANSPARENT);
+        DrawContext context = DrawContext.acquire();
+        try {
+            Paint paint = context.paint(Paint.ANTI_ALIAS_FLAG);
+            if (!program.isIdentity()) {
+                paint.setColorFilter(ColorFilters.program(program));
+            }
+            source.draw(context.canvas(dest), 0f, 0f, paint);
+        } finally {
+            context.release();
+        }
+        return dest;
+    }
+
+    //private method to apply a kernel to a whole Bitmap, without wrapping it in a BitmapRegion
+    private static Bitmap applyInBands(Bitmap source, PixelKernel kernel, Bitmap dest) {
+        return applyInBands(source, 0, 0, source.getWidth(), source.getHeight(), kernel, dest);
+    }
+
+    private static Bitmap applyInBands(BitmapRegion source, PixelKernel kernel, Bitmap dest) {
+        return applyInBands(source.getSource(), source.getLeft(), source.getTop(), source.getWidth(), source.getHeight(), kernel, dest);
+    }
+
+    //private method to apply a kernel in a single pass, reading the w x h pixels of bitmap at (left, top) and writing
+    //dest (also the same Bitmap) a band of rows at a time, so the int[] buffers stay small. The bands are
+    //disjoint, so they are processed in parallel by the TileEngine, each one with the PixelScratch of its thread:
+    //steady-state calls don't allocate.
+    private static Bitmap applyInBands(final Bitmap bitmap, final int left, final int top, final int w, final int h,
+                                       final PixelKernel kernel, final Bitmap dest) {
+        //bands start at multiples of 4 rows, for the patterns of the dithering kernels
+        final int rows = Math.min(h, Math.max(4, (BAND_PIXELS / w) & ~3));
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            //setPixels doesn't write into ALPHA_8 Bitmaps before API 26: the bands pack their bytes
+            //and the whole image is copied with copyPixelsFromBuffer at the end
+            final ByteBuffer alpha = dest.getConfig() == Bitmap.Config.ALPHA_8 ? scratch.bytes(dest.getRowBytes() * h) : null;
+            TileEngine.getDefault().forEach((h + rows - 1) / rows, new TileEngine.Task() {
+                @Override
+                public void run(int index) {
+                    int y = index * rows;
+                    int n = Math.min(rows, h - y);
+                    PixelScratch bandScratch = PixelScratch.acquire();
+                    try {
+                        PixelBuffer band = bandScratch.buffer(0, w, rows);
+                        int[] pixels = band.getPixels();
+                        bitmap.getPixels(pixels, 0, w, left, top + y, w, n);
+                        if (kernel != null) {
+                            kernel.apply(band, band, 0, 0, w, n);
+                        }
+                        if (alpha != null) {
+                            packAlpha(pixels, w, n, alpha.array(), y * dest.getRowBytes(), dest.getRowBytes());
+                        } else {
+                            dest.setPixels(pixels, 0, w, 0, y, w, n);
+                        }
+                    } finally {
+                        bandScratch.release();
+                    }
+                }
+            });
+            if (alpha != null) {
+                dest.copyPixelsFromBuffer(alpha);
+            }
+        } finally {
+            scratch.release();
+        }
+        return dest;
+    }
+
+    //private method to copy the alpha of n rows of w pixels into the bytes of an ALPHA_8 Bitmap
+    private static void packAlpha(int[] pixels, int w, int n, byte[] alpha, int offset, int stride) {
+        for (int row = 0; row < n; row++) {
+            int o = offset + row * stride;
+            for (int x = 0, i = row * w; x < w; x++, i++) {
+                alpha[o + x] = (byte) (pixels[i] >>> 24);
+            }
+        }
     }
 
 
@@ -325,6 +1785,7 @@ public class BitmapUtils {
      * Method to combine a List of (colored) bitmaps into a single image, based on the {@code direction}, specified
      * using constants defined in the inner class {@link Direction}.
      * The result will be an image with some original pieces and other gray scaled.
+     * If the threshold changes often, use a {@link CombinedPiecesRenderer}, that updates only the changed pieces.
      * <br>
      * ----------------------------------
      * -------------Examples-------------
@@ -376,78 +1837,150 @@ public class BitmapUtils {
      * @return The result bitmap partially gray scaled and partially as original.
      */
     public static Bitmap geCombinedGrayscaledByPieces(List<Bitmap> bitmapList, int threshold, int numPieces, int direction) {
-        //get a grayscale paint object to draw grayscaled images
-        Paint paint = getGrayScalePaint();
+        return geCombinedGrayscaledByPieces(bitmapList, threshold, numPieces, direction, (BitmapPool) null);
+    }
+
+    /**
+     * Method to combine a List of (colored) bitmaps into a single image, as
+     * {@link #geCombinedGrayscaledByPieces(List, int, int, int)}, drawing the result into {@code dest}.
+     *
+     * @param bitmapList A List of pieces of Bitmaps to be combined vertically or horizontally.
+     * @param threshold  The limit before to change from original to grayscaled images.
+     * @param numPieces  int that represents the number of pieces.
+     * @param direction  int the specifies the {@link Direction}.
+     * @param dest       A mutable Bitmap with the size of the combined image.
+     * @return {@code dest}, that contains the result partially gray scaled and partially as original.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap geCombinedGrayscaledByPieces(List<Bitmap> bitmapList, int threshold, int numPieces, int direction, Bitmap dest) throws BitmapUtilsException {
+        int[] size = getCombinedSize(bitmapList.get(0).getWidth(), bitmapList.get(0).getHeight(), numPieces, direction);
+        if (size == null) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "direction must be a Direction constant");
+        }
+        long start = Metrics.start();
+        checkDestination(dest, size[0], size[1]);
+        dest.eraseColor(Color.TRANSPARENT);
+        drawCombinedGrayscaledByPieces(toRegions(bitmapList, numPieces), threshold, numPieces, direction, dest);
+        return Metrics.end("geCombinedGrayscaledByPieces", start, size[0], size[1], dest, BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to combine a List of (colored) bitmaps into a single image, as
+     * {@link #geCombinedGrayscaledByPieces(List, int, int, int)}, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param bitmapList A List of pieces of Bitmaps to be combined vertically or horizontally.
+     * @param threshold  The limit before to change from original to grayscaled images.
+     * @param numPieces  int that represents the number of pieces.
+     * @param direction  int the specifies the {@link Direction}.
+     * @param pool       The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The result bitmap partially gray scaled and partially as original.
+     */
+    public static Bitmap geCombinedGrayscaledByPieces(List<Bitmap> bitmapList, int threshold, int numPieces, int direction, BitmapPool pool) {
+        long start = Metrics.start();
+        int[] size = getCombinedSize(bitmapList.get(0).getWidth(), bitmapList.get(0).getHeight(), numPieces, direction);
+        if (size == null) {
+            return null;
+        }
+        Bitmap result = drawCombinedGrayscaledByPieces(toRegions(bitmapList, numPieces), threshold, numPieces, direction, createTransparentBitmap(size[0], size[1], pool));
+        return Metrics.end("geCombinedGrayscaledByPieces", start, size[0], size[1], result, Metrics.pooled(pool));
+    }
+
+    /**
+     * Method to combine a List of {@link BitmapRegion}s (for example the result of
+     * {@link #splitImageHorizontallyIntoRegions(Bitmap, int)}) into a single image,
+     * as {@link #geCombinedGrayscaledByPieces(List, int, int, int)}, without copies of the pieces.
+     *
+     * @param regions   A List of regions, with the same size, to be combined vertically or horizontally.
+     * @param threshold The limit before to change from original to grayscaled images.
+     * @param numPieces int that represents the number of pieces.
+     * @param direction int the specifies the {@link Direction}.
+     * @return The result bitmap partially gray scaled and partially as original.
+     */
+    public static Bitmap getCombinedGrayscaledByRegions(List<BitmapRegion> regions, int threshold, int numPieces, int direction) {
+        return getCombinedGrayscaledByRegions(regions, threshold, numPieces, direction, null);
+    }
 
-        Bitmap finalBitmap = null;
-        float delta = 0f;
-        Canvas comboImage;
-        int originalTotalWidth, originalTotalHeight;
+    /**
+     * Method to combine a List of {@link BitmapRegion}s into a single image, as
+     * {@link #getCombinedGrayscaledByRegions(List, int, int, int)}, using a Bitmap obtained from {@code pool} as result.
+     *
+     * @param regions   A List of regions, with the same size, to be combined vertically or horizontally.
+     * @param threshold The limit before to change from original to grayscaled images.
+     * @param numPieces int that represents the number of pieces.
+     * @param direction int the specifies the {@link Direction}.
+     * @param pool      The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The result bitmap partially gray scaled and partially as original.
+     */
+    public static Bitmap getCombinedGrayscaledByRegions(List<BitmapRegion> regions, int threshold, int numPieces, int direction, BitmapPool pool) {
+        long start = Metrics.start();
+        int[] size = getCombinedSize(regions.get(0).getWidth(), regions.get(0).getHeight(), numPieces, direction);
+        if (size == null) {
+            return null;
+        }
+        Bitmap result = drawCombinedGrayscaledByPieces(regions, threshold, numPieces, direction, createTransparentBitmap(size[0], size[1], pool));
+        return Metrics.end("getCombinedGrayscaledByRegions", start, size[0], size[1], result, Metrics.pooled(pool));
+    }
 
-        //I'm not using the grayscale method, because in this way i archive higher performances.
+    //private method to get {width, height} of the combined image, or null if direction isn't valid
+    private static int[] getCombinedSize(int pieceWidth, int pieceHeight, int numPieces, int direction) {
         switch (direction) {
             case Direction.LEFT_2_RIGHT:
-                originalTotalWidth = bitmapList.get(0).getWidth() * numPieces;
-                finalBitmap = createTransparentBitmap(originalTotalWidth, bitmapList.get(0).getHeight());
-                comboImage = new Canvas(finalBitmap);
-                for (int i = 0; i < numPieces; i++) {
-                    comboImage.translate(delta, 0f);
-                    if (i > threshold - 1) {
-                        //grey
-                        comboImage.drawBitmap(bitmapList.get(i), 0f, 0f, paint);
-                    } else {
-                        comboImage.drawBitmap(bitmapList.get(i), 0f, 0f, null);
-                    }
-                    delta = originalTotalWidth / numPieces;
-                }
-                break;
             case Direction.RIGHT_2_LEFT:
-                originalTotalWidth = bitmapList.get(0).getWidth() * numPieces;
-                finalBitmap = createTransparentBitmap(originalTotalWidth, bitmapList.get(0).getHeight());
-                comboImage = new Canvas(finalBitmap);
-                for (int i = 0; i < numPieces; i++) {
-                    comboImage.translate(delta, 0f);
-                    if (i < threshold - 1) {
-                        //grey
-                        comboImage.drawBitmap(bitmapList.get(i), 0f, 0f, paint);
-                    } else {
-                        comboImage.drawBitmap(bitmapList.get(i), 0f, 0f, null);
-                    }
-                    delta = originalTotalWidth / numPieces;
-                }
-                break;
+                return new int[]{pieceWidth * numPieces, pieceHeight};
             case Direction.UP_2_DOWN:
-                originalTotalHeight = bitmapList.get(0).getHeight() * numPieces;
-                finalBitmap = createTransparentBitmap(bitmapList.get(0).getWidth(), originalTotalHeight);
-                comboImage = new Canvas(finalBitmap);
-                for (int i = 0; i < numPieces; i++) {
-                    comboImage.translate(0f, delta);
-                    if (i > threshold - 1) {
-                        //grey
-                        comboImage.drawBitmap(bitmapList.get(i), 0f, 0f, paint);
-                    } else {
-                        comboImage.drawBitmap(bitmapList.get(i), 0f, 0f, null);
-                    }
-                    delta = originalTotalHeight / numPieces;
-                }
-                break;
             case Direction.DOWN_2_UP:
-                originalTotalHeight = bitmapList.get(0).getHeight() * numPieces;
-                finalBitmap = createTransparentBitmap(bitmapList.get(0).getWidth(), originalTotalHeight);
-                comboImage = new Canvas(finalBitmap);
-                for (int i = 0; i < numPieces; i++) {
-                    comboImage.translate(0f, delta);
-                    if (i < threshold - 1) {
-                        //grey
-                        comboImage.drawBitmap(bitmapList.get(i), 0f, 0f, paint);
-                    } else {
-                        comboImage.drawBitmap(bitmapList.get(i), 0f, 0f, null);
-                    }
-                    delta = originalTotalHeight / numPieces;
-                }
-                break;
+                return new int[]{pieceWidth, pieceHeight * numPieces};
+            default:
+                return null;
+        }
+    }
+
+    private static List<BitmapRegion> toRegions(List<Bitmap> bitmapList, int numPieces) {
+        List<BitmapRegion> regions = new ArrayList<>(numPieces);
+        for (int i = 0; i < numPieces; i++) {
+            regions.add(BitmapRegion.of(bitmapList.get(i)));
+        }
+        return regions;
+    }
+
+    private static Bitmap drawCombinedGrayscaledByPieces(List<BitmapRegion> regions, int threshold, int numPieces, int direction, Bitmap finalBitmap) {
+        //get a grayscale paint object to draw grayscaled images
+        Paint paint = getGrayScalePaint();
+
+        DrawContext context = DrawContext.acquire();
+        try {
+            Canvas comboImage = context.canvas(finalBitmap);
+            boolean horizontal = isHorizontal(direction);
+            int delta = horizontal ? finalBitmap.getWidth() / numPieces : finalBitmap.getHeight() / numPieces;
+
+            //I'm not using the grayscale method, because in this way i archive higher performances.
+            for (int i = 0; i < numPieces; i++) {
+                regions.get(i).draw(comboImage, horizontal ? i * delta : 0f, horizontal ? 0f : i * delta,
+                        isGrayPiece(i, threshold, direction) ? paint : null);
+            }
+        } finally {
+            context.release();
+        }
+        return finalBitmap;
+    }
+
+    //package-private method to know if pieces are combined side by side (true) or one above the other (false)
+    static boolean isHorizontal(int direction) {
+        return direction == Direction.LEFT_2_RIGHT || direction == Direction.RIGHT_2_LEFT;
+    }
+
+    //package-private method to know if the piece i is gray scaled, as explained in geCombinedGrayscaledByPieces
+    static boolean isGrayPiece(int i, int threshold, int direction) {
+        switch (direction) {
+            case Direction.LEFT_2_RIGHT:
+            case Direction.UP_2_DOWN:
+                return i > threshold - 1;
+            case Direction.RIGHT_2_LEFT:
+            case Direction.DOWN_2_UP:
+                return i < threshold - 1;
+            default:
+                return false;
         }
-        return finalBitmap;
     }
 
     /**
@@ -458,49 +1991,537 @@ public class BitmapUtils {
      * @return A transparent Bitmap with the specified size.
      */
     public static Bitmap createTransparentBitmap(int w, int h) {
-        return Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        //a new Bitmap is already transparent
+        return obtain(null, w, h);
+    }
+
+    /**
+     * Method to get a transparent Bitmap from {@code pool}.
+     *
+     * @param w    int that represents the width.
+     * @param h    int that represents the height.
+     * @param pool The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A transparent Bitmap with the specified size.
+     */
+    public static Bitmap createTransparentBitmap(int w, int h, BitmapPool pool) {
+        if (pool == null) {
+            return createTransparentBitmap(w, h);
+        }
+        Bitmap bitmap = obtain(pool, w, h);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    //package-private method to get an ARGB_8888 Bitmap that will be completely overwritten (or erased) by the caller
+    static Bitmap obtain(BitmapPool pool, int w, int h) {
+        return obtain(pool, w, h, Bitmap.Config.ARGB_8888);
+    }
+
+    //package-private method to get a Bitmap with config that will be completely overwritten (or erased) by the caller
+    static Bitmap obtain(BitmapPool pool, int w, int h, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        if (pool != null) {
+            bitmap = pool.getPooled(w, h, config);
+            Metrics.poolLookup(bitmap != null);
+        }
+        MemoryGovernor governor = memoryGovernor;
+        if (governor == null) {
+            return bitmap != null ? bitmap : Bitmap.createBitmap(w, h, config);
+        }
+        if (bitmap == null) {
+            //backpressure: it can trim pools and caches, and wait that other results are released
+            governor.reserve((long) w * h * bytesPerPixel(config), "obtain");
+            bitmap = Bitmap.createBitmap(w, h, config);
+        }
+        governor.track(bitmap);
+        return bitmap;
+    }
+
+    //package-private method to apply the backpressure of the governor before an allocation that can't use obtain,
+    //because Android allocates the result (for example Bitmap.createBitmap(source, x, y, w, h, matrix, filter))
+    static void reserve(int w, int h, Bitmap.Config config, String operation) {
+        MemoryGovernor governor = memoryGovernor;
+        if (governor != null) {
+            governor.reserve((long) w * h * bytesPerPixel(config), operation);
+        }
+    }
+
+    //package-private method to count a Bitmap allocated by Android (after reserve, or by a decode) as a live result
+    static Bitmap tracked(Bitmap bitmap) {
+        MemoryGovernor governor = memoryGovernor;
+        if (governor != null) {
+            governor.track(bitmap);
+        }
+        return bitmap;
+    }
+
+    //package-private method to recycle a Bitmap obtained for a result that will not be returned,
+    //releasing it from the governor, so waiting requests can continue immediately
+    static void discard(Bitmap bitmap) {
+        MemoryGovernor governor = memoryGovernor;
+        if (governor != null) {
+            governor.release(bitmap);
+        }
+        bitmap.recycle();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+
+    //private method to check a Bitmap written in place, before reading its size
+    private static void checkMutable(Bitmap bitmap, String name) throws BitmapUtilsException {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, name + " must be a mutable and not recycled Bitmap");
+        }
+    }
+
+    //private method to validate a destination Bitmap passed by the caller
+    private static void checkDestination(Bitmap dest, int w, int h) throws BitmapUtilsException {
+        checkMutable(dest, "dest");
+        if (dest.getWidth() != w || dest.getHeight() != h) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "dest must be " + w + "x" + h);
+        }
     }
 
     /**
      * Method to split an image vertically into a List
      * composed by {@code piecesNum} of Bitmaps.
+     * To avoid copies of the pixels, use {@link #splitImageVerticallyIntoRegions(Bitmap, int)}.
      *
      * @param source    The source Bitmap.
      * @param piecesNum int that represents the number of pieces.
      * @return The List of Bitmap's pieces.
      */
     public static List<Bitmap> splitImageVertically(Bitmap source, int piecesNum) {
-        List<Bitmap> pieces = new ArrayList<>();
-        int height = source.getHeight() / piecesNum;
-        int start = 0;
-        for (int i = 0; i < piecesNum; i++) {
-            Bitmap pieceBitmap = Bitmap.createBitmap(source, 0, start, source.getWidth() - 1, height - 1);
-            pieces.add(pieceBitmap);
-            start = (source.getHeight() / piecesNum) * (i + 1);
-        }
-        return pieces;
+        long start = Metrics.start();
+        List<Bitmap> pieces = toBitmaps(splitImageVerticallyIntoRegions(source, piecesNum));
+        return Metrics.endPieces("splitImageVertically", start, source.getWidth(), source.getHeight(), pieces, false);
     }
 
     /**
      * Method to split an image horizontally into a List
      * composed by {@code piecesNum} of Bitmaps.
+     * To avoid copies of the pixels, use {@link #splitImageHorizontallyIntoRegions(Bitmap, int)}.
      *
      * @param source    The source Bitmap.
      * @param piecesNum int that represents the number of pieces.
      * @return The List of Bitmap's pieces.
      */
     public static List<Bitmap> splitImageHorizontally(Bitmap source, int piecesNum) {
-        List<Bitmap> pieces = new ArrayList<>();
+        long start = Metrics.start();
+        List<Bitmap> pieces = toBitmaps(splitImageHorizontallyIntoRegions(source, piecesNum));
+        return Metrics.endPieces("splitImageHorizontally", start, source.getWidth(), source.getHeight(), pieces, true);
+    }
+
+    /**
+     * Method to split an image vertically into a List composed by {@code piecesNum}
+     * {@link BitmapRegion}s: windows onto {@code source}, without copies of the pixels.
+     * Every piece has height {@code source.getHeight() / piecesNum}.
+     *
+     * @param source    The source Bitmap, shared by all regions.
+     * @param piecesNum int that represents the number of pieces.
+     * @return The List of regions.
+     */
+    public static List<BitmapRegion> splitImageVerticallyIntoRegions(Bitmap source, int piecesNum) {
+        List<BitmapRegion> pieces = new ArrayList<>(piecesNum);
+        int height = source.getHeight() / piecesNum;
+        for (int i = 0; i < piecesNum; i++) {
+            int start = height * i;
+            pieces.add(new BitmapRegion(source, 0, start, source.getWidth(), start + height));
+        }
+        return pieces;
+    }
+
+    /**
+     * Method to split an image horizontally into a List composed by {@code piecesNum}
+     * {@link BitmapRegion}s: windows onto {@code source}, without copies of the pixels.
+     * Every piece has width {@code source.getWidth() / piecesNum}.
+     *
+     * @param source    The source Bitmap, shared by all regions.
+     * @param piecesNum int that represents the number of pieces.
+     * @return The List of regions.
+     */
+    public static List<BitmapRegion> splitImageHorizontallyIntoRegions(Bitmap source, int piecesNum) {
+        List<BitmapRegion> pieces = new ArrayList<>(piecesNum);
         int width = source.getWidth() / piecesNum;
-        int start = 0;
         for (int i = 0; i < piecesNum; i++) {
-            Bitmap pieceBitmap = Bitmap.createBitmap(source, start, 0, width - 1, source.getHeight() - 1);
-            pieces.add(pieceBitmap);
-            start = (source.getWidth() / piecesNum) * (i + 1);
+            int start = width * i;
+            pieces.add(new BitmapRegion(source, start, 0, start + width, source.getHeight()));
+        }
+        return pieces;
+    }
+
+    private static List<Bitmap> toBitmaps(List<BitmapRegion> regions) {
+        List<Bitmap> pieces = new ArrayList<>(regions.size());
+        for (BitmapRegion region : regions) {
+            pieces.add(region.toBitmap());
         }
         return pieces;
     }
 
+    /**
+     * Method to decode a resource image as a mutable Bitmap, with a size that fits
+     * inside {@code reqWidth} x {@code reqHeight}, maintaining original proportions.
+     * Bounds are decoded first, then the image is decoded with the biggest power-of-two
+     * {@code inSampleSize} that keeps it bigger than the requested size, and finally it's
+     * scaled down the rest of the way. The full resolution image is never in memory.
+     *
+     * @param res       A reference to Resources.
+     * @param id        The id of a drawable image.
+     * @param reqWidth  int that represents the maximum width of the result.
+     * @param reqHeight int that represents the maximum height of the result.
+     * @return A mutable Bitmap, or null if the image can't be decoded.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap decodeSampled(Resources res, int id, int reqWidth, int reqHeight) throws BitmapUtilsException {
+        long start = Metrics.start();
+        TransformCache.Key key = isCaching() ? resourceKey(res, id, "decodeSampled", reqWidth, reqHeight) : null;
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return Metrics.end("decodeSampled", start, 0, 0, cached, BitmapUtilsMetrics.RESULT_CACHE_HIT);
+        }
+        Bitmap result = putCached(key, decodeSampledUncached(res, id, reqWidth, reqHeight));
+        return Metrics.end("decodeSampled", start, 0, 0, result, Metrics.computed(key));
+    }
+
+    //the result is always a new Bitmap, that the caller can modify
+    private static Bitmap decodeSampledUncached(Resources res, int id, int reqWidth, int reqHeight) throws BitmapUtilsException {
+        checkRequestedSize(reqWidth, reqHeight);
+        BitmapFactory.Options bounds = getBoundsOption();
+        BitmapFactory.decodeResource(res, id, bounds);
+        Bitmap decoded = BitmapFactory.decodeResource(res, id, getSampledOption(bounds, reqWidth, reqHeight));
+        return downscaleToFit(decoded, reqWidth, reqHeight);
+    }
+
+    /**
+     * Method to decode an image file as a mutable Bitmap, with a size that fits
+     * inside {@code reqWidth} x {@code reqHeight}, as {@link #decodeSampled(Resources, int, int, int)}.
+     *
+     * @param filePath  The path of the image file.
+     * @param reqWidth  int that represents the maximum width of the result.
+     * @param reqHeight int that represents the maximum height of the result.
+     * @return A mutable Bitmap, or null if the image can't be decoded.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap decodeSampled(String filePath, int reqWidth, int reqHeight) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkRequestedSize(reqWidth, reqHeight);
+        BitmapFactory.Options bounds = getBoundsOption();
+        BitmapFactory.decodeFile(filePath, bounds);
+        Bitmap decoded = BitmapFactory.decodeFile(filePath, getSampledOption(bounds, reqWidth, reqHeight));
+        return Metrics.end("decodeSampled", start, bounds.outWidth, bounds.outHeight, downscaleToFit(decoded, reqWidth, reqHeight),
+                BitmapUtilsMetrics.RESULT_ALLOCATED);
+    }
+
+    /**
+     * Method to decode an image from a FileDescriptor as a mutable Bitmap, with a size that fits
+     * inside {@code reqWidth} x {@code reqHeight}, as {@link #decodeSampled(Resources, int, int, int)}.
+     * The FileDescriptor must be seekable, because it's read twice.
+     *
+     * @param fd        The FileDescriptor of the image.
+     * @param reqWidth  int that represents the maximum width of the result.
+     * @param reqHeight int that represents the maximum height of the result.
+     * @return A mutable Bitmap, or null if the image can't be decoded.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap decodeSampled(FileDescriptor fd, int reqWidth, int reqHeight) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkRequestedSize(reqWidth, reqHeight);
+        BitmapFactory.Options bounds = getBoundsOption();
+        BitmapFactory.decodeFileDescriptor(fd, null, bounds);
+        Bitmap decoded = BitmapFactory.decodeFileDescriptor(fd, null, getSampledOption(bounds, reqWidth, reqHeight));
+        return Metrics.end("decodeSampled", start, bounds.outWidth, bounds.outHeight, downscaleToFit(decoded, reqWidth, reqHeight),
+                BitmapUtilsMetrics.RESULT_ALLOCATED);
+    }
+
+    /**
+     * Method to decode an image from a byte[] as a mutable Bitmap, with a size that fits
+     * inside {@code reqWidth} x {@code reqHeight}, as {@link #decodeSampled(Resources, int, int, int)}.
+     *
+     * @param data      The byte[] that contains the compressed image.
+     * @param reqWidth  int that represents the maximum width of the result.
+     * @param reqHeight int that represents the maximum height of the result.
+     * @return A mutable Bitmap, or null if the image can't be decoded.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap decodeSampled(byte[] data, int reqWidth, int reqHeight) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkRequestedSize(reqWidth, reqHeight);
+        BitmapFactory.Options bounds = getBoundsOption();
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+        Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length, getSampledOption(bounds, reqWidth, reqHeight));
+        return Metrics.end("decodeSampled", start, bounds.outWidth, bounds.outHeight, downscaleToFit(decoded, reqWidth, reqHeight),
+                BitmapUtilsMetrics.RESULT_ALLOCATED);
+    }
+
+    /**
+     * Method to decode an image from an InputStream as a mutable Bitmap, with a size that fits
+     * inside {@code reqWidth} x {@code reqHeight}, as {@link #decodeSampled(Resources, int, int, int)}.
+     * The stream is buffered and marked to read it twice, so image headers bigger than
+     * {@link #STREAM_MARK_LIMIT} bytes are not supported.
+     *
+     * @param is        The InputStream of the image.
+     * @param reqWidth  int that represents the maximum width of the result.
+     * @param reqHeight int that represents the maximum height of the result.
+     * @return A mutable Bitmap, or null if the image can't be decoded.
+     * @throws BitmapUtilsException
+     * @throws IOException
+     */
+    public static Bitmap decodeSampled(InputStream is, int reqWidth, int reqHeight) throws BitmapUtilsException, IOException {
+        long start = Metrics.start();
+        checkRequestedSize(reqWidth, reqHeight);
+        InputStream markable = is.markSupported() ? is : new BufferedInputStream(is);
+        markable.mark(STREAM_MARK_LIMIT);
+        BitmapFactory.Options bounds = getBoundsOption();
+        BitmapFactory.decodeStream(markable, null, bounds);
+        markable.reset();
+        Bitmap decoded = BitmapFactory.decodeStream(markable, null, getSampledOption(bounds, reqWidth, reqHeight));
+        return Metrics.end("decodeSampled", start, bounds.outWidth, bounds.outHeight, downscaleToFit(decoded, reqWidth, reqHeight),
+                BitmapUtilsMetrics.RESULT_ALLOCATED);
+    }
+
+    /**
+     * Method to decode only a rectangle of a resource image as a mutable Bitmap, with a size that fits
+     * inside {@code reqWidth} x {@code reqHeight}, using a {@link BitmapRegionDecoder}.
+     * Only the pixels of {@code region} are decoded, already subsampled.
+     *
+     * @param res       A reference to Resources.
+     * @param id        The id of a drawable image (PNG or JPEG).
+     * @param region    Rect that represents the region to decode, in the coordinates of the original image.
+     * @param reqWidth  int that represents the maximum width of the result.
+     * @param reqHeight int that represents the maximum height of the result.
+     * @return A mutable Bitmap, or null if the region can't be decoded.
+     * @throws BitmapUtilsException
+     * @throws IOException
+     */
+    public static Bitmap decodeSampledRegion(Resources res, int id, Rect region, int reqWidth, int reqHeight) throws BitmapUtilsException, IOException {
+        long start = Metrics.start();
+        checkRequestedSize(reqWidth, reqHeight);
+        BitmapRegionDecoder decoder = newRegionDecoder(res, id);
+        Bitmap result;
+        try {
+            result = decodeSampledRegion(decoder, region, calculateInSampleSize(region.width(), region.height(), reqWidth, reqHeight), reqWidth, reqHeight);
+        } finally {
+            decoder.recycle();
+        }
+        return Metrics.end("decodeSampledRegion", start, region.width(), region.height(), result, BitmapUtilsMetrics.RESULT_ALLOCATED);
+    }
+
+    /**
+     * Method to decode only a rectangle of an image file as a mutable Bitmap, as
+     * {@link #decodeSampledRegion(Resources, int, Rect, int, int)}.
+     *
+     * @param filePath  The path of the image file (PNG or JPEG).
+     * @param region    Rect that represents the region to decode, in the coordinates of the original image.
+     * @param reqWidth  int that represents the maximum width of the result.
+     * @param reqHeight int that represents the maximum height of the result.
+     * @return A mutable Bitmap, or null if the region can't be decoded.
+     * @throws BitmapUtilsException
+     * @throws IOException
+     */
+    public static Bitmap decodeSampledRegion(String filePath, Rect region, int reqWidth, int reqHeight) throws BitmapUtilsException, IOException {
+        long start = Metrics.start();
+        checkRequestedSize(reqWidth, reqHeight);
+        BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(filePath, false);
+        Bitmap result;
+        try {
+            result = decodeSampledRegion(decoder, region, calculateInSampleSize(region.width(), region.height(), reqWidth, reqHeight), reqWidth, reqHeight);
+        } finally {
+            decoder.recycle();
+        }
+        return Metrics.end("decodeSampledRegion", start, region.width(), region.height(), result, BitmapUtilsMetrics.RESULT_ALLOCATED);
+    }
+
+    /**
+     * Method to apply {@code kernel} to an image file of any size, writing the result to {@code out}
+     * as a raw ARGB_8888 image (see {@link it.playfellas.androidbitmaputilslib.pixel.RawPixelFormat}).
+     * The image is decoded and processed by bands of rows with a {@link RegionDecoderTileSource},
+     * so the peak memory is a few bands, also for images bigger than the heap.
+     *
+     * @param filePath The path of the image file (PNG or JPEG).
+     * @param kernel   The kernel to apply, for example one of {@link PixelKernels}.
+     * @param out      The OutputStream where the result is written. It's not closed by this method.
+     * @throws IOException
+     */
+    public static void streamKernel(String filePath, PixelKernel kernel, OutputStream out) throws IOException {
+        long start = Metrics.start();
+        RegionDecoderTileSource source = new RegionDecoderTileSource(filePath);
+        try {
+            new TileStreamer(TileEngine.getDefault()).apply(source, kernel, RawTileSink.of(out));
+            Metrics.endData("streamKernel", start, source.getWidth(), source.getHeight(), source.getWidth(), source.getHeight(),
+                    0L, BitmapUtilsMetrics.RESULT_DEST);
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Method to reduce an image file of any size to {@code width} x {@code height}, writing the result to {@code out}
+     * as a raw ARGB_8888 image (see {@link it.playfellas.androidbitmaputilslib.pixel.RawPixelFormat}).
+     * The image is decoded by bands of rows with a {@link RegionDecoderTileSource} and reduced
+     * with the area averaging of {@link PixelScaler.Quality#HIGH}, so the peak memory is a few bands.
+     *
+     * @param filePath The path of the image file (PNG or JPEG).
+     * @param width    int that represents the width of the result, not bigger than the image.
+     * @param height   int that represents the height of the result, not bigger than the image.
+     * @param out      The OutputStream where the result is written. It's not closed by this method.
+     * @throws BitmapUtilsException
+     * @throws IOException
+     */
+    public static void streamDownscale(String filePath, int width, int height, OutputStream out) throws BitmapUtilsException, IOException {
+        long start = Metrics.start();
+        checkRequestedSize(width, height);
+        RegionDecoderTileSource source = new RegionDecoderTileSource(filePath);
+        try {
+            if (width > source.getWidth() || height > source.getHeight()) {
+                throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "width and height must not be bigger than the image");
+            }
+            new TileStreamer(TileEngine.getDefault()).downscale(source, width, height, RawTileSink.of(out));
+            Metrics.endData("streamDownscale", start, source.getWidth(), source.getHeight(), width, height,
+                    0L, BitmapUtilsMetrics.RESULT_DEST);
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Method to split a resource image horizontally into a List composed by {@code piecesNum} of Bitmaps,
+     * decoding every piece directly with a {@link BitmapRegionDecoder}, so the whole image is never in memory.
+     * The requested size is the size of the whole image: the pieces are
+     * {@code reqWidth / piecesNum} wide (at most).
+     *
+     * @param res       A reference to Resources.
+     * @param id        The id of a drawable image (PNG or JPEG).
+     * @param piecesNum int that represents the number of pieces.
+     * @param reqWidth  int that represents the maximum width of the whole image.
+     * @param reqHeight int that represents the maximum height of the whole image.
+     * @return The List of Bitmap's pieces.
+     * @throws BitmapUtilsException
+     * @throws IOException
+     */
+    public static List<Bitmap> splitImageHorizontally(Resources res, int id, int piecesNum, int reqWidth, int reqHeight) throws BitmapUtilsException, IOException {
+        return decodeSampledPieces(res, id, piecesNum, reqWidth, reqHeight, true);
+    }
+
+    /**
+     * Method to split a resource image vertically into a List composed by {@code piecesNum} of Bitmaps,
+     * decoding every piece directly with a {@link BitmapRegionDecoder}, so the whole image is never in memory.
+     * The requested size is the size of the whole image: the pieces are
+     * {@code reqHeight / piecesNum} high (at most).
+     *
+     * @param res       A reference to Resources.
+     * @param id        The id of a drawable image (PNG or JPEG).
+     * @param piecesNum int that represents the number of pieces.
+     * @param reqWidth  int that represents the maximum width of the whole image.
+     * @param reqHeight int that represents the maximum height of the whole image.
+     * @return The List of Bitmap's pieces.
+     * @throws BitmapUtilsException
+     * @throws IOException
+     */
+    public static List<Bitmap> splitImageVertically(Resources res, int id, int piecesNum, int reqWidth, int reqHeight) throws BitmapUtilsException, IOException {
+        return decodeSampledPieces(res, id, piecesNum, reqWidth, reqHeight, false);
+    }
+
+    private static List<Bitmap> decodeSampledPieces(Resources res, int id, int piecesNum, int reqWidth, int reqHeight, boolean horizontally) throws BitmapUtilsException, IOException {
+        long startNanos = Metrics.start();
+        checkRequestedSize(reqWidth, reqHeight);
+        if (piecesNum <= 0) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "piecesNum must be >0");
+        }
+        BitmapRegionDecoder decoder = newRegionDecoder(res, id);
+        try {
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            //the same sample size for all pieces, computed on the whole image
+            int inSampleSize = calculateInSampleSize(width, height, reqWidth, reqHeight);
+            int pieceReqWidth = horizontally ? Math.max(1, reqWidth / piecesNum) : reqWidth;
+            int pieceReqHeight = horizontally ? reqHeight : Math.max(1, reqHeight / piecesNum);
+            int pieceSize = (horizontally ? width : height) / piecesNum;
+
+            List<Bitmap> pieces = new ArrayList<>();
+            for (int i = 0; i < piecesNum; i++) {
+                int start = pieceSize * i;
+                Rect region = horizontally ? new Rect(start, 0, start + pieceSize, height) : new Rect(0, start, width, start + pieceSize);
+                pieces.add(decodeSampledRegion(decoder, region, inSampleSize, pieceReqWidth, pieceReqHeight));
+            }
+            return Metrics.endPieces(horizontally ? "splitImageHorizontally" : "splitImageVertically", startNanos, width, height, pieces, horizontally);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    private static Bitmap decodeSampledRegion(BitmapRegionDecoder decoder, Rect region, int inSampleSize, int reqWidth, int reqHeight) {
+        BitmapFactory.Options opt = getMutableOption();
+        opt.inSampleSize = inSampleSize;
+        MemoryGovernor governor = memoryGovernor;
+        if (governor != null) {
+            governor.degrade(opt, region.width(), region.height(), "decodeSampledRegion");
+        }
+        return downscaleToFit(decoder.decodeRegion(region, opt), reqWidth, reqHeight);
+    }
+
+    private static BitmapRegionDecoder newRegionDecoder(Resources res, int id) throws IOException {
+        InputStream is = res.openRawResource(id);
+        try {
+            return BitmapRegionDecoder.newInstance(is, false);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Method to get the biggest power-of-two sample size that keeps the decoded image
+     * bigger or equals than the requested size.
+     *
+     * @param width     int that represents the width of the original image.
+     * @param height    int that represents the height of the original image.
+     * @param reqWidth  int that represents the requested width.
+     * @param reqHeight int that represents the requested height.
+     * @return int that represents the {@code inSampleSize}.
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    //private method to scale down a decoded bitmap, to fit inside reqWidth x reqHeight
+    private static Bitmap downscaleToFit(Bitmap decoded, int reqWidth, int reqHeight) {
+        if (decoded == null) {
+            return null;
+        }
+        float factor = Math.min(reqWidth / (float) decoded.getWidth(), reqHeight / (float) decoded.getHeight());
+        if (factor >= 1f) {
+            return tracked(decoded);
+        }
+        int width = Math.max(1, Math.round(decoded.getWidth() * factor));
+        int height = Math.max(1, Math.round(decoded.getHeight() * factor));
+        //the result keeps the config of the decode (for example RGB_565, also when asked by the governor).
+        //ALPHA_8 (not written by setPixels before API 26) and unknown configs use ARGB_8888
+        Bitmap.Config config = decoded.getConfig();
+        if (config == null || config == Bitmap.Config.ALPHA_8) {
+            config = Bitmap.Config.ARGB_8888;
+        }
+        Bitmap result = drawScaled(decoded, obtain(null, width, height, config));
+        result.setDensity(decoded.getDensity());
+        decoded.recycle();
+        return result;
+    }
+
+    private static void checkRequestedSize(int reqWidth, int reqHeight) throws BitmapUtilsException {
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "reqWidth and reqHeight must be >0");
+        }
+    }
+
     /**
      * Method to get a mutable bitmap.
      *
@@ -509,34 +2530,33 @@ public class BitmapUtils {
      * @throws IOException
      */
     private static Bitmap getMutableBitmap(Bitmap immutable) throws IOException {
-        byte[] byteArray = toByteArrayNew(immutable);
-        Bitmap result = getMutableBitmap(byteArray, 0, byteArray.length);
-        byteArray = null;
-        return result;
+        return RawBitmapCodec.fromRaw(RawBitmapCodec.toRaw(immutable, null), null);
     }
 
+    //the size of these decodes isn't known before them: the results are counted, without backpressure
+
     private static Bitmap getMutableBitmap(byte[] data, int offset, int length) {
-        return BitmapFactory.decodeByteArray(data, offset, length, getMutableOption());
+        return tracked(BitmapFactory.decodeByteArray(data, offset, length, getMutableOption()));
     }
 
     private static Bitmap getMutableBitmap(String filePath) {
-        return BitmapFactory.decodeFile(filePath, getMutableOption());
+        return tracked(BitmapFactory.decodeFile(filePath, getMutableOption()));
     }
 
     private static Bitmap getMutableBitmap(FileDescriptor fd, Rect outPadding) {
-        return BitmapFactory.decodeFileDescriptor(fd, outPadding, getMutableOption());
+        return tracked(BitmapFactory.decodeFileDescriptor(fd, outPadding, getMutableOption()));
     }
 
     private static Bitmap getMutableBitmap(Resources res, int id) {
-        return BitmapFactory.decodeResource(res, id, getMutableOption());
+        return tracked(BitmapFactory.decodeResource(res, id, getMutableOption()));
     }
 
     private static Bitmap getMutableBitmap(Resources res, TypedValue value, InputStream is, Rect pad) {
-        return BitmapFactory.decodeResourceStream(res, value, is, pad, getMutableOption());
+        return tracked(BitmapFactory.decodeResourceStream(res, value, is, pad, getMutableOption()));
     }
 
     private static Bitmap getMutableBitmap(InputStream is, Rect outPadding) {
-        return BitmapFactory.decodeStream(is, outPadding, getMutableOption());
+        return tracked(BitmapFactory.decodeStream(is, outPadding, getMutableOption()));
     }
 
     private static BitmapFactory.Options getMutableOption() {
@@ -545,58 +2565,149 @@ public class BitmapUtils {
         return opt;
     }
 
+    private static BitmapFactory.Options getBoundsOption() {
+        BitmapFactory.Options opt = new BitmapFactory.Options();
+        opt.inJustDecodeBounds = true;
+        return opt;
+    }
+
+    //private method to decode a resource at its size as a mutable Bitmap. With a governor, the size is read
+    //before the decode, so the governor can trim caches, wait and degrade the options as for decodeSampled
+    private static Bitmap decodeGoverned(Resources res, int id, String operation) {
+        MemoryGovernor governor = memoryGovernor;
+        if (governor == null) {
+            return getMutableBitmap(res, id);
+        }
+        BitmapFactory.Options bounds = getBoundsOption();
+        BitmapFactory.decodeResource(res, id, bounds);
+        BitmapFactory.Options opt = getMutableOption();
+        governor.degrade(opt, bounds.outWidth, bounds.outHeight, operation);
+        return tracked(BitmapFactory.decodeResource(res, id, opt));
+    }
+
+    private static BitmapFactory.Options getSampledOption(BitmapFactory.Options bounds, int reqWidth, int reqHeight) {
+        BitmapFactory.Options opt = getMutableOption();
+        opt.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, reqWidth, reqHeight);
+        MemoryGovernor governor = memoryGovernor;
+        if (governor != null) {
+            //before decoding: it can trim caches, wait, and degrade the options
+            governor.degrade(opt, bounds.outWidth, bounds.outHeight, "decodeSampled");
+        }
+        return opt;
+    }
+
 
     /**
      * Method to combine two images side by side.
+     * The result is as high as the highest image; the lower one is aligned to the top.
+     * To combine more images, use an {@link AtlasPacker}.
      *
      * @param leftBmp  The left Bitmap.
      * @param rightBmp The right Bitmap.
      * @return A Bitmap with left and right bitmap are glued side by side.
      */
     public static Bitmap combineTwoImagesSideBySide(Bitmap leftBmp, Bitmap rightBmp) {
-        int width;
-        int height = leftBmp.getHeight();
-
-        if (leftBmp.getWidth() > rightBmp.getWidth()) {
-            width = leftBmp.getWidth() + rightBmp.getWidth();
-        } else {
-            width = rightBmp.getWidth() + rightBmp.getWidth();
+        long start = Metrics.start();
+        int width = leftBmp.getWidth() + rightBmp.getWidth();
+        int height = Math.max(leftBmp.getHeight(), rightBmp.getHeight());
+
+        Bitmap cs = obtain(null, width, height);
+
+        DrawContext context = DrawContext.acquire();
+        try {
+            Canvas comboImage = context.canvas(cs);
+            comboImage.drawBitmap(leftBmp, 0f, 0f, null);
+            comboImage.drawBitmap(rightBmp, leftBmp.getWidth(), 0f, null);
+        } finally {
+            context.release();
         }
 
-        Bitmap cs = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        return Metrics.end("combineTwoImagesSideBySide", start, width, height, cs, BitmapUtilsMetrics.RESULT_ALLOCATED);
+    }
 
-        Canvas comboImage = new Canvas(cs);
-        comboImage.drawBitmap(leftBmp, 0f, 0f, null);
-        comboImage.drawBitmap(rightBmp, leftBmp.getWidth(), 0f, null);
+    /**
+     * Method to combine two images side by side, using a Bitmap obtained from {@code pool} as result.
+     * The result is as high as the highest image; the lower one is aligned to the top.
+     *
+     * @param leftBmp  The left Bitmap.
+     * @param rightBmp The right Bitmap.
+     * @param pool     The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A Bitmap with left and right bitmap are glued side by side.
+     */
+    public static Bitmap combineTwoImagesSideBySide(Bitmap leftBmp, Bitmap rightBmp, BitmapPool pool) {
+        long start = Metrics.start();
+        int width = leftBmp.getWidth() + rightBmp.getWidth();
+        int height = Math.max(leftBmp.getHeight(), rightBmp.getHeight());
+        Bitmap cs = createTransparentBitmap(width, height, pool);
+
+        DrawContext context = DrawContext.acquire();
+        try {
+            Canvas comboImage = context.canvas(cs);
+            comboImage.drawBitmap(leftBmp, 0f, 0f, null);
+            comboImage.drawBitmap(rightBmp, leftBmp.getWidth(), 0f, null);
+        } finally {
+            context.release();
+        }
 
-        return cs;
+        return Metrics.end("combineTwoImagesSideBySide", start, width, height, cs, Metrics.pooled(pool));
     }
 
     /**
-     * Method to convert a Bitmap into a byte[].
-     * Attention: this method is very expensive!!!
+     * Method to convert a Bitmap into a byte[], encoded as PNG.
+     * The image is compressed into a reused, pre-sized buffer (see {@link BitmapEncoder}),
+     * and copied only once into the result. PNG encoding is still expensive: use
+     * {@link #toByteArray(Bitmap, BitmapEncoder)} with JPEG or WebP for photos,
+     * or {@link BitmapEncoder#encode(Bitmap, OutputStream)} to write directly to a stream.
      *
      * @param source The Bitmap to convert.
      * @return The byte[] that represents the source Bitmap.
      */
     public static byte[] toByteArray(Bitmap source) throws IOException {
-        ByteArrayOutputStream blob = new ByteArrayOutputStream();
-        source.compress(Bitmap.CompressFormat.PNG, 0 /*ignored for PNG*/, blob);
-        byte[] photoByteArray = blob.toByteArray();
-        blob.close();
-        return photoByteArray;
+        return toByteArray(source, BitmapEncoder.png());
     }
 
+    /**
+     * Method to convert a Bitmap into a byte[], encoded by {@code encoder}.
+     *
+     * @param source  The Bitmap to convert.
+     * @param encoder The {@link BitmapEncoder}, for example {@code BitmapEncoder.jpeg(85)}.
+     * @return The byte[] that represents the source Bitmap.
+     * @throws IOException if the Bitmap can't be encoded.
+     */
+    public static byte[] toByteArray(Bitmap source, BitmapEncoder encoder) throws IOException {
+        long start = Metrics.start();
+        byte[] result = encoder.encodeToArray(source);
+        endData("toByteArray", start, source, result.length);
+        return result;
+    }
 
-    //NOT WORKING, but more efficient that toByteArray()
+    /**
+     * Method to convert a Bitmap into a byte[], without compression.
+     * This method is more efficient than toByteArray(), because it copies the pixels
+     * (see {@link RawBitmapCodec}), but the result is bigger.
+     * Use {@link #fromByteArrayNew(byte[])} to get back the Bitmap.
+     *
+     * @param source The Bitmap to convert.
+     * @return The byte[] that represents the source Bitmap.
+     */
     public static byte[] toByteArrayNew(Bitmap source) {
-        //int size = source.getRowBytes() * source.getHeight();
-        int size = source.getByteCount();
-        ByteBuffer byteBuffer = ByteBuffer.allocate(size);
-        source.copyPixelsToBuffer(byteBuffer);
-        byteBuffer.rewind();
-        byte[] b = byteBuffer.array();
-        return b;
+        long start = Metrics.start();
+        byte[] result = RawBitmapCodec.serializeToArray(source);
+        endData("toByteArrayNew", start, source, result.length);
+        return result;
+    }
+
+    /**
+     * Method to convert a byte[] created by {@link #toByteArrayNew(Bitmap)} into a mutable Bitmap.
+     *
+     * @param b The byte[] passed as parameter.
+     * @return The converted Bitmap.
+     * @throws IOException if {@code b} wasn't created by {@link #toByteArrayNew(Bitmap)}.
+     */
+    public static Bitmap fromByteArrayNew(byte[] b) throws IOException {
+        long start = Metrics.start();
+        Bitmap result = RawBitmapCodec.deserialize(ByteBuffer.wrap(b), null);
+        return Metrics.end("fromByteArrayNew", start, result.getWidth(), result.getHeight(), result, BitmapUtilsMetrics.RESULT_ALLOCATED);
     }
 
     /**
@@ -606,7 +2717,108 @@ public class BitmapUtils {
      * @return The converted Bitmap.
      */
     public static Bitmap fromByteArraytoBitmap(byte[] b) {
-        return BitmapFactory.decodeByteArray(b, 0, b.length);
+        long start = Metrics.start();
+        //the size of the encoded image is unknown before the decode
+        return Metrics.end("fromByteArraytoBitmap", start, 0, 0, tracked(BitmapFactory.decodeByteArray(b, 0, b.length)),
+                BitmapUtilsMetrics.RESULT_ALLOCATED);
+    }
+
+    /**
+     * Method to copy the pixels of a Bitmap into a new {@link PixelBuffer}.
+     *
+     * @param source The source Bitmap.
+     * @return A PixelBuffer with the non-premultiplied ARGB pixels of {@code source}.
+     */
+    public static PixelBuffer toPixelBuffer(Bitmap source) {
+        long start = Metrics.start();
+        PixelBuffer buffer = new PixelBuffer(source.getWidth(), source.getHeight());
+        source.getPixels(buffer.getPixels(), buffer.getOffset(), buffer.getStride(), 0, 0, source.getWidth(), source.getHeight());
+        endData("toPixelBuffer", start, source, buffer.getPixels().length * 4L);
+        return buffer;
+    }
+
+    /**
+     * Method to copy the pixels of a Bitmap into {@code dest}, reusing its array.
+     *
+     * @param source The source Bitmap.
+     * @param dest   A PixelBuffer with the same size of {@code source}.
+     * @return {@code dest}, with the non-premultiplied ARGB pixels of {@code source}.
+     * @throws BitmapUtilsException
+     */
+    public static PixelBuffer toPixelBuffer(Bitmap source, PixelBuffer dest) throws BitmapUtilsException {
+        long start = Metrics.start();
+        if (dest.getWidth() != source.getWidth() || dest.getHeight() != source.getHeight()) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "dest must have the same size of source");
+        }
+        source.getPixels(dest.getPixels(), dest.getOffset(), dest.getStride(), 0, 0, source.getWidth(), source.getHeight());
+        endData("toPixelBuffer", start, source, 0L);
+        return dest;
+    }
+
+    //private method to report an operation that converts source into something that isn't a Bitmap:
+    //allocated bytes are the size of the new array, 0 if the result has been written into a destination of the caller
+    private static void endData(String operation, long start, Bitmap source, long allocated) {
+        Metrics.endData(operation, start, source.getWidth(), source.getHeight(), source.getWidth(), source.getHeight(), allocated,
+                allocated > 0 ? BitmapUtilsMetrics.RESULT_ALLOCATED : BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to copy the pixels of a {@link PixelBuffer} into {@code dest}.
+     *
+     * @param source The source PixelBuffer.
+     * @param dest   A mutable Bitmap with the same size of {@code source}.
+     * @return {@code dest}, with the pixels of {@code source}.
+     * @throws BitmapUtilsException
+     */
+    public static Bitmap fromPixelBuffer(PixelBuffer source, Bitmap dest) throws BitmapUtilsException {
+        long start = Metrics.start();
+        checkDestination(dest, source.getWidth(), source.getHeight());
+        copyPixels(source, dest);
+        return Metrics.end("fromPixelBuffer", start, source.getWidth(), source.getHeight(), dest, BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to copy the pixels of a {@link PixelBuffer} into a Bitmap obtained from {@code pool}.
+     *
+     * @param source The source PixelBuffer.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A Bitmap with the pixels of {@code source}.
+     */
+    public static Bitmap fromPixelBuffer(PixelBuffer source, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap dest = copyPixels(source, obtain(pool, source.getWidth(), source.getHeight()));
+        return Metrics.end("fromPixelBuffer", start, source.getWidth(), source.getHeight(), dest, Metrics.pooled(pool));
+    }
+
+    private static Bitmap copyPixels(PixelBuffer source, Bitmap dest) {
+        dest.setPixels(source.getPixels(), source.getOffset(), source.getStride(), 0, 0, source.getWidth(), source.getHeight());
+        return dest;
+    }
+
+    /**
+     * Method to apply a {@link PixelKernel} to a Bitmap, using all the threads of the
+     * default {@link TileEngine}.
+     * Kernels for the common operations are in {@link it.playfellas.androidbitmaputilslib.pixel.PixelKernels}.
+     *
+     * @param source The original Bitmap.
+     * @param kernel The kernel to apply.
+     * @param pool   The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return The result Bitmap.
+     */
+    public static Bitmap applyKernel(Bitmap source, PixelKernel kernel, BitmapPool pool) {
+        long start = Metrics.start();
+        Bitmap result = obtain(pool, source.getWidth(), source.getHeight());
+        //the kernel sees the whole image, so it's copied into the PixelScratch of the thread
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            PixelBuffer buffer = scratch.buffer(0, source.getWidth(), source.getHeight());
+            source.getPixels(buffer.getPixels(), buffer.getOffset(), buffer.getStride(), 0, 0, source.getWidth(), source.getHeight());
+            TileEngine.getDefault().execute(kernel, buffer, buffer);
+            copyPixels(buffer, result);
+        } finally {
+            scratch.release();
+        }
+        return Metrics.end("applyKernel", start, source, result, Metrics.pooled(pool));
     }
 
     /**
@@ -615,7 +2827,7 @@ public class BitmapUtils {
      * @param source The source Bitmap.
      * @return The number of bytes of the source Bitmap.
      */
-    private static int byteSizeOf(Bitmap source) {
+    static int byteSizeOf(Bitmap source) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1) {
             return source.getRowBytes() * source.getHeight();
         } else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
@@ -634,25 +2846,34 @@ public class BitmapUtils {
      * @return The result Bitmap.
      */
     public static Bitmap drawableToBitmap(Drawable drawable) {
+        long start = Metrics.start();
         Bitmap bitmap = null;
 
         if (drawable instanceof BitmapDrawable) {
             BitmapDrawable bitmapDrawable = (BitmapDrawable) drawable;
             if (bitmapDrawable.getBitmap() != null) {
-                return bitmapDrawable.getBitmap();
+                //no copy: reported like the operations in place
+                bitmap = bitmapDrawable.getBitmap();
+                return Metrics.end("drawableToBitmap", start, bitmap, bitmap, BitmapUtilsMetrics.RESULT_DEST);
             }
         }
 
         if (drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
-            bitmap = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888); // Single color bitmap will be created of 1x1 pixel
+            bitmap = obtain(null, 1, 1); // Single color bitmap will be created of 1x1 pixel
         } else {
-            bitmap = Bitmap.createBitmap(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
+            bitmap = obtain(null, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
         }
 
-        Canvas canvas = new Canvas(bitmap);
-        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-        drawable.draw(canvas);
-        return bitmap;
+        DrawContext context = DrawContext.acquire();
+        try {
+            Canvas canvas = context.canvas(bitmap);
+            drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
+            drawable.draw(canvas);
+        } finally {
+            context.release();
+        }
+        return Metrics.end("drawableToBitmap", start, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(),
+                bitmap, BitmapUtilsMetrics.RESULT_ALLOCATED);
     }
 
     /**
@@ -0,0 +1,82 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+/**
+ * Listener of the operations of {@link BitmapUtils}, to know which calls use time and memory.
+ * Set it with {@link BitmapUtils#setMetrics(BitmapUtilsMetrics)}. Without a listener, operations
+ * don't measure anything.
+ * <p></p>
+ * {@link #onOperation(String, long, long, int, int, int, int, long, int)} is called on the thread
+ * that executed the operation, after it, so implementations must be thread-safe and fast.
+ * {@link BitmapMetricsRecorder} is a ready to use implementation.
+ * <p></p>
+ * Overloads that only convert their parameters and call another overload are reported with its name
+ * (for example {@link BitmapUtils#scaleByFactor(android.graphics.Bitmap, float)} is reported as "scale").
+ * Operations that throw an exception are not reported.
+ * The encodings of {@link BitmapEncoder} and the serializations of {@link RawBitmapCodec} are reported too,
+ * with the size of their array or buffer as allocated bytes.
+ */
+public interface BitmapUtilsMetrics {
+
+    /**
+     * The result is a new Bitmap (or a new array or buffer, for operations that don't produce a Bitmap).
+     */
+    int RESULT_ALLOCATED = 0;
+    /**
+     * The result is a Bitmap reused from a {@link BitmapPool}.
+     */
+    int RESULT_POOL_HIT = 1;
+    /**
+     * The result is a new Bitmap, because the {@link BitmapPool} hadn't one with the right size.
+     */
+    int RESULT_POOL_MISS = 2;
+    /**
+     * The result is a Bitmap from the {@link TransformCache} or the {@link BitmapDiskCache}.
+     */
+    int RESULT_CACHE_HIT = 3;
+    /**
+     * The result is a new Bitmap, because it wasn't in the caches (it has been added to them).
+     */
+    int RESULT_CACHE_MISS = 4;
+    /**
+     * The result has been drawn into the destination passed by the caller: a Bitmap, a buffer or a stream.
+     */
+    int RESULT_DEST = 5;
+    /**
+     * The number of RESULT_* constants.
+     */
+    int RESULT_TYPES = 6;
+
+    /**
+     * Method called after an operation.
+     * Operations that produce more Bitmaps (like splits) report the size of all the pieces together.
+     *
+     * @param operation      String that represents the name of the operation (the name of the method).
+     * @param startNanos     long that represents the start time, from {@link System#nanoTime()}.
+     * @param endNanos       long that represents the end time, from {@link System#nanoTime()}.
+     * @param inputWidth     int that represents the width of the input image (0 if unknown, for example before a decode).
+     * @param inputHeight    int that represents the height of the input image (0 if unknown).
+     * @param outputWidth    int that represents the width of the result.
+     * @param outputHeight   int that represents the height of the result.
+     * @param bytesAllocated long that represents the bytes of the new Bitmaps allocated
+     *                       for the result (like {@code BitmapUtils.byteSizeOf}), or of the new array or buffer
+     *                       for results that aren't Bitmaps, 0 if nothing has been allocated.
+     * @param result         int that represents where the result comes from, one of the RESULT_* constants.
+     */
+    void onOperation(String operation, long startNanos, long endNanos, int inputWidth, int inputHeight,
+                     int outputWidth, int outputHeight, long bytesAllocated, int result);
+}
@@ -0,0 +1,143 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.ColorFilter;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.LightingColorFilter;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+
+import it.playfellas.androidbitmaputilslib.pixel.ColorProgram;
+import it.playfellas.androidbitmaputilslib.pixel.LongLruCache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shared, immutable ColorFilters and Paints used by the library.
+ * ColorFilters can't be modified after creation, so they are created once (per color) and shared
+ * between threads. Filters depending on a color are kept in a small LRU cache
+ * ({@link LongLruCache}, so lookups don't box the colors).
+ */
+final class ColorFilters {
+
+    private static final int MAX_CACHED_FILTERS = 32;
+
+    private static final ColorFilter GRAYSCALE = newGrayscaleFilter();
+    private static final Paint GRAYSCALE_PAINT = newPaint(GRAYSCALE);
+
+    private static final LongLruCache<ColorFilter> LIGHTING_CACHE = new LongLruCache<>(MAX_CACHED_FILTERS);
+    private static final LongLruCache<ColorFilter> TINT_CACHE = new LongLruCache<>(MAX_CACHED_FILTERS);
+    private static final Map<String, ColorFilter> PROGRAM_CACHE = newLruMap();
+
+    private ColorFilters() {
+    }
+
+    private static ColorFilter newGrayscaleFilter() {
+        ColorMatrix cm = new ColorMatrix();
+        cm.setSaturation(0);
+        return new ColorMatrixColorFilter(cm);
+    }
+
+    private static Paint newPaint(ColorFilter filter) {
+        Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setColorFilter(filter);
+        return paint;
+    }
+
+    private static <K> Map<K, ColorFilter> newLruMap() {
+        return new LinkedHashMap<K, ColorFilter>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, ColorFilter> eldest) {
+                return size() > MAX_CACHED_FILTERS;
+            }
+        };
+    }
+
+    /**
+     * Method to get the gray scale filter, like {@code ColorMatrix.setSaturation(0)}.
+     *
+     * @return The shared ColorFilter.
+     */
+    static ColorFilter grayscale() {
+        return GRAYSCALE;
+    }
+
+    /**
+     * Method to get an anti-aliased Paint with the gray scale filter.
+     * It's shared between threads, so it must not be modified.
+     *
+     * @return The shared Paint.
+     */
+    static Paint grayscalePaint() {
+        return GRAYSCALE_PAINT;
+    }
+
+    /**
+     * Method to get a {@link LightingColorFilter}.
+     *
+     * @param mul int that represents the RGB color used to multiply.
+     * @param add int that represents the RGB color to add.
+     * @return The shared ColorFilter.
+     */
+    static ColorFilter lighting(int mul, int add) {
+        long key = ((long) (mul & 0xFFFFFF) << 32) | (add & 0xFFFFFF);
+        ColorFilter filter = LIGHTING_CACHE.get(key);
+        if (filter == null) {
+            filter = new LightingColorFilter(mul, add);
+            LIGHTING_CACHE.put(key, filter);
+        }
+        return filter;
+    }
+
+    /**
+     * Method to get a {@link PorterDuffColorFilter} with {@code SRC_ATOP}, to create silhouettes.
+     *
+     * @param color int that represents the ARGB color of the silhouette.
+     * @return The shared ColorFilter.
+     */
+    static ColorFilter tint(int color) {
+        long key = color & 0xFFFFFFFFL;
+        ColorFilter filter = TINT_CACHE.get(key);
+        if (filter == null) {
+            filter = new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_ATOP);
+            TINT_CACHE.put(key, filter);
+        }
+        return filter;
+    }
+
+    /**
+     * Method to get a {@link ColorMatrixColorFilter} that executes a linear {@link ColorProgram}.
+     *
+     * @param program A program with {@link ColorProgram#isLinear()} true.
+     * @return The shared ColorFilter.
+     */
+    static ColorFilter program(ColorProgram program) {
+        String key = program.getSignature();
+        synchronized (PROGRAM_CACHE) {
+            ColorFilter filter = PROGRAM_CACHE.get(key);
+            if (filter == null) {
+                filter = new ColorMatrixColorFilter(program.getMatrix());
+                PROGRAM_CACHE.put(key, filter);
+            }
+            return filter;
+        }
+    }
+}
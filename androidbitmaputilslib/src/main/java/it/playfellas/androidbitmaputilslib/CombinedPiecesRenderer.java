@@ -0,0 +1,209 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stateful version of {@link BitmapUtils#geCombinedGrayscaledByPieces(List, int, int, int)},
+ * for UIs where the threshold changes often (for example a progress).
+ * <p></p>
+ * The combined Bitmap and the gray scale version of every piece are created once.
+ * Then {@link #setThreshold(int)} redraws in place only the pieces that changed state,
+ * so a step of the threshold costs the area of a piece, without allocations.
+ * <p></p>
+ * The returned Bitmap is always the same instance, updated by every call. This class is not thread-safe.
+ */
+public class CombinedPiecesRenderer {
+
+    private final List<BitmapRegion> colorPieces;
+    private final Bitmap[] grayPieces;
+    private final int direction;
+    private final int pieceWidth;
+    private final int pieceHeight;
+    private final BitmapPool pool;
+
+    private final Bitmap combined;
+    private final Canvas canvas;
+    //SRC: a piece replaces the previous one, also where it's transparent
+    private final Paint replacePaint;
+    private final boolean[] gray;
+    private int threshold;
+    private boolean drawn;
+
+    /**
+     * Constructor
+     *
+     * @param pieces    A List of pieces of Bitmaps, with the same size, to be combined vertically or horizontally.
+     *                  They are used to draw the colored pieces, so they must not be modified or recycled.
+     * @param direction int the specifies the {@link BitmapUtils.Direction}.
+     * @throws BitmapUtilsException
+     */
+    public CombinedPiecesRenderer(List<Bitmap> pieces, int direction) throws BitmapUtilsException {
+        this(pieces, direction, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param pieces    A List of pieces of Bitmaps, with the same size, to be combined vertically or horizontally.
+     *                  They are used to draw the colored pieces, so they must not be modified or recycled.
+     * @param direction int the specifies the {@link BitmapUtils.Direction}.
+     * @param pool      The {@link BitmapPool} used to get the combined Bitmap and the gray scale pieces
+     *                  (returned by {@link #recycle()}), or null to allocate new ones.
+     * @throws BitmapUtilsException
+     */
+    public CombinedPiecesRenderer(List<Bitmap> pieces, int direction, BitmapPool pool) throws BitmapUtilsException {
+        this(direction, toRegions(pieces), pool);
+    }
+
+    //direction first, because List<Bitmap> and List<BitmapRegion> have the same erasure
+    private CombinedPiecesRenderer(int direction, List<BitmapRegion> pieces, BitmapPool pool) throws BitmapUtilsException {
+        if (direction < BitmapUtils.Direction.UP_2_DOWN || direction > BitmapUtils.Direction.RIGHT_2_LEFT) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "direction must be a Direction constant");
+        }
+        this.pieceWidth = pieces.get(0).getWidth();
+        this.pieceHeight = pieces.get(0).getHeight();
+        for (BitmapRegion piece : pieces) {
+            if (piece.getWidth() != pieceWidth || piece.getHeight() != pieceHeight) {
+                throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "pieces must have the same size");
+            }
+        }
+        this.colorPieces = pieces;
+        this.direction = direction;
+        this.pool = pool;
+
+        int numPieces = pieces.size();
+        this.grayPieces = new Bitmap[numPieces];
+        for (int i = 0; i < numPieces; i++) {
+            grayPieces[i] = BitmapUtils.toGrayscale(pieces.get(i), pool);
+        }
+        this.gray = new boolean[numPieces];
+
+        boolean horizontal = BitmapUtils.isHorizontal(direction);
+        this.combined = BitmapUtils.createTransparentBitmap(horizontal ? pieceWidth * numPieces : pieceWidth,
+                horizontal ? pieceHeight : pieceHeight * numPieces, pool);
+        this.canvas = new Canvas(combined);
+        this.replacePaint = new Paint();
+        this.replacePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+
+    /**
+     * Method to get a renderer of {@link BitmapRegion}s (for example the result of
+     * {@link BitmapUtils#splitImageHorizontallyIntoRegions(android.graphics.Bitmap, int)}),
+     * so colored pieces are drawn directly from the shared source, without copies.
+     *
+     * @param regions   A List of regions, with the same size. Their source must not be modified or recycled.
+     * @param direction int the specifies the {@link BitmapUtils.Direction}.
+     * @param pool      The {@link BitmapPool} used to get the combined Bitmap and the gray scale pieces, or null.
+     * @return The CombinedPiecesRenderer.
+     * @throws BitmapUtilsException
+     */
+    public static CombinedPiecesRenderer fromRegions(List<BitmapRegion> regions, int direction, BitmapPool pool) throws BitmapUtilsException {
+        if (regions == null || regions.isEmpty()) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "pieces must be a non empty List");
+        }
+        return new CombinedPiecesRenderer(direction, new ArrayList<>(regions), pool);
+    }
+
+    private static List<BitmapRegion> toRegions(List<Bitmap> pieces) throws BitmapUtilsException {
+        if (pieces == null || pieces.isEmpty()) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "pieces must be a non empty List");
+        }
+        List<BitmapRegion> regions = new ArrayList<>(pieces.size());
+        for (Bitmap piece : pieces) {
+            regions.add(BitmapRegion.of(piece));
+        }
+        return regions;
+    }
+
+    /**
+     * Method to update the combined image with a new threshold, redrawing only the pieces
+     * that change from colored to gray scaled or vice versa.
+     *
+     * @param threshold The limit before to change from original to grayscaled images,
+     *                  as in {@link BitmapUtils#geCombinedGrayscaledByPieces(List, int, int, int)}.
+     * @return The combined Bitmap (always the same instance).
+     */
+    public Bitmap setThreshold(int threshold) {
+        long start = Metrics.start();
+        boolean horizontal = BitmapUtils.isHorizontal(direction);
+        for (int i = 0; i < gray.length; i++) {
+            boolean pieceGray = BitmapUtils.isGrayPiece(i, threshold, direction);
+            if (drawn && pieceGray == gray[i]) {
+                continue;
+            }
+            gray[i] = pieceGray;
+            float left = horizontal ? i * pieceWidth : 0f;
+            float top = horizontal ? 0f : i * pieceHeight;
+            if (pieceGray) {
+                canvas.drawBitmap(grayPieces[i], left, top, replacePaint);
+            } else {
+                colorPieces.get(i).draw(canvas, left, top, replacePaint);
+            }
+        }
+        this.threshold = threshold;
+        this.drawn = true;
+        return Metrics.end("CombinedPiecesRenderer.setThreshold", start, combined, combined, BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    /**
+     * Method to get the combined Bitmap, updated by {@link #setThreshold(int)}.
+     *
+     * @return The combined Bitmap, or null if {@link #setThreshold(int)} was never called.
+     */
+    public Bitmap getBitmap() {
+        return drawn ? combined : null;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getNumPieces() {
+        return gray.length;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    /**
+     * Method to release the combined Bitmap and the gray scale pieces: they are returned
+     * to the {@link BitmapPool}, or recycled if there isn't a pool.
+     * The renderer can't be used after this call. The original pieces are not recycled.
+     */
+    public void recycle() {
+        release(combined);
+        for (Bitmap grayPiece : grayPieces) {
+            release(grayPiece);
+        }
+        drawn = false;
+    }
+
+    private void release(Bitmap bitmap) {
+        if (pool == null || !pool.put(bitmap)) {
+            bitmap.recycle();
+        }
+    }
+}
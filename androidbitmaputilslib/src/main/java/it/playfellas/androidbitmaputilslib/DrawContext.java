@@ -0,0 +1,114 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Per-thread Canvas, Matrix, Paint and rectangles reused by the drawing methods of the library,
+ * so steady-state calls allocate only their result Bitmap.
+ * <br>
+ * Usage:
+ * <br>
+ * {@code DrawContext context = DrawContext.acquire(); try { ... } finally { context.release(); }}
+ * <br>
+ * If the context of the thread is already in use (a nested call), {@link #acquire()} returns a temporary one.
+ */
+final class DrawContext {
+
+    private static final ThreadLocal<DrawContext> LOCAL = new ThreadLocal<DrawContext>() {
+        @Override
+        protected DrawContext initialValue() {
+            return new DrawContext();
+        }
+    };
+
+    private final Canvas canvas = new Canvas();
+    private final Matrix matrix = new Matrix();
+    private final Paint paint = new Paint();
+    private final Rect rect = new Rect();
+    private final RectF rectF = new RectF();
+    private boolean inUse;
+
+    private DrawContext() {
+    }
+
+    static DrawContext acquire() {
+        DrawContext context = LOCAL.get();
+        if (context.inUse) {
+            return new DrawContext();
+        }
+        context.inUse = true;
+        return context;
+    }
+
+    /**
+     * Method to release the context. The Canvas doesn't keep a reference to the last destination,
+     * so it doesn't prevent its garbage collection.
+     */
+    void release() {
+        canvas.setBitmap(null);
+        inUse = false;
+    }
+
+    /**
+     * Method to get the Canvas of this context, drawing into {@code dest}, with a reset state.
+     *
+     * @param dest The mutable destination Bitmap.
+     * @return The Canvas.
+     */
+    Canvas canvas(Bitmap dest) {
+        canvas.setBitmap(dest);
+        return canvas;
+    }
+
+    /**
+     * Method to get the Matrix of this context, reset to identity.
+     *
+     * @return The Matrix.
+     */
+    Matrix matrix() {
+        matrix.reset();
+        return matrix;
+    }
+
+    /**
+     * Method to get the Paint of this context, reset to the state of {@code new Paint(flags)}.
+     *
+     * @param flags int that represents the flags added to the default ones (for example {@link Paint#FILTER_BITMAP_FLAG}).
+     * @return The Paint.
+     */
+    Paint paint(int flags) {
+        paint.reset();
+        paint.setFlags(paint.getFlags() | flags);
+        return paint;
+    }
+
+    Rect rect(int left, int top, int right, int bottom) {
+        rect.set(left, top, right, bottom);
+        return rect;
+    }
+
+    RectF rectF(float left, float top, float right, float bottom) {
+        rectF.set(left, top, right, bottom);
+        return rectF;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Per-thread growable byte buffer reused by {@link BitmapEncoder}: a ByteArrayOutputStream
+ * that exposes its array, so the encoded bytes can be written to a stream or a channel
+ * without the copy of {@link ByteArrayOutputStream#toByteArray()}.
+ * <br>
+ * Usage:
+ * <br>
+ * {@code EncodeBuffer buffer = EncodeBuffer.acquire(expectedSize); try { ... } finally { buffer.release(); }}
+ * <br>
+ * If the buffer of the thread is already in use (a nested call), {@link #acquire(int)} returns a temporary one.
+ */
+final class EncodeBuffer extends ByteArrayOutputStream {
+
+    //buffers that grew bigger than this are not kept by the threads
+    static final int MAX_RETAINED_SIZE = 4 * 1024 * 1024;
+
+    private static final int MIN_SIZE = 16 * 1024;
+
+    private static final ThreadLocal<EncodeBuffer> LOCAL = new ThreadLocal<EncodeBuffer>() {
+        @Override
+        protected EncodeBuffer initialValue() {
+            return new EncodeBuffer(MIN_SIZE);
+        }
+    };
+
+    private boolean inUse;
+    private boolean temporary;
+
+    private EncodeBuffer(int size) {
+        super(size);
+    }
+
+    /**
+     * Method to get the empty buffer of the current thread, with a capacity of at least {@code expectedSize} bytes.
+     *
+     * @param expectedSize int that represents the expected number of bytes, to avoid the copies of the growth.
+     * @return The EncodeBuffer.
+     */
+    static EncodeBuffer acquire(int expectedSize) {
+        EncodeBuffer buffer = LOCAL.get();
+        if (buffer.inUse) {
+            buffer = new EncodeBuffer(Math.max(MIN_SIZE, expectedSize));
+            buffer.temporary = true;
+        } else if (buffer.buf.length < expectedSize) {
+            buffer.buf = new byte[expectedSize];
+        }
+        buffer.inUse = true;
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Method to release the buffer. A buffer that grew bigger than {@link #MAX_RETAINED_SIZE} is shrunk,
+     * so a single big image doesn't keep memory for the lifetime of the thread.
+     */
+    void release() {
+        inUse = false;
+        if (!temporary && buf.length > MAX_RETAINED_SIZE) {
+            buf = new byte[MIN_SIZE];
+        }
+        reset();
+    }
+
+    //the only copy of the encoded bytes, for callers that need their own array
+    byte[] toExactArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    /**
+     * Method to write the bytes of this buffer to {@code channel}, without copies.
+     *
+     * @param channel The destination channel.
+     * @throws IOException
+     */
+    void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(buf, 0, count);
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Looper;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide memory budget of the Bitmaps produced by {@link BitmapUtils}, to keep the peak memory
+ * bounded when many screens call it concurrently.
+ * Enable it with {@link BitmapUtils#setMemoryGovernor(MemoryGovernor)}.
+ * <p></p>
+ * The governor counts the bytes (like {@code BitmapUtils.byteSizeOf}) of:
+ * <ul>
+ * <li>the live results: Bitmaps allocated by the library ({@link BitmapUtils}, {@link BitmapPipeline},
+ * {@link RawBitmapCodec}, {@link AtlasPacker} and {@link SilhouetteCache}) and the decoded images, held with weak
+ * references, so they stop counting when they are recycled or garbage collected
+ * (or when {@link #release(Bitmap)} is called, or they are returned to a {@link BitmapPool});</li>
+ * <li>the Bitmaps retained by the pools registered with {@link #addPool(BitmapPool)}.</li>
+ * </ul>
+ * Exceptions: the Bitmaps of the app (sources, destinations, and results that are the source itself,
+ * like a rotation by 0 degrees) aren't counted, unless they are passed to {@link #track(Bitmap)}.
+ * Decodes without a requested size (like {@link BitmapUtils#fromByteArraytoBitmap(byte[])}) are counted
+ * after the decode, because their size isn't known before: they don't wait and they aren't degraded.
+ * <p></p>
+ * When a new allocation would exceed the budget, the governor acts in this order:
+ * <ol>
+ * <li>it trims the registered pools and the {@link TransformCache} of {@link BitmapUtils};</li>
+ * <li>backpressure: the request waits (at most {@link #setMaxWaitMillis(long)}) that other results are
+ * released. Requests on the main thread never wait;</li>
+ * <li>decodes are degraded: they use a bigger {@code inSampleSize} (up to {@link #MAX_EXTRA_SAMPLING} more
+ * halvings of the size), and then {@code RGB_565} (the decoder can ignore it for images with alpha).
+ * Degraded results are smaller than the requested size.</li>
+ * </ol>
+ * If the budget is still exceeded, the request is executed anyway: the governor never fails a request.
+ * Every action is reported to the {@link Listener}.
+ * <p></p>
+ * This class is thread-safe. The lock of the governor and the locks of the pools and of the caches are
+ * never held while taking the other one: the sizes of the pools are read, and pools and caches are trimmed,
+ * without holding the lock of the governor, and {@link BitmapPool} calls {@link #release(Bitmap)}
+ * without holding its lock.
+ */
+public class MemoryGovernor {
+
+    /**
+     * Maximum number of times a degraded decode halves the size of the image, after the {@code inSampleSize}
+     * required by the requested size.
+     */
+    public static final int MAX_EXTRA_SAMPLING = 2;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 500;
+
+    //interval of the checks while a request waits, if nothing is released explicitly
+    private static final long WAIT_STEP_MILLIS = 16;
+
+    /**
+     * Listener of the actions of a {@link MemoryGovernor}. It's called on the thread of the request,
+     * so implementations must be thread-safe and fast.
+     */
+    public interface Listener {
+
+        /**
+         * Pools and caches have been trimmed. The value is the number of bytes removed from them.
+         */
+        int ACTION_TRIM = 0;
+        /**
+         * A request has waited that other results were released. The value is the waited time in milliseconds.
+         */
+        int ACTION_WAIT = 1;
+        /**
+         * A decode uses a bigger {@code inSampleSize}. The value is the new {@code inSampleSize}.
+         */
+        int ACTION_SAMPLE = 2;
+        /**
+         * A decode uses {@code RGB_565} instead of {@code ARGB_8888}. The value is 0.
+         */
+        int ACTION_RGB_565 = 3;
+
+        /**
+         * Method called after every action of the governor.
+         *
+         * @param action      int that represents the action, one of the ACTION_* constants.
+         * @param operation   String that represents the name of the operation that required memory.
+         * @param value       long that represents the value of the action (see the ACTION_* constants).
+         * @param usedBytes   long that represents the bytes in use after the action.
+         * @param budgetBytes long that represents the budget.
+         */
+        void onDegradation(int action, String operation, long value, long usedBytes, long budgetBytes);
+    }
+
+    private final long budgetBytes;
+    private final List<BitmapPool> pools = new CopyOnWriteArrayList<>();
+    //live results and their size, stored because a recycled Bitmap doesn't report it anymore
+    private final Map<Bitmap, Integer> live = new WeakHashMap<>();
+    //sum of the sizes in live, also of the Bitmaps already collected (until the next reconcile)
+    private long liveBytes;
+    private volatile long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+    private volatile Listener listener;
+
+    /**
+     * Constructor
+     *
+     * @param budgetBytes long that represents the maximum number of bytes of live results and pools.
+     */
+    public MemoryGovernor(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("budgetBytes must be >0");
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Method to create a governor with a fraction of the maximum heap of the process as budget.
+     * Since Android 8.0 the pixels of Bitmaps aren't in the Java heap, but the heap size is still
+     * a good measure of the memory class of the device.
+     *
+     * @param fraction float that represents the fraction of {@link Runtime#maxMemory()} (from 0 to 1).
+     * @return A new MemoryGovernor.
+     */
+    public static MemoryGovernor ofHeapFraction(float fraction) {
+        if (!(fraction > 0) || fraction > 1) {
+            throw new IllegalArgumentException("fraction must be >0 and <=1");
+        }
+        return new MemoryGovernor(Math.max(1L, (long) (Runtime.getRuntime().maxMemory() * fraction)));
+    }
+
+    /**
+     * Method to set (or remove, passing null) the {@link Listener} of the actions.
+     *
+     * @param listener The listener, or null.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Method to set the maximum time that a request waits for memory (the default is {@link #DEFAULT_MAX_WAIT_MILLIS}).
+     *
+     * @param millis long that represents the time in milliseconds (0 to never wait).
+     */
+    public void setMaxWaitMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis must be >=0");
+        }
+        maxWaitMillis = millis;
+    }
+
+    /**
+     * Method to count the Bitmaps retained by {@code pool} in the budget, and to trim it when the budget is exceeded.
+     * Bitmaps returned to the pool stop counting as live results.
+     *
+     * @param pool The {@link BitmapPool} to register.
+     */
+    public void addPool(BitmapPool pool) {
+        if (pool != null && !pools.contains(pool)) {
+            pools.add(pool);
+        }
+    }
+
+    /**
+     * Method to unregister a {@link BitmapPool} registered with {@link #addPool(BitmapPool)}.
+     *
+     * @param pool The BitmapPool to unregister.
+     */
+    public void removePool(BitmapPool pool) {
+        pools.remove(pool);
+    }
+
+    /**
+     * Method to count {@code bitmap} as a live result, for example a Bitmap allocated by the app.
+     * Results of {@link BitmapUtils} are counted automatically.
+     *
+     * @param bitmap The Bitmap to count, until it's recycled, collected or released.
+     */
+    public synchronized void track(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || live.containsKey(bitmap)) {
+            return;
+        }
+        int size = BitmapUtils.byteSizeOf(bitmap);
+        live.put(bitmap, size);
+        liveBytes += size;
+    }
+
+    /**
+     * Method to stop counting {@code bitmap}, for example before recycling it, so waiting requests can continue.
+     *
+     * @param bitmap The Bitmap to release.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        Integer size = bitmap != null ? live.remove(bitmap) : null;
+        if (size != null) {
+            liveBytes -= size;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Method to get the bytes of the live results (recycled and collected Bitmaps are not counted).
+     *
+     * @return long that represents the bytes.
+     */
+    public synchronized long getLiveBytes() {
+        return reconcile();
+    }
+
+    /**
+     * Method to get the bytes in use: live results and Bitmaps retained by the registered pools.
+     *
+     * @return long that represents the bytes.
+     */
+    public long getUsedBytes() {
+        long pooled = getPooledBytes();
+        synchronized (this) {
+            return reconcile() + pooled;
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    //private method to sum the sizes of the pools: it takes their locks, so it's never called holding the lock of the governor
+    private long getPooledBytes() {
+        long bytes = 0;
+        for (BitmapPool pool : pools) {
+            bytes += pool.getCurrentSize();
+        }
+        return bytes;
+    }
+
+    //private method to remove recycled Bitmaps and to recompute liveBytes (the WeakHashMap drops the collected ones)
+    private long reconcile() {
+        long bytes = 0;
+        Iterator<Map.Entry<Bitmap, Integer>> iterator = live.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Bitmap, Integer> entry = iterator.next();
+            Bitmap bitmap = entry.getKey();
+            if (bitmap == null || bitmap.isRecycled()) {
+                iterator.remove();
+            } else {
+                bytes += entry.getValue();
+            }
+        }
+        liveBytes = bytes;
+        return bytes;
+    }
+
+    //private method to know if bytes can be allocated, the exact count is computed only near the budget
+    private boolean fits(long bytes) {
+        long pooled = getPooledBytes();
+        synchronized (this) {
+            return liveBytes + pooled + bytes <= budgetBytes || reconcile() + pooled + bytes <= budgetBytes;
+        }
+    }
+
+    /**
+     * Method called before an allocation of {@code bytes}: if the budget is exceeded,
+     * it trims pools and caches and then waits that other results are released.
+     *
+     * @return true if the allocation fits in the budget, false if it doesn't fit also after trimming and waiting.
+     */
+    boolean reserve(long bytes, String operation) {
+        if (fits(bytes)) {
+            return true;
+        }
+        //pools and caches are trimmed without holding the lock of the governor: neither lock is ever held
+        //while taking the other one (BitmapPool.put calls release after releasing the lock of the pool)
+        long excess = getUsedBytes() + bytes - budgetBytes;
+        long freed = trim(excess);
+        if (freed > 0) {
+            report(Listener.ACTION_TRIM, operation, freed);
+            if (fits(bytes)) {
+                return true;
+            }
+        }
+        long maxWait = maxWaitMillis;
+        if (maxWait == 0 || isMainThread()) {
+            return false;
+        }
+        long start = System.nanoTime();
+        long deadline = start + maxWait * 1000000L;
+        boolean fitting = false;
+        try {
+            for (long now = start; now < deadline && !fitting; now = System.nanoTime()) {
+                synchronized (this) {
+                    wait(Math.max(1L, Math.min(WAIT_STEP_MILLIS, (deadline - now) / 1000000L)));
+                }
+                //checked after the wait, because fits reads the pools: a release between the check
+                //and the next wait is seen after at most WAIT_STEP_MILLIS
+                fitting = fits(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report(Listener.ACTION_WAIT, operation, (System.nanoTime() - start) / 1000000L);
+        return fitting;
+    }
+
+    /**
+     * Method called before a decode of a {@code width} x {@code height} image with {@code opt}: if the result
+     * doesn't fit in the budget (after trimming and waiting), it increases {@code opt.inSampleSize}
+     * and then asks {@code RGB_565}.
+     */
+    void degrade(BitmapFactory.Options opt, int width, int height, String operation) {
+        int sample = Math.max(1, opt.inSampleSize);
+        long bytes = estimateBytes(width, height, sample, 4);
+        if (width <= 0 || height <= 0 || reserve(bytes, operation)) {
+            return;
+        }
+        long available = Math.max(0L, budgetBytes - getUsedBytes());
+        int maxSample = sample << MAX_EXTRA_SAMPLING;
+        while (bytes > available && sample < maxSample && width / (sample * 2) > 0 && height / (sample * 2) > 0) {
+            sample *= 2;
+            bytes = estimateBytes(width, height, sample, 4);
+        }
+        if (sample != Math.max(1, opt.inSampleSize)) {
+            opt.inSampleSize = sample;
+            report(Listener.ACTION_SAMPLE, operation, sample);
+        }
+        if (bytes > available) {
+            opt.inPreferredConfig = Bitmap.Config.RGB_565;
+            report(Listener.ACTION_RGB_565, operation, 0);
+        }
+    }
+
+    private static long estimateBytes(int width, int height, int sample, int bytesPerPixel) {
+        return (long) ((width + sample - 1) / sample) * ((height + sample - 1) / sample) * bytesPerPixel;
+    }
+
+    //private method to trim pools and the TransformCache of BitmapUtils, returns the removed bytes
+    private long trim(long excess) {
+        long freed = 0;
+        for (BitmapPool pool : pools) {
+            if (freed >= excess) {
+                return freed;
+            }
+            long size = pool.getCurrentSize();
+            pool.trimToSize(Math.max(0L, size - (excess - freed)));
+            freed += size - pool.getCurrentSize();
+        }
+        //results in the cache are also live results: they are really released only if the callers don't hold them
+        TransformCache cache = BitmapUtils.getTransformCache();
+        if (cache != null && freed < excess) {
+            long size = cache.getCurrentSize();
+            cache.trimToSize(Math.max(0L, size - (excess - freed)));
+            freed += size - cache.getCurrentSize();
+        }
+        return freed;
+    }
+
+    private void report(int action, String operation, long value) {
+        Listener l = listener;
+        if (l != null) {
+            l.onDegradation(action, operation, value, getUsedBytes(), budgetBytes);
+        }
+    }
+
+    private static boolean isMainThread() {
+        Looper main = Looper.getMainLooper();
+        return main != null && main.getThread() == Thread.currentThread();
+    }
+
+    @Override
+    public String toString() {
+        long pooled = getPooledBytes();
+        return "MemoryGovernor[live=" + getLiveBytes() + ", pooled=" + pooled + ", budget=" + budgetBytes + "]";
+    }
+}
@@ -0,0 +1,174 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+
+import java.util.List;
+
+/**
+ * Package-private helper to report operations to the {@link BitmapUtilsMetrics} listener.
+ * <br>
+ * Usage:
+ * <br>
+ * {@code long start = Metrics.start(); ... return Metrics.end("op", start, source, result, Metrics.pooled(pool));}
+ * <br>
+ * Without a listener, {@link #start()} reads a volatile field and the other methods only compare
+ * the start time with {@link #NOT_MEASURED}: no clock reads, no allocations.
+ */
+final class Metrics {
+
+    static final long NOT_MEASURED = Long.MIN_VALUE;
+
+    //the result is from a BitmapPool: hit or miss is known only by obtain(), so it's resolved by end()
+    private static final int RESULT_POOLED = -1;
+
+    //the result of the last pool lookup on this thread, set only when there is a listener
+    private static final ThreadLocal<boolean[]> POOL_HIT = new ThreadLocal<boolean[]>() {
+        @Override
+        protected boolean[] initialValue() {
+            return new boolean[1];
+        }
+    };
+
+    private static volatile BitmapUtilsMetrics listener;
+
+    private Metrics() {
+    }
+
+    static void setListener(BitmapUtilsMetrics metrics) {
+        listener = metrics;
+    }
+
+    static BitmapUtilsMetrics getListener() {
+        return listener;
+    }
+
+    /**
+     * Method to get the start time of an operation.
+     *
+     * @return The current {@link System#nanoTime()}, or {@link #NOT_MEASURED} if there isn't a listener.
+     */
+    static long start() {
+        return listener == null ? NOT_MEASURED : System.nanoTime();
+    }
+
+    /**
+     * Method to get the result type of an operation that uses {@code pool}.
+     *
+     * @param pool The {@link BitmapPool} passed to the operation, or null.
+     * @return The result type, resolved as pool hit or miss by {@code end}.
+     */
+    static int pooled(BitmapPool pool) {
+        return pool == null ? BitmapUtilsMetrics.RESULT_ALLOCATED : RESULT_POOLED;
+    }
+
+    /**
+     * Method to get the result type of an operation that isn't in the caches.
+     *
+     * @param key The cache key of the operation, null if caches are disabled.
+     * @return {@link BitmapUtilsMetrics#RESULT_CACHE_MISS} or {@link BitmapUtilsMetrics#RESULT_ALLOCATED}.
+     */
+    static int computed(TransformCache.Key key) {
+        return key != null ? BitmapUtilsMetrics.RESULT_CACHE_MISS : BitmapUtilsMetrics.RESULT_ALLOCATED;
+    }
+
+    //called by the pool lookups of BitmapUtils
+    static void poolLookup(boolean hit) {
+        if (listener != null) {
+            POOL_HIT.get()[0] = hit;
+        }
+    }
+
+    static Bitmap end(String operation, long start, Bitmap input, Bitmap output, int result) {
+        if (start != NOT_MEASURED && input != null) {
+            report(operation, start, input.getWidth(), input.getHeight(), output, input == output, result);
+        }
+        return output;
+    }
+
+    static Bitmap end(String operation, long start, BitmapRegion input, Bitmap output, int result) {
+        if (start != NOT_MEASURED && input != null) {
+            report(operation, start, input.getWidth(), input.getHeight(), output, false, result);
+        }
+        return output;
+    }
+
+    static Bitmap end(String operation, long start, int inputWidth, int inputHeight, Bitmap output, int result) {
+        if (start != NOT_MEASURED) {
+            report(operation, start, inputWidth, inputHeight, output, false, result);
+        }
+        return output;
+    }
+
+    /**
+     * Method to report an operation whose result isn't a Bitmap, like an encoded image, a raw image,
+     * a PixelBuffer or a stream.
+     *
+     * @param outputBytes long that represents the bytes allocated for the result, 0 if it has been
+     *                    written into a destination of the caller.
+     */
+    static void endData(String operation, long start, int inputWidth, int inputHeight,
+                        int outputWidth, int outputHeight, long outputBytes, int result) {
+        BitmapUtilsMetrics metrics = listener;
+        if (start == NOT_MEASURED || metrics == null) {
+            return;
+        }
+        metrics.onOperation(operation, start, System.nanoTime(), inputWidth, inputHeight, outputWidth, outputHeight,
+                outputBytes, result);
+    }
+
+    /**
+     * Method to report an operation that produces more Bitmaps, placed side by side
+     * horizontally or vertically.
+     */
+    static List<Bitmap> endPieces(String operation, long start, int inputWidth, int inputHeight,
+                                  List<Bitmap> output, boolean horizontal) {
+        if (start == NOT_MEASURED || output == null) {
+            return output;
+        }
+        BitmapUtilsMetrics metrics = listener;
+        if (metrics == null) {
+            return output;
+        }
+        int width = 0;
+        int height = 0;
+        long bytes = 0;
+        for (Bitmap piece : output) {
+            width = horizontal ? width + piece.getWidth() : Math.max(width, piece.getWidth());
+            height = horizontal ? Math.max(height, piece.getHeight()) : height + piece.getHeight();
+            bytes += BitmapUtils.byteSizeOf(piece);
+        }
+        metrics.onOperation(operation, start, System.nanoTime(), inputWidth, inputHeight, width, height,
+                bytes, BitmapUtilsMetrics.RESULT_ALLOCATED);
+        return output;
+    }
+
+    private static void report(String operation, long start, int inputWidth, int inputHeight,
+                               Bitmap output, boolean sameAsInput, int result) {
+        BitmapUtilsMetrics metrics = listener;
+        if (metrics == null || output == null) {
+            return;
+        }
+        if (result == RESULT_POOLED) {
+            result = POOL_HIT.get()[0] ? BitmapUtilsMetrics.RESULT_POOL_HIT : BitmapUtilsMetrics.RESULT_POOL_MISS;
+        }
+        boolean allocated = !sameAsInput && (result == BitmapUtilsMetrics.RESULT_ALLOCATED
+                || result == BitmapUtilsMetrics.RESULT_POOL_MISS || result == BitmapUtilsMetrics.RESULT_CACHE_MISS);
+        metrics.onOperation(operation, start, System.nanoTime(), inputWidth, inputHeight,
+                output.getWidth(), output.getHeight(), allocated ? BitmapUtils.byteSizeOf(output) : 0L, result);
+    }
+}
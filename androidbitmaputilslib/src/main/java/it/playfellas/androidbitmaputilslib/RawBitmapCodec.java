@@ -0,0 +1,245 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import it.playfellas.androidbitmaputilslib.pixel.RawPixelFormat;
+
+/**
+ * Serialization of Bitmaps in the {@link RawPixelFormat}: a compact header (size, config,
+ * row bytes) and the pixels copied with {@link Bitmap#copyPixelsToBuffer(java.nio.Buffer)}.
+ * Compared to {@link BitmapUtils#toByteArray(Bitmap)}, there isn't any PNG encoding/decoding,
+ * only memory copies.
+ */
+public class RawBitmapCodec {
+
+    private RawBitmapCodec() {
+    }
+
+    /**
+     * Method to serialize a Bitmap into a direct ByteBuffer, reusing {@code reuse} if it's big enough.
+     *
+     * @param source The Bitmap to serialize.
+     * @param reuse  A ByteBuffer to reuse (it can be null).
+     * @return {@code reuse} or a new direct ByteBuffer, ready to be read, with header and pixels.
+     */
+    public static ByteBuffer toRaw(Bitmap source, ByteBuffer reuse) {
+        long start = Metrics.start();
+        ByteBuffer result = serialize(source, reuse);
+        endRaw("toRaw", start, source, result != reuse ? result.capacity() : 0L);
+        return result;
+    }
+
+    //package-private method to serialize a Bitmap into a direct ByteBuffer, without reporting it to the Metrics
+    static ByteBuffer serialize(Bitmap source, ByteBuffer reuse) {
+        RawPixelFormat.Header header = headerOf(source);
+        ByteBuffer buffer = reuse;
+        if (buffer == null || buffer.capacity() < header.getTotalLength()) {
+            buffer = ByteBuffer.allocateDirect(header.getTotalLength());
+        }
+        buffer.clear();
+        RawPixelFormat.writeHeader(header, buffer);
+        //a slice starts at the current position, whatever the implementation of copyPixelsToBuffer
+        ByteBuffer payload = buffer.slice();
+        payload.limit(header.getPayloadLength());
+        source.copyPixelsToBuffer(payload);
+        buffer.position(header.getTotalLength());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Method to serialize a Bitmap into a new byte[].
+     *
+     * @param source The Bitmap to serialize.
+     * @return The byte[] with header and pixels.
+     */
+    public static byte[] toRawByteArray(Bitmap source) {
+        long start = Metrics.start();
+        byte[] result = serializeToArray(source);
+        endRaw("toRawByteArray", start, source, result.length);
+        return result;
+    }
+
+    //package-private method to serialize a Bitmap into a new byte[], without reporting it to the Metrics
+    static byte[] serializeToArray(Bitmap source) {
+        RawPixelFormat.Header header = headerOf(source);
+        ByteBuffer buffer = ByteBuffer.allocate(header.getTotalLength());
+        RawPixelFormat.writeHeader(header, buffer);
+        source.copyPixelsToBuffer(ByteBuffer.wrap(buffer.array(), RawPixelFormat.HEADER_SIZE, header.getPayloadLength()).slice());
+        return buffer.array();
+    }
+
+    /**
+     * Method to deserialize a Bitmap from {@code raw}, starting from its current position.
+     * After the call, the position of {@code raw} is after the payload.
+     *
+     * @param raw  The ByteBuffer with header and pixels.
+     * @param pool The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A mutable Bitmap.
+     * @throws IOException if {@code raw} is not a valid raw image.
+     */
+    public static Bitmap fromRaw(ByteBuffer raw, BitmapPool pool) throws IOException {
+        long start = Metrics.start();
+        Bitmap result = deserialize(raw, pool);
+        return Metrics.end("fromRaw", start, result.getWidth(), result.getHeight(), result, Metrics.pooled(pool));
+    }
+
+    //package-private method to deserialize a Bitmap, without reporting it to the Metrics
+    static Bitmap deserialize(ByteBuffer raw, BitmapPool pool) throws IOException {
+        RawPixelFormat.Header header = RawPixelFormat.readHeader(raw);
+        if (raw.remaining() < header.getPayloadLength()) {
+            throw new IOException("raw image payload truncated");
+        }
+        Bitmap.Config config = toConfig(header.getConfig());
+        Bitmap result = BitmapUtils.obtain(pool, header.getWidth(), header.getHeight(), config);
+        if (result.getRowBytes() != header.getRowBytes()) {
+            //the pool can refuse it (for example if it's too big): then it's recycled
+            if (pool == null || !pool.put(result)) {
+                BitmapUtils.discard(result);
+            }
+            throw new IOException("raw image row bytes " + header.getRowBytes() + " don't match this device (" + result.getRowBytes() + ")");
+        }
+        ByteBuffer payload = raw.slice();
+        payload.limit(header.getPayloadLength());
+        result.copyPixelsFromBuffer(payload);
+        result.setHasAlpha(header.hasAlpha());
+        raw.position(raw.position() + header.getPayloadLength());
+        return result;
+    }
+
+    /**
+     * Method to deserialize a Bitmap from a byte[] created by {@link #toRawByteArray(Bitmap)}.
+     *
+     * @param raw  The byte[] with header and pixels.
+     * @param pool The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A mutable Bitmap.
+     * @throws IOException if {@code raw} is not a valid raw image.
+     */
+    public static Bitmap fromRawByteArray(byte[] raw, BitmapPool pool) throws IOException {
+        return fromRaw(ByteBuffer.wrap(raw), pool);
+    }
+
+    /**
+     * Method to write a Bitmap into {@code channel}, at its current position.
+     *
+     * @param source  The Bitmap to serialize.
+     * @param channel The destination FileChannel.
+     * @param reuse   A ByteBuffer to reuse (it can be null).
+     * @return The ByteBuffer used, to reuse it in the next call.
+     * @throws IOException
+     */
+    public static ByteBuffer writeTo(Bitmap source, FileChannel channel, ByteBuffer reuse) throws IOException {
+        long start = Metrics.start();
+        ByteBuffer buffer = serialize(source, reuse);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        endRaw("writeTo", start, source, buffer != reuse ? buffer.capacity() : 0L);
+        return buffer;
+    }
+
+    /**
+     * Method to read a Bitmap from {@code channel}, at its current position.
+     *
+     * @param channel The source FileChannel.
+     * @param reuse   A ByteBuffer to reuse for the payload (it can be null).
+     * @param pool    The {@link BitmapPool} used to get the result Bitmap, or null to allocate a new one.
+     * @return A mutable Bitmap.
+     * @throws IOException if the data is not a valid raw image or the channel ends too early.
+     */
+    public static Bitmap readFrom(FileChannel channel, ByteBuffer reuse, BitmapPool pool) throws IOException {
+        long start = Metrics.start();
+        ByteBuffer headerBuffer = ByteBuffer.allocate(RawPixelFormat.HEADER_SIZE);
+        readFully(channel, headerBuffer);
+        headerBuffer.flip();
+        RawPixelFormat.Header header = RawPixelFormat.readHeader(headerBuffer);
+
+        ByteBuffer buffer = reuse;
+        if (buffer == null || buffer.capacity() < header.getTotalLength()) {
+            buffer = ByteBuffer.allocateDirect(header.getTotalLength());
+        }
+        buffer.clear();
+        headerBuffer.rewind();
+        buffer.put(headerBuffer);
+        buffer.limit(header.getTotalLength());
+        readFully(channel, buffer);
+        buffer.flip();
+        Bitmap result = deserialize(buffer, pool);
+        return Metrics.end("readFrom", start, header.getWidth(), header.getHeight(), result, Metrics.pooled(pool));
+    }
+
+    //private method to report a serialization: allocated bytes are the size of a new array or buffer,
+    //0 if the buffer of the caller has been reused
+    private static void endRaw(String operation, long start, Bitmap source, long allocated) {
+        Metrics.endData(operation, start, source.getWidth(), source.getHeight(), source.getWidth(), source.getHeight(), allocated,
+                allocated > 0 ? BitmapUtilsMetrics.RESULT_ALLOCATED : BitmapUtilsMetrics.RESULT_DEST);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            if (channel.read(dst) < 0) {
+                throw new EOFException("raw image truncated");
+            }
+        }
+    }
+
+    //private method to get the header of a Bitmap
+    static RawPixelFormat.Header headerOf(Bitmap source) {
+        int rowBytes = source.getRowBytes();
+        return new RawPixelFormat.Header(toRawConfig(source.getConfig()), source.hasAlpha() ? RawPixelFormat.FLAG_HAS_ALPHA : 0,
+                source.getWidth(), source.getHeight(), rowBytes, rowBytes * source.getHeight());
+    }
+
+    static int toRawConfig(Bitmap.Config config) {
+        if (config == null) {
+            throw new IllegalArgumentException("Bitmap without a config can't be serialized");
+        }
+        switch (config) {
+            case ALPHA_8:
+                return RawPixelFormat.CONFIG_ALPHA_8;
+            case RGB_565:
+                return RawPixelFormat.CONFIG_RGB_565;
+            case ARGB_4444:
+                return RawPixelFormat.CONFIG_ARGB_4444;
+            case ARGB_8888:
+                return RawPixelFormat.CONFIG_ARGB_8888;
+            default:
+                throw new IllegalArgumentException("unsupported config " + config);
+        }
+    }
+
+    static Bitmap.Config toConfig(int rawConfig) throws IOException {
+        switch (rawConfig) {
+            case RawPixelFormat.CONFIG_ALPHA_8:
+                return Bitmap.Config.ALPHA_8;
+            case RawPixelFormat.CONFIG_RGB_565:
+                return Bitmap.Config.RGB_565;
+            case RawPixelFormat.CONFIG_ARGB_4444:
+                return Bitmap.Config.ARGB_4444;
+            case RawPixelFormat.CONFIG_ARGB_8888:
+                return Bitmap.Config.ARGB_8888;
+            default:
+                throw new IOException("unsupported config " + rawConfig);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import it.playfellas.androidbitmaputilslib.pixel.PixelBuffer;
+import it.playfellas.androidbitmaputilslib.pixel.TileSource;
+
+/**
+ * {@link TileSource} of a PNG or JPEG image, decoded by bands of rows with a {@link BitmapRegionDecoder},
+ * so the whole image is never in memory. Use it with a {@link it.playfellas.androidbitmaputilslib.pixel.TileStreamer}
+ * to process images bigger than the heap.
+ * <p></p>
+ * The Bitmap of a band is reused for the next bands with the same number of rows.
+ * Reads are serialized, because a BitmapRegionDecoder decodes a region at a time.
+ * Call {@link #close()} to release the decoder.
+ */
+public class RegionDecoderTileSource implements TileSource, Closeable {
+
+    private final BitmapRegionDecoder decoder;
+    private final int width;
+    private final int height;
+    private final BitmapFactory.Options options;
+
+    /**
+     * Constructor
+     *
+     * @param filePath The path of the image file (PNG or JPEG).
+     * @throws IOException if the image can't be opened.
+     */
+    public RegionDecoderTileSource(String filePath) throws IOException {
+        this(BitmapRegionDecoder.newInstance(filePath, false));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param is The InputStream of the image (PNG or JPEG). It's not closed by this class.
+     * @throws IOException if the image can't be opened.
+     */
+    public RegionDecoderTileSource(InputStream is) throws IOException {
+        this(BitmapRegionDecoder.newInstance(is, false));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param decoder The BitmapRegionDecoder of the image. It's recycled by {@link #close()}.
+     */
+    public RegionDecoderTileSource(BitmapRegionDecoder decoder) {
+        this.decoder = decoder;
+        this.width = decoder.getWidth();
+        this.height = decoder.getHeight();
+        this.options = new BitmapFactory.Options();
+        this.options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        this.options.inMutable = true;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public synchronized void read(int top, PixelBuffer dst) throws IOException {
+        int rows = dst.getHeight();
+        if (top < 0 || top + rows > height || dst.getWidth() != width) {
+            throw new IllegalArgumentException("rows out of the image or dst with a wrong width");
+        }
+        Bitmap reusable = options.inBitmap;
+        if (reusable != null && reusable.getHeight() != rows) {
+            reusable.recycle();
+            options.inBitmap = null;
+        }
+        Bitmap band = decoder.decodeRegion(new Rect(0, top, width, top + rows), options);
+        if (band == null) {
+            throw new IOException("region " + top + "-" + (top + rows) + " can't be decoded");
+        }
+        options.inBitmap = band;
+        band.getPixels(dst.getPixels(), dst.getOffset(), dst.getStride(), 0, 0, width, rows);
+    }
+
+    /**
+     * Method to recycle the decoder and the Bitmap of the bands.
+     */
+    @Override
+    public synchronized void close() {
+        if (options.inBitmap != null) {
+            options.inBitmap.recycle();
+            options.inBitmap = null;
+        }
+        decoder.recycle();
+    }
+}
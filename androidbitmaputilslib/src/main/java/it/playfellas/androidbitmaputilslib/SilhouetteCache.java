@@ -0,0 +1,278 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import it.playfellas.androidbitmaputilslib.pixel.SkylinePacker;
+
+/**
+ * Cache of silhouettes: the alpha mask of every source is extracted once and stored, packed with
+ * the masks of the other sources, in shared {@code ALPHA_8} atlas Bitmaps (1 byte per pixel).
+ * Every call returns a new {@link SilhouetteDrawable} that draws the mask with its own color,
+ * so N silhouettes of the same image with different colors cost a single mask,
+ * instead of N ARGB_8888 Bitmaps or N decodes of a Drawable.
+ * <p></p>
+ * Masks are placed with the skyline bottom-left heuristic of {@link SkylinePacker}, with 1 pixel
+ * of padding to avoid bleeding when they are drawn scaled. When an atlas is full a new one is created; a mask bigger
+ * than an atlas gets a dedicated one. Masks are never evicted one by one: use {@link #clear()}.
+ * The masks of Bitmap instances are forgotten when the instances are garbage collected,
+ * but their space in the atlases is freed only by {@link #clear()}.
+ * <p></p>
+ * This class is thread-safe.
+ */
+public class SilhouetteCache {
+
+    public static final int DEFAULT_ATLAS_SIZE = 1024;
+
+    private static final int PADDING = 1;
+    //number of pixels copied at a time from the source to the atlas
+    private static final int BAND_PIXELS = 64 * 1024;
+
+    private final int atlasWidth;
+    private final int atlasHeight;
+    private final List<Atlas> atlases = new ArrayList<>();
+    //keys are content keys (String) or instance keys (TransformCache.Key, that don't keep the source alive)
+    private final Map<Object, Mask> masks = new HashMap<>();
+
+    /**
+     * Constructor, with atlases of {@link #DEFAULT_ATLAS_SIZE} x {@link #DEFAULT_ATLAS_SIZE} pixels (1MB each).
+     */
+    public SilhouetteCache() {
+        this(DEFAULT_ATLAS_SIZE, DEFAULT_ATLAS_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param atlasWidth  int that represents the width of an atlas.
+     * @param atlasHeight int that represents the height of an atlas.
+     */
+    public SilhouetteCache(int atlasWidth, int atlasHeight) {
+        if (atlasWidth <= 0 || atlasHeight <= 0) {
+            throw new IllegalArgumentException("atlasWidth and atlasHeight must be >0");
+        }
+        this.atlasWidth = atlasWidth;
+        this.atlasHeight = atlasHeight;
+    }
+
+    /**
+     * Method to get a silhouette of {@code source}, identified by the instance and its content
+     * (like {@link TransformCache#keyFor(Bitmap, String, Object...)}).
+     * If the same image is used with different Bitmap instances, use {@link #get(String, Bitmap, int)} with a content key.
+     *
+     * @param source The original Bitmap.
+     * @param color  Color of the silhouette.
+     * @return A new SilhouetteDrawable, that shares the mask with the other ones of {@code source}.
+     */
+    public synchronized SilhouetteDrawable get(Bitmap source, int color) {
+        return get(TransformCache.keyFor(source, "silhouette"), source, color);
+    }
+
+    /**
+     * Method to get a silhouette of {@code source}, identified by a content key.
+     *
+     * @param key    String that identifies the content of {@code source}, for example the path of a file.
+     * @param source The original Bitmap, read only if the mask isn't in the cache.
+     * @param color  Color of the silhouette.
+     * @return A new SilhouetteDrawable, that shares the mask with the other ones of {@code key}.
+     */
+    public synchronized SilhouetteDrawable get(String key, Bitmap source, int color) {
+        return get((Object) key, source, color);
+    }
+
+    //private method to get a silhouette with a content key or an instance key
+    private SilhouetteDrawable get(Object key, Bitmap source, int color) {
+        Mask mask = masks.get(key);
+        if (mask == null) {
+            mask = add(key, source);
+        }
+        return new SilhouetteDrawable(mask.atlas, mask.region, color);
+    }
+
+    /**
+     * Method to get a silhouette of a resource image. The image is decoded only the first time,
+     * to extract its mask, and then it's recycled.
+     *
+     * @param res   A reference to Resources.
+     * @param id    int that represents the id of the image.
+     * @param color Color of the silhouette.
+     * @return A new SilhouetteDrawable, that shares the mask with the other ones of the same resource.
+     * @throws BitmapUtilsException if the resource can't be decoded.
+     */
+    public SilhouetteDrawable get(Resources res, int id, int color) throws BitmapUtilsException {
+        String key = "res:" + id;
+        synchronized (this) {
+            Mask mask = masks.get(key);
+            if (mask != null) {
+                return new SilhouetteDrawable(mask.atlas, mask.region, color);
+            }
+        }
+        //decoded without the lock, so other threads can get their silhouettes meanwhile
+        Bitmap decoded = BitmapUtils.tracked(BitmapFactory.decodeResource(res, id));
+        if (decoded == null) {
+            throw new BitmapUtilsException(BitmapUtilsException.Reason.WRONGINPUTPARAMETER, "resource " + id + " can't be decoded");
+        }
+        try {
+            return get(key, decoded, color);
+        } finally {
+            decoded.recycle();
+        }
+    }
+
+    /**
+     * Method to check if the mask of a content key is in the cache.
+     *
+     * @param key String that identifies the content of a source.
+     * @return true if the mask is in the cache, false otherwise.
+     */
+    public synchronized boolean contains(String key) {
+        return masks.containsKey(key);
+    }
+
+    /**
+     * Method to remove all masks. Atlases are not recycled, because they can still be used by
+     * existing SilhouetteDrawables: they are garbage collected with them.
+     */
+    public synchronized void clear() {
+        masks.clear();
+        atlases.clear();
+    }
+
+    public synchronized int getMaskCount() {
+        return masks.size();
+    }
+
+    public synchronized int getAtlasCount() {
+        return atlases.size();
+    }
+
+    /**
+     * Method to get the number of bytes of all atlases.
+     *
+     * @return The bytes of the atlases, measured like {@code BitmapUtils.byteSizeOf}.
+     */
+    public synchronized long getByteSize() {
+        long size = 0;
+        for (Atlas atlas : atlases) {
+            size += BitmapUtils.byteSizeOf(atlas.bitmap);
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SilhouetteCache[masks=" + masks.size() + ", atlases=" + atlases.size() + ", size=" + getByteSize() + "]";
+    }
+
+    //private method to place the mask of source in an atlas, creating a new one if necessary
+    private Mask add(Object key, Bitmap source) {
+        removeCollected();
+        int w = source.getWidth();
+        int h = source.getHeight();
+        Atlas atlas = null;
+        Rect region = null;
+        for (int i = 0; i < atlases.size() && region == null; i++) {
+            atlas = atlases.get(i);
+            region = atlas.allocate(w, h);
+        }
+        if (region == null) {
+            atlas = new Atlas(Math.max(atlasWidth, w), Math.max(atlasHeight, h));
+            atlases.add(atlas);
+            region = atlas.allocate(w, h);
+        }
+        copyAlpha(source, atlas.bitmap, region);
+        Mask mask = new Mask(atlas.bitmap, region);
+        masks.put(key, mask);
+        return mask;
+    }
+
+    //private method to remove the masks of Bitmap instances that were garbage collected
+    private void removeCollected() {
+        Iterator<Object> keys = masks.keySet().iterator();
+        while (keys.hasNext()) {
+            Object key = keys.next();
+            if (key instanceof TransformCache.Key && ((TransformCache.Key) key).isCollected()) {
+                keys.remove();
+            }
+        }
+    }
+
+    //private method to copy the alpha of source into region of the ALPHA_8 atlas, by bands of rows.
+    //setPixels doesn't write into ALPHA_8 Bitmaps before API 26, so the bytes of the atlas are
+    //modified in a buffer and copied back with copyPixelsFromBuffer
+    private static void copyAlpha(Bitmap source, Bitmap atlas, Rect region) {
+        int w = region.width();
+        int h = region.height();
+        if (w == 0 || h == 0) {
+            return;
+        }
+        int stride = atlas.getRowBytes();
+        ByteBuffer buffer = ByteBuffer.allocate(stride * atlas.getHeight());
+        atlas.copyPixelsToBuffer(buffer);
+        byte[] alpha = buffer.array();
+        int rows = Math.max(1, Math.min(h, BAND_PIXELS / w));
+        int[] band = new int[rows * w];
+        for (int y = 0; y < h; y += rows) {
+            int n = Math.min(rows, h - y);
+            source.getPixels(band, 0, w, 0, y, w, n);
+            for (int row = 0; row < n; row++) {
+                int o = (region.top + y + row) * stride + region.left;
+                for (int x = 0, i = row * w; x < w; x++, i++) {
+                    alpha[o + x] = (byte) (band[i] >>> 24);
+                }
+            }
+        }
+        buffer.rewind();
+        atlas.copyPixelsFromBuffer(buffer);
+    }
+
+    private static final class Mask {
+        private final Bitmap atlas;
+        private final Rect region;
+
+        private Mask(Bitmap atlas, Rect region) {
+            this.atlas = atlas;
+            this.region = region;
+        }
+    }
+
+    //ALPHA_8 Bitmap with the skyline of the masks placed in it
+    private static final class Atlas {
+        private final Bitmap bitmap;
+        private final SkylinePacker packer;
+
+        private Atlas(int width, int height) {
+            bitmap = BitmapUtils.obtain(null, width, height, Bitmap.Config.ALPHA_8);
+            packer = new SkylinePacker(width, height, PADDING);
+        }
+
+        private Rect allocate(int w, int h) {
+            int[] position = packer.insert(w, h);
+            return position != null ? new Rect(position[0], position[1], position[0] + w, position[1] + h) : null;
+        }
+    }
+}
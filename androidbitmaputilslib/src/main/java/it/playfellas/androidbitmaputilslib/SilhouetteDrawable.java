@@ -0,0 +1,112 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Lightweight Drawable of a silhouette: it draws an {@code ALPHA_8} mask, stored in an atlas
+ * of a {@link SilhouetteCache}, colored with the color of this instance.
+ * Many instances, with different colors, share the same mask: a new color doesn't copy any pixel.
+ * <p></p>
+ * With an opaque color, the result is the same of a {@code PorterDuff.Mode.SRC_ATOP} color filter on the original image.
+ */
+public class SilhouetteDrawable extends Drawable {
+
+    private final Bitmap atlas;
+    private final Rect region;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private int color;
+    private int alpha = 255;
+
+    /**
+     * Constructor
+     *
+     * @param atlas  The ALPHA_8 Bitmap that contains the mask.
+     * @param region The rectangle of the mask in {@code atlas}.
+     * @param color  Color of the silhouette.
+     */
+    public SilhouetteDrawable(Bitmap atlas, Rect region, int color) {
+        this.atlas = atlas;
+        this.region = new Rect(region);
+        setColor(color);
+    }
+
+    /**
+     * Method to change the color of this silhouette. It doesn't modify other instances with the same mask.
+     *
+     * @param color Color of the silhouette.
+     */
+    public void setColor(int color) {
+        this.color = color;
+        updatePaintColor();
+        invalidateSelf();
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        canvas.drawBitmap(atlas, region, getBounds(), paint);
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        this.alpha = alpha;
+        updatePaintColor();
+        invalidateSelf();
+    }
+
+    @Override
+    public int getAlpha() {
+        return alpha;
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return region.width();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return region.height();
+    }
+
+    //the alpha of the Drawable is applied to the alpha of the color
+    private void updatePaintColor() {
+        paint.setColor(Color.argb(Color.alpha(color) * alpha / 255, Color.red(color), Color.green(color), Color.blue(color)));
+    }
+}
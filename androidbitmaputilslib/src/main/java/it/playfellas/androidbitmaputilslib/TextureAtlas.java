@@ -0,0 +1,169 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of an {@link AtlasPacker}: a few page Bitmaps that contain all the packed images,
+ * and a lookup table from the key of every image to its page and rectangle.
+ * Draw an image with {@link #draw(Canvas, Object, float, float, Paint)}, or get its {@link Region}
+ * to use the page directly (for example as an OpenGL texture).
+ *
+ * @param <K> The type of the keys of the images.
+ */
+public class TextureAtlas<K> {
+
+    private final List<Bitmap> pages;
+    private final Map<K, Region> regions;
+
+    TextureAtlas(List<Bitmap> pages, Map<K, Region> regions) {
+        this.pages = Collections.unmodifiableList(pages);
+        this.regions = Collections.unmodifiableMap(regions);
+    }
+
+    /**
+     * Position of an image in a {@link TextureAtlas}.
+     */
+    public static final class Region {
+        private final int page;
+        private final Rect rect;
+
+        Region(int page, Rect rect) {
+            this.page = page;
+            this.rect = rect;
+        }
+
+        /**
+         * Method to get the index of the page that contains the image.
+         *
+         * @return The index in {@link TextureAtlas#getPages()}.
+         */
+        public int getPage() {
+            return page;
+        }
+
+        /**
+         * Method to get the rectangle of the image in its page.
+         *
+         * @return A copy of the rectangle.
+         */
+        public Rect getRect() {
+            return new Rect(rect);
+        }
+
+        public int getWidth() {
+            return rect.width();
+        }
+
+        public int getHeight() {
+            return rect.height();
+        }
+    }
+
+    public List<Bitmap> getPages() {
+        return pages;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Method to get the position of an image.
+     *
+     * @param key The key of the image.
+     * @return The Region of the image, or null if it isn't in this atlas.
+     */
+    public Region getRegion(K key) {
+        return regions.get(key);
+    }
+
+    /**
+     * Method to get the lookup table of all the images.
+     *
+     * @return An unmodifiable Map from the key of every image to its Region.
+     */
+    public Map<K, Region> getRegions() {
+        return regions;
+    }
+
+    /**
+     * Method to draw an image of this atlas with its original size.
+     *
+     * @param canvas The Canvas where the image is drawn.
+     * @param key    The key of the image.
+     * @param left   float that represents the left position of the image.
+     * @param top    float that represents the top position of the image.
+     * @param paint  The Paint used to draw the image, or null.
+     */
+    public void draw(Canvas canvas, K key, float left, float top, Paint paint) {
+        Region region = checkedRegion(key);
+        canvas.drawBitmap(pages.get(region.page), region.rect,
+                new RectF(left, top, left + region.rect.width(), top + region.rect.height()), paint);
+    }
+
+    /**
+     * Method to draw an image of this atlas scaled into {@code dst}.
+     *
+     * @param canvas The Canvas where the image is drawn.
+     * @param key    The key of the image.
+     * @param dst    The rectangle where the image is drawn.
+     * @param paint  The Paint used to draw the image, or null.
+     */
+    public void draw(Canvas canvas, K key, Rect dst, Paint paint) {
+        Region region = checkedRegion(key);
+        canvas.drawBitmap(pages.get(region.page), region.rect, dst, paint);
+    }
+
+    /**
+     * Method to recycle all pages. After it, this atlas must not be used anymore.
+     */
+    public void recycle() {
+        for (Bitmap page : pages) {
+            page.recycle();
+        }
+    }
+
+    /**
+     * Method to get the number of bytes of all pages.
+     *
+     * @return The bytes of the pages, measured like {@code BitmapUtils.byteSizeOf}.
+     */
+    public long getByteSize() {
+        long size = 0;
+        for (Bitmap page : pages) {
+            size += BitmapUtils.byteSizeOf(page);
+        }
+        return size;
+    }
+
+    private Region checkedRegion(K key) {
+        Region region = regions.get(key);
+        if (region == null) {
+            throw new IllegalArgumentException("no image with key " + key + " in this atlas");
+        }
+        return region;
+    }
+}
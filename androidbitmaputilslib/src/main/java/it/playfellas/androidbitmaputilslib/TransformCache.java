@@ -0,0 +1,379 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib;
+
+import android.graphics.Bitmap;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory cache of the results of {@link BitmapUtils} operations, bounded in bytes (measured with
+ * the same logic of {@code BitmapUtils.byteSizeOf}) with LRU eviction.
+ * Entries are identified by a {@link Key}, composed by the identity of the source
+ * (a resource id, a content key, a content hash or a Bitmap instance) and by the operation with its parameters.
+ * <p></p>
+ * The cache is split into stripes, each one with its lock, so concurrent threads rarely wait each other.
+ * The budget is global: when it's exceeded, the least recently used entry of the whole cache
+ * (the eldest of the stripe with the oldest access) is evicted, whatever its stripe.
+ * <p></p>
+ * Enable it with {@link BitmapUtils#setTransformCache(TransformCache)}.
+ * ATTENTION: cached Bitmaps are shared between callers, so you must not modify or recycle them.
+ */
+public class TransformCache {
+
+    private static final int DEFAULT_STRIPES = 8;
+
+    private final Segment[] segments;
+    private final long maxBytes;
+    private final AtomicLong currentBytes = new AtomicLong();
+    //ticks of the accesses, to compare the eldest entries of different stripes
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes long that represents the maximum number of bytes retained by the cache.
+     */
+    public TransformCache(long maxBytes) {
+        this(maxBytes, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes long that represents the maximum number of bytes retained by the cache.
+     * @param stripes  int that represents the number of independent stripes (locks).
+     */
+    public TransformCache(long maxBytes, int stripes) {
+        if (maxBytes < 0 || stripes < 1) {
+            throw new IllegalArgumentException("maxBytes must be >=0 and stripes >=1");
+        }
+        this.maxBytes = maxBytes;
+        segments = new Segment[stripes];
+        for (int i = 0; i < stripes; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Method to get a key for an operation on a source identified by a stable content key,
+     * for example "res:" + id for a resource image, or the path of a file.
+     *
+     * @param sourceKey String that identifies the content of the source.
+     * @param op        String that represents the name of the operation.
+     * @param params    Parameters of the operation.
+     * @return The Key.
+     */
+    public static Key keyFor(String sourceKey, String op, Object... params) {
+        return new Key(sourceKey + "|" + signatureOf(op, params), null);
+    }
+
+    /**
+     * Method to get a key for an operation on a Bitmap instance.
+     * The key matches only the same instance, with the same generation id
+     * (so a Bitmap modified after the call will not match), and it doesn't
+     * prevent the Bitmap from being garbage collected.
+     *
+     * @param source The source Bitmap.
+     * @param op     String that represents the name of the operation.
+     * @param params Parameters of the operation.
+     * @return The Key.
+     */
+    public static Key keyFor(Bitmap source, String op, Object... params) {
+        String sourceKey = "bitmap@" + Integer.toHexString(System.identityHashCode(source)) + "#" + source.getGenerationId();
+        return new Key(sourceKey + "|" + signatureOf(op, params), source);
+    }
+
+    /**
+     * Method to get a key for an operation on the content of a Bitmap, identified by its
+     * {@link BitmapHashes#contentHash(Bitmap)}: different instances with the same pixels, size and Config
+     * share the result. Like the other content keys, it can be stored also in a {@link BitmapDiskCache}.
+     *
+     * @param source The source Bitmap.
+     * @param op     String that represents the name of the operation.
+     * @param params Parameters of the operation.
+     * @return The Key.
+     */
+    public static Key contentKeyFor(Bitmap source, String op, Object... params) {
+        return keyFor(BitmapHashes.contentKey(source), op, params);
+    }
+
+    //canonical signature: op(param1,param2,...)
+    private static String signatureOf(String op, Object... params) {
+        StringBuilder sb = new StringBuilder(op).append('(');
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(params[i]);
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Method to get a cached Bitmap.
+     *
+     * @param key The Key of the entry.
+     * @return The cached Bitmap, or null if it isn't in the cache.
+     */
+    public Bitmap get(Key key) {
+        Bitmap bitmap = segmentFor(key).get(key);
+        if (bitmap != null && !bitmap.isRecycled()) {
+            hitCount.incrementAndGet();
+            return bitmap;
+        }
+        if (bitmap != null) {
+            remove(key);
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Method to add a Bitmap to the cache. Bitmaps bigger than the maximum size of the cache are not cached.
+     *
+     * @param key    The Key of the entry.
+     * @param bitmap The Bitmap to cache.
+     * @return {@code bitmap}, to chain calls.
+     */
+    public Bitmap put(Key key, Bitmap bitmap) {
+        if (bitmap != null && segmentFor(key).put(key, bitmap)) {
+            trim(maxBytes);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Method to remove an entry from the cache.
+     *
+     * @param key The Key of the entry.
+     */
+    public void remove(Key key) {
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * Method to remove all entries from the cache. Removed Bitmaps are not recycled.
+     */
+    public void evictAll() {
+        trimToSize(0);
+    }
+
+    /**
+     * Method to evict the least recently used entries, until the size of the cache
+     * is less or equals than {@code size}. Removed Bitmaps are not recycled.
+     *
+     * @param size long that represents the desired size in bytes.
+     */
+    public void trimToSize(long size) {
+        trim(size);
+    }
+
+    public long getCurrentSize() {
+        return currentBytes.get();
+    }
+
+    public long getMaxSize() {
+        return maxBytes;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TransformCache[size=" + getCurrentSize() + ", maxSize=" + getMaxSize()
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    //private method to evict the least recently used entries of all stripes, until the size is <= size.
+    //Only one stripe is locked at a time: with concurrent accesses the order is approximately LRU
+    private void trim(long size) {
+        while (currentBytes.get() > size) {
+            Segment eldest = null;
+            long eldestTick = Long.MAX_VALUE;
+            for (Segment segment : segments) {
+                long tick = segment.getEldestTick();
+                if (tick < eldestTick) {
+                    eldestTick = tick;
+                    eldest = segment;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            eldest.evictEldest();
+        }
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7FFFFFFF) % segments.length];
+    }
+
+    /**
+     * Key of an entry: the identity of the source and the canonical signature of the operation.
+     */
+    public static final class Key {
+        private final String signature;
+        private final WeakReference<Bitmap> sourceRef;
+
+        private Key(String signature, Bitmap source) {
+            this.signature = signature;
+            this.sourceRef = source != null ? new WeakReference<>(source) : null;
+        }
+
+        /**
+         * Method to get the canonical signature of this key.
+         *
+         * @return String that represents the source and the operation.
+         */
+        public String getSignature() {
+            return signature;
+        }
+
+        /**
+         * Method to know if this key is bound to a Bitmap instance, so it's meaningful
+         * only in the current process.
+         *
+         * @return true if bound to a Bitmap instance, false if based on a stable content key.
+         */
+        public boolean isInstanceKey() {
+            return sourceRef != null;
+        }
+
+        //package-private method to know if the source of an instance key was garbage collected:
+        //the key can't match anymore
+        boolean isCollected() {
+            return sourceRef != null && sourceRef.get() == null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (!signature.equals(other.signature)) {
+                return false;
+            }
+            if (sourceRef == null || other.sourceRef == null) {
+                return sourceRef == other.sourceRef;
+            }
+            Bitmap source = sourceRef.get();
+            return source != null && source == other.sourceRef.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return signature.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return signature;
+        }
+    }
+
+    private final class Segment {
+        //access-ordered: the first entry is the least recently used
+        private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        private synchronized Bitmap get(Key key) {
+            Entry entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.tick = clock.incrementAndGet();
+            return entry.bitmap;
+        }
+
+        //private method to add an entry, returning false if it's too big for the cache
+        private synchronized boolean put(Key key, Bitmap bitmap) {
+            int size = BitmapUtils.byteSizeOf(bitmap);
+            if (size > maxBytes) {
+                return false;
+            }
+            Entry entry = new Entry(bitmap, size);
+            entry.tick = clock.incrementAndGet();
+            Entry previous = map.put(key, entry);
+            if (previous != null) {
+                currentBytes.addAndGet(-previous.size);
+            }
+            currentBytes.addAndGet(size);
+            return true;
+        }
+
+        private synchronized void remove(Key key) {
+            Entry previous = map.remove(key);
+            if (previous != null) {
+                currentBytes.addAndGet(-previous.size);
+            }
+        }
+
+        //private method to get the tick of the last access to the eldest entry, or Long.MAX_VALUE if empty
+        private synchronized long getEldestTick() {
+            if (map.isEmpty()) {
+                return Long.MAX_VALUE;
+            }
+            return map.values().iterator().next().tick;
+        }
+
+        private synchronized void evictEldest() {
+            Iterator<Map.Entry<Key, Entry>> iterator = map.entrySet().iterator();
+            if (iterator.hasNext()) {
+                Entry eldest = iterator.next().getValue();
+                iterator.remove();
+                currentBytes.addAndGet(-eldest.size);
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    //the size is stored, because a recycled Bitmap doesn't report it anymore
+    private static final class Entry {
+        private final Bitmap bitmap;
+        private final int size;
+        //guarded by the lock of the stripe
+        private long tick;
+
+        private Entry(Bitmap bitmap, int size) {
+            this.bitmap = bitmap;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,605 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.disk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent key-value store of binary records, in a single append-only pack file.
+ * Reads are served from a {@link MappedByteBuffer} of the pack, without copies.
+ * <br>
+ * Files in the directory:
+ * <br>
+ * - data-[generation].pack: sequence of records [magic | keyLength | key | dataLength | crc32 | data].
+ * A dataLength of -1 is a tombstone, that removes the key.
+ * <br>
+ * - index.idx: keys with offsets of their data, the generation of the pack and the length
+ * of the pack covered by the index. It's written to index.tmp and then renamed, so it's
+ * always complete. Records appended after the last index write are recovered scanning the pack,
+ * and a torn record at the end (because of a crash) is truncated.
+ * <p></p>
+ * When the pack grows over the maximum size, or when more than half of it is dead data, it's
+ * compacted into a new generation, keeping the most recently used records. A full pack is compacted
+ * down to 3/4 of the maximum size, so the next records are appended without rewriting it again.
+ * <p></p>
+ * This class uses only java.io and java.nio, so it can be used (and tested) on a plain JVM.
+ * It's thread-safe.
+ */
+public class PackFileStore implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int RECORD_MAGIC = 0x42555052; //"BUPR"
+    private static final int INDEX_MAGIC = 0x42555049; //"BUPI"
+    private static final int INDEX_VERSION = 1;
+    private static final int TOMBSTONE = -1;
+    //magic + keyLength + dataLength + crc32
+    private static final int RECORD_OVERHEAD = 16;
+    //a full pack is compacted to this fraction of maxBytes, not just enough for the next record:
+    //otherwise every put on a full pack would rewrite it
+    private static final float COMPACT_RATIO = 0.75f;
+
+    private static final String INDEX_FILE = "index.idx";
+    private static final String INDEX_TMP_FILE = "index.tmp";
+    private static final String PACK_PREFIX = "data-";
+    private static final String PACK_SUFFIX = ".pack";
+
+    private final File directory;
+    private final long maxBytes;
+    private final long userVersion;
+
+    //access-ordered: the first entry is the least recently used
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long generation;
+    private RandomAccessFile packFile;
+    private FileChannel pack;
+    private long packLength;
+    private long liveBytes;
+    private MappedByteBuffer mapped;
+    private boolean indexDirty;
+
+    /**
+     * Constructor to open (or create) a store.
+     *
+     * @param directory   The directory of the store, used only by this store.
+     * @param maxBytes    long that represents the maximum size of the pack file.
+     * @param userVersion long that represents the version of the stored data. If it's different from
+     *                    the version used to write the store, all data is discarded.
+     * @throws IOException
+     */
+    public PackFileStore(File directory, long maxBytes, long userVersion) throws IOException {
+        //records are read through a single MappedByteBuffer, addressed with int positions
+        if (maxBytes <= 0 || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxBytes must be >0 and <=Integer.MAX_VALUE");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can't create " + directory);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.userVersion = userVersion;
+        open();
+    }
+
+    private void open() throws IOException {
+        long coveredLength;
+        try {
+            coveredLength = readIndex();
+        } catch (IOException e) {
+            //missing or corrupted index: rebuild it from the newest pack
+            index.clear();
+            generation = newestPackGeneration();
+            coveredLength = 0;
+        }
+        if (coveredLength < 0) {
+            //data of another version: start from a new empty pack
+            index.clear();
+            generation = newestPackGeneration() + 1;
+            coveredLength = 0;
+        }
+        deleteOtherPacks();
+
+        packFile = new RandomAccessFile(packFileOf(generation), "rw");
+        pack = packFile.getChannel();
+        packLength = pack.size();
+        if (coveredLength > packLength) {
+            index.clear();
+            coveredLength = 0;
+        }
+        liveBytes = 0;
+        for (Entry entry : index.values()) {
+            liveBytes += entry.recordLength();
+        }
+        //recover records appended after the last index write
+        if (coveredLength < packLength) {
+            scan(coveredLength);
+        }
+        //the index records the version, so it's written also for a new store
+        writeIndex();
+    }
+
+    /**
+     * Method to add (or replace) a record.
+     *
+     * @param key  String that identifies the record.
+     * @param data The data, from its position to its limit. Its position is not changed.
+     * @throws IOException
+     */
+    public synchronized void put(String key, ByteBuffer data) throws IOException {
+        checkOpen();
+        byte[] keyBytes = key.getBytes(UTF_8);
+        ByteBuffer payload = data.duplicate();
+        int dataLength = payload.remaining();
+        long recordLength = RECORD_OVERHEAD + keyBytes.length + (long) dataLength;
+        if (recordLength > maxBytes) {
+            return;
+        }
+        if (packLength + recordLength > maxBytes) {
+            compact(Math.min(compactTarget(), maxBytes - recordLength));
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_OVERHEAD + keyBytes.length);
+        header.putInt(RECORD_MAGIC).putInt(keyBytes.length).put(keyBytes).putInt(dataLength).putInt(crcOf(payload.duplicate()));
+        header.flip();
+
+        long offset = packLength;
+        writeFully(header, offset);
+        writeFully(payload, offset + header.limit());
+
+        Entry previous = index.put(key, new Entry(offset + header.limit(), dataLength, keyBytes.length));
+        if (previous != null) {
+            liveBytes -= previous.recordLength();
+        }
+        liveBytes += recordLength;
+        packLength += recordLength;
+        indexDirty = true;
+    }
+
+    /**
+     * Method to get a record.
+     *
+     * @param key String that identifies the record.
+     * @return A read-only ByteBuffer with the data (mapped from the pack file), or null if the key isn't in the store.
+     * @throws IOException
+     */
+    public synchronized ByteBuffer get(String key) throws IOException {
+        checkOpen();
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long end = entry.dataOffset + entry.dataLength;
+        if (mapped == null || mapped.capacity() < end) {
+            mapped = pack.map(FileChannel.MapMode.READ_ONLY, 0, packLength);
+        }
+        ByteBuffer result = mapped.duplicate();
+        result.limit((int) end);
+        result.position((int) entry.dataOffset);
+        return result.slice().asReadOnlyBuffer();
+    }
+
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Method to remove a record.
+     *
+     * @param key String that identifies the record.
+     * @throws IOException
+     */
+    public synchronized void remove(String key) throws IOException {
+        checkOpen();
+        Entry previous = index.remove(key);
+        if (previous == null) {
+            return;
+        }
+        liveBytes -= previous.recordLength();
+        byte[] keyBytes = key.getBytes(UTF_8);
+        if (packLength + RECORD_OVERHEAD + keyBytes.length > maxBytes) {
+            //as in put: the pack never grows over maxBytes. The compacted pack doesn't contain
+            //the removed record, so the tombstone isn't needed
+            compact(compactTarget());
+            return;
+        }
+        ByteBuffer tombstone = ByteBuffer.allocate(RECORD_OVERHEAD + keyBytes.length);
+        tombstone.putInt(RECORD_MAGIC).putInt(keyBytes.length).put(keyBytes).putInt(TOMBSTONE).putInt(0);
+        tombstone.flip();
+        writeFully(tombstone, packLength);
+        packLength += tombstone.limit();
+        indexDirty = true;
+        if (packLength - liveBytes > packLength / 2) {
+            compact(maxBytes);
+        }
+    }
+
+    /**
+     * Method to remove all records.
+     *
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        checkOpen();
+        index.clear();
+        compact(0);
+    }
+
+    /**
+     * Method to write the pack and the index to the storage device.
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        if (indexDirty) {
+            pack.force(false);
+            writeIndex();
+        }
+    }
+
+    /**
+     * Method to rewrite the pack file with only live records, discarding the least recently used
+     * ones until the size of the pack is less or equals than {@code size}.
+     *
+     * @param size long that represents the maximum size of the compacted pack.
+     * @throws IOException
+     */
+    public synchronized void compact(long size) throws IOException {
+        checkOpen();
+        long newLength = 0;
+        for (Entry entry : index.values()) {
+            newLength += entry.recordLength();
+        }
+        Iterator<Map.Entry<String, Entry>> lru = index.entrySet().iterator();
+        while (newLength > size && lru.hasNext()) {
+            newLength -= lru.next().getValue().recordLength();
+            lru.remove();
+        }
+
+        long newGeneration = generation + 1;
+        File newPackFile = packFileOf(newGeneration);
+        RandomAccessFile newRandomAccessFile = new RandomAccessFile(newPackFile, "rw");
+        FileChannel newPack = newRandomAccessFile.getChannel();
+        LinkedHashMap<String, Entry> newIndex = new LinkedHashMap<>(64, 0.75f, true);
+        long position = 0;
+        try {
+            newPack.truncate(0);
+            //copy in LRU order, so the order is kept after a restart
+            for (Map.Entry<String, Entry> e : index.entrySet()) {
+                Entry entry = e.getValue();
+                long recordStart = entry.dataOffset - (RECORD_OVERHEAD + entry.keyLength);
+                long recordLength = entry.recordLength();
+                long copied = 0;
+                while (copied < recordLength) {
+                    copied += pack.transferTo(recordStart + copied, recordLength - copied, newPack.position(position + copied));
+                }
+                newIndex.put(e.getKey(), new Entry(position + (entry.dataOffset - recordStart), entry.dataLength, entry.keyLength));
+                position += recordLength;
+            }
+            newPack.force(false);
+        } catch (IOException e) {
+            newPack.close();
+            newRandomAccessFile.close();
+            newPackFile.delete();
+            throw e;
+        }
+
+        File oldPackFile = packFileOf(generation);
+        packFile.close();
+        packFile = newRandomAccessFile;
+        pack = newPack;
+        mapped = null;
+        generation = newGeneration;
+        packLength = position;
+        liveBytes = position;
+        index.clear();
+        index.putAll(newIndex);
+        writeIndex();
+        oldPackFile.delete();
+    }
+
+    //private method to get the size of a full pack after a compaction
+    private long compactTarget() {
+        return (long) (maxBytes * COMPACT_RATIO);
+    }
+
+    public synchronized long getPackLength() {
+        return packLength;
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return index.size();
+    }
+
+    public long getMaxSize() {
+        return maxBytes;
+    }
+
+    /**
+     * Method to flush and close the store.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (pack == null) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            packFile.close();
+            pack = null;
+            packFile = null;
+            mapped = null;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (pack == null) {
+            throw new IOException("store closed");
+        }
+    }
+
+    private void writeFully(ByteBuffer src, long position) throws IOException {
+        long p = position;
+        while (src.hasRemaining()) {
+            p += pack.write(src, p);
+        }
+    }
+
+    //private method to get the crc32 of the remaining bytes of src, copying them in small chunks
+    private static int crcOf(ByteBuffer src) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[Math.min(8192, Math.max(1, src.remaining()))];
+        while (src.hasRemaining()) {
+            int length = Math.min(chunk.length, src.remaining());
+            src.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return (int) crc.getValue();
+    }
+
+    //private method to read records from start to the end of the pack, truncating a torn last record
+    private void scan(long start) throws IOException {
+        long position = start;
+        ByteBuffer header = ByteBuffer.allocate(8);
+        while (position < packLength) {
+            long recordStart = position;
+            header.clear();
+            if (!readFully(header, position) || header.getInt(0) != RECORD_MAGIC) {
+                break;
+            }
+            int keyLength = header.getInt(4);
+            if (keyLength < 0 || recordStart + RECORD_OVERHEAD + keyLength > packLength) {
+                break;
+            }
+            ByteBuffer keyAndLength = ByteBuffer.allocate(keyLength + 8);
+            if (!readFully(keyAndLength, position + 8)) {
+                break;
+            }
+            String key = new String(keyAndLength.array(), 0, keyLength, UTF_8);
+            int dataLength = keyAndLength.getInt(keyLength);
+            int crc = keyAndLength.getInt(keyLength + 4);
+            long dataOffset = recordStart + RECORD_OVERHEAD + keyLength;
+
+            if (dataLength == TOMBSTONE) {
+                Entry removed = index.remove(key);
+                if (removed != null) {
+                    liveBytes -= removed.recordLength();
+                }
+                position = dataOffset;
+                continue;
+            }
+            if (dataLength < 0 || dataOffset + dataLength > packLength) {
+                break;
+            }
+            ByteBuffer data = ByteBuffer.allocate(dataLength);
+            if (!readFully(data, dataOffset)) {
+                break;
+            }
+            CRC32 check = new CRC32();
+            check.update(data.array());
+            if ((int) check.getValue() != crc) {
+                break;
+            }
+            Entry entry = new Entry(dataOffset, dataLength, keyLength);
+            Entry previous = index.put(key, entry);
+            if (previous != null) {
+                liveBytes -= previous.recordLength();
+            }
+            liveBytes += entry.recordLength();
+            position = dataOffset + dataLength;
+        }
+        if (position < packLength) {
+            pack.truncate(position);
+            packLength = position;
+        }
+    }
+
+    private boolean readFully(ByteBuffer dst, long position) throws IOException {
+        long p = position;
+        while (dst.hasRemaining()) {
+            int read = pack.read(dst, p);
+            if (read < 0) {
+                return false;
+            }
+            p += read;
+        }
+        return true;
+    }
+
+    //private method to load the index, returning the length of the pack covered by the index,
+    //or -1 if the index was written with another version
+    private long readIndex() throws IOException {
+        File file = new File(directory, INDEX_FILE);
+        if (!file.isFile()) {
+            throw new IOException("no index");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) raf.length());
+            FileChannel channel = raf.getChannel();
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                //keep reading
+            }
+            buffer.flip();
+            if (buffer.remaining() < 8) {
+                throw new IOException("index truncated");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, buffer.limit() - 8);
+            if (buffer.getLong(buffer.limit() - 8) != crc.getValue()) {
+                throw new IOException("index corrupted");
+            }
+            if (buffer.getInt() != INDEX_MAGIC || buffer.getInt() != INDEX_VERSION) {
+                throw new IOException("unknown index format");
+            }
+            if (buffer.getLong() != userVersion) {
+                return -1;
+            }
+            generation = buffer.getLong();
+            long coveredLength = buffer.getLong();
+            int count = buffer.getInt();
+            index.clear();
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                long dataOffset = buffer.getLong();
+                int dataLength = buffer.getInt();
+                index.put(new String(key, UTF_8), new Entry(dataOffset, dataLength, key.length));
+            }
+            return coveredLength;
+        } finally {
+            raf.close();
+        }
+    }
+
+    //private method to write the index atomically: a temp file, then a rename
+    private void writeIndex() throws IOException {
+        List<byte[]> keys = new ArrayList<>(index.size());
+        int size = 4 + 4 + 8 + 8 + 8 + 4 + 8;
+        for (String key : index.keySet()) {
+            byte[] bytes = key.getBytes(UTF_8);
+            keys.add(bytes);
+            size += 4 + bytes.length + 8 + 4;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putLong(userVersion).putLong(generation).putLong(packLength).putInt(index.size());
+        int i = 0;
+        for (Entry entry : index.values()) {
+            byte[] key = keys.get(i++);
+            buffer.putInt(key.length).put(key).putLong(entry.dataOffset).putInt(entry.dataLength);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+
+        File tmp = new File(directory, INDEX_TMP_FILE);
+        RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            channel.truncate(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } finally {
+            raf.close();
+        }
+        if (!tmp.renameTo(new File(directory, INDEX_FILE))) {
+            throw new IOException("can't rename " + tmp);
+        }
+        indexDirty = false;
+    }
+
+    private File packFileOf(long gen) {
+        return new File(directory, PACK_PREFIX + gen + PACK_SUFFIX);
+    }
+
+    private long newestPackGeneration() {
+        long newest = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long gen = generationOf(file);
+                if (gen > newest) {
+                    newest = gen;
+                }
+            }
+        }
+        return newest;
+    }
+
+    private void deleteOtherPacks() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long gen = generationOf(file);
+                if (gen >= 0 && gen != generation) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private static long generationOf(File file) {
+        String name = file.getName();
+        if (!name.startsWith(PACK_PREFIX) || !name.endsWith(PACK_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PACK_PREFIX.length(), name.length() - PACK_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Entry {
+        private final long dataOffset;
+        private final int dataLength;
+        private final int keyLength;
+
+        private Entry(long dataOffset, int dataLength, int keyLength) {
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.keyLength = keyLength;
+        }
+
+        private long recordLength() {
+            return RECORD_OVERHEAD + keyLength + (long) dataLength;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+/**
+ * Lookup tables that replace per-pixel color arithmetic with an array access.
+ * Tables are built once per color and kept in a small {@link LongLruCache}, because apps
+ * usually use few overlay and silhouette colors (lookups don't allocate).
+ * <br>
+ * - Overlay table: 256 RGB values, indexed by the luma of a pixel. It's the result of a gray scale
+ * conversion followed by {@code LightingColorFilter(color, 1)}.
+ * <br>
+ * - Tint tables: 3 x 256 values, one per channel, already shifted in their position. They are the
+ * result of {@code PorterDuffColorFilter(color, SRC_ATOP)} on non-premultiplied pixels.
+ * <p></p>
+ * Tables are shared: they must not be modified.
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ */
+public class ColorLuts {
+
+    public static final int MAX_CACHED_TABLES = 32;
+
+    private static final LongLruCache<int[]> OVERLAY_CACHE = new LongLruCache<>(MAX_CACHED_TABLES);
+    private static final LongLruCache<int[]> TINT_CACHE = new LongLruCache<>(MAX_CACHED_TABLES);
+
+    private ColorLuts() {
+    }
+
+    /**
+     * Method to get the overlay table of {@code color}: the entry {@code l} is the RGB color
+     * (without alpha) of a gray pixel with luma {@code l}, after a {@code LightingColorFilter(color, 1)}.
+     *
+     * @param color int that represents the RGB color to overlay.
+     * @return int[256] with RGB colors.
+     */
+    public static int[] overlay(int color) {
+        long key = color & 0xFFFFFF;
+        int[] lut = OVERLAY_CACHE.get(key);
+        if (lut == null) {
+            //two threads can build the same table: the result is the same
+            lut = buildOverlay(color);
+            OVERLAY_CACHE.put(key, lut);
+        }
+        return lut;
+    }
+
+    /**
+     * Method to get the tint tables of {@code color}: {@code lut[c]}, {@code lut[256 + c]} and
+     * {@code lut[512 + c]} are the red, green and blue values (shifted in their ARGB position)
+     * of a channel with value {@code c}, after a {@code PorterDuffColorFilter(color, SRC_ATOP)}.
+     *
+     * @param color int that represents the ARGB color of the silhouette.
+     * @return int[768] with the three tables.
+     */
+    public static int[] tint(int color) {
+        long key = color & 0xFFFFFFFFL;
+        int[] lut = TINT_CACHE.get(key);
+        if (lut == null) {
+            lut = buildTint(color);
+            TINT_CACHE.put(key, lut);
+        }
+        return lut;
+    }
+
+    static int[] buildOverlay(int color) {
+        //the same fixed point arithmetic of the lighting kernel, with mul = color and add = 1 (0x000001)
+        int mulR = (((color >> 16) & 0xFF) << 16) / 255;
+        int mulG = (((color >> 8) & 0xFF) << 16) / 255;
+        int mulB = ((color & 0xFF) << 16) / 255;
+        int[] lut = new int[256];
+        for (int l = 0; l < 256; l++) {
+            int r = Math.min(255, (l * mulR + 0x8000) >>> 16);
+            int g = Math.min(255, (l * mulG + 0x8000) >>> 16);
+            int b = Math.min(255, ((l * mulB + 0x8000) >>> 16) + 1);
+            lut[l] = (r << 16) | (g << 8) | b;
+        }
+        return lut;
+    }
+
+    static int[] buildTint(int color) {
+        int alpha = color >>> 24;
+        int inverseAlpha = 255 - alpha;
+        int[] lut = new int[768];
+        for (int c = 0; c < 256; c++) {
+            lut[c] = ((((color >> 16) & 0xFF) * alpha + c * inverseAlpha + 127) / 255) << 16;
+            lut[256 + c] = ((((color >> 8) & 0xFF) * alpha + c * inverseAlpha + 127) / 255) << 8;
+            lut[512 + c] = ((color & 0xFF) * alpha + c * inverseAlpha + 127) / 255;
+        }
+        return lut;
+    }
+}
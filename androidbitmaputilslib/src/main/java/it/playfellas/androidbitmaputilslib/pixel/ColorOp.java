@@ -0,0 +1,329 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable color operation, or chain of operations, compiled into a {@link ColorProgram}
+ * that executes the whole chain in a single pass.
+ * <br>
+ * - Linear operations ({@link #grayscale()}, {@link #saturation(float)}, {@link #lighting(int, int)},
+ * {@link #tint(int)}, {@link #invert()} and {@link #matrix(float[])}) are 4x5 matrices, with the layout
+ * of {@code android.graphics.ColorMatrix}. Consecutive matrices are multiplied into one.
+ * <br>
+ * - Non-linear operations ({@link #gamma(float)}, {@link #posterize(int)} and {@link #curves(int[], int[], int[])})
+ * are tables of 256 entries per channel. Consecutive tables are composed into one, and matrices
+ * that don't mix channels (like lighting and tint) are folded into the tables.
+ * <p></p>
+ * Chain operations with {@link #then(ColorOp)}, for example:
+ * <br>
+ * ColorOp.grayscale().then(ColorOp.lighting(color, 1)).then(ColorOp.gamma(1.2f)).compile()
+ * <br>
+ * Compiled programs are kept in a small LRU cache indexed by {@link #getSignature()}, so compiling
+ * the same chain again is a lookup.
+ * Like {@code ColorMatrix.postConcat}, matrices are multiplied without clamping the intermediate results:
+ * if an intermediate value is out of [0, 255], a chain can give a different result than separate passes.
+ * <p></p>
+ * Operations work on non-premultiplied ARGB pixels, like {@link PixelKernels}.
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ */
+public final class ColorOp {
+
+    public static final int MAX_CACHED_PROGRAMS = 32;
+
+    private static final Map<String, ColorProgram> PROGRAM_CACHE = new LinkedHashMap<String, ColorProgram>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ColorProgram> eldest) {
+            return size() > MAX_CACHED_PROGRAMS;
+        }
+    };
+
+    private final String signature;
+    //the steps of the chain, in order: every step is a matrix (float[20]) or tables (int[1024]), the other is null
+    private final float[][] matrices;
+    private final int[][] tables;
+    //compiled at the first call of compile()
+    private volatile ColorProgram program;
+
+    private ColorOp(String signature, float[][] matrices, int[][] tables) {
+        this.signature = signature;
+        this.matrices = matrices;
+        this.tables = tables;
+    }
+
+    private static ColorOp ofMatrix(String signature, float[] matrix) {
+        return new ColorOp(signature, new float[][]{matrix}, new int[1][]);
+    }
+
+    private static ColorOp ofTables(String signature, int[] tables) {
+        return new ColorOp(signature, new float[1][], new int[][]{tables});
+    }
+
+    /**
+     * Method to get an operation that removes colors, like {@code ColorMatrix.setSaturation(0)}.
+     *
+     * @return The gray scale operation.
+     */
+    public static ColorOp grayscale() {
+        return saturation(0);
+    }
+
+    /**
+     * Method to get an operation that changes the saturation of colors, like {@code ColorMatrix.setSaturation}.
+     *
+     * @param saturation float that represents the saturation (0 = gray scale, 1 = identity).
+     * @return The saturation operation.
+     */
+    public static ColorOp saturation(float saturation) {
+        float k = 1 - saturation;
+        float r = 0.213f * k;
+        float g = 0.715f * k;
+        float b = 0.072f * k;
+        return ofMatrix("saturation(" + saturation + ")", new float[]{
+                r + saturation, g, b, 0, 0,
+                r, g + saturation, b, 0, 0,
+                r, g, b + saturation, 0, 0,
+                0, 0, 0, 1, 0});
+    }
+
+    /**
+     * Method to get an operation that multiplies and then adds colors, like a {@code LightingColorFilter}.
+     *
+     * @param mul int that represents the RGB color used to multiply.
+     * @param add int that represents the RGB color to add.
+     * @return The lighting operation.
+     */
+    public static ColorOp lighting(int mul, int add) {
+        return ofMatrix("lighting(" + Integer.toHexString(mul & 0xFFFFFF) + "," + Integer.toHexString(add & 0xFFFFFF) + ")", new float[]{
+                ((mul >> 16) & 0xFF) / 255f, 0, 0, 0, (add >> 16) & 0xFF,
+                0, ((mul >> 8) & 0xFF) / 255f, 0, 0, (add >> 8) & 0xFF,
+                0, 0, (mul & 0xFF) / 255f, 0, add & 0xFF,
+                0, 0, 0, 1, 0});
+    }
+
+    /**
+     * Method to get the operation of {@code BitmapUtils.overlayColorOnGrayScale}: a gray scale conversion
+     * followed by {@code LightingColorFilter(color, 1)}, compiled into a single matrix.
+     *
+     * @param color int that represents the RGB color to overlay.
+     * @return The overlay operation.
+     */
+    public static ColorOp overlay(int color) {
+        return grayscale().then(lighting(color, 1));
+    }
+
+    /**
+     * Method to get an operation that colors all pixels with {@code color}, preserving the alpha channel,
+     * like a {@code PorterDuffColorFilter} with {@code SRC_ATOP}.
+     *
+     * @param color int that represents the ARGB color of the silhouette.
+     * @return The tint operation.
+     */
+    public static ColorOp tint(int color) {
+        float a = (color >>> 24) / 255f;
+        float k = 1 - a;
+        return ofMatrix("tint(" + Integer.toHexString(color) + ")", new float[]{
+                k, 0, 0, 0, ((color >> 16) & 0xFF) * a,
+                0, k, 0, 0, ((color >> 8) & 0xFF) * a,
+                0, 0, k, 0, (color & 0xFF) * a,
+                0, 0, 0, 1, 0});
+    }
+
+    /**
+     * Method to get an operation that inverts the RGB channels (the negative of the image).
+     *
+     * @return The invert operation.
+     */
+    public static ColorOp invert() {
+        return ofMatrix("invert", new float[]{
+                -1, 0, 0, 0, 255,
+                0, -1, 0, 0, 255,
+                0, 0, -1, 0, 255,
+                0, 0, 0, 1, 0});
+    }
+
+    /**
+     * Method to get an operation with a custom color matrix, with the layout of
+     * {@code android.graphics.ColorMatrix}: R' = a*R + b*G + c*B + d*A + e (and the same for G', B' and A').
+     *
+     * @param matrix float[20] that represents the color matrix. It's copied.
+     * @return The matrix operation.
+     */
+    public static ColorOp matrix(float[] matrix) {
+        if (matrix == null || matrix.length != 20) {
+            throw new IllegalArgumentException("matrix must be a float[20]");
+        }
+        return ofMatrix("matrix" + Arrays.toString(matrix), matrix.clone());
+    }
+
+    /**
+     * Method to get a gamma correction of the RGB channels: C' = 255 * (C / 255)^(1 / gamma).
+     *
+     * @param gamma float that represents the gamma (must be >0, values >1 brighten the image).
+     * @return The gamma operation.
+     */
+    public static ColorOp gamma(float gamma) {
+        if (!(gamma > 0) || Float.isInfinite(gamma)) {
+            throw new IllegalArgumentException("gamma must be >0");
+        }
+        int[] table = new int[256];
+        double exponent = 1.0 / gamma;
+        for (int c = 0; c < 256; c++) {
+            table[c] = (int) Math.round(255 * Math.pow(c / 255.0, exponent));
+        }
+        return ofTables("gamma(" + gamma + ")", rgbTables(table, table, table));
+    }
+
+    /**
+     * Method to get an operation that reduces every RGB channel to {@code levels} values, evenly spaced.
+     *
+     * @param levels int that represents the number of values per channel (from 2 to 256).
+     * @return The posterize operation.
+     */
+    public static ColorOp posterize(int levels) {
+        if (levels < 2 || levels > 256) {
+            throw new IllegalArgumentException("levels must be between 2 and 256");
+        }
+        int[] table = new int[256];
+        int steps = levels - 1;
+        for (int c = 0; c < 256; c++) {
+            int level = (c * steps + 127) / 255;
+            table[c] = (level * 255 + steps / 2) / steps;
+        }
+        return ofTables("posterize(" + levels + ")", rgbTables(table, table, table));
+    }
+
+    /**
+     * Method to get an operation with custom tone curves: every RGB channel is replaced by the entry
+     * of its table (C' = table[C]). The alpha channel is preserved.
+     *
+     * @param red   int[256] that represents the table of the red channel, with values from 0 to 255. It's copied.
+     * @param green int[256] that represents the table of the green channel.
+     * @param blue  int[256] that represents the table of the blue channel.
+     * @return The curves operation.
+     */
+    public static ColorOp curves(int[] red, int[] green, int[] blue) {
+        checkTable(red);
+        checkTable(green);
+        checkTable(blue);
+        int[] tables = rgbTables(red, green, blue);
+        //the signature contains the whole tables, so different curves never share a program
+        return ofTables("curves" + Arrays.toString(tables), tables);
+    }
+
+    private static void checkTable(int[] table) {
+        if (table == null || table.length != 256) {
+            throw new IllegalArgumentException("tables must be int[256]");
+        }
+        for (int value : table) {
+            if (value < 0 || value > 255) {
+                throw new IllegalArgumentException("table values must be between 0 and 255");
+            }
+        }
+    }
+
+    //private method to build the tables of a step: red, green, blue and alpha (the identity), one after the other
+    private static int[] rgbTables(int[] red, int[] green, int[] blue) {
+        int[] tables = new int[1024];
+        System.arraycopy(red, 0, tables, 0, 256);
+        System.arraycopy(green, 0, tables, 256, 256);
+        System.arraycopy(blue, 0, tables, 512, 256);
+        for (int c = 0; c < 256; c++) {
+            tables[768 + c] = c;
+        }
+        return tables;
+    }
+
+    /**
+     * Method to chain {@code next} after this operation.
+     *
+     * @param next The operation applied to the result of this one.
+     * @return A new operation, with the steps of this one followed by the steps of {@code next}.
+     */
+    public ColorOp then(ColorOp next) {
+        if (next == null) {
+            throw new IllegalArgumentException("next must not be null");
+        }
+        int n = matrices.length;
+        float[][] m = Arrays.copyOf(matrices, n + next.matrices.length);
+        int[][] t = Arrays.copyOf(tables, n + next.tables.length);
+        System.arraycopy(next.matrices, 0, m, n, next.matrices.length);
+        System.arraycopy(next.tables, 0, t, n, next.tables.length);
+        return new ColorOp(signature + " > " + next.signature, m, t);
+    }
+
+    /**
+     * Method to get the signature of this operation: a String that describes all its steps and parameters.
+     * Operations with the same signature compute the same colors.
+     *
+     * @return The signature.
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * Method to know if all steps of this operation are linear, so it compiles into a single color matrix.
+     *
+     * @return true if there aren't non-linear steps, false otherwise.
+     */
+    public boolean isLinear() {
+        for (int[] t : tables) {
+            if (t != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to compile this operation, or to get the program compiled before for the same signature.
+     *
+     * @return The compiled {@link ColorProgram}.
+     */
+    public ColorProgram compile() {
+        ColorProgram result = program;
+        if (result == null) {
+            synchronized (PROGRAM_CACHE) {
+                result = PROGRAM_CACHE.get(signature);
+                if (result == null) {
+                    result = ColorProgram.compile(signature, matrices, tables);
+                    PROGRAM_CACHE.put(signature, result);
+                }
+            }
+            program = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof ColorOp && signature.equals(((ColorOp) o).signature));
+    }
+
+    @Override
+    public int hashCode() {
+        return signature.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return signature;
+    }
+}
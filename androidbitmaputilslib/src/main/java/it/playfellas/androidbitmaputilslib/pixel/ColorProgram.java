@@ -0,0 +1,343 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A chain of {@link ColorOp}s compiled by {@link ColorOp#compile()} into stages executed on every pixel
+ * in a single pass. Every stage is a 4x5 color matrix or a table of 256 entries per channel.
+ * <br>
+ * While compiling, consecutive matrices are multiplied, consecutive tables are composed, and matrices
+ * that don't mix channels are folded into the nearby tables, so a chain of linear operations is a single
+ * matrix (see {@link #isLinear()}, that can be executed by a {@code ColorMatrixColorFilter}) and a chain
+ * of per-channel operations is a single lookup per channel. Stages that don't change colors are removed.
+ * <p></p>
+ * Programs are immutable and thread-safe.
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ */
+public final class ColorProgram {
+
+    private static final float[] IDENTITY = {
+            1, 0, 0, 0, 0,
+            0, 1, 0, 0, 0,
+            0, 0, 1, 0, 0,
+            0, 0, 0, 1, 0};
+
+    //shift of the channels in ARGB, in the order of the tables (red, green, blue, alpha)
+    private static final int[] SHIFTS = {16, 8, 0, 24};
+
+    private final String signature;
+    //the stages, in order: every stage is a matrix (float[20]) or tables (int[1024], already shifted
+    //in their ARGB position), the other is null
+    private final float[][] matrices;
+    private final int[][] tables;
+    private final PixelKernel kernel;
+
+    private ColorProgram(String signature, float[][] matrices, int[][] tables) {
+        this.signature = signature;
+        this.matrices = matrices;
+        this.tables = tables;
+        this.kernel = newKernel();
+    }
+
+    //package-private method used by ColorOp: tables of the steps aren't shifted (values from 0 to 255)
+    static ColorProgram compile(String signature, float[][] stepMatrices, int[][] stepTables) {
+        List<float[]> matrices = new ArrayList<>();
+        List<int[]> tables = new ArrayList<>();
+        for (int i = 0; i < stepMatrices.length; i++) {
+            matrices.add(stepMatrices[i]);
+            tables.add(stepTables[i]);
+            //merge the new stage with the previous ones, while possible
+            int last = matrices.size() - 1;
+            while (last >= 1 && merge(matrices, tables, last)) {
+                last--;
+            }
+            if (isIdentity(matrices.get(last), tables.get(last))) {
+                matrices.remove(last);
+                tables.remove(last);
+            }
+        }
+        int n = matrices.size();
+        int[][] shifted = new int[n][];
+        for (int i = 0; i < n; i++) {
+            int[] t = tables.get(i);
+            if (t != null) {
+                shifted[i] = new int[1024];
+                for (int j = 0; j < 1024; j++) {
+                    shifted[i][j] = t[j] << SHIFTS[j >> 8];
+                }
+            }
+        }
+        return new ColorProgram(signature, matrices.toArray(new float[n][]), shifted);
+    }
+
+    //private method to merge the stage at index with the previous one, returns false if they can't be merged
+    private static boolean merge(List<float[]> matrices, List<int[]> tables, int index) {
+        float[] prevMatrix = matrices.get(index - 1);
+        int[] prevTables = tables.get(index - 1);
+        float[] matrix = matrices.get(index);
+        int[] t = tables.get(index);
+        float[] mergedMatrix = null;
+        int[] mergedTables = null;
+        if (prevMatrix != null && matrix != null) {
+            mergedMatrix = concat(matrix, prevMatrix);
+        } else if (prevTables != null && t != null) {
+            mergedTables = new int[1024];
+            for (int j = 0; j < 1024; j++) {
+                mergedTables[j] = t[(j & ~0xFF) | prevTables[j]];
+            }
+        } else if (prevMatrix != null && isPerChannel(prevMatrix)) {
+            mergedTables = new int[1024];
+            for (int j = 0; j < 1024; j++) {
+                mergedTables[j] = t[(j & ~0xFF) | evaluate(prevMatrix, j >> 8, j & 0xFF)];
+            }
+        } else if (prevTables != null && isPerChannel(matrix)) {
+            mergedTables = new int[1024];
+            for (int j = 0; j < 1024; j++) {
+                mergedTables[j] = evaluate(matrix, j >> 8, prevTables[j]);
+            }
+        } else {
+            return false;
+        }
+        matrices.remove(index);
+        tables.remove(index);
+        matrices.set(index - 1, mergedMatrix);
+        tables.set(index - 1, mergedTables);
+        return true;
+    }
+
+    //private method to multiply two matrices: the result applies first, then next (like ColorMatrix.postConcat)
+    private static float[] concat(float[] next, float[] first) {
+        float[] result = new float[20];
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 5; j++) {
+                float v = j == 4 ? next[i * 5 + 4] : 0;
+                for (int k = 0; k < 4; k++) {
+                    v += next[i * 5 + k] * first[k * 5 + j];
+                }
+                result[i * 5 + j] = v;
+            }
+        }
+        return result;
+    }
+
+    //private method to know if every channel of the result depends only on the same channel of the source
+    private static boolean isPerChannel(float[] m) {
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                if (i != j && m[i * 5 + j] != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    //private method to compute a channel of a per-channel matrix, with the rounding of the matrix kernel
+    private static int evaluate(float[] m, int channel, int value) {
+        return PixelKernels.clamp((int) (m[channel * 6] * value + m[channel * 5 + 4] + 0.5f));
+    }
+
+    private static boolean isIdentity(float[] matrix, int[] t) {
+        if (matrix != null) {
+            return Arrays.equals(matrix, IDENTITY);
+        }
+        for (int j = 0; j < 1024; j++) {
+            if (t[j] != (j & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to get the signature of the compiled {@link ColorOp}.
+     *
+     * @return The signature.
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * Method to get the number of stages executed on every pixel.
+     *
+     * @return int that represents the number of stages (0 if the program doesn't change colors).
+     */
+    public int getStageCount() {
+        return matrices.length;
+    }
+
+    /**
+     * Method to know if the program doesn't change colors.
+     *
+     * @return true if there aren't stages, false otherwise.
+     */
+    public boolean isIdentity() {
+        return matrices.length == 0;
+    }
+
+    /**
+     * Method to know if the program is a single color matrix, returned by {@link #getMatrix()}.
+     *
+     * @return true if the program is the identity or a single matrix, false otherwise.
+     */
+    public boolean isLinear() {
+        return matrices.length == 0 || (matrices.length == 1 && matrices[0] != null);
+    }
+
+    /**
+     * Method to get the matrix of a linear program, with the layout of {@code android.graphics.ColorMatrix}.
+     *
+     * @return A new float[20] with the matrix.
+     * @throws IllegalStateException if the program isn't linear.
+     */
+    public float[] getMatrix() {
+        if (!isLinear()) {
+            throw new IllegalStateException("the program has non-linear stages: " + signature);
+        }
+        return (matrices.length == 0 ? IDENTITY : matrices[0]).clone();
+    }
+
+    /**
+     * Method to execute the program on a single color.
+     *
+     * @param color int that represents the non-premultiplied ARGB color.
+     * @return The resulting color.
+     */
+    public int apply(int color) {
+        for (int s = 0; s < matrices.length; s++) {
+            color = matrices[s] != null ? applyMatrix(matrices[s], color) : applyTables(tables[s], color);
+        }
+        return color;
+    }
+
+    /**
+     * Method to get a {@link PixelKernel} that executes the program in a single pass.
+     *
+     * @return The kernel, shared by all the users of the program.
+     */
+    public PixelKernel asKernel() {
+        return kernel;
+    }
+
+    private PixelKernel newKernel() {
+        if (matrices.length == 0) {
+            return new CopyKernel();
+        }
+        if (matrices.length == 1) {
+            if (tables[0] != null) {
+                return new TablesKernel(tables[0]);
+            }
+            if (isPerChannel(matrices[0])) {
+                //a lookup is faster than the float arithmetic, with the same result
+                int[] t = new int[1024];
+                for (int j = 0; j < 1024; j++) {
+                    t[j] = evaluate(matrices[0], j >> 8, j & 0xFF) << SHIFTS[j >> 8];
+                }
+                return new TablesKernel(t);
+            }
+            return PixelKernels.colorMatrix(matrices[0]);
+        }
+        return new StagesKernel();
+    }
+
+    private static int applyMatrix(float[] m, int c) {
+        int a = c >>> 24;
+        int r = (c >> 16) & 0xFF;
+        int g = (c >> 8) & 0xFF;
+        int b = c & 0xFF;
+        int r1 = PixelKernels.clamp((int) (m[0] * r + m[1] * g + m[2] * b + m[3] * a + m[4] + 0.5f));
+        int g1 = PixelKernels.clamp((int) (m[5] * r + m[6] * g + m[7] * b + m[8] * a + m[9] + 0.5f));
+        int b1 = PixelKernels.clamp((int) (m[10] * r + m[11] * g + m[12] * b + m[13] * a + m[14] + 0.5f));
+        int a1 = PixelKernels.clamp((int) (m[15] * r + m[16] * g + m[17] * b + m[18] * a + m[19] + 0.5f));
+        return (a1 << 24) | (r1 << 16) | (g1 << 8) | b1;
+    }
+
+    private static int applyTables(int[] t, int c) {
+        return t[(c >> 16) & 0xFF] | t[256 + ((c >> 8) & 0xFF)] | t[512 + (c & 0xFF)] | t[768 + (c >>> 24)];
+    }
+
+    private static final class CopyKernel implements PixelKernel {
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            if (src == dst) {
+                return;
+            }
+            for (int y = top; y < bottom; y++) {
+                System.arraycopy(src.getPixels(), src.indexOf(left, y), dst.getPixels(), dst.indexOf(left, y), right - left);
+            }
+        }
+    }
+
+    private static final class TablesKernel implements PixelKernel {
+        //red, green, blue and alpha tables, one after the other
+        private final int[] lut;
+
+        private TablesKernel(int[] lut) {
+            this.lut = lut;
+        }
+
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            int[] in = src.getPixels();
+            int[] out = dst.getPixels();
+            int[] lut = this.lut;
+            for (int y = top; y < bottom; y++) {
+                int i = src.indexOf(left, y);
+                int o = dst.indexOf(left, y);
+                for (int x = left; x < right; x++, i++, o++) {
+                    int c = in[i];
+                    out[o] = lut[(c >> 16) & 0xFF] | lut[256 + ((c >> 8) & 0xFF)] | lut[512 + (c & 0xFF)] | lut[768 + (c >>> 24)];
+                }
+            }
+        }
+    }
+
+    private final class StagesKernel implements PixelKernel {
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            int[] in = src.getPixels();
+            int[] out = dst.getPixels();
+            int n = right - left;
+            //a stage at a time on a whole row, so every inner loop has a single kind of arithmetic;
+            //the first stage reads src, the next ones work in place on the row of dst (still in the CPU cache)
+            for (int y = top; y < bottom; y++) {
+                int from = src.indexOf(left, y);
+                int o = dst.indexOf(left, y);
+                int[] row = in;
+                for (int s = 0; s < matrices.length; s++) {
+                    if (matrices[s] != null) {
+                        float[] m = matrices[s];
+                        for (int x = 0; x < n; x++) {
+                            out[o + x] = applyMatrix(m, row[from + x]);
+                        }
+                    } else {
+                        int[] t = tables[s];
+                        for (int x = 0; x < n; x++) {
+                            out[o + x] = applyTables(t, row[from + x]);
+                        }
+                    }
+                    row = out;
+                    from = o;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+/**
+ * Small LRU cache with {@code long} keys, for the per-color tables, kernels and filters of the library.
+ * Keys are compared with a linear scan of parallel arrays, so lookups and insertions don't allocate
+ * (no boxing and no entry objects): with a few dozens of entries, the scan is faster than hashing.
+ * <p></p>
+ * This class is thread-safe.
+ *
+ * @param <V> The type of the values.
+ */
+public final class LongLruCache<V> {
+
+    private final long[] keys;
+    private final Object[] values;
+    //time of the last access of every entry, the smallest one is evicted
+    private final long[] stamps;
+    private int size;
+    private long clock;
+
+    /**
+     * Constructor
+     *
+     * @param capacity int that represents the maximum number of entries.
+     */
+    public LongLruCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be >0");
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+        stamps = new long[capacity];
+    }
+
+    /**
+     * Method to get the value of {@code key}, marking it as the most recently used.
+     *
+     * @param key long that represents the key.
+     * @return The value, or null if it isn't in the cache.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V get(long key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                stamps[i] = ++clock;
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method to add (or replace) the value of {@code key}, evicting the least recently used entry if the cache is full.
+     *
+     * @param key   long that represents the key.
+     * @param value The value.
+     */
+    public synchronized void put(long key, V value) {
+        int index = -1;
+        for (int i = 0; i < size && index < 0; i++) {
+            if (keys[i] == key) {
+                index = i;
+            }
+        }
+        if (index < 0) {
+            if (size < keys.length) {
+                index = size++;
+            } else {
+                index = 0;
+                for (int i = 1; i < size; i++) {
+                    if (stamps[i] < stamps[index]) {
+                        index = i;
+                    }
+                }
+            }
+        }
+        keys[index] = key;
+        values[index] = value;
+        stamps[index] = ++clock;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Method to remove all entries.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            values[i] = null;
+        }
+        size = 0;
+    }
+}
@@ -0,0 +1,355 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+/**
+ * Blur of ARGB {@link PixelBuffer}s and of ALPHA_8 byte[] masks, that approximates a Gaussian blur
+ * with three box blurs (the sizes of the boxes are chosen to match the variance of the Gaussian).
+ * <p></p>
+ * Box blurs are separable and computed with a running sum, so every pass costs O(1) per pixel,
+ * independently of the radius: a horizontal pass over bands of rows and a vertical pass over
+ * bands of columns, both executed in parallel on a {@link TileEngine}. ARGB pixels are blurred
+ * premultiplied, so transparent pixels don't darken the edges. Outside the image, the edge pixels are repeated.
+ * <p></p>
+ * The radius has the meaning of the radius of Android's {@code BlurMaskFilter} and {@code Paint.setShadowLayer}
+ * (a standard deviation of {@code radius * 0.57735 + 0.5}), so results look like the ones of Android.
+ * <p></p>
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ */
+public class PixelBlur {
+
+    public static final int PASSES = 3;
+
+    //rows (or columns) processed by a task
+    private static final int ROW_BAND = 32;
+    private static final int COLUMN_BAND = 16;
+    //below this number of pixels, the overhead of other threads is bigger than the gain
+    private static final int MIN_PARALLEL_PIXELS = 128 * 128;
+
+    private PixelBlur() {
+    }
+
+    /**
+     * Method to get the standard deviation of the Gaussian approximated for {@code radius}.
+     *
+     * @param radius float that represents the radius of the blur.
+     * @return float that represents the standard deviation, 0 if {@code radius} is not positive.
+     */
+    public static float radiusToSigma(float radius) {
+        return radius > 0 ? radius * 0.57735f + 0.5f : 0f;
+    }
+
+    /**
+     * Method to get the radius of the blur that approximates a Gaussian with {@code sigma},
+     * the inverse of {@link #radiusToSigma(float)}: for example, to blur an image reduced by a factor
+     * like the original one, use {@code sigmaToRadius(radiusToSigma(radius) / factor)}.
+     *
+     * @param sigma float that represents the standard deviation.
+     * @return float that represents the radius, 0 if {@code sigma} is too small to blur.
+     */
+    public static float sigmaToRadius(float sigma) {
+        return sigma > 0.5f ? (sigma - 0.5f) / 0.57735f : 0f;
+    }
+
+    /**
+     * Method to get the number of pixels reached by the blur of {@code radius} in every direction:
+     * a blurred image must be padded by this extent to keep the whole blur.
+     *
+     * @param radius float that represents the radius of the blur.
+     * @return int that represents the extent, the sum of the radii of the three boxes.
+     */
+    public static int getExtent(float radius) {
+        int extent = 0;
+        for (int r : boxRadii(radiusToSigma(radius))) {
+            extent += r;
+        }
+        return extent;
+    }
+
+    /**
+     * Method to blur {@code buffer} in place.
+     *
+     * @param buffer The buffer to blur, with non-premultiplied ARGB pixels.
+     * @param radius float that represents the radius of the blur.
+     * @param engine The {@link TileEngine} used to blur bands of rows and columns in parallel.
+     */
+    public static void blur(final PixelBuffer buffer, float radius, TileEngine engine) {
+        final int[] radii = boxRadii(radiusToSigma(radius));
+        final int w = buffer.getWidth();
+        final int h = buffer.getHeight();
+        if (isIdentity(radii) || w == 0 || h == 0) {
+            return;
+        }
+        final int[] pixels = buffer.getPixels();
+        //horizontal pass: the result is stored premultiplied, for the vertical pass
+        forBands(engine, h, ROW_BAND, w, new Band() {
+            @Override
+            public void run(int start, int end) {
+                PixelScratch scratch = PixelScratch.acquire();
+                try {
+                    int[] line = scratch.ints(0, w * 4);
+                    int[] tmp = scratch.ints(1, w * 4);
+                    for (int y = start; y < end; y++) {
+                        int i = buffer.indexOf(0, y);
+                        for (int x = 0, j = 0; x < w; x++, j += 4) {
+                            unpackPremultiplied(pixels[i + x], line, j);
+                        }
+                        int[] out = blurLine(line, tmp, w, 4, radii);
+                        for (int x = 0, j = 0; x < w; x++, j += 4) {
+                            pixels[i + x] = (out[j] << 24) | (out[j + 1] << 16) | (out[j + 2] << 8) | out[j + 3];
+                        }
+                    }
+                } finally {
+                    scratch.release();
+                }
+            }
+        });
+        //vertical pass: back to non-premultiplied pixels
+        forBands(engine, w, COLUMN_BAND, h, new Band() {
+            @Override
+            public void run(int start, int end) {
+                PixelScratch scratch = PixelScratch.acquire();
+                try {
+                    int[] line = scratch.ints(0, h * 4);
+                    int[] tmp = scratch.ints(1, h * 4);
+                    int stride = buffer.getStride();
+                    for (int x = start; x < end; x++) {
+                        int i = buffer.indexOf(x, 0);
+                        for (int y = 0, j = 0, k = i; y < h; y++, j += 4, k += stride) {
+                            int c = pixels[k];
+                            line[j] = c >>> 24;
+                            line[j + 1] = (c >> 16) & 0xFF;
+                            line[j + 2] = (c >> 8) & 0xFF;
+                            line[j + 3] = c & 0xFF;
+                        }
+                        int[] out = blurLine(line, tmp, h, 4, radii);
+                        for (int y = 0, j = 0, k = i; y < h; y++, j += 4, k += stride) {
+                            pixels[k] = packUnpremultiplied(out, j);
+                        }
+                    }
+                } finally {
+                    scratch.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Method to blur an ALPHA_8 mask in place.
+     *
+     * @param pixels byte[] that contains the alpha values, row by row.
+     * @param offset int that represents the index of the first pixel.
+     * @param stride int that represents the distance between rows (for example the row bytes of a Bitmap).
+     * @param width  int that represents the width of the mask.
+     * @param height int that represents the height of the mask.
+     * @param radius float that represents the radius of the blur.
+     * @param engine The {@link TileEngine} used to blur bands of rows and columns in parallel.
+     */
+    public static void blurAlpha(final byte[] pixels, final int offset, final int stride, final int width, final int height,
+                                 float radius, TileEngine engine) {
+        if (width < 0 || height < 0 || stride < width || offset < 0
+                || (height > 0 && offset + (long) (height - 1) * stride + width > pixels.length)) {
+            throw new IllegalArgumentException("the mask doesn't fit in pixels");
+        }
+        final int[] radii = boxRadii(radiusToSigma(radius));
+        if (isIdentity(radii) || width == 0 || height == 0) {
+            return;
+        }
+        forBands(engine, height, ROW_BAND, width, new Band() {
+            @Override
+            public void run(int start, int end) {
+                PixelScratch scratch = PixelScratch.acquire();
+                try {
+                    int[] line = scratch.ints(0, width);
+                    int[] tmp = scratch.ints(1, width);
+                    for (int y = start; y < end; y++) {
+                        int i = offset + y * stride;
+                        for (int x = 0; x < width; x++) {
+                            line[x] = pixels[i + x] & 0xFF;
+                        }
+                        int[] out = blurLine(line, tmp, width, 1, radii);
+                        for (int x = 0; x < width; x++) {
+                            pixels[i + x] = (byte) out[x];
+                        }
+                    }
+                } finally {
+                    scratch.release();
+                }
+            }
+        });
+        forBands(engine, width, COLUMN_BAND, height, new Band() {
+            @Override
+            public void run(int start, int end) {
+                PixelScratch scratch = PixelScratch.acquire();
+                try {
+                    int[] line = scratch.ints(0, height);
+                    int[] tmp = scratch.ints(1, height);
+                    for (int x = start; x < end; x++) {
+                        for (int y = 0, k = offset + x; y < height; y++, k += stride) {
+                            line[y] = pixels[k] & 0xFF;
+                        }
+                        int[] out = blurLine(line, tmp, height, 1, radii);
+                        for (int y = 0, k = offset + x; y < height; y++, k += stride) {
+                            pixels[k] = (byte) out[y];
+                        }
+                    }
+                } finally {
+                    scratch.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Method to get the radii of the three boxes that approximate a Gaussian with {@code sigma}
+     * (boxes with the two odd sizes around the ideal one, mixed to match its variance).
+     *
+     * @param sigma float that represents the standard deviation.
+     * @return int[] with the radius of every box.
+     */
+    static int[] boxRadii(float sigma) {
+        int[] radii = new int[PASSES];
+        if (sigma <= 0) {
+            return radii;
+        }
+        double variance12 = 12.0 * sigma * sigma;
+        int lower = (int) Math.floor(Math.sqrt(variance12 / PASSES + 1));
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        int upper = lower + 2;
+        //number of boxes with the lower size
+        long m = Math.round((variance12 - PASSES * lower * lower - 4 * PASSES * lower - 3 * PASSES) / (-4.0 * lower - 4));
+        for (int i = 0; i < PASSES; i++) {
+            radii[i] = ((i < m ? lower : upper) - 1) / 2;
+        }
+        return radii;
+    }
+
+    //private method to apply the box blurs to a line; the result is in line or in tmp, the returned one
+    private static int[] blurLine(int[] line, int[] tmp, int n, int channels, int[] radii) {
+        int[] in = line;
+        int[] out = tmp;
+        for (int r : radii) {
+            if (r == 0) {
+                continue;
+            }
+            for (int c = 0; c < channels; c++) {
+                boxLine(in, out, n, channels, c, r);
+            }
+            int[] t = in;
+            in = out;
+            out = t;
+        }
+        return in;
+    }
+
+    /**
+     * Method to compute a box blur of radius {@code r} of a channel of a line, with a running sum:
+     * O(1) per pixel, for any radius. Pixels outside the line are the edge pixels.
+     *
+     * @param in       int[] with the interleaved channels of the line.
+     * @param out      int[] where the result is written, with the same layout.
+     * @param n        int that represents the number of pixels of the line.
+     * @param channels int that represents the number of interleaved channels.
+     * @param c        int that represents the channel to blur.
+     * @param r        int that represents the radius of the box.
+     */
+    static void boxLine(int[] in, int[] out, int n, int channels, int c, int r) {
+        int last = (n - 1) * channels + c;
+        //window of the first pixel: r + 1 copies of the first pixel, then pixels 1..r (the last one repeated)
+        long sum = (long) in[c] * (r + 1);
+        int inside = Math.min(r, n - 1);
+        for (int i = 1, k = c + channels; i <= inside; i++, k += channels) {
+            sum += in[k];
+        }
+        sum += (long) in[last] * (r - inside);
+        int div = 2 * r + 1;
+        //division by the box size as a multiplication, rounded
+        long mul = ((1L << 24) + div / 2) / div;
+        long half = 1L << 23;
+        int first = in[c];
+        int lastValue = in[last];
+        //three segments, so the inner loops don't clamp indexes: the pixel removed from the window
+        //is the first one while i <= r, and the pixel added is the last one when i + r + 1 >= n
+        int head = Math.min(n, r + 1);
+        int tail = Math.max(head, n - r - 1);
+        int k = c;
+        int i = 0;
+        for (; i < head; i++, k += channels) {
+            out[k] = (int) ((sum * mul + half) >>> 24);
+            int add = i + r + 1;
+            sum += (add < n ? in[add * channels + c] : lastValue) - first;
+        }
+        int step = channels * (r + 1);
+        int back = channels * r;
+        for (; i < tail; i++, k += channels) {
+            out[k] = (int) ((sum * mul + half) >>> 24);
+            sum += in[k + step] - in[k - back];
+        }
+        for (; i < n; i++, k += channels) {
+            out[k] = (int) ((sum * mul + half) >>> 24);
+            sum += lastValue - in[k - back];
+        }
+    }
+
+    private static boolean isIdentity(int[] radii) {
+        for (int r : radii) {
+            if (r != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void unpackPremultiplied(int color, int[] dst, int index) {
+        int a = color >>> 24;
+        dst[index] = a;
+        dst[index + 1] = (((color >> 16) & 0xFF) * a + 127) / 255;
+        dst[index + 2] = (((color >> 8) & 0xFF) * a + 127) / 255;
+        dst[index + 3] = ((color & 0xFF) * a + 127) / 255;
+    }
+
+    private static int packUnpremultiplied(int[] src, int index) {
+        int a = src[index];
+        if (a == 0) {
+            return 0;
+        }
+        int r = Math.min(255, (src[index + 1] * 255 + a / 2) / a);
+        int g = Math.min(255, (src[index + 2] * 255 + a / 2) / a);
+        int b = Math.min(255, (src[index + 3] * 255 + a / 2) / a);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    //a range of rows or columns processed by a task
+    private interface Band {
+        void run(int start, int end);
+    }
+
+    private static void forBands(TileEngine engine, final int total, final int bandSize, int lineLength, final Band band) {
+        if ((long) total * lineLength < MIN_PARALLEL_PIXELS || engine.getParallelism() == 1) {
+            band.run(0, total);
+            return;
+        }
+        engine.forEach((total + bandSize - 1) / bandSize, new TileEngine.Task() {
+            @Override
+            public void run(int index) {
+                int start = index * bandSize;
+                band.run(start, Math.min(start + bandSize, total));
+            }
+        });
+    }
+}
@@ -0,0 +1,167 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.util.Arrays;
+
+/**
+ * Image stored as an {@code int[]} of non-premultiplied ARGB pixels (the same format of
+ * {@code Bitmap.getPixels(...)} and {@code Bitmap.setPixels(...)}), in row-major order.
+ * The pixel (x, y) is at index {@code offset + y * stride + x}.
+ * <p></p>
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ */
+public class PixelBuffer {
+
+    private final int[] pixels;
+    private final int offset;
+    private final int stride;
+    private final int width;
+    private final int height;
+
+    /**
+     * Constructor to allocate a new transparent buffer.
+     *
+     * @param width  int that represents the width.
+     * @param height int that represents the height.
+     */
+    public PixelBuffer(int width, int height) {
+        this(new int[checkSize(width, height)], 0, width, width, height);
+    }
+
+    /**
+     * Constructor to wrap an existing array, without copying it.
+     *
+     * @param pixels int[] with at least {@code width * height} pixels.
+     * @param width  int that represents the width.
+     * @param height int that represents the height.
+     */
+    public PixelBuffer(int[] pixels, int width, int height) {
+        this(pixels, 0, width, width, height);
+    }
+
+    /**
+     * Constructor to wrap an existing array, without copying it.
+     *
+     * @param pixels int[] that contains the pixels.
+     * @param offset int that represents the index of the first pixel.
+     * @param stride int that represents the number of array elements between two rows (must be >= width).
+     * @param width  int that represents the width.
+     * @param height int that represents the height.
+     */
+    public PixelBuffer(int[] pixels, int offset, int stride, int width, int height) {
+        checkSize(width, height);
+        if (stride < width || offset < 0 || (height > 0 && offset + (long) (height - 1) * stride + width > pixels.length)) {
+            throw new IllegalArgumentException("pixels array too small for " + width + "x" + height);
+        }
+        this.pixels = pixels;
+        this.offset = offset;
+        this.stride = stride;
+        this.width = width;
+        this.height = height;
+    }
+
+    private static int checkSize(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("width and height must be >=0");
+        }
+        return width * height;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Method to get the index in {@link #getPixels()} of the pixel (x, y).
+     *
+     * @param x int that represents the column.
+     * @param y int that represents the row.
+     * @return The index of the pixel.
+     */
+    public int indexOf(int x, int y) {
+        return offset + y * stride + x;
+    }
+
+    public int getPixel(int x, int y) {
+        return pixels[indexOf(x, y)];
+    }
+
+    public void setPixel(int x, int y, int color) {
+        pixels[indexOf(x, y)] = color;
+    }
+
+    /**
+     * Method to fill the entire buffer with {@code color}.
+     *
+     * @param color int that represents an ARGB color.
+     */
+    public void fill(int color) {
+        for (int y = 0; y < height; y++) {
+            int start = indexOf(0, y);
+            Arrays.fill(pixels, start, start + width, color);
+        }
+    }
+
+    /**
+     * Method to copy a rectangle of {@code src} into this buffer.
+     *
+     * @param src    The source buffer.
+     * @param srcX   int that represents the left of the rectangle in {@code src}.
+     * @param srcY   int that represents the top of the rectangle in {@code src}.
+     * @param dstX   int that represents the left of the rectangle in this buffer.
+     * @param dstY   int that represents the top of the rectangle in this buffer.
+     * @param width  int that represents the width of the rectangle.
+     * @param height int that represents the height of the rectangle.
+     */
+    public void copyFrom(PixelBuffer src, int srcX, int srcY, int dstX, int dstY, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(src.pixels, src.indexOf(srcX, srcY + y), pixels, indexOf(dstX, dstY + y), width);
+        }
+    }
+
+    /**
+     * Method to get a view of a rectangle of this buffer, sharing the same array.
+     *
+     * @param left   int that represents the left of the rectangle.
+     * @param top    int that represents the top of the rectangle.
+     * @param width  int that represents the width of the rectangle.
+     * @param height int that represents the height of the rectangle.
+     * @return A PixelBuffer that shares the pixels of this buffer.
+     */
+    public PixelBuffer subBuffer(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || left + width > this.width || top + height > this.height) {
+            throw new IllegalArgumentException("rectangle outside of the buffer");
+        }
+        return new PixelBuffer(pixels, indexOf(left, top), stride, width, height);
+    }
+}
@@ -0,0 +1,300 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+/**
+ * Fast hashes of images, to recognize the same content in different buffers or Bitmaps:
+ * <br>
+ * - {@link #contentHash(PixelBuffer)}: an exact 64-bit hash of the pixels of a sample of rows
+ * (every {@code rowStep}-th row and the last one), so equal images have equal hashes, and images
+ * that differ in a sampled row have different hashes (except for unlikely collisions).
+ * <br>
+ * - {@link #averageHash(PixelBuffer)} (aHash) and {@link #differenceHash(PixelBuffer)} (dHash):
+ * 64-bit perceptual hashes of an 8x8 (or 9x8) grid of the luminance, so similar images
+ * (rescaled, recompressed) have hashes with a small {@link #hammingDistance(long, long)}.
+ * <p></p>
+ * Perceptual hashes read a fixed number of pixels (at most {@link #CELL_SAMPLES} x {@link #CELL_SAMPLES} per cell),
+ * and the content hash at most about {@link #DEFAULT_SAMPLED_ROWS} rows, so they cost a small fraction
+ * of a transformation of the same image.
+ * <p></p>
+ * Images are read by rows from a {@link PixelScaler.RowSource}, so they can also be Bitmaps,
+ * and this class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ */
+public class PixelHashes {
+
+    //rows hashed by contentHash without an explicit step (a bit more for heights that aren't multiples)
+    public static final int DEFAULT_SAMPLED_ROWS = 64;
+    //samples per side of a cell of the perceptual hashes
+    public static final int CELL_SAMPLES = 4;
+
+    //constants of xxHash64
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+
+    private PixelHashes() {
+    }
+
+    /**
+     * Method to get the row step used by {@link #contentHash(PixelBuffer)} for an image of {@code height} rows.
+     *
+     * @param height int that represents the height of the image.
+     * @return int that represents the step, at least 1.
+     */
+    public static int defaultRowStep(int height) {
+        return Math.max(1, height / DEFAULT_SAMPLED_ROWS);
+    }
+
+    /**
+     * Method to get the content hash of {@code src}, sampling rows with {@link #defaultRowStep(int)}.
+     *
+     * @param src The image.
+     * @return long that represents the hash.
+     */
+    public static long contentHash(PixelBuffer src) {
+        return contentHash(src, defaultRowStep(src.getHeight()));
+    }
+
+    /**
+     * Method to get the content hash of {@code src}, hashing every {@code rowStep}-th row and the last row.
+     * With {@code rowStep} 1, all pixels are hashed.
+     *
+     * @param src     The image.
+     * @param rowStep int that represents the distance between hashed rows, at least 1.
+     * @return long that represents the hash.
+     */
+    public static long contentHash(PixelBuffer src, int rowStep) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        long hash = seed(w, h, rowStep);
+        for (int y = 0; y < h; y = nextRow(y, h, rowStep)) {
+            hash = hashPixels(src.getPixels(), src.indexOf(0, y), w, hash);
+        }
+        return avalanche(hash);
+    }
+
+    /**
+     * Method to get the content hash of an image read from {@code src}, as {@link #contentHash(PixelBuffer, int)}.
+     * Equal images have the same hash from a PixelBuffer and from a RowSource.
+     *
+     * @param src     The {@link PixelScaler.RowSource} of the image.
+     * @param width   int that represents the width of the image.
+     * @param height  int that represents the height of the image.
+     * @param rowStep int that represents the distance between hashed rows, at least 1.
+     * @return long that represents the hash.
+     */
+    public static long contentHash(PixelScaler.RowSource src, int width, int height, int rowStep) {
+        long hash = seed(width, height, rowStep);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y = nextRow(y, height, rowStep)) {
+            src.readRows(y, 1, row, 0, width);
+            hash = hashPixels(row, 0, width, hash);
+        }
+        return avalanche(hash);
+    }
+
+    /**
+     * Method to hash {@code length} pixels of {@code pixels}, continuing the hash {@code seed}.
+     * Pixels are consumed two at a time by four independent accumulators (like xxHash64),
+     * so the multiplications of consecutive pairs don't wait each other.
+     *
+     * @param pixels int[] that contains the pixels.
+     * @param offset int that represents the index of the first pixel.
+     * @param length int that represents the number of pixels.
+     * @param seed   long that represents the hash of the previous pixels.
+     * @return long that represents the hash, before the final mixing.
+     */
+    public static long hashPixels(int[] pixels, int offset, int length, long seed) {
+        long a1 = seed + PRIME1 + PRIME2;
+        long a2 = seed + PRIME2;
+        long a3 = seed;
+        long a4 = seed - PRIME1;
+        int i = offset;
+        int end = offset + length;
+        for (; i + 8 <= end; i += 8) {
+            a1 = round(a1, pack(pixels[i], pixels[i + 1]));
+            a2 = round(a2, pack(pixels[i + 2], pixels[i + 3]));
+            a3 = round(a3, pack(pixels[i + 4], pixels[i + 5]));
+            a4 = round(a4, pack(pixels[i + 6], pixels[i + 7]));
+        }
+        long hash = Long.rotateLeft(a1, 1) + Long.rotateLeft(a2, 7) + Long.rotateLeft(a3, 12) + Long.rotateLeft(a4, 18);
+        for (; i < end; i++) {
+            hash ^= (pixels[i] & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+        }
+        return hash + length;
+    }
+
+    /**
+     * Method to get the average hash (aHash) of {@code src}: a bit for every cell of an 8x8 grid,
+     * set if the luminance of the cell is bigger than the mean luminance.
+     *
+     * @param src The image.
+     * @return long that represents the hash.
+     */
+    public static long averageHash(PixelBuffer src) {
+        return averageHash(PixelScaler.rowsOf(src), src.getWidth(), src.getHeight());
+    }
+
+    /**
+     * Method to get the average hash (aHash) of an image read from {@code src}.
+     *
+     * @param src    The {@link PixelScaler.RowSource} of the image.
+     * @param width  int that represents the width of the image.
+     * @param height int that represents the height of the image.
+     * @return long that represents the hash.
+     */
+    public static long averageHash(PixelScaler.RowSource src, int width, int height) {
+        int[] grid = lumaGrid(src, width, height, 8, 8);
+        long sum = 0;
+        for (int luma : grid) {
+            sum += luma;
+        }
+        long hash = 0;
+        for (int i = 0; i < 64; i++) {
+            if ((long) grid[i] * 64 > sum) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Method to get the difference hash (dHash) of {@code src}: a bit for every pair of horizontally
+     * adjacent cells of a 9x8 grid, set if the left cell is brighter than the right one.
+     *
+     * @param src The image.
+     * @return long that represents the hash.
+     */
+    public static long differenceHash(PixelBuffer src) {
+        return differenceHash(PixelScaler.rowsOf(src), src.getWidth(), src.getHeight());
+    }
+
+    /**
+     * Method to get the difference hash (dHash) of an image read from {@code src}.
+     *
+     * @param src    The {@link PixelScaler.RowSource} of the image.
+     * @param width  int that represents the width of the image.
+     * @param height int that represents the height of the image.
+     * @return long that represents the hash.
+     */
+    public static long differenceHash(PixelScaler.RowSource src, int width, int height) {
+        int[] grid = lumaGrid(src, width, height, 9, 8);
+        long hash = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                if (grid[y * 9 + x] > grid[y * 9 + x + 1]) {
+                    hash |= 1L << (y * 8 + x);
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Method to get the number of different bits of two hashes: 0 for equal hashes,
+     * usually less than 10 for perceptually similar images.
+     *
+     * @param a long that represents the first hash.
+     * @param b long that represents the second hash.
+     * @return int that represents the distance, from 0 to 64.
+     */
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Method to get the average luminance (weighted by the alpha) of the cells of a grid
+     * over the image read from {@code src}, sampling at most {@link #CELL_SAMPLES} x {@link #CELL_SAMPLES}
+     * pixels of every cell.
+     *
+     * @param src        The {@link PixelScaler.RowSource} of the image.
+     * @param width      int that represents the width of the image.
+     * @param height     int that represents the height of the image.
+     * @param gridWidth  int that represents the number of columns of the grid.
+     * @param gridHeight int that represents the number of rows of the grid.
+     * @return int[] with the luminance of every cell (from 0 to 255), row by row.
+     */
+    static int[] lumaGrid(PixelScaler.RowSource src, int width, int height, int gridWidth, int gridHeight) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("width and height must be >0");
+        }
+        int[] sums = new int[gridWidth * gridHeight];
+        int[] counts = new int[gridWidth * gridHeight];
+        int[] row = new int[width];
+        for (int gy = 0; gy < gridHeight; gy++) {
+            int top = Math.min(gy * height / gridHeight, height - 1);
+            int rows = Math.max(1, (gy + 1) * height / gridHeight - top);
+            int samplesY = Math.min(CELL_SAMPLES, rows);
+            for (int sy = 0; sy < samplesY; sy++) {
+                src.readRows(top + (2 * sy + 1) * rows / (2 * samplesY), 1, row, 0, width);
+                for (int gx = 0; gx < gridWidth; gx++) {
+                    int left = Math.min(gx * width / gridWidth, width - 1);
+                    int columns = Math.max(1, (gx + 1) * width / gridWidth - left);
+                    int samplesX = Math.min(CELL_SAMPLES, columns);
+                    int cell = gy * gridWidth + gx;
+                    for (int sx = 0; sx < samplesX; sx++) {
+                        sums[cell] += luma(row[left + (2 * sx + 1) * columns / (2 * samplesX)]);
+                    }
+                    counts[cell] += samplesX;
+                }
+            }
+        }
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] /= counts[i];
+        }
+        return sums;
+    }
+
+    //luminance of a non-premultiplied pixel, over black: transparent pixels are dark
+    private static int luma(int c) {
+        int a = c >>> 24;
+        int luma = (((c >> 16) & 0xFF) * PixelKernels.LUMA_R + ((c >> 8) & 0xFF) * PixelKernels.LUMA_G
+                + (c & 0xFF) * PixelKernels.LUMA_B + 0x8000) >>> 16;
+        return (luma * a + 127) / 255;
+    }
+
+    private static int nextRow(int y, int height, int rowStep) {
+        int next = y + rowStep;
+        //the last row is always hashed
+        return next >= height && y < height - 1 ? height - 1 : next;
+    }
+
+    private static long seed(int width, int height, int rowStep) {
+        if (rowStep < 1) {
+            throw new IllegalArgumentException("rowStep must be >=1");
+        }
+        return (((long) width << 32) | (height & 0xFFFFFFFFL)) * PRIME1 + rowStep * PRIME4;
+    }
+
+    private static long pack(int low, int high) {
+        return (low & 0xFFFFFFFFL) | ((long) high << 32);
+    }
+
+    private static long round(long acc, long value) {
+        return Long.rotateLeft(acc + value * PRIME2, 31) * PRIME1;
+    }
+
+    //final mixing of xxHash64, so all bits of the result depend on all bits of the input
+    private static long avalanche(long hash) {
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+/**
+ * Per-pixel operation, executed on a rectangle of a {@link PixelBuffer}.
+ * Implementations must be stateless (or thread-safe), because {@link TileEngine}
+ * calls {@link #apply(PixelBuffer, PixelBuffer, int, int, int, int)} concurrently
+ * on different tiles of the same image.
+ */
+public interface PixelKernel {
+
+    /**
+     * Method to process the rectangle [left, right) x [top, bottom) of {@code src},
+     * writing the result in the same rectangle of {@code dst}.
+     * {@code src} and {@code dst} can be the same buffer.
+     *
+     * @param src    The source buffer.
+     * @param dst    The destination buffer, with the same size of {@code src}.
+     * @param left   int that represents the left of the rectangle (inclusive).
+     * @param top    int that represents the top of the rectangle (inclusive).
+     * @param right  int that represents the right of the rectangle (exclusive).
+     * @param bottom int that represents the bottom of the rectangle (exclusive).
+     */
+    void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom);
+}
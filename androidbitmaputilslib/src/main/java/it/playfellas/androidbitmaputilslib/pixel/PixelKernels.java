@@ -0,0 +1,351 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+/**
+ * Factory of the {@link PixelKernel}s used by the library.
+ * All kernels work on non-premultiplied ARGB pixels, like Android's
+ * {@code ColorMatrixColorFilter}, {@code LightingColorFilter} and {@code PorterDuffColorFilter}.
+ */
+public class PixelKernels {
+
+    //luminance weights of ColorMatrix.setSaturation(0) (0.213, 0.715, 0.072) in 16.16 fixed point
+    static final int LUMA_R = 13959;
+    static final int LUMA_G = 46858;
+    static final int LUMA_B = 4719;
+
+    //4x4 Bayer matrix of the ordered dithering, thresholds from 0 to 15
+    private static final int[] BAYER_4X4 = {
+            0, 8, 2, 10,
+            12, 4, 14, 6,
+            3, 11, 1, 9,
+            15, 7, 13, 5
+    };
+
+    private static final PixelKernel GRAYSCALE = new GrayscaleKernel();
+    private static final PixelKernel LUMA_TO_ALPHA = new LumaToAlphaKernel();
+    private static final PixelKernel DITHER_RGB_565 = new DitherRgb565Kernel();
+
+    //kernels depending on colors are shared, so steady-state calls with the same colors don't allocate
+    private static final LongLruCache<PixelKernel> LIGHTING_CACHE = new LongLruCache<>(ColorLuts.MAX_CACHED_TABLES);
+    private static final LongLruCache<PixelKernel> OVERLAY_CACHE = new LongLruCache<>(ColorLuts.MAX_CACHED_TABLES);
+    private static final LongLruCache<PixelKernel> TINT_CACHE = new LongLruCache<>(ColorLuts.MAX_CACHED_TABLES);
+
+    private PixelKernels() {
+    }
+
+    /**
+     * Method to get a kernel that removes colors, like {@code ColorMatrix.setSaturation(0)}.
+     *
+     * @return The gray scale kernel.
+     */
+    public static PixelKernel grayscale() {
+        return GRAYSCALE;
+    }
+
+    /**
+     * Method to get a kernel that multiplies and then adds colors, like a {@code LightingColorFilter}.
+     *
+     * @param mul int that represents the RGB color used to multiply.
+     * @param add int that represents the RGB color to add.
+     * @return The lighting kernel.
+     */
+    public static PixelKernel lighting(int mul, int add) {
+        long key = ((long) (mul & 0xFFFFFF) << 32) | (add & 0xFFFFFF);
+        PixelKernel kernel = LIGHTING_CACHE.get(key);
+        if (kernel == null) {
+            kernel = new LightingKernel(mul, add);
+            LIGHTING_CACHE.put(key, kernel);
+        }
+        return kernel;
+    }
+
+    /**
+     * Method to get a kernel that creates a gray scale image and then overlays {@code color}
+     * (like a {@code LightingColorFilter(color, 1)}), in a single pass with a lookup table
+     * (see {@link ColorLuts#overlay(int)}).
+     *
+     * @param color int that represents the RGB color to overlay.
+     * @return The overlay kernel.
+     */
+    public static PixelKernel overlay(int color) {
+        long key = color & 0xFFFFFF;
+        PixelKernel kernel = OVERLAY_CACHE.get(key);
+        if (kernel == null) {
+            kernel = new OverlayLutKernel(ColorLuts.overlay(color));
+            OVERLAY_CACHE.put(key, kernel);
+        }
+        return kernel;
+    }
+
+    /**
+     * Method to get a kernel that colors all pixels with {@code color} preserving the alpha channel,
+     * like a {@code PorterDuffColorFilter} with {@code SRC_ATOP}.
+     *
+     * @param color int that represents the ARGB color of the silhouette.
+     * @return The tint kernel.
+     */
+    public static PixelKernel tint(int color) {
+        long key = color & 0xFFFFFFFFL;
+        PixelKernel kernel = TINT_CACHE.get(key);
+        if (kernel == null) {
+            kernel = new TintLutKernel(ColorLuts.tint(color));
+            TINT_CACHE.put(key, kernel);
+        }
+        return kernel;
+    }
+
+    /**
+     * Method to get a kernel that applies a 4x5 color matrix, with the same layout of
+     * {@code android.graphics.ColorMatrix}: R' = a*R + b*G + c*B + d*A + e (and the same for G', B' and A').
+     *
+     * @param matrix float[20] that represents the color matrix.
+     * @return The color matrix kernel.
+     */
+    public static PixelKernel colorMatrix(float[] matrix) {
+        if (matrix == null || matrix.length != 20) {
+            throw new IllegalArgumentException("matrix must be a float[20]");
+        }
+        return new ColorMatrixKernel(matrix.clone());
+    }
+
+    /**
+     * Method to get a kernel that writes the luma of every pixel, composited over black, into the alpha channel
+     * (colors become 0). Use it to store a gray scale image in an {@code ALPHA_8} Bitmap,
+     * that keeps only the alpha channel: 1 byte per pixel instead of 4.
+     *
+     * @return The luma kernel.
+     */
+    public static PixelKernel lumaToAlpha() {
+        return LUMA_TO_ALPHA;
+    }
+
+    /**
+     * Method to get a kernel that quantizes colors to RGB 565 (5 bits for red and blue, 6 for green)
+     * with a 4x4 ordered dithering, so an {@code RGB_565} Bitmap doesn't show banding on gradients.
+     * Pixels are composited over black and the result is opaque.
+     * The pattern depends on the coordinates of the pixels, so tiles and bands must start at multiples of 4.
+     *
+     * @return The dithering kernel.
+     */
+    public static PixelKernel ditherRgb565() {
+        return DITHER_RGB_565;
+    }
+
+    /**
+     * Method to get a kernel that executes {@code first}, then {@code second} on its result,
+     * on the same tile (while it's in the CPU cache).
+     *
+     * @param first  The first kernel, from src to dst.
+     * @param second The second kernel, executed in place on dst.
+     * @return The combined kernel.
+     */
+    public static PixelKernel chain(final PixelKernel first, final PixelKernel second) {
+        return new PixelKernel() {
+            @Override
+            public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+                first.apply(src, dst, left, top, right, bottom);
+                second.apply(dst, dst, left, top, right, bottom);
+            }
+        };
+    }
+
+    static int luma(int color) {
+        return (LUMA_R * ((color >> 16) & 0xFF) + LUMA_G * ((color >> 8) & 0xFF) + LUMA_B * (color & 0xFF) + 0x8000) >>> 16;
+    }
+
+    static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static final class GrayscaleKernel implements PixelKernel {
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            int[] in = src.getPixels();
+            int[] out = dst.getPixels();
+            for (int y = top; y < bottom; y++) {
+                int i = src.indexOf(left, y);
+                int o = dst.indexOf(left, y);
+                for (int x = left; x < right; x++, i++, o++) {
+                    int c = in[i];
+                    int l = luma(c);
+                    out[o] = (c & 0xFF000000) | (l << 16) | (l << 8) | l;
+                }
+            }
+        }
+    }
+
+    private static final class LumaToAlphaKernel implements PixelKernel {
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            int[] in = src.getPixels();
+            int[] out = dst.getPixels();
+            for (int y = top; y < bottom; y++) {
+                int i = src.indexOf(left, y);
+                int o = dst.indexOf(left, y);
+                for (int x = left; x < right; x++, i++, o++) {
+                    int c = in[i];
+                    out[o] = ((luma(c) * (c >>> 24) + 127) / 255) << 24;
+                }
+            }
+        }
+    }
+
+    private static final class DitherRgb565Kernel implements PixelKernel {
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            int[] in = src.getPixels();
+            int[] out = dst.getPixels();
+            for (int y = top; y < bottom; y++) {
+                int i = src.indexOf(left, y);
+                int o = dst.indexOf(left, y);
+                int row = (y & 3) << 2;
+                for (int x = left; x < right; x++, i++, o++) {
+                    int c = in[i];
+                    int a = c >>> 24;
+                    int r = (c >> 16) & 0xFF;
+                    int g = (c >> 8) & 0xFF;
+                    int b = c & 0xFF;
+                    if (a != 255) {
+                        r = (r * a + 127) / 255;
+                        g = (g * a + 127) / 255;
+                        b = (b * a + 127) / 255;
+                    }
+                    //level = floor(value * maxLevel / 255 + (threshold + 0.5) / 16), in integer math
+                    int offset = BAYER_4X4[row | (x & 3)] * 255 + 127;
+                    int r5 = (r * 31 * 16 + offset) / (255 * 16);
+                    int g6 = (g * 63 * 16 + offset) / (255 * 16);
+                    int b5 = (b * 31 * 16 + offset) / (255 * 16);
+                    //expanded to 8 bits, so the conversion to RGB 565 of Android keeps exactly these values
+                    out[o] = 0xFF000000 | ((r5 << 3) | (r5 >> 2)) << 16 | ((g6 << 2) | (g6 >> 4)) << 8 | ((b5 << 3) | (b5 >> 2));
+                }
+            }
+        }
+    }
+
+    private static final class LightingKernel implements PixelKernel {
+        //multipliers in 16.16 fixed point (x/255)
+        private final int mulR, mulG, mulB;
+        private final int addR, addG, addB;
+
+        private LightingKernel(int mul, int add) {
+            this.mulR = (((mul >> 16) & 0xFF) << 16) / 255;
+            this.mulG = (((mul >> 8) & 0xFF) << 16) / 255;
+            this.mulB = ((mul & 0xFF) << 16) / 255;
+            this.addR = (add >> 16) & 0xFF;
+            this.addG = (add >> 8) & 0xFF;
+            this.addB = add & 0xFF;
+        }
+
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            int[] in = src.getPixels();
+            int[] out = dst.getPixels();
+            for (int y = top; y < bottom; y++) {
+                int i = src.indexOf(left, y);
+                int o = dst.indexOf(left, y);
+                for (int x = left; x < right; x++, i++, o++) {
+                    int c = in[i];
+                    int r = (c >> 16) & 0xFF;
+                    int g = (c >> 8) & 0xFF;
+                    int b = c & 0xFF;
+                    r = Math.min(255, ((r * mulR + 0x8000) >>> 16) + addR);
+                    g = Math.min(255, ((g * mulG + 0x8000) >>> 16) + addG);
+                    b = Math.min(255, ((b * mulB + 0x8000) >>> 16) + addB);
+                    out[o] = (c & 0xFF000000) | (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+    }
+
+    private static final class OverlayLutKernel implements PixelKernel {
+        private final int[] lut;
+
+        private OverlayLutKernel(int[] lut) {
+            this.lut = lut;
+        }
+
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            int[] in = src.getPixels();
+            int[] out = dst.getPixels();
+            int[] lut = this.lut;
+            for (int y = top; y < bottom; y++) {
+                int i = src.indexOf(left, y);
+                int o = dst.indexOf(left, y);
+                for (int x = left; x < right; x++, i++, o++) {
+                    int c = in[i];
+                    out[o] = (c & 0xFF000000) | lut[luma(c)];
+                }
+            }
+        }
+    }
+
+    private static final class TintLutKernel implements PixelKernel {
+        //red, green and blue tables, one after the other
+        private final int[] lut;
+
+        private TintLutKernel(int[] lut) {
+            this.lut = lut;
+        }
+
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            int[] in = src.getPixels();
+            int[] out = dst.getPixels();
+            int[] lut = this.lut;
+            for (int y = top; y < bottom; y++) {
+                int i = src.indexOf(left, y);
+                int o = dst.indexOf(left, y);
+                for (int x = left; x < right; x++, i++, o++) {
+                    int c = in[i];
+                    out[o] = (c & 0xFF000000) | lut[(c >> 16) & 0xFF] | lut[256 + ((c >> 8) & 0xFF)] | lut[512 + (c & 0xFF)];
+                }
+            }
+        }
+    }
+
+    private static final class ColorMatrixKernel implements PixelKernel {
+        private final float[] m;
+
+        private ColorMatrixKernel(float[] m) {
+            this.m = m;
+        }
+
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            int[] in = src.getPixels();
+            int[] out = dst.getPixels();
+            float[] m = this.m;
+            for (int y = top; y < bottom; y++) {
+                int i = src.indexOf(left, y);
+                int o = dst.indexOf(left, y);
+                for (int x = left; x < right; x++, i++, o++) {
+                    int c = in[i];
+                    int a = c >>> 24;
+                    int r = (c >> 16) & 0xFF;
+                    int g = (c >> 8) & 0xFF;
+                    int b = c & 0xFF;
+                    int r1 = clamp((int) (m[0] * r + m[1] * g + m[2] * b + m[3] * a + m[4] + 0.5f));
+                    int g1 = clamp((int) (m[5] * r + m[6] * g + m[7] * b + m[8] * a + m[9] + 0.5f));
+                    int b1 = clamp((int) (m[10] * r + m[11] * g + m[12] * b + m[13] * a + m[14] + 0.5f));
+                    int a1 = clamp((int) (m[15] * r + m[16] * g + m[17] * b + m[18] * a + m[19] + 0.5f));
+                    out[o] = (a1 << 24) | (r1 << 16) | (g1 << 8) | b1;
+                }
+            }
+        }
+    }
+}
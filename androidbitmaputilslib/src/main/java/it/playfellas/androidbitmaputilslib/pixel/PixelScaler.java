@@ -0,0 +1,477 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+/**
+ * Downscaler of {@link PixelBuffer}s that averages all the source pixels covered by a destination
+ * pixel (area averaging), so big reductions don't alias like a bilinear filter that reads only 4 pixels.
+ * <p></p>
+ * Depending on the {@link Quality}, the image is first halved repeatedly with a fast 2x2 average
+ * (integer math, sequential access), then the remaining reduction (less than 2x) is done with
+ * a separable filter. Colors are averaged premultiplied by alpha, so transparent pixels don't
+ * darken the edges. Bands of rows of the destination are computed in parallel on a {@link TileEngine}.
+ * <p></p>
+ * The source is read through a {@link RowSource}, only the rows needed by a band at a time,
+ * so it can be a Bitmap that is never copied entirely into memory.
+ * <p></p>
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ */
+public class PixelScaler {
+
+    /**
+     * Quality of the downscaling.
+     */
+    public enum Quality {
+        /**
+         * 2x2 halvings, then a bilinear filter for the last reduction (less than 2x).
+         */
+        FAST,
+        /**
+         * 2x2 halvings, then an area-averaging filter for the last reduction (less than 2x).
+         */
+        BALANCED,
+        /**
+         * A single area-averaging pass on the original pixels, without intermediate rounding.
+         */
+        HIGH
+    }
+
+    /**
+     * Source of the rows of an image, used to read only a band of rows at a time.
+     * Implementations must be thread-safe, because bands are read in parallel.
+     */
+    public interface RowSource {
+        /**
+         * Method to read the rows [top, top + count) of the image.
+         *
+         * @param top    int that represents the first row.
+         * @param count  int that represents the number of rows.
+         * @param pixels int[] where the non-premultiplied ARGB pixels are written.
+         * @param offset int that represents the index of the first pixel written.
+         * @param stride int that represents the number of array elements between two rows.
+         */
+        void readRows(int top, int count, int[] pixels, int offset, int stride);
+    }
+
+    //number of source rows read by a band: a band is computed by a single thread
+    private static final int BAND_SOURCE_ROWS = 64;
+
+    //weights of the last sizes, so steady-state calls with the same sizes don't build them again
+    private static final LongLruCache<Weights> WEIGHTS = new LongLruCache<>(16);
+
+    private PixelScaler() {
+    }
+
+    /**
+     * Method to scale {@code src} down to the size of {@code dst}.
+     *
+     * @param src     The source buffer.
+     * @param dst     The destination buffer, not bigger than {@code src} in both dimensions.
+     * @param quality The {@link Quality} of the result.
+     * @param engine  The {@link TileEngine} used to compute bands of rows in parallel.
+     */
+    public static void scale(PixelBuffer src, PixelBuffer dst, Quality quality, TileEngine engine) {
+        scale(rowsOf(src), src.getWidth(), src.getHeight(), dst, quality, engine);
+    }
+
+    /**
+     * Method to scale the image read from {@code src} down to the size of {@code dst}.
+     *
+     * @param src       The {@link RowSource} of the image.
+     * @param srcWidth  int that represents the width of the image.
+     * @param srcHeight int that represents the height of the image.
+     * @param dst       The destination buffer, not bigger than the image in both dimensions.
+     * @param quality   The {@link Quality} of the result.
+     * @param engine    The {@link TileEngine} used to compute bands of rows in parallel.
+     */
+    public static void scale(RowSource src, int srcWidth, int srcHeight, PixelBuffer dst, Quality quality, TileEngine engine) {
+        int dw = dst.getWidth();
+        int dh = dst.getHeight();
+        if (dw > srcWidth || dh > srcHeight) {
+            throw new IllegalArgumentException("dst must not be bigger than the source: use it only to scale down");
+        }
+        if (dw == 0 || dh == 0) {
+            return;
+        }
+        if (dw == srcWidth && dh == srcHeight) {
+            src.readRows(0, dh, dst.getPixels(), dst.getOffset(), dst.getStride());
+            return;
+        }
+        int w = srcWidth;
+        int h = srcHeight;
+        //intermediate images in two alternating slots: a halving reads one and writes the other
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            if (quality != Quality.HIGH) {
+                //every halving reads the previous image and writes one with a quarter of the pixels
+                int slot = 0;
+                while (w >= dw * 2 || h >= dh * 2) {
+                    boolean halveX = w >= dw * 2;
+                    boolean halveY = h >= dh * 2;
+                    int hw = halveX ? w / 2 : w;
+                    int hh = halveY ? h / 2 : h;
+                    PixelBuffer half = hw == dw && hh == dh ? dst : scratch.buffer(slot, hw, hh);
+                    halve(src, w, h, halveX, halveY, half, engine);
+                    src = rowsOf(half);
+                    slot ^= 1;
+                    w = hw;
+                    h = hh;
+                }
+                if (w == dw && h == dh) {
+                    return;
+                }
+            }
+            if (quality == Quality.FAST) {
+                bilinear(src, w, h, dst, scratch.ints(2, dw), scratch.floats(dw), engine);
+            } else {
+                area(src, w, h, dst, dh, 0, engine);
+            }
+        } finally {
+            scratch.release();
+        }
+    }
+
+    /**
+     * Method to wrap a {@link PixelBuffer} as a {@link RowSource}.
+     *
+     * @param buffer The buffer to read.
+     * @return A RowSource that copies the rows of {@code buffer}.
+     */
+    public static RowSource rowsOf(final PixelBuffer buffer) {
+        return new RowSource() {
+            @Override
+            public void readRows(int top, int count, int[] pixels, int offset, int stride) {
+                for (int i = 0; i < count; i++) {
+                    System.arraycopy(buffer.getPixels(), buffer.indexOf(0, top + i), pixels, offset + i * stride, buffer.getWidth());
+                }
+            }
+        };
+    }
+
+    //private method to average blocks of 2x2 (or 2x1, 1x2) pixels of src into dst.
+    //With odd sizes, the last column (row) of dst averages 3 columns (rows) of src, so no pixel is dropped.
+    private static void halve(final RowSource src, final int w, final int h, final boolean halveX, final boolean halveY,
+                              final PixelBuffer dst, TileEngine engine) {
+        final int fx = halveX ? 2 : 1;
+        final int fy = halveY ? 2 : 1;
+        final int dw = dst.getWidth();
+        final int dh = dst.getHeight();
+        final int bandRows = Math.max(1, BAND_SOURCE_ROWS / fy);
+        engine.forEach((dh + bandRows - 1) / bandRows, new TileEngine.Task() {
+            @Override
+            public void run(int index) {
+                int top = index * bandRows;
+                int bottom = Math.min(top + bandRows, dh);
+                int srcTop = top * fy;
+                int srcBottom = bottom == dh ? h : bottom * fy;
+                PixelScratch scratch = PixelScratch.acquire();
+                try {
+                    int[] in = scratch.ints(0, (srcBottom - srcTop) * w);
+                    src.readRows(srcTop, srcBottom - srcTop, in, 0, w);
+                    halveRows(in, srcTop, srcBottom, top, bottom);
+                } finally {
+                    scratch.release();
+                }
+            }
+
+            private void halveRows(int[] in, int srcTop, int srcBottom, int top, int bottom) {
+                int[] out = dst.getPixels();
+                for (int y = top; y < bottom; y++) {
+                    int rowStart = (y * fy - srcTop) * w;
+                    int rows = y == dh - 1 ? srcBottom - y * fy : fy;
+                    int o = dst.indexOf(0, y);
+                    int x = 0;
+                    if (fx == 2 && rows == 2) {
+                        //fast path for the 2x2 blocks: all the columns except the last one
+                        int i = rowStart;
+                        for (; x < dw - 1; x++, i += 2) {
+                            out[o++] = average4(in[i], in[i + 1], in[i + w], in[i + w + 1]);
+                        }
+                    }
+                    for (; x < dw; x++) {
+                        int cols = x == dw - 1 ? w - x * fx : fx;
+                        int a = 0;
+                        int r = 0;
+                        int g = 0;
+                        int b = 0;
+                        for (int j = 0; j < rows; j++) {
+                            int i = rowStart + j * w + x * fx;
+                            for (int k = 0; k < cols; k++) {
+                                int p = in[i + k];
+                                int pa = p >>> 24;
+                                a += pa;
+                                r += ((p >> 16) & 0xFF) * pa;
+                                g += ((p >> 8) & 0xFF) * pa;
+                                b += (p & 0xFF) * pa;
+                            }
+                        }
+                        int n = rows * cols;
+                        out[o++] = a == 0 ? 0 : ((a + n / 2) / n) << 24
+                                | ((r + a / 2) / a) << 16 | ((g + a / 2) / a) << 8 | ((b + a / 2) / a);
+                    }
+                }
+            }
+        });
+    }
+
+    //private method to average 4 pixels, premultiplying the colors by alpha
+    private static int average4(int p0, int p1, int p2, int p3) {
+        int a0 = p0 >>> 24;
+        int a1 = p1 >>> 24;
+        int a2 = p2 >>> 24;
+        int a3 = p3 >>> 24;
+        int a = a0 + a1 + a2 + a3;
+        if (a == 0) {
+            return 0;
+        }
+        int r = ((p0 >> 16) & 0xFF) * a0 + ((p1 >> 16) & 0xFF) * a1 + ((p2 >> 16) & 0xFF) * a2 + ((p3 >> 16) & 0xFF) * a3;
+        int g = ((p0 >> 8) & 0xFF) * a0 + ((p1 >> 8) & 0xFF) * a1 + ((p2 >> 8) & 0xFF) * a2 + ((p3 >> 8) & 0xFF) * a3;
+        int b = (p0 & 0xFF) * a0 + (p1 & 0xFF) * a1 + (p2 & 0xFF) * a2 + (p3 & 0xFF) * a3;
+        int half = a >> 1;
+        return ((a + 2) >> 2) << 24 | ((r + half) / a) << 16 | ((g + half) / a) << 8 | ((b + half) / a);
+    }
+
+    /**
+     * Method to compute only some rows of the reduction of the image read from {@code src}
+     * to {@code dst.getWidth()} x {@code dstHeight}, with the area averaging of {@link Quality#HIGH}.
+     * Only the source rows covered by them are read, so a reduction can be computed band by band,
+     * for example to stream an image bigger than the memory (see {@link TileStreamer}).
+     *
+     * @param src       The {@link RowSource} of the image.
+     * @param srcWidth  int that represents the width of the image.
+     * @param srcHeight int that represents the height of the image.
+     * @param dstHeight int that represents the height of the whole reduced image.
+     * @param top       int that represents the first row of the reduced image to compute.
+     * @param dst       The buffer where the rows [top, top + dst.getHeight()) are written.
+     * @param engine    The {@link TileEngine} used to compute bands of rows in parallel.
+     */
+    public static void scaleRows(RowSource src, int srcWidth, int srcHeight, int dstHeight, int top, PixelBuffer dst, TileEngine engine) {
+        if (dst.getWidth() > srcWidth || dstHeight > srcHeight) {
+            throw new IllegalArgumentException("the reduced image must not be bigger than the source: use it only to scale down");
+        }
+        if (top < 0 || top + dst.getHeight() > dstHeight) {
+            throw new IllegalArgumentException("rows out of the reduced image");
+        }
+        if (dst.getWidth() == 0 || dst.getHeight() == 0) {
+            return;
+        }
+        area(src, srcWidth, srcHeight, dst, dstHeight, top, engine);
+    }
+
+    //private method to scale src averaging the covered area of every destination pixel, with a separable filter:
+    //each band filters its source rows horizontally, then combines them vertically.
+    //dst contains the rows [first, first + dst.getHeight()) of a reduced image with dh rows.
+    private static void area(final RowSource src, final int w, final int h, final PixelBuffer dst, final int dh, final int first,
+                             TileEngine engine) {
+        final int dw = dst.getWidth();
+        final int last = first + dst.getHeight();
+        final Weights wx = weightsOf(w, dw);
+        final Weights wy = weightsOf(h, dh);
+        final int bandRows = Math.max(1, BAND_SOURCE_ROWS * dh / h);
+        engine.forEach((dst.getHeight() + bandRows - 1) / bandRows, new TileEngine.Task() {
+            @Override
+            public void run(int index) {
+                int top = first + index * bandRows;
+                int bottom = Math.min(top + bandRows, last);
+                PixelScratch scratch = PixelScratch.acquire();
+                try {
+                    int srcTop = wy.start[top];
+                    int rows = wy.start[bottom - 1] + wy.count[bottom - 1] - srcTop;
+                    int[] in = scratch.ints(0, rows * w);
+                    src.readRows(srcTop, rows, in, 0, w);
+                    areaRows(in, scratch.floats(rows * dw * 4), srcTop, rows, top, bottom);
+                } finally {
+                    scratch.release();
+                }
+            }
+
+            private void areaRows(int[] in, float[] tmp, int srcTop, int rows, int top, int bottom) {
+                //horizontal pass: 4 premultiplied channels for every column of dst and row of the band
+                for (int y = 0; y < rows; y++) {
+                    int t = y * dw * 4;
+                    for (int x = 0; x < dw; x++) {
+                        int i = y * w + wx.start[x];
+                        int wi = x * wx.stride;
+                        float a = 0;
+                        float r = 0;
+                        float g = 0;
+                        float b = 0;
+                        for (int k = 0; k < wx.count[x]; k++) {
+                            int p = in[i + k];
+                            float pa = (p >>> 24) * wx.weights[wi + k];
+                            a += pa;
+                            r += ((p >> 16) & 0xFF) * pa;
+                            g += ((p >> 8) & 0xFF) * pa;
+                            b += (p & 0xFF) * pa;
+                        }
+                        tmp[t++] = a;
+                        tmp[t++] = r;
+                        tmp[t++] = g;
+                        tmp[t++] = b;
+                    }
+                }
+
+                //vertical pass
+                int[] out = dst.getPixels();
+                for (int y = top; y < bottom; y++) {
+                    int wi = y * wy.stride;
+                    int o = dst.indexOf(0, y - first);
+                    for (int x = 0; x < dw; x++) {
+                        float a = 0;
+                        float r = 0;
+                        float g = 0;
+                        float b = 0;
+                        int t = ((wy.start[y] - srcTop) * dw + x) * 4;
+                        for (int k = 0; k < wy.count[y]; k++, t += dw * 4) {
+                            float weight = wy.weights[wi + k];
+                            a += tmp[t] * weight;
+                            r += tmp[t + 1] * weight;
+                            g += tmp[t + 2] * weight;
+                            b += tmp[t + 3] * weight;
+                        }
+                        out[o++] = pack(a, r, g, b);
+                    }
+                }
+            }
+        });
+    }
+
+    //private method to scale src into dst with a bilinear filter (used only for reductions less than 2x)
+    //x0 and fx are arrays of at least dst.getWidth() elements, for the columns of the filter
+    private static void bilinear(final RowSource src, final int w, final int h, final PixelBuffer dst,
+                                 final int[] x0, final float[] fx, TileEngine engine) {
+        final int dw = dst.getWidth();
+        final int dh = dst.getHeight();
+        final float scaleX = (float) w / dw;
+        final float scaleY = (float) h / dh;
+        for (int x = 0; x < dw; x++) {
+            float sx = Math.max(0f, Math.min(w - 1, (x + 0.5f) * scaleX - 0.5f));
+            x0[x] = Math.min((int) sx, w - 2 < 0 ? 0 : w - 2);
+            fx[x] = w == 1 ? 0f : sx - x0[x];
+        }
+        final int bandRows = Math.max(1, BAND_SOURCE_ROWS * dh / h);
+        engine.forEach((dh + bandRows - 1) / bandRows, new TileEngine.Task() {
+            @Override
+            public void run(int index) {
+                int top = index * bandRows;
+                int bottom = Math.min(top + bandRows, dh);
+                int srcTop = sourceRow(top, scaleY, h);
+                int srcBottom = Math.min(h, sourceRow(bottom - 1, scaleY, h) + 2);
+                PixelScratch scratch = PixelScratch.acquire();
+                try {
+                    int[] in = scratch.ints(0, (srcBottom - srcTop) * w);
+                    src.readRows(srcTop, srcBottom - srcTop, in, 0, w);
+                    bilinearRows(in, srcTop, srcBottom, top, bottom);
+                } finally {
+                    scratch.release();
+                }
+            }
+
+            private void bilinearRows(int[] in, int srcTop, int srcBottom, int top, int bottom) {
+                int[] out = dst.getPixels();
+                for (int y = top; y < bottom; y++) {
+                    float sy = Math.max(0f, Math.min(h - 1, (y + 0.5f) * scaleY - 0.5f));
+                    int y0 = sourceRow(y, scaleY, h);
+                    float fy = sy - y0;
+                    int row0 = (y0 - srcTop) * w;
+                    int row1 = y0 + 1 < srcBottom ? row0 + w : row0;
+                    int o = dst.indexOf(0, y);
+                    for (int x = 0; x < dw; x++) {
+                        int i = x0[x];
+                        int j = Math.min(i + 1, w - 1);
+                        float wx1 = fx[x];
+                        float wx0 = 1f - wx1;
+                        int p00 = in[row0 + i];
+                        int p01 = in[row0 + j];
+                        int p10 = in[row1 + i];
+                        int p11 = in[row1 + j];
+                        //weights premultiplied by the alpha of every pixel
+                        float w00 = (p00 >>> 24) * wx0 * (1f - fy);
+                        float w01 = (p01 >>> 24) * wx1 * (1f - fy);
+                        float w10 = (p10 >>> 24) * wx0 * fy;
+                        float w11 = (p11 >>> 24) * wx1 * fy;
+                        out[o++] = pack(w00 + w01 + w10 + w11,
+                                ((p00 >> 16) & 0xFF) * w00 + ((p01 >> 16) & 0xFF) * w01 + ((p10 >> 16) & 0xFF) * w10 + ((p11 >> 16) & 0xFF) * w11,
+                                ((p00 >> 8) & 0xFF) * w00 + ((p01 >> 8) & 0xFF) * w01 + ((p10 >> 8) & 0xFF) * w10 + ((p11 >> 8) & 0xFF) * w11,
+                                (p00 & 0xFF) * w00 + (p01 & 0xFF) * w01 + (p10 & 0xFF) * w10 + (p11 & 0xFF) * w11);
+                    }
+                }
+            }
+        });
+    }
+
+    //private method to get the weights to reduce srcLength pixels to dstLength, from the cache if possible
+    private static Weights weightsOf(int srcLength, int dstLength) {
+        long key = ((long) srcLength << 32) | dstLength;
+        Weights weights = WEIGHTS.get(key);
+        if (weights == null) {
+            weights = new Weights(srcLength, dstLength);
+            WEIGHTS.put(key, weights);
+        }
+        return weights;
+    }
+
+    //private method to get the first of the 2 source rows interpolated for the row y of the destination
+    private static int sourceRow(int y, float scale, int h) {
+        float sy = Math.max(0f, Math.min(h - 1, (y + 0.5f) * scale - 0.5f));
+        return Math.min((int) sy, Math.max(0, h - 2));
+    }
+
+    //private method to convert premultiplied channels, with alpha from 0 to 255, to a non-premultiplied ARGB pixel
+    private static int pack(float a, float r, float g, float b) {
+        if (a < 0.5f) {
+            return 0;
+        }
+        return clamp(a) << 24 | clamp(r / a) << 16 | clamp(g / a) << 8 | clamp(b / a);
+    }
+
+    private static int clamp(float value) {
+        int v = (int) (value + 0.5f);
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+
+    /**
+     * Weights of the source pixels covered by every destination pixel along an axis:
+     * the destination pixel i covers [i * scale, (i + 1) * scale) of the source, and every
+     * source pixel weighs the length of its overlap divided by scale.
+     */
+    private static final class Weights {
+        private final int[] start;
+        private final int[] count;
+        private final float[] weights;
+        private final int stride;
+
+        private Weights(int srcLength, int dstLength) {
+            double scale = (double) srcLength / dstLength;
+            stride = (int) Math.ceil(scale) + 1;
+            start = new int[dstLength];
+            count = new int[dstLength];
+            weights = new float[dstLength * stride];
+            for (int i = 0; i < dstLength; i++) {
+                double left = i * scale;
+                double right = Math.min(srcLength, (i + 1) * scale);
+                int first = (int) left;
+                int last = Math.min(srcLength - 1, (int) Math.ceil(right) - 1);
+                start[i] = first;
+                count[i] = last - first + 1;
+                for (int j = first; j <= last; j++) {
+                    double overlap = Math.min(right, j + 1) - Math.max(left, j);
+                    weights[i * stride + j - first] = (float) (overlap / scale);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per-thread int[] and byte buffers reused by the band loops of the library, so steady-state
+ * calls with the same sizes don't allocate. Buffers bigger than {@link #MAX_RETAINED_PIXELS}
+ * pixels (or 4 times that in bytes) are dropped on {@link #release()}, to not retain
+ * the memory of a single big image on every thread.
+ * <br>
+ * Usage:
+ * <br>
+ * {@code PixelScratch scratch = PixelScratch.acquire(); try { ... } finally { scratch.release(); }}
+ * <br>
+ * Nested calls (for example a band task of a {@link TileEngine} executed by the thread that
+ * holds a scratch) get the next level of the thread, that is retained too, up to {@link #MAX_DEPTH} levels;
+ * deeper calls get a temporary scratch. Scratches must be released in the reverse order of acquisition.
+ * The contents of the buffers are undefined: callers must write them before reading.
+ */
+public final class PixelScratch {
+
+    public static final int SLOTS = 4;
+    public static final int MAX_RETAINED_PIXELS = 512 * 1024;
+    public static final int MAX_DEPTH = 3;
+
+    private static final ThreadLocal<Levels> LOCAL = new ThreadLocal<Levels>() {
+        @Override
+        protected Levels initialValue() {
+            return new Levels();
+        }
+    };
+
+    private final Levels levels;
+    private final int depth;
+    private final int[][] arrays = new int[SLOTS][];
+    private final PixelBuffer[] buffers = new PixelBuffer[SLOTS];
+    private float[] floats;
+    private ByteBuffer bytes;
+
+    private PixelScratch(Levels levels, int depth) {
+        this.levels = levels;
+        this.depth = depth;
+    }
+
+    public static PixelScratch acquire() {
+        Levels levels = LOCAL.get();
+        int depth = levels.depth;
+        if (depth >= MAX_DEPTH) {
+            return new PixelScratch(null, depth);
+        }
+        PixelScratch scratch = levels.scratches[depth];
+        if (scratch == null) {
+            scratch = new PixelScratch(levels, depth);
+            levels.scratches[depth] = scratch;
+        }
+        levels.depth = depth + 1;
+        return scratch;
+    }
+
+    /**
+     * Method to release the scratch, dropping the buffers too big to be retained.
+     */
+    public void release() {
+        for (int i = 0; i < SLOTS; i++) {
+            if (arrays[i] != null && arrays[i].length > MAX_RETAINED_PIXELS) {
+                arrays[i] = null;
+                buffers[i] = null;
+            }
+        }
+        if (floats != null && floats.length > MAX_RETAINED_PIXELS) {
+            floats = null;
+        }
+        if (bytes != null && bytes.capacity() > MAX_RETAINED_PIXELS * 4) {
+            bytes = null;
+        }
+        if (levels != null) {
+            levels.depth = depth;
+        }
+    }
+
+    /**
+     * Method to get the int[] of a slot, with at least {@code size} elements.
+     *
+     * @param slot int that represents the slot, from 0 to {@link #SLOTS} - 1.
+     * @param size int that represents the minimum length.
+     * @return The int[] of the slot.
+     */
+    public int[] ints(int slot, int size) {
+        int[] array = arrays[slot];
+        if (array == null || array.length < size) {
+            array = new int[size];
+            arrays[slot] = array;
+            buffers[slot] = null;
+        }
+        return array;
+    }
+
+    /**
+     * Method to get a PixelBuffer of {@code width x height} pixels, backed by the int[] of a slot.
+     * The PixelBuffer is reused while the size of the slot doesn't change.
+     *
+     * @param slot   int that represents the slot, from 0 to {@link #SLOTS} - 1.
+     * @param width  int that represents the width.
+     * @param height int that represents the height.
+     * @return The PixelBuffer, with offset 0 and stride {@code width}.
+     */
+    public PixelBuffer buffer(int slot, int width, int height) {
+        int[] array = ints(slot, width * height);
+        PixelBuffer buffer = buffers[slot];
+        if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height) {
+            buffer = new PixelBuffer(array, width, height);
+            buffers[slot] = buffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * Method to get a float[] with at least {@code size} elements.
+     *
+     * @param size int that represents the minimum length.
+     * @return The float[].
+     */
+    public float[] floats(int size) {
+        if (floats == null || floats.length < size) {
+            floats = new float[size];
+        }
+        return floats;
+    }
+
+    /**
+     * Method to get a heap ByteBuffer with at least {@code size} bytes, with position 0
+     * and limit {@code size}.
+     *
+     * @param size int that represents the minimum capacity.
+     * @return The ByteBuffer.
+     */
+    public ByteBuffer bytes(int size) {
+        if (bytes == null || bytes.capacity() < size) {
+            bytes = ByteBuffer.allocate(size);
+        }
+        bytes.clear();
+        bytes.limit(size);
+        return bytes;
+    }
+
+    //the scratches of a thread, one per nesting level
+    private static final class Levels {
+        private final PixelScratch[] scratches = new PixelScratch[MAX_DEPTH];
+        private int depth;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+/**
+ * Geometric transformations of {@link PixelBuffer}s that only move pixels
+ * (flips and rotations by multiples of 90 degrees), so they are exact and don't need filtering.
+ * <p></p>
+ * Rotations by 90 and 270 degrees read the source by columns: to use the CPU cache, they are
+ * computed in square tiles of {@link #TILE_SIZE} pixels, so the rows of the source touched by a tile
+ * stay in the cache until the tile is completed. With a {@link TileEngine}, bands of rows of the
+ * destination are computed in parallel.
+ * <p></p>
+ * Flips and the rotation by 180 degrees can also be done in place, swapping pixels, without a second buffer.
+ * <p></p>
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ */
+public class PixelTransforms {
+
+    //64 x 64 ints: source and destination tiles (32KB) fit in the L1/L2 caches of phones
+    public static final int TILE_SIZE = 64;
+
+    //below this number of pixels, the overhead of other threads is bigger than the gain
+    private static final int MIN_PARALLEL_PIXELS = 256 * 256;
+
+    private PixelTransforms() {
+    }
+
+    /**
+     * Method to rotate {@code src} clockwise by a multiple of 90 degrees.
+     *
+     * @param src     The source buffer.
+     * @param degrees int that represents the angle, a multiple of 90 (also negative).
+     * @return A new PixelBuffer with the rotated image.
+     */
+    public static PixelBuffer rotate(PixelBuffer src, int degrees) {
+        int quarters = toQuarters(degrees);
+        boolean swap = (quarters & 1) == 1;
+        PixelBuffer dst = new PixelBuffer(swap ? src.getHeight() : src.getWidth(), swap ? src.getWidth() : src.getHeight());
+        rotate(src, degrees, dst);
+        return dst;
+    }
+
+    /**
+     * Method to rotate {@code src} clockwise by a multiple of 90 degrees into {@code dst}.
+     *
+     * @param src     The source buffer.
+     * @param degrees int that represents the angle, a multiple of 90 (also negative).
+     * @param dst     The destination buffer, with the size of the rotated image. It must not share pixels with {@code src}.
+     */
+    public static void rotate(PixelBuffer src, int degrees, PixelBuffer dst) {
+        int quarters = checkRotation(src, degrees, dst);
+        rotateRows(src, quarters, dst, 0, dst.getHeight());
+    }
+
+    /**
+     * Method to rotate {@code src} clockwise by a multiple of 90 degrees into {@code dst},
+     * computing bands of rows of {@code dst} in parallel on {@code engine}.
+     *
+     * @param src     The source buffer.
+     * @param degrees int that represents the angle, a multiple of 90 (also negative).
+     * @param dst     The destination buffer, with the size of the rotated image. It must not share pixels with {@code src}.
+     * @param engine  The {@link TileEngine} used to execute the bands.
+     */
+    public static void rotate(final PixelBuffer src, int degrees, final PixelBuffer dst, TileEngine engine) {
+        final int quarters = checkRotation(src, degrees, dst);
+        final int height = dst.getHeight();
+        if ((long) src.getWidth() * src.getHeight() < MIN_PARALLEL_PIXELS || engine.getParallelism() == 1) {
+            rotateRows(src, quarters, dst, 0, height);
+            return;
+        }
+        engine.forEach((height + TILE_SIZE - 1) / TILE_SIZE, new TileEngine.Task() {
+            @Override
+            public void run(int index) {
+                int top = index * TILE_SIZE;
+                rotateRows(src, quarters, dst, top, Math.min(top + TILE_SIZE, height));
+            }
+        });
+    }
+
+    private static int checkRotation(PixelBuffer src, int degrees, PixelBuffer dst) {
+        int quarters = toQuarters(degrees);
+        int w = src.getWidth();
+        int h = src.getHeight();
+        boolean swap = (quarters & 1) == 1;
+        if (dst.getWidth() != (swap ? h : w) || dst.getHeight() != (swap ? w : h)) {
+            throw new IllegalArgumentException("dst must be " + (swap ? h : w) + "x" + (swap ? w : h));
+        }
+        checkNotShared(src, dst);
+        return quarters;
+    }
+
+    //private method to compute the rows [top, bottom) of the rotated dst, in tiles of TILE_SIZE x TILE_SIZE
+    private static void rotateRows(PixelBuffer src, int quarters, PixelBuffer dst, int top, int bottom) {
+        int[] in = src.getPixels();
+        int[] out = dst.getPixels();
+        int w = src.getWidth();
+        int h = src.getHeight();
+        int dw = dst.getWidth();
+        int stride = src.getStride();
+        switch (quarters) {
+            case 0:
+                for (int y = top; y < bottom; y++) {
+                    System.arraycopy(in, src.indexOf(0, y), out, dst.indexOf(0, y), w);
+                }
+                break;
+            case 2:
+                //dst(x, y) = src(w - 1 - x, h - 1 - y): rows reversed, sequential access
+                for (int y = top; y < bottom; y++) {
+                    int i = src.indexOf(w - 1, h - 1 - y);
+                    int o = dst.indexOf(0, y);
+                    for (int x = 0; x < dw; x++) {
+                        out[o++] = in[i--];
+                    }
+                }
+                break;
+            default:
+                //90: dst(x, y) = src(y, h - 1 - x), moving along x goes up a column of src
+                //270: dst(x, y) = src(w - 1 - y, x), moving along x goes down a column of src
+                int step = quarters == 1 ? -stride : stride;
+                for (int tileTop = top; tileTop < bottom; tileTop += TILE_SIZE) {
+                    int tileBottom = Math.min(tileTop + TILE_SIZE, bottom);
+                    for (int tileLeft = 0; tileLeft < dw; tileLeft += TILE_SIZE) {
+                        int tileRight = Math.min(tileLeft + TILE_SIZE, dw);
+                        for (int y = tileTop; y < tileBottom; y++) {
+                            int i = quarters == 1 ? src.indexOf(y, h - 1 - tileLeft) : src.indexOf(w - 1 - y, tileLeft);
+                            int o = dst.indexOf(tileLeft, y);
+                            for (int x = tileLeft; x < tileRight; x++, i += step) {
+                                out[o++] = in[i];
+                            }
+                        }
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Method to flip {@code src} horizontally (left becomes right) into {@code dst}.
+     *
+     * @param src The source buffer.
+     * @param dst The destination buffer, with the same size of {@code src}. It must not share pixels with {@code src}.
+     */
+    public static void flipHorizontally(PixelBuffer src, PixelBuffer dst) {
+        checkSameSize(src, dst);
+        checkNotShared(src, dst);
+        int w = src.getWidth();
+        int[] in = src.getPixels();
+        int[] out = dst.getPixels();
+        for (int y = 0; y < src.getHeight(); y++) {
+            int i = src.indexOf(0, y);
+            int o = dst.indexOf(w - 1, y);
+            for (int x = 0; x < w; x++) {
+                out[o - x] = in[i + x];
+            }
+        }
+    }
+
+    /**
+     * Method to flip {@code src} vertically (top becomes bottom) into {@code dst}.
+     *
+     * @param src The source buffer.
+     * @param dst The destination buffer, with the same size of {@code src}. It must not share pixels with {@code src}.
+     */
+    public static void flipVertically(PixelBuffer src, PixelBuffer dst) {
+        checkSameSize(src, dst);
+        checkNotShared(src, dst);
+        int h = src.getHeight();
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(src.getPixels(), src.indexOf(0, y), dst.getPixels(), dst.indexOf(0, h - 1 - y), src.getWidth());
+        }
+    }
+
+    /**
+     * Method to flip {@code buffer} horizontally in place, swapping the pixels of every row.
+     *
+     * @param buffer The buffer to flip.
+     */
+    public static void flipHorizontallyInPlace(PixelBuffer buffer) {
+        int[] pixels = buffer.getPixels();
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.indexOf(0, y);
+            int j = buffer.indexOf(buffer.getWidth() - 1, y);
+            for (; i < j; i++, j--) {
+                int t = pixels[i];
+                pixels[i] = pixels[j];
+                pixels[j] = t;
+            }
+        }
+    }
+
+    /**
+     * Method to flip {@code buffer} vertically in place, swapping its rows.
+     *
+     * @param buffer The buffer to flip.
+     */
+    public static void flipVerticallyInPlace(PixelBuffer buffer) {
+        int[] pixels = buffer.getPixels();
+        int w = buffer.getWidth();
+        for (int top = 0, bottom = buffer.getHeight() - 1; top < bottom; top++, bottom--) {
+            int i = buffer.indexOf(0, top);
+            int j = buffer.indexOf(0, bottom);
+            for (int x = 0; x < w; x++, i++, j++) {
+                int t = pixels[i];
+                pixels[i] = pixels[j];
+                pixels[j] = t;
+            }
+        }
+    }
+
+    /**
+     * Method to rotate {@code buffer} by 180 degrees in place (a horizontal and a vertical flip, in a single pass).
+     *
+     * @param buffer The buffer to rotate.
+     */
+    public static void rotate180InPlace(PixelBuffer buffer) {
+        int[] pixels = buffer.getPixels();
+        int w = buffer.getWidth();
+        int h = buffer.getHeight();
+        //swap every pixel of the top half with its opposite; the middle row of odd heights is reversed alone
+        for (int top = 0, bottom = h - 1; top <= bottom; top++, bottom--) {
+            int i = buffer.indexOf(0, top);
+            int j = buffer.indexOf(w - 1, bottom);
+            int end = top == bottom ? i + w / 2 : i + w;
+            for (; i < end; i++, j--) {
+                int t = pixels[i];
+                pixels[i] = pixels[j];
+                pixels[j] = t;
+            }
+        }
+    }
+
+    //package-private method to convert an angle into the number of clockwise quarter turns (0-3)
+    static int toQuarters(int degrees) {
+        if (degrees % 90 != 0) {
+            throw new IllegalArgumentException("degrees must be a multiple of 90");
+        }
+        return ((degrees / 90) % 4 + 4) % 4;
+    }
+
+    private static void checkSameSize(PixelBuffer src, PixelBuffer dst) {
+        if (src.getWidth() != dst.getWidth() || src.getHeight() != dst.getHeight()) {
+            throw new IllegalArgumentException("src and dst must have the same size");
+        }
+    }
+
+    private static void checkNotShared(PixelBuffer src, PixelBuffer dst) {
+        if (src.getPixels() == dst.getPixels()) {
+            throw new IllegalArgumentException("src and dst must not share pixels");
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Raw (uncompressed) image format: a compact header followed by the pixel payload,
+ * exactly as returned by {@code Bitmap.copyPixelsToBuffer(...)}, so a Bitmap can be
+ * serialized and deserialized with a memory copy.
+ * <br>
+ * Header (big-endian, {@link #HEADER_SIZE} bytes):
+ * <br>
+ * magic (int) | version (short) | config (byte) | flags (byte) | width (int) | height (int) | rowBytes (int) | payloadLength (int)
+ * <p></p>
+ * For {@link #CONFIG_ARGB_8888} the payload has 4 bytes per pixel in memory order R, G, B, A,
+ * with premultiplied alpha (the native layout of Android Bitmaps).
+ * {@link #encode(PixelBuffer)} and {@link #decode(ByteBuffer)} convert from/to the
+ * non-premultiplied ARGB pixels of a {@link PixelBuffer}.
+ * <p></p>
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ */
+public class RawPixelFormat {
+
+    public static final int MAGIC = 0x42555257; //"BURW"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 24;
+
+    public static final int CONFIG_ALPHA_8 = 1;
+    public static final int CONFIG_RGB_565 = 2;
+    public static final int CONFIG_ARGB_4444 = 3;
+    public static final int CONFIG_ARGB_8888 = 4;
+
+    public static final int FLAG_HAS_ALPHA = 1;
+
+    private RawPixelFormat() {
+    }
+
+    /**
+     * Header of a raw image.
+     */
+    public static final class Header {
+        private final int config;
+        private final int flags;
+        private final int width;
+        private final int height;
+        private final int rowBytes;
+        private final int payloadLength;
+
+        /**
+         * Constructor
+         *
+         * @param config        int that represents the config (a CONFIG_* constant).
+         * @param flags         int that represents the flags (FLAG_* constants).
+         * @param width         int that represents the width.
+         * @param height        int that represents the height.
+         * @param rowBytes      int that represents the number of bytes of a row.
+         * @param payloadLength int that represents the number of bytes of the payload.
+         */
+        public Header(int config, int flags, int width, int height, int rowBytes, int payloadLength) {
+            this.config = config;
+            this.flags = flags;
+            this.width = width;
+            this.height = height;
+            this.rowBytes = rowBytes;
+            this.payloadLength = payloadLength;
+        }
+
+        public int getConfig() {
+            return config;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public boolean hasAlpha() {
+            return (flags & FLAG_HAS_ALPHA) != 0;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getRowBytes() {
+            return rowBytes;
+        }
+
+        public int getPayloadLength() {
+            return payloadLength;
+        }
+
+        /**
+         * Method to get the total size of the raw image (header and payload).
+         *
+         * @return int that represents the number of bytes.
+         */
+        public int getTotalLength() {
+            return HEADER_SIZE + payloadLength;
+        }
+    }
+
+    /**
+     * Method to get the number of bytes of a pixel.
+     *
+     * @param config int that represents the config (a CONFIG_* constant).
+     * @return int that represents the number of bytes of a pixel.
+     */
+    public static int bytesPerPixel(int config) {
+        switch (config) {
+            case CONFIG_ALPHA_8:
+                return 1;
+            case CONFIG_RGB_565:
+            case CONFIG_ARGB_4444:
+                return 2;
+            case CONFIG_ARGB_8888:
+                return 4;
+            default:
+                throw new IllegalArgumentException("unknown config " + config);
+        }
+    }
+
+    /**
+     * Method to write {@code header} at the current position of {@code dst}.
+     *
+     * @param header The header to write.
+     * @param dst    The destination buffer, with at least {@link #HEADER_SIZE} remaining bytes.
+     */
+    public static void writeHeader(Header header, ByteBuffer dst) {
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.BIG_ENDIAN);
+        dst.putInt(MAGIC);
+        dst.putShort(VERSION);
+        dst.put((byte) header.config);
+        dst.put((byte) header.flags);
+        dst.putInt(header.width);
+        dst.putInt(header.height);
+        dst.putInt(header.rowBytes);
+        dst.putInt(header.payloadLength);
+        dst.order(order);
+    }
+
+    /**
+     * Method to read a header at the current position of {@code src}.
+     *
+     * @param src The source buffer, with at least {@link #HEADER_SIZE} remaining bytes.
+     * @return The header.
+     * @throws IOException if the data is not a valid raw image header.
+     */
+    public static Header readHeader(ByteBuffer src) throws IOException {
+        if (src.remaining() < HEADER_SIZE) {
+            throw new IOException("raw image header truncated");
+        }
+        ByteOrder order = src.order();
+        src.order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (src.getInt() != MAGIC) {
+                throw new IOException("not a raw image");
+            }
+            short version = src.getShort();
+            if (version != VERSION) {
+                throw new IOException("unsupported raw image version " + version);
+            }
+            int config = src.get();
+            int flags = src.get() & 0xFF;
+            int width = src.getInt();
+            int height = src.getInt();
+            int rowBytes = src.getInt();
+            int payloadLength = src.getInt();
+            if (config < CONFIG_ALPHA_8 || config > CONFIG_ARGB_8888 || width < 0 || height < 0) {
+                throw new IOException("corrupted raw image header");
+            }
+            //in long, because a corrupted width can overflow an int
+            long minRowBytes = (long) width * bytesPerPixel(config);
+            //the total length (header and payload) must be an int too
+            if (minRowBytes > Integer.MAX_VALUE || rowBytes < minRowBytes || payloadLength < 0
+                    || payloadLength > Integer.MAX_VALUE - HEADER_SIZE || (long) rowBytes * height > payloadLength) {
+                throw new IOException("corrupted raw image header");
+            }
+            return new Header(config, flags, width, height, rowBytes, payloadLength);
+        } finally {
+            src.order(order);
+        }
+    }
+
+    /**
+     * Method to encode a {@link PixelBuffer} as a raw ARGB_8888 image.
+     *
+     * @param source The source buffer.
+     * @return A heap ByteBuffer, ready to be read, with the header and the payload.
+     */
+    public static ByteBuffer encode(PixelBuffer source) {
+        int rowBytes = source.getWidth() * 4;
+        int payloadLength = rowBytes * source.getHeight();
+        ByteBuffer dst = ByteBuffer.allocate(HEADER_SIZE + payloadLength);
+        writeHeader(new Header(CONFIG_ARGB_8888, FLAG_HAS_ALPHA, source.getWidth(), source.getHeight(), rowBytes, payloadLength), dst);
+        writeArgb8888(source, 0, source.getHeight(), dst);
+        dst.flip();
+        return dst;
+    }
+
+    /**
+     * Method to decode a raw ARGB_8888 image into a new {@link PixelBuffer}.
+     *
+     * @param src The source buffer, positioned at the beginning of the header.
+     * @return A PixelBuffer with non-premultiplied ARGB pixels.
+     * @throws IOException if the data is not a valid raw ARGB_8888 image.
+     */
+    public static PixelBuffer decode(ByteBuffer src) throws IOException {
+        Header header = readHeader(src);
+        if (header.getConfig() != CONFIG_ARGB_8888) {
+            throw new IOException("only ARGB_8888 raw images can be decoded into a PixelBuffer");
+        }
+        if (src.remaining() < header.getPayloadLength()) {
+            throw new IOException("raw image payload truncated");
+        }
+        PixelBuffer result = new PixelBuffer(header.getWidth(), header.getHeight());
+        int payloadStart = src.position();
+        readArgb8888(src, header.getRowBytes(), result, 0, header.getHeight());
+        src.position(payloadStart + header.getPayloadLength());
+        return result;
+    }
+
+    /**
+     * Method to write rows of {@code source} as premultiplied RGBA bytes, at the current position of {@code dst}.
+     *
+     * @param source   The source buffer.
+     * @param firstRow int that represents the first row to write.
+     * @param rows     int that represents the number of rows to write.
+     * @param dst      The destination buffer.
+     */
+    public static void writeArgb8888(PixelBuffer source, int firstRow, int rows, ByteBuffer dst) {
+        int[] pixels = source.getPixels();
+        for (int y = firstRow; y < firstRow + rows; y++) {
+            int i = source.indexOf(0, y);
+            for (int x = 0; x < source.getWidth(); x++, i++) {
+                int c = pixels[i];
+                int a = c >>> 24;
+                dst.put((byte) premultiply((c >> 16) & 0xFF, a));
+                dst.put((byte) premultiply((c >> 8) & 0xFF, a));
+                dst.put((byte) premultiply(c & 0xFF, a));
+                dst.put((byte) a);
+            }
+        }
+    }
+
+    /**
+     * Method to read rows of premultiplied RGBA bytes from the current position of {@code src},
+     * into non-premultiplied ARGB pixels of {@code dst}. The position of {@code src} is moved
+     * after the last row read.
+     *
+     * @param src      The source buffer.
+     * @param rowBytes int that represents the number of bytes of a row in {@code src}.
+     * @param dst      The destination buffer.
+     * @param firstRow int that represents the first row of {@code dst} to fill.
+     * @param rows     int that represents the number of rows to read.
+     */
+    public static void readArgb8888(ByteBuffer src, int rowBytes, PixelBuffer dst, int firstRow, int rows) {
+        int[] pixels = dst.getPixels();
+        int rowStart = src.position();
+        for (int y = firstRow; y < firstRow + rows; y++, rowStart += rowBytes) {
+            src.position(rowStart);
+            int i = dst.indexOf(0, y);
+            for (int x = 0; x < dst.getWidth(); x++, i++) {
+                int r = src.get() & 0xFF;
+                int g = src.get() & 0xFF;
+                int b = src.get() & 0xFF;
+                int a = src.get() & 0xFF;
+                pixels[i] = (a << 24) | (unpremultiply(r, a) << 16) | (unpremultiply(g, a) << 8) | unpremultiply(b, a);
+            }
+        }
+        src.position(rowStart);
+    }
+
+    static int premultiply(int c, int a) {
+        return (c * a + 127) / 255;
+    }
+
+    static int unpremultiply(int c, int a) {
+        if (a == 0) {
+            return 0;
+        }
+        return Math.min(255, (c * 255 + a / 2) / a);
+    }
+}
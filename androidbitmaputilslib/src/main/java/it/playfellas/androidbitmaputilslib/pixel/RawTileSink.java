@@ -0,0 +1,90 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link TileSink} that writes a raw ARGB_8888 image (see {@link RawPixelFormat}) to a channel,
+ * for example a FileChannel, or to an OutputStream. The result can be read back by a {@link RawTileSource}
+ * or, if it fits in memory, by {@link RawPixelFormat#decode(ByteBuffer)}.
+ * The channel is not closed by this class.
+ */
+public class RawTileSink implements TileSink {
+
+    private final WritableByteChannel channel;
+    //reused for all the bands with the same number of rows
+    private ByteBuffer buffer;
+
+    /**
+     * Constructor
+     *
+     * @param channel The channel where the image is written.
+     */
+    public RawTileSink(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Method to get a sink that writes to an OutputStream.
+     *
+     * @param out The OutputStream where the image is written. It's not closed by the sink.
+     * @return The RawTileSink.
+     */
+    public static RawTileSink of(OutputStream out) {
+        return new RawTileSink(Channels.newChannel(out));
+    }
+
+    @Override
+    public void begin(int width, int height) throws IOException {
+        long payloadLength = (long) width * 4 * height;
+        if (payloadLength > Integer.MAX_VALUE) {
+            throw new IOException("image too big for the raw format: " + width + "x" + height);
+        }
+        ByteBuffer header = ByteBuffer.allocate(RawPixelFormat.HEADER_SIZE);
+        RawPixelFormat.writeHeader(new RawPixelFormat.Header(RawPixelFormat.CONFIG_ARGB_8888, RawPixelFormat.FLAG_HAS_ALPHA,
+                width, height, width * 4, (int) payloadLength), header);
+        header.flip();
+        writeFully(header);
+    }
+
+    @Override
+    public void write(PixelBuffer rows) throws IOException {
+        int length = rows.getWidth() * 4 * rows.getHeight();
+        if (buffer == null || buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(length);
+        }
+        buffer.clear();
+        RawPixelFormat.writeArgb8888(rows, 0, rows.getHeight(), buffer);
+        buffer.flip();
+        writeFully(buffer);
+    }
+
+    @Override
+    public void end() throws IOException {
+        buffer = null;
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link TileSource} of a raw ARGB_8888 image file (see {@link RawPixelFormat}), read with
+ * positional reads of a FileChannel: only the requested rows are read, and concurrent reads are safe.
+ * The channel is not closed by this class.
+ */
+public class RawTileSource implements TileSource {
+
+    private final FileChannel channel;
+    private final RawPixelFormat.Header header;
+    private final long payloadStart;
+
+    /**
+     * Constructor, that reads the header of the image at the current position of {@code channel}.
+     *
+     * @param channel The FileChannel of the raw image.
+     * @throws IOException if the header can't be read or the image isn't ARGB_8888.
+     */
+    public RawTileSource(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long start = channel.position();
+        ByteBuffer buffer = ByteBuffer.allocate(RawPixelFormat.HEADER_SIZE);
+        readFully(buffer, start);
+        buffer.flip();
+        header = RawPixelFormat.readHeader(buffer);
+        if (header.getConfig() != RawPixelFormat.CONFIG_ARGB_8888) {
+            throw new IOException("only ARGB_8888 raw images can be read by tiles");
+        }
+        payloadStart = start + RawPixelFormat.HEADER_SIZE;
+    }
+
+    @Override
+    public int getWidth() {
+        return header.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return header.getHeight();
+    }
+
+    @Override
+    public void read(int top, PixelBuffer dst) throws IOException {
+        int rows = dst.getHeight();
+        if (top < 0 || top + rows > header.getHeight() || dst.getWidth() != header.getWidth()) {
+            throw new IllegalArgumentException("rows out of the image or dst with a wrong width");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(rows * header.getRowBytes());
+        readFully(buffer, payloadStart + (long) top * header.getRowBytes());
+        buffer.flip();
+        RawPixelFormat.readArgb8888(buffer, header.getRowBytes(), dst, 0, rows);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("raw image truncated");
+            }
+            position += read;
+        }
+    }
+}
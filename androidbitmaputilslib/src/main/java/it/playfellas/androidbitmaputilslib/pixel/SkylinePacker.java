@@ -0,0 +1,212 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bin packer of rectangles into a page, with the skyline bottom-left heuristic: the page keeps
+ * the profile of its top edge (the skyline) as a list of horizontal segments, and every rectangle
+ * is placed where its bottom is the lowest (ties broken by the leftmost position).
+ * Rectangles are packed towards the top-left corner, so the used area is compact and the page
+ * can be cropped to {@link #getUsedWidth()} x {@link #getUsedHeight()}.
+ * <p></p>
+ * Rectangles can be added one at a time (online packing); for the best results, add them
+ * sorted by decreasing height.
+ * <p></p>
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ * It isn't thread-safe.
+ */
+public class SkylinePacker {
+
+    private final int width;
+    private final int height;
+    private final int padding;
+    private final List<Segment> skyline = new ArrayList<>();
+    private long usedArea;
+    private int usedWidth;
+    private int usedHeight;
+
+    /**
+     * Constructor
+     *
+     * @param width   int that represents the width of the page.
+     * @param height  int that represents the height of the page.
+     * @param padding int that represents the empty pixels between two rectangles.
+     */
+    public SkylinePacker(int width, int height, int padding) {
+        if (width <= 0 || height <= 0 || padding < 0) {
+            throw new IllegalArgumentException("width and height must be >0 and padding >=0");
+        }
+        this.width = width;
+        this.height = height;
+        this.padding = padding;
+        reset();
+    }
+
+    /**
+     * Method to place a rectangle in the page.
+     *
+     * @param w int that represents the width of the rectangle.
+     * @param h int that represents the height of the rectangle.
+     * @return int[] with the x and y of the top-left corner of the rectangle, or null if it doesn't fit.
+     */
+    public int[] insert(int w, int h) {
+        if (w < 0 || h < 0) {
+            throw new IllegalArgumentException("w and h must be >=0");
+        }
+        if (w == 0 || h == 0) {
+            //empty rectangles don't use space
+            return w <= width && h <= height ? new int[]{0, 0} : null;
+        }
+        //padding only between rectangles: it can be cut at the right and bottom edges of the page
+        int paddedW = w + padding;
+        int paddedH = h + padding;
+        int bestIndex = -1;
+        int bestX = 0;
+        int bestY = 0;
+        int bestBottom = Integer.MAX_VALUE;
+        for (int i = 0; i < skyline.size(); i++) {
+            int x = skyline.get(i).x;
+            int y = fit(i, w, Math.min(paddedW, width - x));
+            if (y < 0 || y + h > height) {
+                continue;
+            }
+            int bottom = Math.min(height, y + paddedH);
+            if (bottom < bestBottom) {
+                bestIndex = i;
+                bestX = x;
+                bestY = y;
+                bestBottom = bottom;
+            }
+        }
+        if (bestIndex < 0) {
+            return null;
+        }
+        add(bestIndex, bestX, bestBottom, Math.min(paddedW, width - bestX));
+        usedArea += (long) w * h;
+        usedWidth = Math.max(usedWidth, bestX + w);
+        usedHeight = Math.max(usedHeight, bestY + h);
+        return new int[]{bestX, bestY};
+    }
+
+    //private method to get the y where a rectangle of width w, starting at the segment index, rests; -1 if it exceeds the page.
+    //It rests on the segments under its padded width (span), so the padding doesn't lower the skyline
+    private int fit(int index, int w, int span) {
+        int x = skyline.get(index).x;
+        if (x + w > width) {
+            return -1;
+        }
+        int y = 0;
+        int remaining = span;
+        for (int i = index; remaining > 0 && i < skyline.size(); i++) {
+            Segment segment = skyline.get(i);
+            y = Math.max(y, segment.y);
+            remaining -= segment.width;
+        }
+        return y;
+    }
+
+    //private method to raise the skyline to y on [x, x + w), removing or cutting the segments below it
+    private void add(int index, int x, int y, int w) {
+        skyline.add(index, new Segment(x, y, w));
+        int right = x + w;
+        int i = index + 1;
+        while (i < skyline.size()) {
+            Segment segment = skyline.get(i);
+            if (segment.x >= right) {
+                break;
+            }
+            int segmentRight = segment.x + segment.width;
+            if (segmentRight <= right) {
+                skyline.remove(i);
+            } else {
+                segment.width = segmentRight - right;
+                segment.x = right;
+                break;
+            }
+        }
+        //merge neighbour segments with the same height
+        for (i = 0; i < skyline.size() - 1; i++) {
+            Segment segment = skyline.get(i);
+            Segment next = skyline.get(i + 1);
+            if (segment.y == next.y) {
+                segment.width += next.width;
+                skyline.remove(i + 1);
+                i--;
+            }
+        }
+    }
+
+    /**
+     * Method to remove all rectangles.
+     */
+    public void reset() {
+        skyline.clear();
+        skyline.add(new Segment(0, 0, width));
+        usedArea = 0;
+        usedWidth = 0;
+        usedHeight = 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Method to get the right edge of the rectangles, without padding.
+     *
+     * @return The maximum x + w of the placed rectangles.
+     */
+    public int getUsedWidth() {
+        return usedWidth;
+    }
+
+    /**
+     * Method to get the bottom edge of the rectangles, without padding.
+     *
+     * @return The maximum y + h of the placed rectangles.
+     */
+    public int getUsedHeight() {
+        return usedHeight;
+    }
+
+    /**
+     * Method to get the fraction of the page covered by rectangles (padding excluded).
+     *
+     * @return A value from 0 to 1.
+     */
+    public float getOccupancy() {
+        return (float) ((double) usedArea / ((long) width * height));
+    }
+
+    private static final class Segment {
+        private int x;
+        private int y;
+        private int width;
+
+        private Segment(int x, int y, int width) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+        }
+    }
+}
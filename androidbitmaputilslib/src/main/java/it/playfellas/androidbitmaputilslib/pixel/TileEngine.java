@@ -0,0 +1,291 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Engine to execute a {@link PixelKernel} on a {@link PixelBuffer}, splitting the image into
+ * small tiles (by default 128x64 pixels, 32KB) that fit in the CPU cache.
+ * Tiles are distributed dynamically to the threads of the engine, and the calling thread
+ * processes tiles too, so nested calls can't deadlock. Small images are processed
+ * entirely on the calling thread.
+ * <p></p>
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM.
+ */
+public class TileEngine {
+
+    public static final int DEFAULT_TILE_WIDTH = 128;
+    public static final int DEFAULT_TILE_HEIGHT = 64;
+
+    //below this number of pixels, the overhead of other threads is bigger than the gain
+    private static final int MIN_PARALLEL_PIXELS = 256 * 256;
+
+    private static TileEngine defaultEngine;
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int tileWidth;
+    private final int tileHeight;
+
+    /**
+     * Task executed by {@link #forEach(int, Task)}.
+     */
+    public interface Task {
+        /**
+         * Method to process the element {@code index}.
+         *
+         * @param index int that represents the index of the element, from 0 to count - 1.
+         */
+        void run(int index);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param parallelism int that represents the number of threads (the calling thread included).
+     */
+    public TileEngine(int parallelism) {
+        this(parallelism, DEFAULT_TILE_WIDTH, DEFAULT_TILE_HEIGHT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param parallelism int that represents the number of threads (the calling thread included).
+     * @param tileWidth   int that represents the width of a tile.
+     * @param tileHeight  int that represents the height of a tile.
+     */
+    public TileEngine(int parallelism, int tileWidth, int tileHeight) {
+        if (parallelism < 1 || tileWidth < 1 || tileHeight < 1) {
+            throw new IllegalArgumentException("parallelism, tileWidth and tileHeight must be >=1");
+        }
+        this.parallelism = parallelism;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism - 1, new WorkerThreadFactory()) : null;
+    }
+
+    /**
+     * Method to get the shared engine, with a thread for every available processor.
+     *
+     * @return The default TileEngine.
+     */
+    public static synchronized TileEngine getDefault() {
+        if (defaultEngine == null) {
+            defaultEngine = new TileEngine(Runtime.getRuntime().availableProcessors());
+        }
+        return defaultEngine;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * Method to execute {@code kernel} on the entire {@code src}, writing the result into {@code dst}.
+     *
+     * @param kernel The kernel to execute.
+     * @param src    The source buffer.
+     * @param dst    The destination buffer (can be {@code src}).
+     */
+    public void execute(PixelKernel kernel, PixelBuffer src, PixelBuffer dst) {
+        if (src.getWidth() != dst.getWidth() || src.getHeight() != dst.getHeight()) {
+            throw new IllegalArgumentException("src and dst must have the same size");
+        }
+        execute(kernel, src, dst, 0, 0, src.getWidth(), src.getHeight());
+    }
+
+    /**
+     * Method to execute {@code kernel} on the rectangle [left, right) x [top, bottom) of {@code src},
+     * writing the result into the same rectangle of {@code dst}.
+     *
+     * @param kernel The kernel to execute.
+     * @param src    The source buffer.
+     * @param dst    The destination buffer (can be {@code src}).
+     * @param left   int that represents the left of the rectangle (inclusive).
+     * @param top    int that represents the top of the rectangle (inclusive).
+     * @param right  int that represents the right of the rectangle (exclusive).
+     * @param bottom int that represents the bottom of the rectangle (exclusive).
+     */
+    public void execute(final PixelKernel kernel, final PixelBuffer src, final PixelBuffer dst,
+                        final int left, final int top, final int right, final int bottom) {
+        final int width = right - left;
+        final int height = bottom - top;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        final int tilesX = (width + tileWidth - 1) / tileWidth;
+        int tilesY = (height + tileHeight - 1) / tileHeight;
+        Task task = new Task() {
+            @Override
+            public void run(int index) {
+                int tileLeft = left + (index % tilesX) * tileWidth;
+                int tileTop = top + (index / tilesX) * tileHeight;
+                kernel.apply(src, dst, tileLeft, tileTop,
+                        Math.min(tileLeft + tileWidth, right), Math.min(tileTop + tileHeight, bottom));
+            }
+        };
+        if ((long) width * height < MIN_PARALLEL_PIXELS) {
+            runSerially(tilesX * tilesY, task);
+        } else {
+            forEach(tilesX * tilesY, task);
+        }
+    }
+
+    /**
+     * Method to execute {@code task} for every index from 0 to {@code count - 1}, in parallel,
+     * waiting for the end of all of them.
+     * If a task throws an exception, the remaining indexes are skipped and the exception is
+     * thrown by this method.
+     *
+     * @param count int that represents the number of indexes.
+     * @param task  The task to execute.
+     */
+    public void forEach(final int count, final Task task) {
+        int workers = Math.min(parallelism, count);
+        if (workers <= 1) {
+            runSerially(count, task);
+            return;
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Helpers helpers = new Helpers();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                //started after the end of the call (for example because all threads were busy
+                //in nested calls): there's nothing left to do
+                if (!helpers.start()) {
+                    return;
+                }
+                try {
+                    int index;
+                    while (error.get() == null && (index = next.getAndIncrement()) < count) {
+                        task.run(index);
+                    }
+                } catch (Throwable t) {
+                    error.compareAndSet(null, t);
+                } finally {
+                    helpers.end();
+                }
+            }
+        };
+        for (int i = 0; i < workers - 1; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                //the calling thread will process the remaining indexes
+                break;
+            }
+        }
+
+        //the calling thread works too, then it waits only the helpers that have started:
+        //the queued ones may never start, if all threads are waiting in nested calls
+        try {
+            int index;
+            while (error.get() == null && (index = next.getAndIncrement()) < count) {
+                task.run(index);
+            }
+        } catch (Throwable t) {
+            error.compareAndSet(null, t);
+        }
+        helpers.awaitRunning();
+
+        Throwable t = error.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    //helpers of a forEach call: the ones started before the end of the call must be waited
+    private static final class Helpers {
+        private int running;
+        private boolean closed;
+
+        private synchronized boolean start() {
+            if (closed) {
+                return false;
+            }
+            running++;
+            return true;
+        }
+
+        private synchronized void end() {
+            running--;
+            notifyAll();
+        }
+
+        private synchronized void awaitRunning() {
+            closed = true;
+            boolean interrupted = false;
+            while (running > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void runSerially(int count, Task task) {
+        for (int i = 0; i < count; i++) {
+            task.run(i);
+        }
+    }
+
+    /**
+     * Method to stop the threads of this engine. Next calls will be executed on the calling thread.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "BitmapUtils-tile-" + COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.io.IOException;
+
+/**
+ * Destination of an image written by bands of rows, from the top to the bottom,
+ * by a {@link TileStreamer}.
+ */
+public interface TileSink {
+
+    /**
+     * Method called before the first band.
+     *
+     * @param width  int that represents the width of the image.
+     * @param height int that represents the height of the image.
+     * @throws IOException if the image can't be written.
+     */
+    void begin(int width, int height) throws IOException;
+
+    /**
+     * Method to write the next band of rows. {@code rows} is reused after the call,
+     * so implementations must copy the pixels that they keep.
+     *
+     * @param rows The rows, with the width of the image and non-premultiplied ARGB pixels.
+     * @throws IOException if the rows can't be written.
+     */
+    void write(PixelBuffer rows) throws IOException;
+
+    /**
+     * Method called after the last band.
+     *
+     * @throws IOException if the image can't be written.
+     */
+    void end() throws IOException;
+}
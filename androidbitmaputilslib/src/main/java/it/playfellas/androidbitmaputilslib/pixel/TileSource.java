@@ -0,0 +1,40 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.io.IOException;
+
+/**
+ * Source of an image read by bands of rows, so an image bigger than the memory can be processed
+ * by a {@link TileStreamer} without loading it entirely.
+ * <p></p>
+ * Implementations must be thread-safe: a band can be read while another one is processed.
+ */
+public interface TileSource {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Method to read the rows [top, top + dst.getHeight()) of the image.
+     *
+     * @param top int that represents the first row.
+     * @param dst The buffer where the non-premultiplied ARGB pixels are written, with the width of the image.
+     * @throws IOException if the rows can't be read.
+     */
+    void read(int top, PixelBuffer dst) throws IOException;
+}
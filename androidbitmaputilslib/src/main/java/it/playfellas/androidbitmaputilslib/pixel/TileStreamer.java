@@ -0,0 +1,144 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.io.IOException;
+
+/**
+ * Scheduler of out-of-core processing: the image is read from a {@link TileSource} by bands of rows,
+ * every band is processed in parallel on a {@link TileEngine} and written to a {@link TileSink},
+ * so the peak memory is a few bands, independently of the height of the image.
+ * <p></p>
+ * Bands are processed in order, from the top to the bottom, as required by the sinks
+ * (for example {@link RawTileSink}, that writes a row-major file).
+ * <p></p>
+ * This class doesn't depend on Android, so it can be used (and tested) on a plain JVM,
+ * for example with a {@link RawTileSource} on a synthetic raw file.
+ */
+public class TileStreamer {
+
+    public static final int DEFAULT_BAND_ROWS = 64;
+
+    private final TileEngine engine;
+    private final int bandRows;
+
+    /**
+     * Constructor, with bands of {@link #DEFAULT_BAND_ROWS} rows for every thread of {@code engine}.
+     *
+     * @param engine The {@link TileEngine} used to process the bands.
+     */
+    public TileStreamer(TileEngine engine) {
+        this(engine, DEFAULT_BAND_ROWS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param engine   The {@link TileEngine} used to process the bands.
+     * @param bandRows int that represents the rows of the source processed by a thread at a time:
+     *                 a band read from the source has {@code bandRows * engine.getParallelism()} rows.
+     */
+    public TileStreamer(TileEngine engine, int bandRows) {
+        if (bandRows < 1) {
+            throw new IllegalArgumentException("bandRows must be >=1");
+        }
+        this.engine = engine;
+        this.bandRows = bandRows;
+    }
+
+    /**
+     * Method to apply {@code kernel} to the image of {@code src}, writing the result to {@code sink}.
+     * The peak memory is a band of {@code bandRows * parallelism} rows.
+     *
+     * @param src    The source of the image.
+     * @param kernel The kernel to apply, for example one of {@link PixelKernels}.
+     * @param sink   The destination of the result, with the same size of the source.
+     * @throws IOException if the source can't be read or the sink can't be written.
+     */
+    public void apply(TileSource src, PixelKernel kernel, TileSink sink) throws IOException {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        int rows = Math.max(1, Math.min(h, bandRows * engine.getParallelism()));
+        int[] pixels = new int[w * rows];
+        sink.begin(w, h);
+        for (int top = 0; top < h; top += rows) {
+            PixelBuffer band = new PixelBuffer(pixels, w, Math.min(rows, h - top));
+            src.read(top, band);
+            engine.execute(kernel, band, band);
+            sink.write(band);
+        }
+        sink.end();
+    }
+
+    /**
+     * Method to reduce the image of {@code src} to {@code dstWidth} x {@code dstHeight}, with the area averaging
+     * of {@link PixelScaler.Quality#HIGH}, writing the result to {@code sink}.
+     * The peak memory is the source rows of a band of the result (about {@code bandRows * parallelism} rows)
+     * and the band of the result.
+     *
+     * @param src       The source of the image.
+     * @param dstWidth  int that represents the width of the result, not bigger than the source.
+     * @param dstHeight int that represents the height of the result, not bigger than the source.
+     * @param sink      The destination of the result.
+     * @throws IOException if the source can't be read or the sink can't be written.
+     */
+    public void downscale(final TileSource src, int dstWidth, int dstHeight, TileSink sink) throws IOException {
+        final int w = src.getWidth();
+        int h = src.getHeight();
+        if (dstWidth <= 0 || dstHeight <= 0 || dstWidth > w || dstHeight > h) {
+            throw new IllegalArgumentException("dstWidth and dstHeight must be >0 and not bigger than the source");
+        }
+        //rows of the result that cover about bandRows source rows for every thread
+        int rows = Math.max(1, Math.min(dstHeight, (int) ((long) bandRows * engine.getParallelism() * dstHeight / h)));
+        int[] pixels = new int[dstWidth * rows];
+        //the scaler reads the source rows from the threads of the engine: TileSource must be thread-safe
+        PixelScaler.RowSource rowSource = new PixelScaler.RowSource() {
+            @Override
+            public void readRows(int top, int count, int[] dst, int offset, int stride) {
+                try {
+                    src.read(top, new PixelBuffer(dst, offset, stride, w, count));
+                } catch (IOException e) {
+                    throw new TileIOException(e);
+                }
+            }
+        };
+        sink.begin(dstWidth, dstHeight);
+        try {
+            for (int top = 0; top < dstHeight; top += rows) {
+                PixelBuffer band = new PixelBuffer(pixels, dstWidth, Math.min(rows, dstHeight - top));
+                PixelScaler.scaleRows(rowSource, w, h, dstHeight, top, band, engine);
+                sink.write(band);
+            }
+        } catch (TileIOException e) {
+            throw e.getCause();
+        }
+        sink.end();
+    }
+
+    //unchecked wrapper of the IOExceptions of the source, thrown through the tasks of the engine
+    private static final class TileIOException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private TileIOException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
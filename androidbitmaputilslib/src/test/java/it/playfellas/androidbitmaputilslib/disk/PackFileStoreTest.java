@@ -0,0 +1,393 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.disk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link PackFileStore}: persistence, recovery of the records written after the last index
+ * (like after a crash), and compaction.
+ */
+public class PackFileStoreTest {
+
+    private static final long MAX_BYTES = 64 * 1024;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("pack", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(directory);
+    }
+
+    @Test
+    public void recordsSurviveAReopen() throws IOException {
+        PackFileStore store = new PackFileStore(directory, MAX_BYTES, 1);
+        store.put("a", data(100, 1));
+        store.put("b", data(200, 2));
+        store.put("a", data(50, 3));
+        store.close();
+
+        store = new PackFileStore(directory, MAX_BYTES, 1);
+        try {
+            assertEquals(2, store.getEntryCount());
+            assertContent(data(50, 3), store.get("a"));
+            assertContent(data(200, 2), store.get("b"));
+            assertNull(store.get("c"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void recordsAfterTheLastIndexAreRecovered() throws IOException {
+        PackFileStore store = new PackFileStore(directory, MAX_BYTES, 1);
+        File crashed = new File(directory, "crashed");
+        try {
+            store.put("a", data(100, 1));
+            store.flush();
+            //written to the pack, but not to the index: a crash now loses only the index
+            store.put("b", data(300, 2));
+            store.remove("a");
+            copyDirectory(directory, crashed);
+        } finally {
+            store.close();
+        }
+
+        store = new PackFileStore(crashed, MAX_BYTES, 1);
+        try {
+            assertEquals(1, store.getEntryCount());
+            assertFalse(store.contains("a"));
+            assertContent(data(300, 2), store.get("b"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void tornRecordIsTruncated() throws IOException {
+        PackFileStore store = new PackFileStore(directory, MAX_BYTES, 1);
+        store.put("a", data(100, 1));
+        store.put("b", data(100, 2));
+        long length = store.getPackLength();
+        store.close();
+
+        //a record interrupted in the middle of its data
+        File pack = findPack(directory);
+        RandomAccessFile file = new RandomAccessFile(pack, "rw");
+        try {
+            byte[] torn = new byte[40];
+            ByteBuffer.wrap(torn).putInt(0x42555052).putInt(1).put((byte) 'c').putInt(1000).putInt(0);
+            file.seek(length);
+            file.write(torn);
+        } finally {
+            file.close();
+        }
+
+        store = new PackFileStore(directory, MAX_BYTES, 1);
+        try {
+            assertEquals(2, store.getEntryCount());
+            assertFalse(store.contains("c"));
+            assertEquals(length, store.getPackLength());
+            assertContent(data(100, 2), store.get("b"));
+            //new records are appended after the last good record
+            store.put("d", data(10, 4));
+            assertContent(data(10, 4), store.get("d"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void corruptedIndexIsRebuiltFromThePack() throws IOException {
+        PackFileStore store = new PackFileStore(directory, MAX_BYTES, 1);
+        store.put("a", data(100, 1));
+        store.put("b", data(100, 2));
+        store.close();
+
+        FileOutputStream out = new FileOutputStream(new File(directory, "index.idx"));
+        try {
+            out.write(new byte[]{1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        store = new PackFileStore(directory, MAX_BYTES, 1);
+        try {
+            assertContent(data(100, 1), store.get("a"));
+            assertContent(data(100, 2), store.get("b"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void corruptedRecordStopsTheRecovery() throws IOException {
+        PackFileStore store = new PackFileStore(directory, MAX_BYTES, 1);
+        store.put("a", data(100, 1));
+        store.flush();
+        long length = store.getPackLength();
+        store.put("b", data(100, 2));
+        File crashed = new File(directory, "crashed");
+        copyDirectory(directory, crashed);
+        store.close();
+
+        //flip a byte of the data of b: its crc doesn't match anymore
+        RandomAccessFile file = new RandomAccessFile(findPack(crashed), "rw");
+        try {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        } finally {
+            file.close();
+        }
+
+        store = new PackFileStore(crashed, MAX_BYTES, 1);
+        try {
+            assertContent(data(100, 1), store.get("a"));
+            assertFalse(store.contains("b"));
+            assertEquals(length, store.getPackLength());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void otherVersionsAreDiscarded() throws IOException {
+        PackFileStore store = new PackFileStore(directory, MAX_BYTES, 1);
+        store.put("a", data(100, 1));
+        store.close();
+
+        store = new PackFileStore(directory, MAX_BYTES, 2);
+        try {
+            assertEquals(0, store.getEntryCount());
+            assertEquals(0, store.getPackLength());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void compactionKeepsTheMostRecentlyUsedRecords() throws IOException {
+        PackFileStore store = new PackFileStore(directory, 8 * 1024, 1);
+        try {
+            for (int i = 0; i < 20; i++) {
+                store.put("k" + i, data(1000, i));
+                //k0 is read after every put, so it stays the most recently used
+                assertNotNull(store.get("k0"));
+                assertTrue(store.getPackLength() <= store.getMaxSize());
+            }
+            assertContent(data(1000, 0), store.get("k0"));
+            assertContent(data(1000, 19), store.get("k19"));
+            assertFalse(store.contains("k1"));
+            assertEquals(store.getLiveBytes(), store.getPackLength());
+        } finally {
+            store.close();
+        }
+        assertEquals(1, countPacks(directory));
+    }
+
+    @Test
+    public void fullPackIsNotRewrittenAtEveryPut() throws IOException {
+        PackFileStore store = new PackFileStore(directory, 8 * 1024, 1);
+        try {
+            int compactions = 0;
+            long length = 0;
+            for (int i = 0; i < 40; i++) {
+                store.put("k" + i, data(1000, i));
+                if (store.getPackLength() < length) {
+                    compactions++;
+                    //compacted to 3/4 of the maximum size, with room for the next records
+                    assertTrue(store.getPackLength() <= store.getMaxSize() * 3 / 4 + 1100);
+                }
+                length = store.getPackLength();
+                assertTrue(store.getPackLength() <= store.getMaxSize());
+            }
+            assertTrue("compactions: " + compactions, compactions <= 40 / 2);
+            assertContent(data(1000, 39), store.get("k39"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void removingMostRecordsCompactsThePack() throws IOException {
+        PackFileStore store = new PackFileStore(directory, MAX_BYTES, 1);
+        try {
+            for (int i = 0; i < 10; i++) {
+                store.put("k" + i, data(1000, i));
+            }
+            long length = store.getPackLength();
+            for (int i = 0; i < 6; i++) {
+                store.remove("k" + i);
+                //when more than half of the pack is dead data, it's compacted
+                assertTrue(store.getPackLength() - store.getLiveBytes() <= store.getPackLength() / 2);
+            }
+            assertTrue(store.getPackLength() < length);
+            assertEquals(4, store.getEntryCount());
+            for (int i = 6; i < 10; i++) {
+                assertContent(data(1000, i), store.get("k" + i));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void removingFromAFullPackDoesntGrowIt() throws IOException {
+        PackFileStore store = new PackFileStore(directory, 8 * 1024, 1);
+        try {
+            //fill the pack until a tombstone doesn't fit anymore
+            for (int i = 0; store.getMaxSize() - store.getPackLength() >= 64; i++) {
+                ByteBuffer data = data((int) Math.min(1000, store.getMaxSize() - store.getPackLength() - 32), i);
+                store.put("k" + i, data);
+            }
+            store.remove("k0");
+            assertTrue(store.getPackLength() <= store.getMaxSize());
+            assertFalse(store.contains("k0"));
+            assertTrue(store.contains("k1"));
+        } finally {
+            store.close();
+        }
+
+        store = new PackFileStore(directory, 8 * 1024, 1);
+        try {
+            assertFalse(store.contains("k0"));
+            assertTrue(store.contains("k1"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void clearRemovesEverything() throws IOException {
+        PackFileStore store = new PackFileStore(directory, MAX_BYTES, 1);
+        store.put("a", data(100, 1));
+        store.clear();
+        assertEquals(0, store.getPackLength());
+        store.close();
+
+        store = new PackFileStore(directory, MAX_BYTES, 1);
+        try {
+            assertEquals(0, store.getEntryCount());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void tooBigRecordsAreIgnored() throws IOException {
+        PackFileStore store = new PackFileStore(directory, 1024, 1);
+        try {
+            store.put("a", data(100, 1));
+            store.put("big", data(2048, 2));
+            assertFalse(store.contains("big"));
+            assertContent(data(100, 1), store.get("a"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void closedStoreThrows() throws IOException {
+        PackFileStore store = new PackFileStore(directory, MAX_BYTES, 1);
+        store.close();
+        store.put("a", data(1, 1));
+    }
+
+    private static ByteBuffer data(int length, int seed) {
+        ByteBuffer data = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            data.put((byte) (i * 31 + seed));
+        }
+        data.flip();
+        return data;
+    }
+
+    private static void assertContent(ByteBuffer expected, ByteBuffer actual) {
+        assertNotNull(actual);
+        assertEquals(expected.remaining(), actual.remaining());
+        assertEquals(0, expected.compareTo(actual));
+    }
+
+    private static File findPack(File directory) {
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".pack")) {
+                return file;
+            }
+        }
+        throw new AssertionError("no pack in " + directory);
+    }
+
+    private static int countPacks(File directory) {
+        int count = 0;
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".pack")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void copyDirectory(File from, File to) throws IOException {
+        assertTrue(to.mkdir());
+        for (File file : from.listFiles()) {
+            if (!file.isFile()) {
+                continue;
+            }
+            FileInputStream in = new FileInputStream(file);
+            FileOutputStream out = new FileOutputStream(new File(to, file.getName()));
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.assertColorsClose;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.randomBuffer;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the fusion of {@link ColorOp} chains: a compiled chain must give the same colors
+ * of its operations applied one at a time.
+ */
+public class ColorOpTest {
+
+    //gains not bigger than 1, so the rounding differences of the steps aren't amplified
+    private static final ColorOp[] MATRICES = {
+            ColorOp.grayscale(),
+            ColorOp.saturation(0.5f),
+            ColorOp.lighting(0xC08040, 0x102030),
+            ColorOp.overlay(0xFF3366CC),
+            ColorOp.tint(0x80FF8800),
+            ColorOp.invert(),
+    };
+
+    //tables and an exact per-channel matrix, that is folded into the tables
+    private static final ColorOp[] TABLES = {
+            ColorOp.gamma(2.2f),
+            ColorOp.gamma(0.6f),
+            ColorOp.posterize(5),
+            ColorOp.curves(ramp(40, 220), ramp(0, 255), ramp(255, 0)),
+            ColorOp.invert(),
+    };
+
+    //intermediate results stay in [0, 255]: fused matrices don't clamp them (see ColorOp)
+    private static final ColorOp[] ALL = {
+            ColorOp.grayscale(),
+            ColorOp.saturation(0.5f),
+            ColorOp.lighting(0xC08040, 0x102030),
+            ColorOp.tint(0x80FF8800),
+            ColorOp.gamma(2.2f),
+            ColorOp.posterize(5),
+    };
+
+    @Test
+    public void fusedMatricesMatchSequentialApplication() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            ColorOp[] chain = randomChain(MATRICES, random);
+            ColorOp fused = fuse(chain);
+            ColorProgram program = fused.compile();
+            assertTrue(program.getStageCount() <= 1);
+            for (int k = 0; k < 64; k++) {
+                int color = random.nextInt();
+                //every step applied alone rounds its result, the fused matrix rounds only once
+                assertColorsClose(fused.getSignature(), applyInSequence(chain, color), program.apply(color), chain.length);
+            }
+        }
+    }
+
+    @Test
+    public void fusedTablesAreExact() {
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            ColorOp[] chain = randomChain(TABLES, random);
+            ColorOp fused = fuse(chain);
+            ColorProgram program = fused.compile();
+            assertTrue(program.getStageCount() <= 1);
+            for (int k = 0; k < 64; k++) {
+                int color = random.nextInt();
+                assertEquals(fused.getSignature(), applyInSequence(chain, color), program.apply(color));
+            }
+        }
+    }
+
+    @Test
+    public void fusedMixedChainsStayClose() {
+        Random random = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            ColorOp[] chain = randomChain(ALL, random);
+            ColorOp fused = fuse(chain);
+            ColorProgram program = fused.compile();
+            assertTrue(program.getStageCount() <= chain.length);
+            //a rounding difference before a steep table (a gamma near black, a step of posterize) is amplified,
+            //so single colors can differ more, but the average difference stays below a unit
+            long total = 0;
+            int samples = 256;
+            for (int k = 0; k < samples; k++) {
+                int color = random.nextInt();
+                int expected = applyInSequence(chain, color);
+                int actual = program.apply(color);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    total += Math.abs(((expected >>> shift) & 0xFF) - ((actual >>> shift) & 0xFF));
+                }
+            }
+            assertTrue(fused.getSignature() + ": average difference " + (float) total / (samples * 4),
+                    total < samples * 4);
+        }
+    }
+
+    @Test
+    public void kernelMatchesApply() {
+        ColorProgram[] programs = {
+                ColorOp.saturation(0.5f).then(ColorOp.lighting(0x808080, 0x101010)).compile(),
+                ColorOp.gamma(0.8f).then(ColorOp.posterize(4)).compile(),
+                ColorOp.overlay(0xFF00AA55).then(ColorOp.gamma(1.4f)).then(ColorOp.saturation(1.3f)).compile(),
+                ColorOp.grayscale().then(ColorOp.tint(0x4000FF00)).compile(),
+        };
+        PixelBuffer src = randomBuffer(67, 19, 2);
+        for (ColorProgram program : programs) {
+            PixelBuffer dst = new PixelBuffer(67, 19);
+            new TileEngine(1).execute(program.asKernel(), src, dst);
+            for (int y = 0; y < 19; y++) {
+                for (int x = 0; x < 67; x++) {
+                    assertEquals(program.getSignature(), program.apply(src.getPixel(x, y)), dst.getPixel(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void identityChainsHaveNoStages() {
+        ColorProgram program = ColorOp.invert().then(ColorOp.invert()).then(ColorOp.saturation(1f)).compile();
+        assertTrue(program.isIdentity());
+        assertEquals(0, program.getStageCount());
+        assertEquals(0x12345678, program.apply(0x12345678));
+    }
+
+    @Test
+    public void matricesAreFusedInASingleStage() {
+        ColorOp op = ColorOp.saturation(0.3f).then(ColorOp.lighting(0x808080, 0)).then(ColorOp.invert());
+        assertTrue(op.isLinear());
+        assertEquals(1, op.compile().getStageCount());
+        assertEquals(20, op.compile().getMatrix().length);
+    }
+
+    @Test
+    public void tablesAreFusedInASingleStage() {
+        ColorProgram program = ColorOp.gamma(2f).then(ColorOp.posterize(3)).then(ColorOp.tint(0x80102030)).compile();
+        assertEquals(1, program.getStageCount());
+        assertFalse(program.isLinear());
+    }
+
+    @Test
+    public void equalChainsShareTheProgram() {
+        ColorOp a = ColorOp.grayscale().then(ColorOp.gamma(1.8f));
+        ColorOp b = ColorOp.grayscale().then(ColorOp.gamma(1.8f));
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertSame(a.compile(), b.compile());
+        assertNotEquals(a, ColorOp.gamma(1.8f).then(ColorOp.grayscale()));
+    }
+
+    private static ColorOp[] randomChain(ColorOp[] ops, Random random) {
+        ColorOp[] chain = new ColorOp[1 + random.nextInt(5)];
+        for (int j = 0; j < chain.length; j++) {
+            chain[j] = ops[random.nextInt(ops.length)];
+        }
+        return chain;
+    }
+
+    private static ColorOp fuse(ColorOp[] chain) {
+        ColorOp fused = chain[0];
+        for (int j = 1; j < chain.length; j++) {
+            fused = fused.then(chain[j]);
+        }
+        return fused;
+    }
+
+    private static int applyInSequence(ColorOp[] chain, int color) {
+        for (ColorOp op : chain) {
+            color = op.compile().apply(color);
+        }
+        return color;
+    }
+
+    private static int[] ramp(int from, int to) {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = from + (to - from) * i / 255;
+        }
+        return table;
+    }
+}
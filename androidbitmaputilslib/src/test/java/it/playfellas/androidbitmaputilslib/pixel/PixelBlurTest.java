@@ -0,0 +1,264 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.assertBuffersEqual;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.assertColorsClose;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.copyOf;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.randomBuffer;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link PixelBlur}: the running sums must match a box blur computed pixel by pixel,
+ * also at the edges of short lines, and the three passes over premultiplied pixels must match
+ * the same passes computed with the reference box blur.
+ */
+public class PixelBlurTest {
+
+    private static final int[] LENGTHS = {1, 2, 3, 7, 50};
+    private static final int[] RADII = {1, 2, 5, 49, 50, 60};
+
+    private TileEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new TileEngine(4);
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void boxLineMatchesTheReference() {
+        Random random = new Random(3);
+        for (int n : LENGTHS) {
+            for (int r : RADII) {
+                for (int channels = 1; channels <= 4; channels += 3) {
+                    int[] in = new int[n * channels];
+                    for (int i = 0; i < in.length; i++) {
+                        in[i] = random.nextInt(256);
+                    }
+                    int[] out = new int[in.length];
+                    for (int c = 0; c < channels; c++) {
+                        PixelBlur.boxLine(in, out, n, channels, c, r);
+                    }
+                    int[] expected = referenceBox(in, n, channels, r);
+                    for (int i = 0; i < in.length; i++) {
+                        assertEquals("n " + n + ", r " + r + ", channels " + channels + ", index " + i, expected[i], out[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void boxLineOfOnePixelKeepsIt() {
+        int[] out = new int[4];
+        for (int c = 0; c < 4; c++) {
+            PixelBlur.boxLine(new int[]{0, 17, 128, 255}, out, 1, 4, c, 30);
+        }
+        assertArrayEquals(new int[]{0, 17, 128, 255}, out);
+    }
+
+    @Test
+    public void blurMatchesThreeReferenceBoxBlurs() {
+        int[][] sizes = {{1, 1}, {1, 40}, {40, 1}, {37, 23}, {5, 60}, {150, 130}};
+        float[] radii = {1f, 3f, 10f, 25f};
+        for (int[] size : sizes) {
+            for (float radius : radii) {
+                PixelBuffer src = randomBuffer(size[0], size[1], size[0] * 31 + size[1]);
+                PixelBuffer expected = referenceBlur(src, radius);
+                PixelBuffer actual = copyOf(src);
+                PixelBlur.blur(actual, radius, engine);
+                assertBuffersEqual(size[0] + "x" + size[1] + " radius " + radius, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void transparentPixelsDontBleedTheirColor() {
+        //left half transparent red, right half opaque blue
+        PixelBuffer buffer = new PixelBuffer(40, 20);
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 40; x++) {
+                buffer.setPixel(x, y, x < 20 ? 0x00FF0000 : 0xFF0000FF);
+            }
+        }
+        PixelBlur.blur(buffer, 8f, engine);
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 40; x++) {
+                int c = buffer.getPixel(x, y);
+                if (c >>> 24 == 0) {
+                    assertEquals(0, c);
+                } else {
+                    //premultiplied: the edge fades out, but it stays blue
+                    assertEquals("red at " + x, 0, (c >> 16) & 0xFF);
+                    assertTrue("blue at " + x + ": " + Integer.toHexString(c), (c & 0xFF) >= 250);
+                }
+            }
+        }
+        //the alpha fades across the edge
+        assertTrue(buffer.getPixel(19, 10) >>> 24 > 0);
+        assertTrue(buffer.getPixel(20, 10) >>> 24 < 255);
+    }
+
+    @Test
+    public void uniformImageIsUnchanged() {
+        PixelBuffer buffer = new PixelBuffer(33, 17);
+        buffer.fill(0xFF336699);
+        PixelBuffer expected = copyOf(buffer);
+        PixelBlur.blur(buffer, 12f, engine);
+        assertBuffersEqual("uniform", expected, buffer);
+
+        //translucent colors lose a little precision when premultiplied
+        buffer.fill(0x80336699);
+        PixelBlur.blur(buffer, 12f, engine);
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            for (int x = 0; x < buffer.getWidth(); x++) {
+                assertColorsClose("(" + x + ", " + y + ")", 0x80336699, buffer.getPixel(x, y), 1);
+            }
+        }
+    }
+
+    @Test
+    public void blurAlphaMatchesTheReference() {
+        int width = 45;
+        int height = 31;
+        int stride = 48;
+        int offset = 5;
+        Random random = new Random(9);
+        byte[] pixels = new byte[offset + stride * height];
+        random.nextBytes(pixels);
+        byte[] original = pixels.clone();
+        int[] radii = PixelBlur.boxRadii(PixelBlur.radiusToSigma(6f));
+
+        int[] plane = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                plane[y * width + x] = pixels[offset + y * stride + x] & 0xFF;
+            }
+        }
+        int[] expected = referencePasses(plane, width, height, 1, radii);
+
+        PixelBlur.blurAlpha(pixels, offset, stride, width, height, 6f, engine);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < stride; x++) {
+                int i = offset + y * stride + x;
+                if (x < width) {
+                    assertEquals("(" + x + ", " + y + ")", expected[y * width + x], pixels[i] & 0xFF);
+                } else if (i < pixels.length) {
+                    //the padding of the rows is not touched
+                    assertEquals(original[i], pixels[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void boxRadiiMatchTheVariance() {
+        for (float sigma = 1f; sigma < 40f; sigma += 0.75f) {
+            double variance = 0;
+            for (int r : PixelBlur.boxRadii(sigma)) {
+                //variance of a box of size 2r + 1
+                variance += ((2.0 * r + 1) * (2.0 * r + 1) - 1) / 12;
+            }
+            assertEquals("sigma " + sigma, sigma * sigma, variance, 2 * sigma + 1);
+        }
+    }
+
+    //box blur of every channel, averaging the clamped window of every pixel
+    private static int[] referenceBox(int[] in, int n, int channels, int r) {
+        int[] out = new int[in.length];
+        for (int c = 0; c < channels; c++) {
+            for (int i = 0; i < n; i++) {
+                long sum = 0;
+                for (int j = i - r; j <= i + r; j++) {
+                    sum += in[Math.max(0, Math.min(n - 1, j)) * channels + c];
+                }
+                out[i * channels + c] = (int) Math.round((double) sum / (2 * r + 1));
+            }
+        }
+        return out;
+    }
+
+    //the boxes of radii applied to the rows and then to the columns of a plane of interleaved channels
+    private static int[] referencePasses(int[] plane, int w, int h, int channels, int[] radii) {
+        int[] result = plane.clone();
+        int[] line = new int[w * channels];
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(result, y * w * channels, line, 0, line.length);
+            for (int r : radii) {
+                line = referenceBox(line, w, channels, r);
+            }
+            System.arraycopy(line, 0, result, y * w * channels, line.length);
+        }
+        int[] column = new int[h * channels];
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(result, (y * w + x) * channels, column, y * channels, channels);
+            }
+            for (int r : radii) {
+                column = referenceBox(column, h, channels, r);
+            }
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(column, y * channels, result, (y * w + x) * channels, channels);
+            }
+        }
+        return result;
+    }
+
+    //the blur of PixelBlur, computed with the reference box blur: premultiplied ARGB, rows, columns, unpremultiplied
+    private static PixelBuffer referenceBlur(PixelBuffer src, float radius) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        int[] plane = new int[w * h * 4];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int color = src.getPixel(x, y);
+                int a = color >>> 24;
+                int i = (y * w + x) * 4;
+                plane[i] = a;
+                plane[i + 1] = (((color >> 16) & 0xFF) * a + 127) / 255;
+                plane[i + 2] = (((color >> 8) & 0xFF) * a + 127) / 255;
+                plane[i + 3] = ((color & 0xFF) * a + 127) / 255;
+            }
+        }
+        int[] blurred = referencePasses(plane, w, h, 4, PixelBlur.boxRadii(PixelBlur.radiusToSigma(radius)));
+        PixelBuffer result = new PixelBuffer(w, h);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int i = (y * w + x) * 4;
+                int a = blurred[i];
+                if (a == 0) {
+                    continue;
+                }
+                int r = Math.min(255, (blurred[i + 1] * 255 + a / 2) / a);
+                int g = Math.min(255, (blurred[i + 2] * 255 + a / 2) / a);
+                int b = Math.min(255, (blurred[i + 3] * 255 + a / 2) / a);
+                result.setPixel(x, y, (a << 24) | (r << 16) | (g << 8) | b);
+            }
+        }
+        return result;
+    }
+}
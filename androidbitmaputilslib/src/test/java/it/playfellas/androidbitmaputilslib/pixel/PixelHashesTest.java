@@ -0,0 +1,110 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link PixelHashes}. Hashes are used as keys of persistent caches, so their values
+ * must not change between versions: the expected values are fixed.
+ */
+public class PixelHashesTest {
+
+    @Test
+    public void hashesAreStable() {
+        assertEquals(0x84693740ace67d87L, PixelHashes.hashPixels(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11}, 0, 11, 0));
+        assertEquals(0xd950a397347aebd7L, PixelHashes.contentHash(gradient(97, 61), 1));
+        assertEquals(0xa15f5dbd00a70986L, PixelHashes.contentHash(gradient(640, 480)));
+        assertEquals(0x20eb417fd83b4992L, PixelHashes.contentHash(pattern(160, 120)));
+        assertEquals(0xaa55aa55aa55aa55L, PixelHashes.averageHash(pattern(160, 120)));
+        assertEquals(0x55ab54ab56ad5ad5L, PixelHashes.differenceHash(pattern(160, 120)));
+    }
+
+    @Test
+    public void hashesDontDependOnTheLayout() {
+        PixelBuffer image = pattern(160, 120);
+        PixelBuffer padded = new PixelBuffer(200, 150);
+        padded.fill(0xFFFF00FF);
+        padded.copyFrom(image, 0, 0, 17, 9, 160, 120);
+        PixelBuffer view = padded.subBuffer(17, 9, 160, 120);
+        PixelScaler.RowSource rows = PixelScaler.rowsOf(image);
+
+        long contentHash = PixelHashes.contentHash(image, 3);
+        assertEquals(contentHash, PixelHashes.contentHash(view, 3));
+        assertEquals(contentHash, PixelHashes.contentHash(rows, 160, 120, 3));
+        assertEquals(PixelHashes.averageHash(image), PixelHashes.averageHash(view));
+        assertEquals(PixelHashes.averageHash(image), PixelHashes.averageHash(rows, 160, 120));
+        assertEquals(PixelHashes.differenceHash(image), PixelHashes.differenceHash(view));
+    }
+
+    @Test
+    public void contentHashSeesEveryHashedRow() {
+        PixelBuffer image = gradient(97, 61);
+        long hash = PixelHashes.contentHash(image, 1);
+        for (int y = 0; y < 61; y += 10) {
+            int old = image.getPixel(50, y);
+            image.setPixel(50, y, old ^ 1);
+            assertNotEquals("row " + y, hash, PixelHashes.contentHash(image, 1));
+            image.setPixel(50, y, old);
+        }
+        //the size is part of the hash
+        assertNotEquals(PixelHashes.contentHash(new PixelBuffer(4, 6), 1), PixelHashes.contentHash(new PixelBuffer(6, 4), 1));
+        //the last row is always hashed
+        image.setPixel(0, 60, 0);
+        assertNotEquals(hash, PixelHashes.contentHash(image, 7));
+    }
+
+    @Test
+    public void perceptualHashesTolerateSmallChanges() {
+        PixelBuffer image = pattern(160, 120);
+        PixelBuffer noisy = pattern(160, 120);
+        for (int i = 0; i < noisy.getPixels().length; i += 7) {
+            noisy.getPixels()[i] ^= 0x030303;
+        }
+        assertTrue(PixelHashes.hammingDistance(PixelHashes.averageHash(image), PixelHashes.averageHash(noisy)) < 10);
+        assertTrue(PixelHashes.hammingDistance(PixelHashes.differenceHash(image), PixelHashes.differenceHash(noisy)) < 10);
+
+        PixelBuffer inverted = pattern(160, 120);
+        for (int i = 0; i < inverted.getPixels().length; i++) {
+            inverted.getPixels()[i] ^= 0xFFFFFF;
+        }
+        assertTrue(PixelHashes.hammingDistance(PixelHashes.averageHash(image), PixelHashes.averageHash(inverted)) > 32);
+    }
+
+    private static PixelBuffer gradient(int w, int h) {
+        PixelBuffer buffer = new PixelBuffer(w, h);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                buffer.setPixel(x, y, 0xFF000000 | (x * 255 / (w - 1)) << 16 | (y * 255 / (h - 1)) << 8 | ((x ^ y) & 0xFF));
+            }
+        }
+        return buffer;
+    }
+
+    //blocks of 3 levels of luminance, with a bit of texture
+    private static PixelBuffer pattern(int w, int h) {
+        PixelBuffer buffer = new PixelBuffer(w, h);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int v = ((x / 13 + y / 11) % 3) * 90 + (x * y) % 40;
+                buffer.setPixel(x, y, 0xFF000000 | v << 16 | (255 - v) << 8 | (v / 2));
+            }
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.Test;
+
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.assertBuffersEqual;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.assertColorsClose;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.copyOf;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.randomBuffer;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link PixelKernels} and {@link ColorLuts}: every kernel is compared with a per-pixel reference
+ * formula, computed in floating point (so results can differ by 1 for the rounding of the fixed point math).
+ */
+public class PixelKernelsTest {
+
+    private static final int[] COLORS = {0xFF000000, 0xFFFFFFFF, 0xFFFF0000, 0xFF12C0A7, 0x80336699, 0x00FFFFFF, 0x7FFF8000};
+
+    @Test
+    public void grayscaleMatchesReference() {
+        PixelBuffer src = randomBuffer(67, 19, 1);
+        PixelBuffer dst = apply(PixelKernels.grayscale(), src);
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                int c = src.getPixel(x, y);
+                int l = referenceLuma(c);
+                assertColorsClose("grayscale", (c & 0xFF000000) | l << 16 | l << 8 | l, dst.getPixel(x, y), 1);
+                //the three channels are always the same
+                int result = dst.getPixel(x, y);
+                assertEquals(result & 0xFF, (result >> 8) & 0xFF);
+                assertEquals(result & 0xFF, (result >> 16) & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void lightingMatchesReference() {
+        PixelBuffer src = randomBuffer(67, 19, 2);
+        for (int mul : COLORS) {
+            for (int add : COLORS) {
+                PixelBuffer dst = apply(PixelKernels.lighting(mul, add), src);
+                for (int y = 0; y < src.getHeight(); y++) {
+                    for (int x = 0; x < src.getWidth(); x++) {
+                        int c = src.getPixel(x, y);
+                        assertColorsClose("lighting " + Integer.toHexString(mul) + " " + Integer.toHexString(add),
+                                referenceLighting(c, mul, add), dst.getPixel(x, y), 1);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void overlayMatchesReference() {
+        PixelBuffer src = randomBuffer(67, 19, 3);
+        for (int color : COLORS) {
+            PixelBuffer dst = apply(PixelKernels.overlay(color), src);
+            //the table gives exactly the result of the two kernels executed one after the other
+            PixelBuffer twoPasses = apply(PixelKernels.chain(PixelKernels.grayscale(), PixelKernels.lighting(color, 1)), src);
+            assertBuffersEqual("overlay " + Integer.toHexString(color), twoPasses, dst);
+            for (int y = 0; y < src.getHeight(); y++) {
+                for (int x = 0; x < src.getWidth(); x++) {
+                    int c = src.getPixel(x, y);
+                    int l = referenceLuma(c);
+                    int gray = (c & 0xFF000000) | l << 16 | l << 8 | l;
+                    //the luma and the lighting are rounded one after the other
+                    assertColorsClose("overlay " + Integer.toHexString(color), referenceLighting(gray, color, 1), dst.getPixel(x, y), 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tintMatchesReference() {
+        PixelBuffer src = randomBuffer(67, 19, 4);
+        for (int color : COLORS) {
+            PixelBuffer dst = apply(PixelKernels.tint(color), src);
+            int alpha = color >>> 24;
+            for (int y = 0; y < src.getHeight(); y++) {
+                for (int x = 0; x < src.getWidth(); x++) {
+                    int c = src.getPixel(x, y);
+                    //SRC_ATOP: the color of the tint over the color of the pixel, with the alpha of the pixel
+                    int expected = c & 0xFF000000;
+                    for (int shift = 0; shift < 24; shift += 8) {
+                        double channel = (((color >> shift) & 0xFF) * alpha + ((c >> shift) & 0xFF) * (255 - alpha)) / 255.0;
+                        expected |= (int) Math.round(channel) << shift;
+                    }
+                    assertEquals("tint " + Integer.toHexString(color), expected, dst.getPixel(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void colorMatrixMatchesReference() {
+        float[][] matrices = {
+                {1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 1, 0},
+                //sepia
+                {0.393f, 0.769f, 0.189f, 0, 0, 0.349f, 0.686f, 0.168f, 0, 0, 0.272f, 0.534f, 0.131f, 0, 0, 0, 0, 0, 1, 0},
+                //invert, with half alpha
+                {-1, 0, 0, 0, 255, 0, -1, 0, 0, 255, 0, 0, -1, 0, 255, 0, 0, 0, 0.5f, 0},
+                //every channel from every other one, with offsets out of range
+                {0.5f, -0.7f, 1.3f, 0.2f, -40, 2, 0.1f, -0.1f, 0, 30, 0, 0, 0, -1, 300, 0.1f, 0.2f, 0.3f, 0.4f, 10}
+        };
+        PixelBuffer src = randomBuffer(67, 19, 5);
+        for (float[] m : matrices) {
+            PixelBuffer dst = apply(PixelKernels.colorMatrix(m), src);
+            for (int y = 0; y < src.getHeight(); y++) {
+                for (int x = 0; x < src.getWidth(); x++) {
+                    int c = src.getPixel(x, y);
+                    int[] in = {(c >> 16) & 0xFF, (c >> 8) & 0xFF, c & 0xFF, c >>> 24};
+                    int[] out = new int[4];
+                    for (int row = 0; row < 4; row++) {
+                        double value = m[row * 5 + 4];
+                        for (int column = 0; column < 4; column++) {
+                            value += m[row * 5 + column] * (double) in[column];
+                        }
+                        out[row] = (int) Math.max(0, Math.min(255, Math.round(value)));
+                    }
+                    int expected = out[3] << 24 | out[0] << 16 | out[1] << 8 | out[2];
+                    assertColorsClose("colorMatrix", expected, dst.getPixel(x, y), 1);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void colorMatrixRejectsWrongSizes() {
+        PixelKernels.colorMatrix(new float[16]);
+    }
+
+    @Test
+    public void colorMatrixCopiesTheMatrix() {
+        float[] m = {1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 1, 0};
+        PixelKernel kernel = PixelKernels.colorMatrix(m);
+        m[4] = 255;
+        PixelBuffer src = randomBuffer(5, 3, 6);
+        assertBuffersEqual("colorMatrix", src, apply(kernel, src));
+    }
+
+    @Test
+    public void lumaToAlphaMatchesReference() {
+        PixelBuffer src = randomBuffer(67, 19, 7);
+        PixelBuffer dst = apply(PixelKernels.lumaToAlpha(), src);
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                int c = src.getPixel(x, y);
+                //the luma composited over black
+                int expected = (int) Math.round(referenceLuma(c) * (c >>> 24) / 255.0) << 24;
+                assertColorsClose("lumaToAlpha", expected, dst.getPixel(x, y), 1);
+                assertEquals(0, dst.getPixel(x, y) & 0xFFFFFF);
+            }
+        }
+    }
+
+    @Test
+    public void ditherRgb565MatchesReference() {
+        int[][] bayer = {{0, 8, 2, 10}, {12, 4, 14, 6}, {3, 11, 1, 9}, {15, 7, 13, 5}};
+        PixelBuffer src = randomBuffer(67, 19, 8);
+        PixelBuffer dst = apply(PixelKernels.ditherRgb565(), src);
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                int c = src.getPixel(x, y);
+                int a = c >>> 24;
+                double threshold = (bayer[y & 3][x & 3] + 0.5) / 16;
+                int expected = 0xFF000000;
+                int[] bits = {5, 6, 5};
+                for (int channel = 0; channel < 3; channel++) {
+                    int shift = 16 - channel * 8;
+                    int max = (1 << bits[channel]) - 1;
+                    double value = Math.round(((c >> shift) & 0xFF) * a / 255.0);
+                    int level = (int) Math.floor(value * max / 255 + threshold);
+                    expected |= (level << (8 - bits[channel]) | level >> (2 * bits[channel] - 8)) << shift;
+                }
+                assertEquals("ditherRgb565 (" + x + ", " + y + ")", expected, dst.getPixel(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void chainExecutesBothKernels() {
+        PixelBuffer src = randomBuffer(67, 19, 9);
+        PixelKernel first = PixelKernels.lighting(0x808080, 0x102030);
+        PixelKernel second = PixelKernels.tint(0x80FF0000);
+        assertBuffersEqual("chain", apply(second, apply(first, src)), apply(PixelKernels.chain(first, second), src));
+    }
+
+    @Test
+    public void kernelsWorkInPlaceAndOnRectangles() {
+        PixelKernel[] kernels = {PixelKernels.grayscale(), PixelKernels.lighting(0xFF8000, 0x000010), PixelKernels.overlay(0x3366CC),
+                PixelKernels.tint(0x80FF00FF), PixelKernels.lumaToAlpha(), PixelKernels.ditherRgb565()};
+        PixelBuffer src = randomBuffer(40, 30, 10);
+        for (PixelKernel kernel : kernels) {
+            PixelBuffer expected = apply(kernel, src);
+            PixelBuffer inPlace = copyOf(src);
+            kernel.apply(inPlace, inPlace, 0, 0, 40, 30);
+            assertBuffersEqual("in place", expected, inPlace);
+
+            //only the rectangle is written
+            PixelBuffer rectangle = copyOf(src);
+            kernel.apply(src, rectangle, 4, 8, 23, 17);
+            for (int y = 0; y < 30; y++) {
+                for (int x = 0; x < 40; x++) {
+                    boolean inside = x >= 4 && x < 23 && y >= 8 && y < 17;
+                    assertEquals(inside ? expected.getPixel(x, y) : src.getPixel(x, y), rectangle.getPixel(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tablesMatchReference() {
+        for (int color : COLORS) {
+            int[] overlay = ColorLuts.overlay(color);
+            int[] tint = ColorLuts.tint(color);
+            assertEquals(256, overlay.length);
+            assertEquals(768, tint.length);
+            int alpha = color >>> 24;
+            for (int l = 0; l < 256; l++) {
+                int gray = 0xFF000000 | l << 16 | l << 8 | l;
+                assertColorsClose("overlay table", referenceLighting(gray, color, 1) & 0xFFFFFF, overlay[l], 1);
+                for (int channel = 0; channel < 3; channel++) {
+                    int shift = 16 - channel * 8;
+                    int expected = (int) Math.round((((color >> shift) & 0xFF) * alpha + l * (255 - alpha)) / 255.0);
+                    assertEquals("tint table", expected << shift, tint[channel * 256 + l]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tablesAndKernelsAreCached() {
+        assertSame(ColorLuts.overlay(0x123456), ColorLuts.overlay(0xFF123456));
+        assertSame(ColorLuts.tint(0x80123456), ColorLuts.tint(0x80123456));
+        assertNotSame(ColorLuts.tint(0x80123456), ColorLuts.tint(0x81123456));
+        assertSame(PixelKernels.overlay(0x123456), PixelKernels.overlay(0x123456));
+        assertSame(PixelKernels.tint(0x80123456), PixelKernels.tint(0x80123456));
+        assertSame(PixelKernels.lighting(0x123456, 0x010101), PixelKernels.lighting(0x123456, 0x010101));
+    }
+
+    private static PixelBuffer apply(PixelKernel kernel, PixelBuffer src) {
+        PixelBuffer dst = new PixelBuffer(src.getWidth(), src.getHeight());
+        kernel.apply(src, dst, 0, 0, src.getWidth(), src.getHeight());
+        return dst;
+    }
+
+    //luma of ColorMatrix.setSaturation(0)
+    private static int referenceLuma(int color) {
+        return (int) Math.round(0.213 * ((color >> 16) & 0xFF) + 0.715 * ((color >> 8) & 0xFF) + 0.072 * (color & 0xFF));
+    }
+
+    //LightingColorFilter: channel * mul / 255 + add, clamped to 255
+    private static int referenceLighting(int color, int mul, int add) {
+        int result = color & 0xFF000000;
+        for (int shift = 0; shift < 24; shift += 8) {
+            long channel = Math.round(((color >> shift) & 0xFF) * ((mul >> shift) & 0xFF) / 255.0) + ((add >> shift) & 0xFF);
+            result |= (int) Math.min(255, channel) << shift;
+        }
+        return result;
+    }
+}
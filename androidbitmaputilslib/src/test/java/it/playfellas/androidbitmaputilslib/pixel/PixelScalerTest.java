@@ -0,0 +1,165 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.assertBuffersEqual;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link PixelScaler} against a reference box filter, that averages the colors premultiplied by alpha.
+ */
+public class PixelScalerTest {
+
+    private final TileEngine engine = new TileEngine(3, 32, 16);
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void halvingIsExactForAllQualities() {
+        PixelBuffer src = randomBuffer(130, 66, 1);
+        PixelBuffer expected = referenceBox(src, 2);
+        for (PixelScaler.Quality quality : PixelScaler.Quality.values()) {
+            PixelBuffer dst = new PixelBuffer(65, 33);
+            PixelScaler.scale(src, dst, quality, engine);
+            assertBuffersEqual(quality.name(), expected, dst);
+        }
+    }
+
+    @Test
+    public void integerFactorsMatchReference() {
+        for (int factor = 3; factor <= 8; factor++) {
+            //sizes multiple of the factor, so every destination pixel covers exactly a block
+            PixelBuffer src = randomBuffer(factor * 37, factor * 23, factor);
+            PixelBuffer expected = referenceBox(src, factor);
+            PixelBuffer dst = new PixelBuffer(expected.getWidth(), expected.getHeight());
+            PixelScaler.scale(src, dst, PixelScaler.Quality.HIGH, engine);
+            //a single pass: only the rounding of the result
+            assertMaxDifference("HIGH /" + factor, expected, dst, 1);
+            if (Integer.bitCount(factor) == 1) {
+                //repeated halvings: a rounding for every halving
+                PixelScaler.scale(src, dst, PixelScaler.Quality.BALANCED, engine);
+                assertMaxDifference("BALANCED /" + factor, expected, dst, Integer.numberOfTrailingZeros(factor));
+            }
+        }
+    }
+
+    @Test
+    public void solidImagesStaySolid() {
+        int color = 0xC0336699;
+        PixelBuffer src = new PixelBuffer(317, 211);
+        src.fill(color);
+        int[][] sizes = {{317, 211}, {200, 100}, {99, 101}, {13, 7}, {1, 1}};
+        for (PixelScaler.Quality quality : PixelScaler.Quality.values()) {
+            for (int[] size : sizes) {
+                PixelBuffer dst = new PixelBuffer(size[0], size[1]);
+                PixelScaler.scale(src, dst, quality, engine);
+                for (int y = 0; y < size[1]; y++) {
+                    for (int x = 0; x < size[0]; x++) {
+                        assertEquals(quality + " " + size[0] + "x" + size[1], color, dst.getPixel(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameSizeCopiesThePixels() {
+        PixelBuffer src = randomBuffer(40, 30, 3);
+        PixelBuffer dst = new PixelBuffer(40, 30);
+        PixelScaler.scale(src, dst, PixelScaler.Quality.FAST, engine);
+        assertBuffersEqual("copy", src, dst);
+    }
+
+    @Test
+    public void rowSourceGivesTheSameResult() {
+        PixelBuffer src = randomBuffer(301, 203, 4);
+        PixelBuffer fromBuffer = new PixelBuffer(77, 51);
+        PixelBuffer fromRows = new PixelBuffer(77, 51);
+        PixelScaler.scale(src, fromBuffer, PixelScaler.Quality.HIGH, engine);
+        PixelScaler.scale(PixelScaler.rowsOf(src), 301, 203, fromRows, PixelScaler.Quality.HIGH, engine);
+        assertBuffersEqual("rowsOf", fromBuffer, fromRows);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void upscalingIsRejected() {
+        PixelScaler.scale(new PixelBuffer(10, 10), new PixelBuffer(11, 10), PixelScaler.Quality.HIGH, engine);
+    }
+
+    //reference: average of factor x factor blocks, colors premultiplied by alpha, rounded to nearest
+    private static PixelBuffer referenceBox(PixelBuffer src, int factor) {
+        int dw = src.getWidth() / factor;
+        int dh = src.getHeight() / factor;
+        PixelBuffer dst = new PixelBuffer(dw, dh);
+        int n = factor * factor;
+        for (int y = 0; y < dh; y++) {
+            for (int x = 0; x < dw; x++) {
+                long a = 0;
+                long r = 0;
+                long g = 0;
+                long b = 0;
+                for (int j = 0; j < factor; j++) {
+                    for (int i = 0; i < factor; i++) {
+                        int p = src.getPixel(x * factor + i, y * factor + j);
+                        int pa = p >>> 24;
+                        a += pa;
+                        r += ((p >> 16) & 0xFF) * pa;
+                        g += ((p >> 8) & 0xFF) * pa;
+                        b += (p & 0xFF) * pa;
+                    }
+                }
+                dst.setPixel(x, y, a == 0 ? 0 : (int) ((a + n / 2) / n) << 24
+                        | (int) ((r + a / 2) / a) << 16 | (int) ((g + a / 2) / a) << 8 | (int) ((b + a / 2) / a));
+            }
+        }
+        return dst;
+    }
+
+    private static void assertMaxDifference(String message, PixelBuffer expected, PixelBuffer actual, int tolerance) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getPixel(x, y);
+                int a = actual.getPixel(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int difference = Math.abs(((e >>> shift) & 0xFF) - ((a >>> shift) & 0xFF));
+                    if (difference > tolerance) {
+                        fail(message + ": pixel (" + x + ", " + y + ") is " + Integer.toHexString(a)
+                                + " instead of " + Integer.toHexString(e));
+                    }
+                }
+            }
+        }
+    }
+
+    //mostly opaque pixels: with a tiny alpha the colors of the average are dominated by rounding
+    private static PixelBuffer randomBuffer(int w, int h, long seed) {
+        Random random = new Random(seed);
+        PixelBuffer buffer = new PixelBuffer(w, h);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                buffer.setPixel(x, y, (128 + random.nextInt(128)) << 24 | (random.nextInt() & 0xFFFFFF));
+            }
+        }
+        return buffer;
+    }
+}
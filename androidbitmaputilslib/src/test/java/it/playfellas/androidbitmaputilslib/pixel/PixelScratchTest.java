@@ -0,0 +1,271 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests of the per-thread buffers and of the allocations of the band loops and of the whole image
+ * operations of the pixel path, the ones used by BitmapUtils.
+ */
+public class PixelScratchTest {
+
+    private static final int WIDTH = 256;
+    private static final int ROWS = 64;
+    private static final int ITERATIONS = 200;
+    //the counter of the JVM can include a few bytes of its own bookkeeping
+    private static final long TOLERANCE_BYTES = 1024;
+    private static final int IMAGE_WIDTH = 300;
+    private static final int IMAGE_HEIGHT = 200;
+    private static final int OPERATION_ITERATIONS = 20;
+    //the tasks and the row sources of a call, against the 240KB of a copy of the image
+    private static final long TOLERANCE_BYTES_PER_CALL = 4096;
+    //a single thread runs every band on the calling thread, where the allocations are counted
+    private static final TileEngine SERIAL = new TileEngine(1);
+
+    @Test
+    public void steadyStateBandsDontAllocate() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+        long id = Thread.currentThread().getId();
+
+        //warm up: the first calls build the kernels, the tables and the buffers
+        for (int i = 0; i < ITERATIONS; i++) {
+            runBands(i);
+        }
+        long before = bean.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ITERATIONS; i++) {
+            runBands(i);
+        }
+        long allocated = bean.getThreadAllocatedBytes(id) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated <= TOLERANCE_BYTES);
+    }
+
+    @Test
+    public void steadyStateScaleDoesntAllocate() throws Exception {
+        final PixelBuffer src = PixelTestUtils.randomBuffer(IMAGE_WIDTH, IMAGE_HEIGHT, 7);
+        final PixelScaler.RowSource rows = PixelScaler.rowsOf(src);
+        for (final PixelScaler.Quality quality : PixelScaler.Quality.values()) {
+            assertSteadyState(quality.name(), new Runnable() {
+                @Override
+                public void run() {
+                    PixelScratch scratch = PixelScratch.acquire();
+                    try {
+                        PixelBuffer dst = scratch.buffer(0, IMAGE_WIDTH / 3, IMAGE_HEIGHT / 3);
+                        PixelScaler.scale(rows, IMAGE_WIDTH, IMAGE_HEIGHT, dst, quality, SERIAL);
+                    } finally {
+                        scratch.release();
+                    }
+                }
+            });
+        }
+    }
+
+    @Test
+    public void steadyStateBlurDoesntAllocate() throws Exception {
+        final PixelBuffer src = PixelTestUtils.randomBuffer(IMAGE_WIDTH, IMAGE_HEIGHT, 11);
+        assertSteadyState("blur", new Runnable() {
+            @Override
+            public void run() {
+                PixelScratch scratch = PixelScratch.acquire();
+                try {
+                    PixelBuffer buffer = scratch.buffer(0, IMAGE_WIDTH, IMAGE_HEIGHT);
+                    buffer.copyFrom(src, 0, 0, 0, 0, IMAGE_WIDTH, IMAGE_HEIGHT);
+                    PixelBlur.blur(buffer, 12f, SERIAL);
+                } finally {
+                    scratch.release();
+                }
+            }
+        });
+        assertSteadyState("blurAlpha", new Runnable() {
+            @Override
+            public void run() {
+                PixelScratch scratch = PixelScratch.acquire();
+                try {
+                    byte[] alpha = scratch.bytes(IMAGE_WIDTH * IMAGE_HEIGHT).array();
+                    PixelBlur.blurAlpha(alpha, 0, IMAGE_WIDTH, IMAGE_WIDTH, IMAGE_HEIGHT, 12f, SERIAL);
+                } finally {
+                    scratch.release();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void steadyStateKernelDoesntAllocate() throws Exception {
+        final PixelBuffer src = PixelTestUtils.randomBuffer(IMAGE_WIDTH, IMAGE_HEIGHT, 13);
+        assertSteadyState("execute", new Runnable() {
+            @Override
+            public void run() {
+                PixelScratch scratch = PixelScratch.acquire();
+                try {
+                    PixelBuffer buffer = scratch.buffer(0, IMAGE_WIDTH, IMAGE_HEIGHT);
+                    SERIAL.execute(PixelKernels.overlay(0xFF3366CC), src, buffer);
+                } finally {
+                    scratch.release();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void cachedKernelsAreShared() {
+        assertSame(PixelKernels.overlay(0xFF3366CC), PixelKernels.overlay(0xFF3366CC));
+        assertSame(PixelKernels.tint(0x803366CC), PixelKernels.tint(0x803366CC));
+        assertSame(PixelKernels.lighting(0x808080, 0x101010), PixelKernels.lighting(0x808080, 0x101010));
+        assertSame(ColorLuts.overlay(0xFF3366CC), ColorLuts.overlay(0xFF3366CC));
+        assertNotSame(PixelKernels.tint(0x803366CC), PixelKernels.tint(0xFF3366CC));
+    }
+
+    @Test
+    public void buffersAreReusedWhileTheSizeDoesntChange() {
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            PixelBuffer first = scratch.buffer(0, WIDTH, ROWS);
+            assertSame(first, scratch.buffer(0, WIDTH, ROWS));
+            //a smaller view reuses the same array
+            PixelBuffer smaller = scratch.buffer(0, WIDTH, ROWS / 2);
+            assertSame(first.getPixels(), smaller.getPixels());
+            assertNotSame(first.getPixels(), scratch.buffer(1, WIDTH, ROWS).getPixels());
+        } finally {
+            scratch.release();
+        }
+    }
+
+    @Test
+    public void nestedAcquireReturnsTheNextLevel() {
+        PixelScratch outer = PixelScratch.acquire();
+        PixelScratch inner;
+        try {
+            inner = PixelScratch.acquire();
+            try {
+                assertNotSame(outer, inner);
+                assertNotSame(outer.ints(0, 16), inner.ints(0, 16));
+            } finally {
+                inner.release();
+            }
+            //the inner level is retained too
+            PixelScratch again = PixelScratch.acquire();
+            try {
+                assertSame(inner, again);
+            } finally {
+                again.release();
+            }
+        } finally {
+            outer.release();
+        }
+        PixelScratch again = PixelScratch.acquire();
+        try {
+            assertSame(outer, again);
+        } finally {
+            again.release();
+        }
+    }
+
+    @Test
+    public void acquireBeyondTheLastLevelReturnsATemporaryScratch() {
+        PixelScratch[] scratches = new PixelScratch[PixelScratch.MAX_DEPTH + 1];
+        for (int i = 0; i < scratches.length; i++) {
+            scratches[i] = PixelScratch.acquire();
+        }
+        PixelScratch temporary = scratches[PixelScratch.MAX_DEPTH];
+        for (int i = scratches.length - 1; i >= 0; i--) {
+            scratches[i].release();
+        }
+        for (int i = 0; i < scratches.length; i++) {
+            PixelScratch scratch = PixelScratch.acquire();
+            assertNotSame(temporary, scratch);
+            if (i < PixelScratch.MAX_DEPTH) {
+                assertSame(scratches[i], scratch);
+            }
+            scratches[i] = scratch;
+        }
+        for (int i = scratches.length - 1; i >= 0; i--) {
+            scratches[i].release();
+        }
+    }
+
+    @Test
+    public void bigBuffersAreNotRetained() {
+        PixelScratch scratch = PixelScratch.acquire();
+        int[] big;
+        try {
+            big = scratch.ints(2, PixelScratch.MAX_RETAINED_PIXELS + 1);
+            assertEquals(16, scratch.bytes(16).limit());
+        } finally {
+            scratch.release();
+        }
+        scratch = PixelScratch.acquire();
+        try {
+            assertNotSame(big, scratch.ints(2, 1));
+        } finally {
+            scratch.release();
+        }
+    }
+
+    //method to check that, after a warm up, each call of operation allocates only a few small objects,
+    //far less than the size of the image
+    private static void assertSteadyState(String name, Runnable operation) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+        long id = Thread.currentThread().getId();
+
+        for (int i = 0; i < OPERATION_ITERATIONS; i++) {
+            operation.run();
+        }
+        long before = bean.getThreadAllocatedBytes(id);
+        for (int i = 0; i < OPERATION_ITERATIONS; i++) {
+            operation.run();
+        }
+        long perCall = (bean.getThreadAllocatedBytes(id) - before) / OPERATION_ITERATIONS;
+        assertTrue(name + " allocated " + perCall + " bytes per call", perCall <= TOLERANCE_BYTES_PER_CALL);
+    }
+
+    //the same work of the band loops of BitmapUtils, without the reads and writes of the Bitmap
+    private static void runBands(int i) {
+        PixelScratch scratch = PixelScratch.acquire();
+        try {
+            PixelBuffer band = scratch.buffer(0, WIDTH, ROWS);
+            int[] pixels = band.getPixels();
+            for (int p = 0; p < WIDTH * ROWS; p++) {
+                pixels[p] = 0xFF000000 | (p * 31 + i);
+            }
+            PixelKernels.overlay(0xFF3366CC).apply(band, band, 0, 0, WIDTH, ROWS);
+            PixelKernels.tint(0x80FF8800).apply(band, band, 0, 0, WIDTH, ROWS);
+            PixelKernels.lighting(0x808080, 0x202020).apply(band, band, 0, 0, WIDTH, ROWS);
+            PixelKernels.grayscale().apply(band, band, 0, 0, WIDTH, ROWS);
+            //the last band of an image, smaller than the others
+            PixelBuffer last = scratch.buffer(1, WIDTH, ROWS / 3);
+            System.arraycopy(pixels, 0, last.getPixels(), 0, WIDTH * (ROWS / 3));
+            PixelTransforms.flipHorizontallyInPlace(last);
+            scratch.bytes(WIDTH * ROWS);
+        } finally {
+            scratch.release();
+        }
+    }
+}
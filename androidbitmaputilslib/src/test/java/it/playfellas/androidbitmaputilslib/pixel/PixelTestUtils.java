@@ -0,0 +1,71 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Helpers shared by the tests of the pixel package.
+ */
+final class PixelTestUtils {
+
+    private PixelTestUtils() {
+    }
+
+    static PixelBuffer randomBuffer(int w, int h, long seed) {
+        Random random = new Random(seed);
+        PixelBuffer buffer = new PixelBuffer(w, h);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                buffer.setPixel(x, y, random.nextInt());
+            }
+        }
+        return buffer;
+    }
+
+    static PixelBuffer copyOf(PixelBuffer src) {
+        PixelBuffer copy = new PixelBuffer(src.getWidth(), src.getHeight());
+        copy.copyFrom(src, 0, 0, 0, 0, src.getWidth(), src.getHeight());
+        return copy;
+    }
+
+    static void assertBuffersEqual(String message, PixelBuffer expected, PixelBuffer actual) {
+        assertEquals(message + " width", expected.getWidth(), actual.getWidth());
+        assertEquals(message + " height", expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if (expected.getPixel(x, y) != actual.getPixel(x, y)) {
+                    fail(message + ": pixel (" + x + ", " + y + ") is " + Integer.toHexString(actual.getPixel(x, y))
+                            + " instead of " + Integer.toHexString(expected.getPixel(x, y)));
+                }
+            }
+        }
+    }
+
+    //every channel of actual must differ from expected by at most tolerance
+    static void assertColorsClose(String message, int expected, int actual, int tolerance) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            int e = (expected >>> shift) & 0xFF;
+            int a = (actual >>> shift) & 0xFF;
+            if (Math.abs(e - a) > tolerance) {
+                fail(message + ": " + Integer.toHexString(actual) + " instead of " + Integer.toHexString(expected));
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.Test;
+
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.assertBuffersEqual;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.copyOf;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.randomBuffer;
+
+/**
+ * Tests of {@link PixelTransforms} against a per-pixel reference implementation.
+ */
+public class PixelTransformsTest {
+
+    //sizes smaller and bigger than a tile, not multiples of the tile size
+    private static final int[][] SIZES = {{1, 1}, {7, 3}, {64, 64}, {131, 67}, {300, 257}};
+
+    @Test
+    public void rotateMatchesReference() {
+        for (int[] size : SIZES) {
+            PixelBuffer src = randomBuffer(size[0], size[1], size[0] * 31 + size[1]);
+            for (int degrees = -270; degrees <= 360; degrees += 90) {
+                PixelBuffer expected = referenceRotate(src, degrees);
+                assertBuffersEqual("rotate " + degrees, expected, PixelTransforms.rotate(src, degrees));
+            }
+        }
+    }
+
+    @Test
+    public void rotateInParallelMatchesReference() {
+        TileEngine engine = new TileEngine(4, 32, 16);
+        try {
+            PixelBuffer src = randomBuffer(300, 257, 1);
+            for (int degrees = 90; degrees <= 270; degrees += 90) {
+                PixelBuffer expected = referenceRotate(src, degrees);
+                PixelBuffer dst = new PixelBuffer(expected.getWidth(), expected.getHeight());
+                PixelTransforms.rotate(src, degrees, dst, engine);
+                assertBuffersEqual("rotate " + degrees, expected, dst);
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void rotateReadsSubBuffers() {
+        PixelBuffer whole = randomBuffer(100, 80, 2);
+        PixelBuffer src = whole.subBuffer(13, 7, 50, 41);
+        PixelBuffer copy = new PixelBuffer(50, 41);
+        copy.copyFrom(src, 0, 0, 0, 0, 50, 41);
+        assertBuffersEqual("rotate 90", referenceRotate(copy, 90), PixelTransforms.rotate(src, 90));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rotateRejectsOtherAngles() {
+        PixelTransforms.rotate(new PixelBuffer(4, 4), 45);
+    }
+
+    @Test
+    public void flipsMatchReference() {
+        for (int[] size : SIZES) {
+            int w = size[0];
+            int h = size[1];
+            PixelBuffer src = randomBuffer(w, h, w + h);
+            PixelBuffer horizontal = new PixelBuffer(w, h);
+            PixelBuffer vertical = new PixelBuffer(w, h);
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    horizontal.setPixel(w - 1 - x, y, src.getPixel(x, y));
+                    vertical.setPixel(x, h - 1 - y, src.getPixel(x, y));
+                }
+            }
+            PixelBuffer dst = new PixelBuffer(w, h);
+            PixelTransforms.flipHorizontally(src, dst);
+            assertBuffersEqual("flipHorizontally", horizontal, dst);
+            PixelTransforms.flipVertically(src, dst);
+            assertBuffersEqual("flipVertically", vertical, dst);
+
+            PixelBuffer inPlace = copyOf(src);
+            PixelTransforms.flipHorizontallyInPlace(inPlace);
+            assertBuffersEqual("flipHorizontallyInPlace", horizontal, inPlace);
+            inPlace = copyOf(src);
+            PixelTransforms.flipVerticallyInPlace(inPlace);
+            assertBuffersEqual("flipVerticallyInPlace", vertical, inPlace);
+            inPlace = copyOf(src);
+            PixelTransforms.rotate180InPlace(inPlace);
+            assertBuffersEqual("rotate180InPlace", referenceRotate(src, 180), inPlace);
+        }
+    }
+
+    //reference: the pixel (x, y) of a clockwise rotation by 90 degrees is the pixel (y, h - 1 - x) of the source
+    private static PixelBuffer referenceRotate(PixelBuffer src, int degrees) {
+        PixelBuffer result = copyOf(src);
+        for (int q = ((degrees / 90) % 4 + 4) % 4; q > 0; q--) {
+            int w = result.getWidth();
+            int h = result.getHeight();
+            PixelBuffer rotated = new PixelBuffer(h, w);
+            for (int y = 0; y < w; y++) {
+                for (int x = 0; x < h; x++) {
+                    rotated.setPixel(x, y, result.getPixel(y, h - 1 - x));
+                }
+            }
+            result = rotated;
+        }
+        return result;
+    }
+}
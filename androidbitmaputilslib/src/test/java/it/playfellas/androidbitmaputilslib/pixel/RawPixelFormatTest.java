@@ -0,0 +1,80 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link RawPixelFormat}: encoding and decoding, and validation of the header.
+ */
+public class RawPixelFormatTest {
+
+    @Test
+    public void decodeReturnsTheEncodedPixels() throws IOException {
+        //opaque: the payload is premultiplied, so translucent colors lose precision
+        PixelBuffer src = PixelTestUtils.randomBuffer(97, 61, 1);
+        int[] pixels = src.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= 0xFF000000;
+        }
+        ByteBuffer encoded = RawPixelFormat.encode(src);
+        PixelTestUtils.assertBuffersEqual("raw", src, RawPixelFormat.decode(encoded));
+    }
+
+    @Test
+    public void headerIsReadBack() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RawPixelFormat.HEADER_SIZE);
+        RawPixelFormat.writeHeader(new RawPixelFormat.Header(RawPixelFormat.CONFIG_RGB_565, 0, 7, 5, 16, 80), buffer);
+        buffer.flip();
+        RawPixelFormat.Header header = RawPixelFormat.readHeader(buffer);
+        assertEquals(RawPixelFormat.CONFIG_RGB_565, header.getConfig());
+        assertEquals(7, header.getWidth());
+        assertEquals(5, header.getHeight());
+        assertEquals(16, header.getRowBytes());
+        assertEquals(80, header.getPayloadLength());
+    }
+
+    @Test(expected = IOException.class)
+    public void overflowingRowIsRejected() throws IOException {
+        //width * 4 overflows an int to 4, that would match rowBytes
+        ByteBuffer buffer = ByteBuffer.allocate(RawPixelFormat.HEADER_SIZE);
+        RawPixelFormat.writeHeader(new RawPixelFormat.Header(RawPixelFormat.CONFIG_ARGB_8888, 0, 0x40000001, 1, 4, 4), buffer);
+        buffer.flip();
+        RawPixelFormat.readHeader(buffer);
+    }
+
+    @Test(expected = IOException.class)
+    public void payloadOverflowingTheTotalLengthIsRejected() throws IOException {
+        //header + payload would overflow getTotalLength
+        ByteBuffer buffer = ByteBuffer.allocate(RawPixelFormat.HEADER_SIZE);
+        RawPixelFormat.writeHeader(new RawPixelFormat.Header(RawPixelFormat.CONFIG_ALPHA_8, 0, 1, 1, 1, Integer.MAX_VALUE - 1), buffer);
+        buffer.flip();
+        RawPixelFormat.readHeader(buffer);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedPayloadIsRejected() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RawPixelFormat.HEADER_SIZE);
+        RawPixelFormat.writeHeader(new RawPixelFormat.Header(RawPixelFormat.CONFIG_ARGB_8888, 0, 10, 10, 40, 399), buffer);
+        buffer.flip();
+        RawPixelFormat.readHeader(buffer);
+    }
+}
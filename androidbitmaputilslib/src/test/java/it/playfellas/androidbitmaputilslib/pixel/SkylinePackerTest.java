@@ -0,0 +1,107 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link SkylinePacker}: placed rectangles must stay in the page and must not overlap,
+ * also counting the padding between them.
+ */
+public class SkylinePackerTest {
+
+    @Test
+    public void rectanglesDontOverlap() {
+        for (int padding = 0; padding <= 3; padding++) {
+            Random random = new Random(padding);
+            SkylinePacker packer = new SkylinePacker(512, 384, padding);
+            List<int[]> placed = new ArrayList<>();
+            long area = 0;
+            for (int i = 0; i < 2000; i++) {
+                int w = 1 + random.nextInt(random.nextBoolean() ? 16 : 64);
+                int h = 1 + random.nextInt(random.nextBoolean() ? 16 : 64);
+                int[] position = packer.insert(w, h);
+                if (position == null) {
+                    continue;
+                }
+                int[] rect = {position[0], position[1], w, h};
+                assertInPage(packer, rect);
+                for (int[] other : placed) {
+                    assertFalse("overlap of " + describe(rect) + " and " + describe(other) + " with padding " + padding,
+                            overlap(rect, other, padding));
+                }
+                placed.add(rect);
+                area += (long) w * h;
+            }
+            assertFalse(placed.isEmpty());
+            assertEquals((float) area / (512 * 384), packer.getOccupancy(), 1e-4f);
+        }
+    }
+
+    @Test
+    public void usedSizeCoversAllRectangles() {
+        SkylinePacker packer = new SkylinePacker(100, 100, 1);
+        int[] a = packer.insert(30, 20);
+        int[] b = packer.insert(50, 40);
+        assertNotNull(a);
+        assertNotNull(b);
+        assertEquals(Math.max(a[0] + 30, b[0] + 50), packer.getUsedWidth());
+        assertEquals(Math.max(a[1] + 20, b[1] + 40), packer.getUsedHeight());
+    }
+
+    @Test
+    public void fullPageRejectsRectangles() {
+        SkylinePacker packer = new SkylinePacker(64, 64, 0);
+        assertNull(packer.insert(65, 1));
+        assertArrayEquals(new int[]{0, 0}, packer.insert(64, 64));
+        assertNull(packer.insert(1, 1));
+        assertEquals(1f, packer.getOccupancy(), 0f);
+
+        packer.reset();
+        assertEquals(0f, packer.getOccupancy(), 0f);
+        assertArrayEquals(new int[]{0, 0}, packer.insert(1, 1));
+    }
+
+    @Test
+    public void paddingCanBeCutAtTheEdges() {
+        //two rectangles of half page with padding 2 don't fit side by side, but one fills the page
+        SkylinePacker packer = new SkylinePacker(64, 32, 2);
+        assertArrayEquals(new int[]{0, 0}, packer.insert(64, 32));
+        packer.reset();
+        assertNotNull(packer.insert(32, 32));
+        assertNull(packer.insert(32, 32));
+    }
+
+    private static void assertInPage(SkylinePacker packer, int[] rect) {
+        assertTrue(describe(rect) + " out of the page", rect[0] >= 0 && rect[1] >= 0
+                && rect[0] + rect[2] <= packer.getWidth() && rect[1] + rect[3] <= packer.getHeight());
+    }
+
+    private static boolean overlap(int[] a, int[] b, int padding) {
+        return a[0] < b[0] + b[2] + padding && b[0] < a[0] + a[2] + padding
+                && a[1] < b[1] + b[3] + padding && b[1] < a[1] + a[3] + padding;
+    }
+
+    private static String describe(int[] rect) {
+        return "[" + rect[0] + ", " + rect[1] + ", " + rect[2] + "x" + rect[3] + "]";
+    }
+}
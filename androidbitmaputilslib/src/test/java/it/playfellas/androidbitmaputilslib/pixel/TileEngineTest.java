@@ -0,0 +1,204 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.assertBuffersEqual;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.copyOf;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.randomBuffer;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link TileEngine}: the result in parallel tiles must be the same of a single serial pass,
+ * for sizes that aren't multiples of the tile size, and every pixel must be processed exactly once.
+ */
+public class TileEngineTest {
+
+    //small sizes, sizes around the multiples of the tile size (13x7) and sizes over the parallel threshold
+    private static final int[][] SIZES = {{1, 1}, {1, 300}, {300, 1}, {12, 6}, {13, 7}, {14, 8}, {130, 69},
+            {257, 256}, {301, 263}, {640, 117}};
+
+    private TileEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new TileEngine(4, 13, 7);
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void parallelResultMatchesSerialOne() {
+        PixelKernel kernel = PixelKernels.chain(PixelKernels.overlay(0x3366CC), PixelKernels.ditherRgb565());
+        for (int[] size : SIZES) {
+            PixelBuffer src = randomBuffer(size[0], size[1], size[0] * 31 + size[1]);
+            PixelBuffer serial = new PixelBuffer(size[0], size[1]);
+            kernel.apply(src, serial, 0, 0, size[0], size[1]);
+
+            PixelBuffer parallel = new PixelBuffer(size[0], size[1]);
+            engine.execute(kernel, src, parallel);
+            assertBuffersEqual(size[0] + "x" + size[1], serial, parallel);
+
+            PixelBuffer inPlace = copyOf(src);
+            engine.execute(kernel, inPlace, inPlace);
+            assertBuffersEqual(size[0] + "x" + size[1] + " in place", serial, inPlace);
+        }
+    }
+
+    @Test
+    public void defaultTilesMatchSerialResult() {
+        TileEngine defaultTiles = new TileEngine(3);
+        try {
+            PixelBuffer src = randomBuffer(513, 301, 1);
+            PixelBuffer serial = new PixelBuffer(513, 301);
+            PixelKernels.grayscale().apply(src, serial, 0, 0, 513, 301);
+            PixelBuffer parallel = new PixelBuffer(513, 301);
+            defaultTiles.execute(PixelKernels.grayscale(), src, parallel);
+            assertBuffersEqual("default tiles", serial, parallel);
+        } finally {
+            defaultTiles.shutdown();
+        }
+    }
+
+    @Test
+    public void everyPixelIsProcessedOnce() {
+        for (int[] size : SIZES) {
+            int w = size[0];
+            int h = size[1];
+            final AtomicIntegerArray counts = new AtomicIntegerArray(w * h);
+            PixelKernel counter = new PixelKernel() {
+                @Override
+                public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+                    for (int y = top; y < bottom; y++) {
+                        for (int x = left; x < right; x++) {
+                            counts.incrementAndGet(y * src.getWidth() + x);
+                        }
+                    }
+                }
+            };
+            PixelBuffer buffer = new PixelBuffer(w, h);
+            engine.execute(counter, buffer, buffer);
+            for (int i = 0; i < counts.length(); i++) {
+                assertEquals(w + "x" + h + " pixel " + i, 1, counts.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void rectangleLeavesTheRestUntouched() {
+        PixelBuffer src = randomBuffer(301, 263, 2);
+        PixelBuffer dst = copyOf(src);
+        //edges in the middle of tiles
+        engine.execute(PixelKernels.grayscale(), src, dst, 5, 3, 290, 259);
+        PixelBuffer expected = copyOf(src);
+        PixelKernels.grayscale().apply(src, expected, 5, 3, 290, 259);
+        assertBuffersEqual("rectangle", expected, dst);
+
+        //empty rectangles do nothing
+        engine.execute(PixelKernels.grayscale(), src, dst, 10, 10, 10, 20);
+        engine.execute(PixelKernels.grayscale(), src, dst, 10, 10, 5, 5);
+        assertBuffersEqual("empty rectangle", expected, dst);
+    }
+
+    @Test
+    public void subBuffersMatchSerialResult() {
+        PixelBuffer whole = randomBuffer(400, 300, 3);
+        PixelBuffer src = whole.subBuffer(7, 5, 381, 281);
+        PixelBuffer serial = new PixelBuffer(381, 281);
+        PixelKernels.tint(0x80FF0000).apply(src, serial, 0, 0, 381, 281);
+        PixelBuffer parallel = new PixelBuffer(new int[400 * 300], 400 * 3 + 9, 400, 381, 281);
+        engine.execute(PixelKernels.tint(0x80FF0000), src, parallel);
+        assertBuffersEqual("sub buffer", serial, parallel);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void differentSizesAreRejected() {
+        engine.execute(PixelKernels.grayscale(), new PixelBuffer(4, 4), new PixelBuffer(4, 5));
+    }
+
+    @Test
+    public void forEachRunsEveryIndexOnce() {
+        for (int count : new int[]{0, 1, 3, 4, 5, 1000}) {
+            final AtomicIntegerArray runs = new AtomicIntegerArray(Math.max(1, count));
+            engine.forEach(count, new TileEngine.Task() {
+                @Override
+                public void run(int index) {
+                    runs.incrementAndGet(index);
+                }
+            });
+            for (int i = 0; i < count; i++) {
+                assertEquals(1, runs.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void forEachThrowsTheErrorOfATask() {
+        try {
+            engine.forEach(100, new TileEngine.Task() {
+                @Override
+                public void run(int index) {
+                    if (index == 42) {
+                        throw new IllegalStateException("task " + index);
+                    }
+                }
+            });
+            fail("the exception of the task must be thrown");
+        } catch (IllegalStateException e) {
+            assertEquals("task 42", e.getMessage());
+        }
+    }
+
+    @Test
+    public void nestedCallsDontDeadlock() {
+        final PixelBuffer src = randomBuffer(300, 300, 4);
+        final PixelBuffer[] results = new PixelBuffer[8];
+        //every worker calls the engine again: the calling thread processes the tiles too
+        engine.forEach(results.length, new TileEngine.Task() {
+            @Override
+            public void run(int index) {
+                PixelBuffer dst = new PixelBuffer(300, 300);
+                engine.execute(PixelKernels.grayscale(), src, dst);
+                results[index] = dst;
+            }
+        });
+        PixelBuffer expected = new PixelBuffer(300, 300);
+        PixelKernels.grayscale().apply(src, expected, 0, 0, 300, 300);
+        for (PixelBuffer result : results) {
+            assertBuffersEqual("nested", expected, result);
+        }
+    }
+
+    @Test
+    public void shutdownEngineRunsOnTheCallingThread() {
+        TileEngine stopped = new TileEngine(4, 13, 7);
+        stopped.shutdown();
+        PixelBuffer src = randomBuffer(301, 263, 5);
+        PixelBuffer expected = new PixelBuffer(301, 263);
+        PixelKernels.grayscale().apply(src, expected, 0, 0, 301, 263);
+        PixelBuffer dst = new PixelBuffer(301, 263);
+        stopped.execute(PixelKernels.grayscale(), src, dst);
+        assertBuffersEqual("after shutdown", expected, dst);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.pixel;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.assertBuffersEqual;
+import static it.playfellas.androidbitmaputilslib.pixel.PixelTestUtils.randomBuffer;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link TileStreamer}: the results streamed band by band must be equal to the ones
+ * computed on the whole image.
+ */
+public class TileStreamerTest {
+
+    private final TileEngine engine = new TileEngine(3, 32, 16);
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void applyMatchesTheWholeImage() throws IOException {
+        PixelBuffer src = randomBuffer(200, 157, 1);
+        PixelBuffer expected = new PixelBuffer(200, 157);
+        engine.execute(PixelKernels.grayscale(), src, expected);
+
+        MemorySink sink = new MemorySink();
+        new TileStreamer(engine, 8).apply(new MemorySource(src), PixelKernels.grayscale(), sink);
+        assertTrue(sink.ended);
+        assertBuffersEqual("apply", expected, sink.result);
+    }
+
+    @Test
+    public void downscaleMatchesPixelScaler() throws IOException {
+        PixelBuffer src = randomBuffer(403, 301, 2);
+        int[][] sizes = {{402, 300}, {200, 150}, {97, 61}, {1, 1}};
+        for (int[] size : sizes) {
+            PixelBuffer expected = new PixelBuffer(size[0], size[1]);
+            PixelScaler.scale(src, expected, PixelScaler.Quality.HIGH, engine);
+
+            MemorySink sink = new MemorySink();
+            new TileStreamer(engine, 16).downscale(new MemorySource(src), size[0], size[1], sink);
+            assertBuffersEqual("downscale " + size[0] + "x" + size[1], expected, sink.result);
+        }
+    }
+
+    @Test
+    public void rawFilesRoundTrip() throws IOException {
+        //opaque pixels: the raw format stores the premultiplied bytes of ARGB_8888
+        PixelBuffer src = randomBuffer(123, 77, 3);
+        for (int i = 0; i < src.getPixels().length; i++) {
+            src.getPixels()[i] |= 0xFF000000;
+        }
+        File file = File.createTempFile("tiles", ".raw");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                new TileStreamer(engine, 5).apply(new MemorySource(src), COPY, RawTileSink.of(out));
+            } finally {
+                out.close();
+            }
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                RawTileSource raw = new RawTileSource(in.getChannel());
+                assertEquals(123, raw.getWidth());
+                assertEquals(77, raw.getHeight());
+                MemorySink sink = new MemorySink();
+                new TileStreamer(engine, 7).apply(raw, COPY, sink);
+                assertBuffersEqual("round trip", src, sink.result);
+            } finally {
+                in.close();
+            }
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void downscaleThrowsTheErrorsOfTheSource() throws IOException {
+        TileSource broken = new MemorySource(new PixelBuffer(64, 64)) {
+            @Override
+            public void read(int top, PixelBuffer dst) throws IOException {
+                throw new IOException("broken");
+            }
+        };
+        new TileStreamer(engine).downscale(broken, 16, 16, new MemorySink());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bandRowsMustBePositive() {
+        new TileStreamer(engine, 0);
+    }
+
+    private static final PixelKernel COPY = new PixelKernel() {
+        @Override
+        public void apply(PixelBuffer src, PixelBuffer dst, int left, int top, int right, int bottom) {
+            dst.copyFrom(src, left, top, left, top, right - left, bottom - top);
+        }
+    };
+
+    private static class MemorySource implements TileSource {
+        private final PixelBuffer image;
+
+        private MemorySource(PixelBuffer image) {
+            this.image = image;
+        }
+
+        @Override
+        public int getWidth() {
+            return image.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return image.getHeight();
+        }
+
+        @Override
+        public void read(int top, PixelBuffer dst) throws IOException {
+            dst.copyFrom(image, 0, top, 0, 0, image.getWidth(), dst.getHeight());
+        }
+    }
+
+    private static class MemorySink implements TileSink {
+        private PixelBuffer result;
+        private int written;
+        private boolean ended;
+
+        @Override
+        public void begin(int width, int height) {
+            assertNull("begin called twice", result);
+            result = new PixelBuffer(width, height);
+        }
+
+        @Override
+        public void write(PixelBuffer rows) {
+            assertFalse(ended);
+            result.copyFrom(rows, 0, 0, 0, written, rows.getWidth(), rows.getHeight());
+            written += rows.getHeight();
+        }
+
+        @Override
+        public void end() {
+            assertEquals("rows written", result.getHeight(), written);
+            ended = true;
+        }
+    }
+}
@@ -12,10 +12,14 @@ import android.widget.Spinner;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import butterknife.Bind;
 import butterknife.ButterKnife;
 import butterknife.OnItemSelected;
+import it.playfellas.androidbitmaputilslib.AsyncBitmapUtils;
+import it.playfellas.androidbitmaputilslib.BitmapCallback;
+import it.playfellas.androidbitmaputilslib.BitmapExecutor;
 import it.playfellas.androidbitmaputilslib.BitmapUtils;
 import it.playfellas.androidbitmaputilslib.BitmapUtilsException;
 
@@ -30,6 +34,7 @@ public class TestActivity extends AppCompatActivity {
     public Spinner spinner;
 
     private Bitmap bitmap;
+    private AsyncBitmapUtils async;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -39,6 +44,8 @@ public class TestActivity extends AppCompatActivity {
 
         bitmap = BitmapFactory.decodeResource(this.getResources(),
                 R.drawable.lion8);
+        //operations on pieces are slow: they run on the worker threads, tagged with the view
+        async = BitmapUtils.async().priority(BitmapExecutor.PRIORITY_VISIBLE).tag(imageView);
 
         ArrayAdapter<CharSequence> adapter = ArrayAdapter.createFromResource(this,
                 R.array.effects, android.R.layout.simple_spinner_item);
@@ -63,9 +70,28 @@ public class TestActivity extends AppCompatActivity {
     private static final int DRAWABLETOBITMAP = 14;
 
 
+    private final BitmapCallback<Bitmap> imageViewCallback = new BitmapCallback<Bitmap>() {
+        @Override
+        public void onSuccess(Bitmap result) {
+            imageView.setImageBitmap(result);
+        }
+
+        @Override
+        public void onFailure(Throwable error) {
+            error.printStackTrace();
+        }
+    };
+
+    @Override
+    protected void onDestroy() {
+        BitmapExecutor.getDefault().cancelAll(imageView);
+        super.onDestroy();
+    }
+
     @OnItemSelected(R.id.effects_spinner)
     public void onItemSelected(int position) {
-        List<Bitmap> piecesList;
+        //the result of a previous selection is not needed anymore
+        BitmapExecutor.getDefault().cancelAll(imageView);
         try {
             switch (position) {
                 default:
@@ -107,16 +133,26 @@ public class TestActivity extends AppCompatActivity {
                     imageView.setImageBitmap(BitmapUtils.scale(bitmap, 500, 500));
                     break;
                 case PIECESGRAYSCALED:
-                    piecesList = BitmapUtils.splitImageHorizontally(BitmapFactory.decodeResource(getResources(), R.drawable.lion8), 5);
-                    //this colors the first 2 (1+1, because current starts from 0) pieces over the size of the piecesList
-                    imageView.setImageBitmap(BitmapUtils.geCombinedGrayscaledByPieces(piecesList,
-                            3, piecesList.size(), BitmapUtils.Direction.LEFT_2_RIGHT));
+                    async.submit(new Callable<Bitmap>() {
+                        @Override
+                        public Bitmap call() {
+                            List<Bitmap> piecesList = BitmapUtils.splitImageHorizontally(BitmapFactory.decodeResource(getResources(), R.drawable.lion8), 5);
+                            //this colors the first 2 (1+1, because current starts from 0) pieces over the size of the piecesList
+                            return BitmapUtils.geCombinedGrayscaledByPieces(piecesList,
+                                    3, piecesList.size(), BitmapUtils.Direction.LEFT_2_RIGHT);
+                        }
+                    }, imageViewCallback);
                     break;
                 case PIECESGRAYSCALEDVERTICAL:
-                    piecesList = BitmapUtils.splitImageVertically(BitmapFactory.decodeResource(getResources(), R.drawable.lion8), 5);
-                    //this colors the first 2 (1+1, because current starts from 0) pieces over the size of the piecesList
-                    imageView.setImageBitmap(BitmapUtils.geCombinedGrayscaledByPieces(piecesList,
-                            3, piecesList.size(), BitmapUtils.Direction.DOWN_2_UP));
+                    async.submit(new Callable<Bitmap>() {
+                        @Override
+                        public Bitmap call() {
+                            List<Bitmap> piecesList = BitmapUtils.splitImageVertically(BitmapFactory.decodeResource(getResources(), R.drawable.lion8), 5);
+                            //this colors the first 2 (1+1, because current starts from 0) pieces over the size of the piecesList
+                            return BitmapUtils.geCombinedGrayscaledByPieces(piecesList,
+                                    3, piecesList.size(), BitmapUtils.Direction.DOWN_2_UP);
+                        }
+                    }, imageViewCallback);
                     break;
                 case SILHOUETTECOLOR:
                     imageView.setImageDrawable(BitmapUtils.getSilhouetteWithColor(getResources().getDrawable(R.drawable.lion8), Color.YELLOW));
@@ -0,0 +1,55 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.benchmarks;
+
+import java.util.Random;
+
+import it.playfellas.androidbitmaputilslib.pixel.PixelBuffer;
+
+/**
+ * Test images shared by the benchmarks.
+ */
+final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * Method to create an image with random colors and an alpha gradient, so kernels
+     * can't take shortcuts (for example on opaque or uniform pixels).
+     * The content depends only on the size, so every run uses the same pixels.
+     *
+     * @param width  int that represents the width.
+     * @param height int that represents the height.
+     * @return A new PixelBuffer.
+     */
+    static PixelBuffer create(int width, int height) {
+        PixelBuffer buffer = new PixelBuffer(width, height);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            int alpha = 255 - (y * 255 / height);
+            for (int x = 0; x < width; x++) {
+                buffer.setPixel(x, y, (alpha << 24) | (random.nextInt() & 0xFFFFFF));
+            }
+        }
+        return buffer;
+    }
+
+    //parallelism 0 means a thread for every available processor
+    static int toThreads(int parallelism) {
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+}
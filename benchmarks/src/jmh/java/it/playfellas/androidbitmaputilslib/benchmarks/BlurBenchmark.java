@@ -0,0 +1,96 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import it.playfellas.androidbitmaputilslib.pixel.PixelBlur;
+import it.playfellas.androidbitmaputilslib.pixel.PixelBuffer;
+import it.playfellas.androidbitmaputilslib.pixel.TileEngine;
+
+/**
+ * Benchmarks of {@link PixelBlur} on ARGB buffers and ALPHA_8 masks, with small and big radii
+ * (the cost should not change with the radius), on one thread and on all processors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BlurBenchmark {
+
+    @Param({"512", "2048"})
+    public int size;
+
+    @Param({"2", "16", "64"})
+    public float radius;
+
+    //0 = a thread for every available processor
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private PixelBuffer image;
+    private PixelBuffer buffer;
+    private byte[] mask;
+    private byte[] alpha;
+    private TileEngine engine;
+
+    @Setup
+    public void setUp() {
+        image = BenchmarkImages.create(size, size);
+        buffer = new PixelBuffer(size, size);
+        mask = new byte[size * size];
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] = (byte) (image.getPixels()[i] >>> 24);
+        }
+        alpha = new byte[size * size];
+        engine = new TileEngine(BenchmarkImages.toThreads(parallelism));
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public PixelBuffer blurArgb() {
+        //the blur is in place: start every time from the original image
+        System.arraycopy(image.getPixels(), 0, buffer.getPixels(), 0, size * size);
+        PixelBlur.blur(buffer, radius, engine);
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] blurAlpha() {
+        System.arraycopy(mask, 0, alpha, 0, mask.length);
+        PixelBlur.blurAlpha(alpha, 0, size, size, size, radius, engine);
+        return alpha;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import it.playfellas.androidbitmaputilslib.pixel.ColorOp;
+import it.playfellas.androidbitmaputilslib.pixel.PixelBuffer;
+import it.playfellas.androidbitmaputilslib.pixel.PixelKernel;
+import it.playfellas.androidbitmaputilslib.pixel.PixelKernels;
+
+/**
+ * Benchmarks of {@link ColorOp} chains: a chain of gray scale, lighting and tint compiled into a single
+ * pass, compared to the same operations executed as separate passes (as the Canvas filters did),
+ * and a chain with non-linear steps compiled into tables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ColorOpBenchmark {
+
+    private static final int COLOR = 0xFF3366CC;
+    private static final int TINT = 0x80FF0000;
+
+    @Param({"256", "1024", "2048"})
+    public int size;
+
+    private PixelBuffer src;
+    private PixelBuffer dst;
+    private PixelKernel compiledLinear;
+    private PixelKernel compiledTables;
+    private PixelKernel compiledStages;
+
+    @Setup
+    public void setUp() {
+        src = BenchmarkImages.create(size, size);
+        dst = new PixelBuffer(size, size);
+        compiledLinear = ColorOp.grayscale().then(ColorOp.lighting(COLOR, 1)).then(ColorOp.tint(TINT)).compile().asKernel();
+        compiledTables = ColorOp.lighting(COLOR, 0).then(ColorOp.gamma(2.2f)).then(ColorOp.posterize(8)).compile().asKernel();
+        compiledStages = ColorOp.grayscale().then(ColorOp.gamma(2.2f)).then(ColorOp.tint(TINT)).compile().asKernel();
+    }
+
+    @Benchmark
+    public PixelBuffer separatePasses() {
+        PixelKernels.grayscale().apply(src, dst, 0, 0, size, size);
+        PixelKernels.lighting(COLOR, 1).apply(dst, dst, 0, 0, size, size);
+        PixelKernels.tint(TINT).apply(dst, dst, 0, 0, size, size);
+        return dst;
+    }
+
+    @Benchmark
+    public PixelBuffer compiledMatrix() {
+        compiledLinear.apply(src, dst, 0, 0, size, size);
+        return dst;
+    }
+
+    @Benchmark
+    public PixelBuffer compiledTables() {
+        compiledTables.apply(src, dst, 0, 0, size, size);
+        return dst;
+    }
+
+    @Benchmark
+    public PixelBuffer compiledStages() {
+        compiledStages.apply(src, dst, 0, 0, size, size);
+        return dst;
+    }
+
+    @Benchmark
+    public Object compileCached() {
+        return ColorOp.grayscale().then(ColorOp.lighting(COLOR, 1)).then(ColorOp.tint(TINT)).compile();
+    }
+}
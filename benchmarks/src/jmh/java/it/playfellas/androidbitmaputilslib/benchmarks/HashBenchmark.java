@@ -0,0 +1,85 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import it.playfellas.androidbitmaputilslib.pixel.PixelBuffer;
+import it.playfellas.androidbitmaputilslib.pixel.PixelHashes;
+import it.playfellas.androidbitmaputilslib.pixel.PixelKernels;
+
+/**
+ * Benchmarks of {@link PixelHashes}: sampled and full content hashes and perceptual hashes,
+ * compared to a gray scale conversion of the same image (the cheapest transformation).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class HashBenchmark {
+
+    @Param({"256", "1024", "4096"})
+    public int size;
+
+    private PixelBuffer src;
+    private PixelBuffer dst;
+
+    @Setup
+    public void setUp() {
+        src = BenchmarkImages.create(size, size);
+        dst = new PixelBuffer(size, size);
+    }
+
+    @Benchmark
+    public long contentHashSampled() {
+        return PixelHashes.contentHash(src);
+    }
+
+    @Benchmark
+    public long contentHashFull() {
+        return PixelHashes.contentHash(src, 1);
+    }
+
+    @Benchmark
+    public long averageHash() {
+        return PixelHashes.averageHash(src);
+    }
+
+    @Benchmark
+    public long differenceHash() {
+        return PixelHashes.differenceHash(src);
+    }
+
+    @Benchmark
+    public PixelBuffer grayscaleBaseline() {
+        PixelKernels.grayscale().apply(src, dst, 0, 0, size, size);
+        return dst;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import it.playfellas.androidbitmaputilslib.pixel.PixelBuffer;
+import it.playfellas.androidbitmaputilslib.pixel.PixelKernel;
+import it.playfellas.androidbitmaputilslib.pixel.PixelKernels;
+import it.playfellas.androidbitmaputilslib.pixel.TileEngine;
+
+/**
+ * Benchmarks of the per-pixel color kernels (gray scale, overlay and silhouette),
+ * executed by a {@link TileEngine} on one thread and on all processors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class KernelBenchmark {
+
+    @Param({"64", "256", "1024", "4096"})
+    public int size;
+
+    //0 = a thread for every available processor
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private PixelBuffer src;
+    private PixelBuffer dst;
+    private TileEngine engine;
+    private PixelKernel overlay;
+    private PixelKernel tint;
+
+    @Setup
+    public void setUp() {
+        src = BenchmarkImages.create(size, size);
+        dst = new PixelBuffer(size, size);
+        engine = new TileEngine(BenchmarkImages.toThreads(parallelism));
+        overlay = PixelKernels.overlay(0x3366CC);
+        tint = PixelKernels.tint(0xCC3366CC);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public PixelBuffer grayscale() {
+        engine.execute(PixelKernels.grayscale(), src, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public PixelBuffer overlay() {
+        engine.execute(overlay, src, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public PixelBuffer silhouette() {
+        engine.execute(tint, src, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public PixelBuffer lumaToAlpha() {
+        engine.execute(PixelKernels.lumaToAlpha(), src, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public PixelBuffer ditherRgb565() {
+        engine.execute(PixelKernels.ditherRgb565(), src, dst);
+        return dst;
+    }
+}
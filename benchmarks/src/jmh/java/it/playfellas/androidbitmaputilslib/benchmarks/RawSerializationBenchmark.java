@@ -0,0 +1,85 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import it.playfellas.androidbitmaputilslib.pixel.PixelBuffer;
+import it.playfellas.androidbitmaputilslib.pixel.RawPixelFormat;
+
+/**
+ * Benchmarks of the raw serialization of images ({@link RawPixelFormat}), into heap and direct buffers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RawSerializationBenchmark {
+
+    @Param({"64", "256", "1024", "4096"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private PixelBuffer src;
+    private PixelBuffer dst;
+    private ByteBuffer raw;
+
+    @Setup
+    public void setUp() {
+        src = BenchmarkImages.create(size, size);
+        dst = new PixelBuffer(size, size);
+        int length = RawPixelFormat.HEADER_SIZE + size * size * 4;
+        raw = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+        encode();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        raw.clear();
+        int rowBytes = size * 4;
+        RawPixelFormat.writeHeader(new RawPixelFormat.Header(RawPixelFormat.CONFIG_ARGB_8888, RawPixelFormat.FLAG_HAS_ALPHA,
+                size, size, rowBytes, rowBytes * size), raw);
+        RawPixelFormat.writeArgb8888(src, 0, size, raw);
+        raw.flip();
+        return raw;
+    }
+
+    @Benchmark
+    public PixelBuffer decode() throws IOException {
+        raw.rewind();
+        RawPixelFormat.Header header = RawPixelFormat.readHeader(raw);
+        RawPixelFormat.readArgb8888(raw, header.getRowBytes(), dst, 0, header.getHeight());
+        return dst;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import it.playfellas.androidbitmaputilslib.pixel.PixelBuffer;
+import it.playfellas.androidbitmaputilslib.pixel.PixelScaler;
+import it.playfellas.androidbitmaputilslib.pixel.TileEngine;
+
+/**
+ * Benchmarks of the area-averaging downscaler, for every {@link PixelScaler.Quality},
+ * reducing a square image by a factor (not a power of 2, so the last filter is always used),
+ * on one thread and on all processors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ScaleBenchmark {
+
+    @Param({"1024", "4096"})
+    public int size;
+
+    @Param({"3", "7"})
+    public int factor;
+
+    @Param({"FAST", "BALANCED", "HIGH"})
+    public PixelScaler.Quality quality;
+
+    //0 = a thread for every available processor
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private PixelBuffer src;
+    private PixelBuffer dst;
+    private TileEngine engine;
+
+    @Setup
+    public void setUp() {
+        src = BenchmarkImages.create(size, size);
+        dst = new PixelBuffer(size / factor, size / factor);
+        engine = new TileEngine(BenchmarkImages.toThreads(parallelism));
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public PixelBuffer scale() {
+        PixelScaler.scale(src, dst, quality, engine);
+        return dst;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import it.playfellas.androidbitmaputilslib.pixel.PixelBuffer;
+import it.playfellas.androidbitmaputilslib.pixel.PixelKernel;
+import it.playfellas.androidbitmaputilslib.pixel.PixelKernels;
+
+/**
+ * Benchmarks of the split of an image into pieces and of their combination, with the
+ * first half of the pieces in gray scale (the pure-Java equivalent of
+ * {@code BitmapUtils.splitImageHorizontally(...)} and {@code BitmapUtils.geCombinedGrayscaledByPieces(...)}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SplitCombineBenchmark {
+
+    @Param({"64", "256", "1024", "4096"})
+    public int size;
+
+    @Param({"4", "16"})
+    public int pieces;
+
+    private PixelBuffer src;
+    private PixelBuffer[] split;
+    private PixelBuffer combined;
+    private int pieceWidth;
+
+    @Setup
+    public void setUp() {
+        src = BenchmarkImages.create(size, size);
+        pieceWidth = size / pieces;
+        split = new PixelBuffer[pieces];
+        for (int i = 0; i < pieces; i++) {
+            split[i] = new PixelBuffer(pieceWidth, size);
+        }
+        combined = new PixelBuffer(pieceWidth * pieces, size);
+    }
+
+    @Benchmark
+    public PixelBuffer[] split() {
+        for (int i = 0; i < pieces; i++) {
+            split[i].copyFrom(src, i * pieceWidth, 0, 0, 0, pieceWidth, size);
+        }
+        return split;
+    }
+
+    @Benchmark
+    public PixelBuffer[] splitIntoViews() {
+        PixelBuffer[] views = new PixelBuffer[pieces];
+        for (int i = 0; i < pieces; i++) {
+            views[i] = src.subBuffer(i * pieceWidth, 0, pieceWidth, size);
+        }
+        return views;
+    }
+
+    @Benchmark
+    public PixelBuffer combine() {
+        PixelKernel grayscale = PixelKernels.grayscale();
+        for (int i = 0; i < pieces; i++) {
+            if (i < pieces / 2) {
+                grayscale.apply(split[i], combined.subBuffer(i * pieceWidth, 0, pieceWidth, size), 0, 0, pieceWidth, size);
+            } else {
+                combined.copyFrom(split[i], 0, 0, i * pieceWidth, 0, pieceWidth, size);
+            }
+        }
+        return combined;
+    }
+}
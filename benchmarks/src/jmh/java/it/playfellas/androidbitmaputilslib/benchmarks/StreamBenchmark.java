@@ -0,0 +1,126 @@
+/*
+Copyright 2016 Stefano Cappa
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package it.playfellas.androidbitmaputilslib.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import it.playfellas.androidbitmaputilslib.pixel.PixelKernels;
+import it.playfellas.androidbitmaputilslib.pixel.RawTileSink;
+import it.playfellas.androidbitmaputilslib.pixel.RawTileSource;
+import it.playfellas.androidbitmaputilslib.pixel.TileEngine;
+import it.playfellas.androidbitmaputilslib.pixel.TileStreamer;
+
+/**
+ * Benchmarks of out-of-core processing with {@link TileStreamer}: a raw image file is read by bands,
+ * converted to grayscale or reduced by 4, and written to another raw file, with a heap much smaller than the image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+public class StreamBenchmark {
+
+    //rows of a 4096 pixels wide image: 8192 rows are 128MB of pixels
+    @Param({"2048", "8192"})
+    public int height;
+
+    @Param({"16", "64"})
+    public int bandRows;
+
+    //0 = a thread for every available processor
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private static final int WIDTH = 4096;
+
+    private File input;
+    private File output;
+    private TileEngine engine;
+
+    @Setup
+    public void setUp() throws IOException {
+        input = File.createTempFile("stream-in", ".raw");
+        output = File.createTempFile("stream-out", ".raw");
+        //written by strips of the same synthetic image, to not need the whole image in memory
+        FileOutputStream out = new FileOutputStream(input);
+        try {
+            RawTileSink sink = RawTileSink.of(out);
+            sink.begin(WIDTH, height);
+            for (int top = 0; top < height; top += 256) {
+                sink.write(BenchmarkImages.create(WIDTH, Math.min(256, height - top)));
+            }
+            sink.end();
+        } finally {
+            out.close();
+        }
+        engine = new TileEngine(BenchmarkImages.toThreads(parallelism));
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+        input.delete();
+        output.delete();
+    }
+
+    @Benchmark
+    public long grayscale() throws IOException {
+        return stream(false);
+    }
+
+    @Benchmark
+    public long downscale() throws IOException {
+        return stream(true);
+    }
+
+    private long stream(boolean downscale) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(input, "r");
+        FileOutputStream out = new FileOutputStream(output);
+        try {
+            RawTileSource source = new RawTileSource(in.getChannel());
+            RawTileSink sink = new RawTileSink(out.getChannel());
+            TileStreamer streamer = new TileStreamer(engine, bandRows);
+            if (downscale) {
+                streamer.downscale(source, WIDTH / 4, height / 4, sink);
+            } else {
+                streamer.apply(source, PixelKernels.grayscale(), sink);
+            }
+            return out.getChannel().position();
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}